@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+/**
+ * Settings shared by every {@link ArtifactAnalyzer} of an analysis run.
+ */
+public class AnalysisConfig {
+
+    /**
+     * Percentage of janky frames above which a test fails, matching the historic monkeyrunner
+     * script.
+     */
+    public static final double DEFAULT_JANK_THRESHOLD_PERCENT = 60;
+
+    private double mJankThresholdPercent = DEFAULT_JANK_THRESHOLD_PERCENT;
+    private int mAppUid = -1;
+    private String mAppPackage;
+
+    public double getJankThresholdPercent() {
+        return mJankThresholdPercent;
+    }
+
+    public AnalysisConfig setJankThresholdPercent(double jankThresholdPercent) {
+        mJankThresholdPercent = jankThresholdPercent;
+        return this;
+    }
+
+    /**
+     * The app's Linux uid, used to pick its entries out of system-wide dumps, or -1 if unknown.
+     */
+    public int getAppUid() {
+        return mAppUid;
+    }
+
+    public AnalysisConfig setAppUid(int appUid) {
+        mAppUid = appUid;
+        return this;
+    }
+
+    /**
+     * The app's package, used to tell its crashes and ANRs from other apps' in system-wide logs,
+     * or null if unknown.
+     */
+    public String getAppPackage() {
+        return mAppPackage;
+    }
+
+    public AnalysisConfig setAppPackage(String appPackage) {
+        mAppPackage = appPackage;
+        return this;
+    }
+}
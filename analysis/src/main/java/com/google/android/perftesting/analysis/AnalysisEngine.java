@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Analyzes the files pulled from a device after a test run. Every directory under
+ * {@code testdata} with at least one file accepted by an {@link ArtifactAnalyzer} becomes a
+ * {@link TestResult} named after its path relative to {@code testdata}; files directly in
+ * {@code testdata} are attributed to {@link #RUN_RESULT_NAME}. Warmup iterations of repeated
+ * tests are skipped since they aren't measurements.
+ *
+ * <p>The directory walk and every (file, analyzer) pair are tasks on a fork-join pool, so a run
+ * with many tests, or many devices analyzed together, uses every core.
+ *
+ * <pre>
+ * java -jar analysis.jar [--jank-threshold &lt;percent&gt;] [--app-uid &lt;uid&gt;] \
+ *         [--parallelism &lt;threads&gt;] perftesting/&lt;device_id&gt;...
+ * </pre>
+ */
+public class AnalysisEngine {
+
+    public static final String TEST_DATA_DIR_NAME = "testdata";
+    public static final String RUN_COMPLETE_FILENAME = "testRunComplete.log";
+    public static final String RUN_RESULT_NAME = "testRun";
+
+    private static final String WARMUP_DIR_PREFIX = "warmup_";
+
+    private final List<ArtifactAnalyzer> mAnalyzers;
+    private final AnalysisConfig mConfig;
+    private final ForkJoinPool mPool;
+
+    /**
+     * Use the analyzers registered with {@link ServiceLoader} and a pool with one thread per core.
+     */
+    public AnalysisEngine(AnalysisConfig config) {
+        this(loadAnalyzers(AnalysisEngine.class.getClassLoader()), config,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    public AnalysisEngine(List<ArtifactAnalyzer> analyzers, AnalysisConfig config,
+            int parallelism) {
+        mAnalyzers = new ArrayList<>(analyzers);
+        mConfig = config;
+        mPool = new ForkJoinPool(parallelism);
+    }
+
+    public static List<ArtifactAnalyzer> loadAnalyzers(ClassLoader classLoader) {
+        List<ArtifactAnalyzer> analyzers = new ArrayList<>();
+        for (ArtifactAnalyzer analyzer : ServiceLoader.load(ArtifactAnalyzer.class, classLoader)) {
+            analyzers.add(analyzer);
+        }
+        return analyzers;
+    }
+
+    /**
+     * Analyze a {@code testdata} directory.
+     */
+    public RunResult analyze(File testDataDir) {
+        Map<String, TestResult> results = new ConcurrentHashMap<>();
+        mPool.invoke(new DirectoryTask(testDataDir, "", results));
+        return new RunResult(new ArrayList<>(results.values()),
+                new File(testDataDir, RUN_COMPLETE_FILENAME).isFile());
+    }
+
+    /**
+     * Analyze a {@code testdata} directory and write its {@link RunResult#RESULTS_FILENAME}.
+     */
+    public RunResult analyzeAndWrite(File testDataDir) throws IOException {
+        RunResult runResult = analyze(testDataDir);
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(testDataDir, RunResult.RESULTS_FILENAME));
+            runResult.writeResults(fileWriter);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception ignored) { }
+            }
+        }
+        return runResult;
+    }
+
+    public void shutdown() {
+        mPool.shutdown();
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File mDir;
+        private final String mRelativePath;
+        private final Map<String, TestResult> mResults;
+
+        DirectoryTask(File dir, String relativePath, Map<String, TestResult> results) {
+            mDir = dir;
+            mRelativePath = relativePath;
+            mResults = results;
+        }
+
+        @Override
+        protected void compute() {
+            File[] children = mDir.listFiles();
+            if (children == null) {
+                return;
+            }
+            TestResult result = new TestResult(
+                    mRelativePath.isEmpty() ? RUN_RESULT_NAME : mRelativePath);
+            List<RecursiveAction> tasks = new ArrayList<>();
+            boolean analyzed = false;
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (!child.getName().startsWith(WARMUP_DIR_PREFIX)) {
+                        tasks.add(new DirectoryTask(child, mRelativePath.isEmpty()
+                                ? child.getName() : mRelativePath + '/' + child.getName(),
+                                mResults));
+                    }
+                    continue;
+                }
+                for (ArtifactAnalyzer analyzer : mAnalyzers) {
+                    if (analyzer.accepts(child)) {
+                        tasks.add(new ArtifactTask(analyzer, child, result));
+                        analyzed = true;
+                    }
+                }
+            }
+            if (analyzed) {
+                mResults.put(result.getName(), result);
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    private class ArtifactTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ArtifactAnalyzer mAnalyzer;
+        private final File mArtifact;
+        private final TestResult mResult;
+
+        ArtifactTask(ArtifactAnalyzer analyzer, File artifact, TestResult result) {
+            mAnalyzer = analyzer;
+            mArtifact = artifact;
+            mResult = result;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                mAnalyzer.analyze(mArtifact, mConfig, mResult);
+            } catch (IOException | RuntimeException e) {
+                // A broken artifact must not hide the results of the others.
+                mResult.fail(mAnalyzer.getClass().getSimpleName() + " couldn't analyze "
+                        + mArtifact.getName() + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Analyze the run of each device directory (or {@code testdata} directory) given, write its
+     * results file and print the summary. Exits with 1 if any run failed.
+     */
+    public static void main(String[] args) throws IOException {
+        AnalysisConfig config = new AnalysisConfig();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        List<File> runDirs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("--jank-threshold".equals(args[i]) && i + 1 < args.length) {
+                config.setJankThresholdPercent(Double.parseDouble(args[++i]));
+            } else if ("--app-uid".equals(args[i]) && i + 1 < args.length) {
+                config.setAppUid(Integer.parseInt(args[++i]));
+            } else if ("--app-package".equals(args[i]) && i + 1 < args.length) {
+                config.setAppPackage(args[++i]);
+            } else if ("--parallelism".equals(args[i]) && i + 1 < args.length) {
+                parallelism = Integer.parseInt(args[++i]);
+            } else {
+                runDirs.add(new File(args[i]));
+            }
+        }
+        if (runDirs.isEmpty()) {
+            System.err.println("Usage: AnalysisEngine [--jank-threshold <percent>] "
+                    + "[--app-uid <uid>] [--app-package <package>] [--parallelism <threads>] "
+                    + "<device dir>...");
+            System.exit(2);
+        }
+
+        AnalysisEngine engine = new AnalysisEngine(
+                loadAnalyzers(AnalysisEngine.class.getClassLoader()), config, parallelism);
+        Writer out = new OutputStreamWriter(System.out);
+        boolean passed = true;
+        try {
+            for (File runDir : runDirs) {
+                File testDataDir = TEST_DATA_DIR_NAME.equals(runDir.getName())
+                        ? runDir : new File(runDir, TEST_DATA_DIR_NAME);
+                out.append("Results for ").append(testDataDir.getPath())
+                        .append(System.getProperty("line.separator"));
+                RunResult runResult = engine.analyzeAndWrite(testDataDir);
+                runResult.printSummary(out);
+                passed &= runResult.isPassed();
+            }
+        } finally {
+            engine.shutdown();
+            out.flush();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+}
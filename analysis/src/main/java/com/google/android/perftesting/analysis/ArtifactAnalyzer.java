@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Analyzes one kind of file pulled from a device after a test run. Implementations are found with
+ * {@link java.util.ServiceLoader}, so a project can add its own by listing them in
+ * {@code META-INF/services/com.google.android.perftesting.analysis.ArtifactAnalyzer}.
+ *
+ * <p>Analyzers of the same test may run concurrently, but each instance only ever sees one file at
+ * a time per test. Implementations must be stateless or thread safe.
+ */
+public interface ArtifactAnalyzer {
+
+    /**
+     * @return true if this analyzer handles the file.
+     */
+    boolean accepts(File artifact);
+
+    /**
+     * Analyze the file, recording metrics and failures in the result.
+     */
+    void analyze(File artifact, AnalysisConfig config, TestResult result) throws IOException;
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the estimated power use from a {@code dumpsys batterystats}, either the per-test dump of
+ * the {@code EnableBatteryStatsDump} rule or the one the {@code TestListener} takes for the whole
+ * run. The app's own share is recorded too when its uid is known from the {@link AnalysisConfig}.
+ */
+public class BatteryStatsAnalyzer implements ArtifactAnalyzer {
+
+    public static final String TEST_BATTERY_FILENAME = "battery.dumpsys.log";
+    public static final String RUN_BATTERY_FILENAME = "batterystats.dumpsys.log";
+
+    public static final String COMPUTED_DRAIN_MAH = "batteryComputedDrainMah";
+    public static final String APP_DRAIN_MAH = "batteryAppDrainMah";
+
+    private static final String POWER_USE_HEADER = "Estimated power use (mAh):";
+
+    // First uid of an app in user 0, see android.os.Process.FIRST_APPLICATION_UID.
+    private static final int FIRST_APPLICATION_UID = 10000;
+
+    private static final Pattern COMPUTED_DRAIN_PATTERN =
+            Pattern.compile("Computed drain: ([0-9.]+)");
+    private static final Pattern UID_DRAIN_PATTERN =
+            Pattern.compile("^\\s*Uid (\\S+): ([0-9.]+)");
+
+    @Override
+    public boolean accepts(File artifact) {
+        String name = artifact.getName();
+        return TEST_BATTERY_FILENAME.equals(name) || RUN_BATTERY_FILENAME.equals(name);
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        String appUid = config.getAppUid() >= FIRST_APPLICATION_UID
+                ? "u0a" + (config.getAppUid() - FIRST_APPLICATION_UID) : null;
+        boolean inPowerUse = false;
+
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new FileReader(artifact));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.trim().equals(POWER_USE_HEADER)) {
+                    inPowerUse = true;
+                    continue;
+                }
+                if (!inPowerUse) {
+                    continue;
+                }
+                if (line.trim().isEmpty()) {
+                    // Only the first (since charged) section is of interest.
+                    break;
+                }
+                Matcher computedDrain = COMPUTED_DRAIN_PATTERN.matcher(line);
+                if (computedDrain.find()) {
+                    result.putMetric(COMPUTED_DRAIN_MAH,
+                            Double.parseDouble(computedDrain.group(1)));
+                    continue;
+                }
+                Matcher uidDrain = UID_DRAIN_PATTERN.matcher(line);
+                if (appUid != null && uidDrain.find() && appUid.equals(uidDrain.group(1))) {
+                    result.putMetric(APP_DRAIN_MAH, Double.parseDouble(uidDrain.group(2)));
+                }
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+}
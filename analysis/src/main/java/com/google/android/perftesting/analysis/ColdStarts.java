@@ -0,0 +1,213 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The cold starts of the app's activities and the startup budgets of {@code StartupTest}, shared
+ * by the test, which budgets its warm starts with them, and both test runners, which measure the
+ * cold starts from the host. A cold start kills the app's process and with it the
+ * instrumentation, so the runners launch the activities before the tests run and write the
+ * results where {@code StartupTest}'s {@code <activity>ColdStart} tests would have.
+ *
+ * <p>The Gradle runner uses this class directly, the monkeyrunner script through {@link #main}.
+ */
+public class ColdStarts {
+
+    public static final long MAX_TIME_TO_INITIAL_DISPLAY_MILLIS = 1000;
+    public static final long MAX_TIME_TO_FULL_DISPLAY_MILLIS = 2000;
+
+    public static final int LAUNCHES = 5;
+
+    private static final Map<String, String> TEST_DIRS = new LinkedHashMap<>();
+
+    static {
+        // As PerfTestingUtils translates StartupTest's test names.
+        TEST_DIRS.put("MainActivity", "c.g.a.perftesting.StartupTest_mainActivityColdStart");
+        TEST_DIRS.put("SimpleListActivity",
+                "c.g.a.perftesting.StartupTest_simpleListActivityColdStart");
+        TEST_DIRS.put("RecyclerViewActivity",
+                "c.g.a.perftesting.StartupTest_recyclerViewActivityColdStart");
+    }
+
+    private ColdStarts() {
+    }
+
+    /**
+     * @return the test directory of each activity's cold starts by the activity's class name, in
+     *     the order they are measured.
+     */
+    public static Map<String, String> getTestDirs() {
+        return Collections.unmodifiableMap(TEST_DIRS);
+    }
+
+    /**
+     * @param sdkInt the API level of the device, the time to full display is only budgeted where
+     *     activities can report it.
+     */
+    public static PerfBudget getBudget(int sdkInt) {
+        return new PerfBudget()
+                .limit(PerfMetrics.TIME_TO_INITIAL_DISPLAY_MILLIS,
+                        MAX_TIME_TO_INITIAL_DISPLAY_MILLIS)
+                .limit(PerfMetrics.TIME_TO_FULL_DISPLAY_MILLIS,
+                        sdkInt >= StartupReport.FULLY_DRAWN_MIN_SDK
+                                ? MAX_TIME_TO_FULL_DISPLAY_MILLIS : -1);
+    }
+
+    /**
+     * Write the launches to {@link StartupReport#STARTUP_FILENAME}, record their medians as the
+     * test's metrics and check them against {@link #getBudget(int)}, as {@code EnablePerfBudgets}
+     * does on the device.
+     *
+     * @return one message per metric over budget or not measured, empty if within budget.
+     */
+    public static List<String> write(StartupReport report, File testDir, int sdkInt)
+            throws IOException {
+        if (!testDir.isDirectory() && !testDir.mkdirs()) {
+            throw new IOException("Unable to create " + testDir);
+        }
+        FileWriter startupWriter = null;
+        try {
+            startupWriter = new FileWriter(new File(testDir, StartupReport.STARTUP_FILENAME));
+            report.write(startupWriter);
+        } finally {
+            if (startupWriter != null) {
+                try { startupWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+        report.recordMetrics(testDir);
+
+        PerfBudget budget = getBudget(sdkInt);
+        PerfMetrics metrics = PerfMetrics.readTestDir(testDir);
+        FileWriter budgetWriter = null;
+        try {
+            budgetWriter = new FileWriter(new File(testDir, PerfBudget.BUDGET_FILENAME));
+            budget.writeReport(metrics, budgetWriter);
+        } finally {
+            if (budgetWriter != null) {
+                try { budgetWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+        return budget.check(metrics);
+    }
+
+    /**
+     * With {@code --list}, print the activities to launch, the number of launches, the event log
+     * tag to wait for and the API level it needs as {@code key=value} lines. Otherwise write the
+     * results of one activity's cold starts from the saved output of each launch's
+     * {@code am start -W} and event log, and print the budget violations.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 1 && "--list".equals(args[0])) {
+            StringBuilder activities = new StringBuilder();
+            for (String activity : TEST_DIRS.keySet()) {
+                activities.append(activities.length() > 0 ? "," : "").append(activity);
+            }
+            System.out.println("activities=" + activities);
+            System.out.println("launches=" + LAUNCHES);
+            System.out.println("fullyDrawnEventTag=" + StartupReport.FULLY_DRAWN_EVENT_TAG);
+            System.out.println("fullyDrawnMinSdk=" + StartupReport.FULLY_DRAWN_MIN_SDK);
+            return;
+        }
+        String packageName = null;
+        int sdkInt = Integer.MAX_VALUE;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--"); first++) {
+            if ("--package".equals(args[first]) && first + 1 < args.length) {
+                packageName = args[++first];
+            } else if ("--sdk".equals(args[first]) && first + 1 < args.length) {
+                sdkInt = parseSdk(args[++first]);
+            }
+        }
+        int launchFiles = args.length - first - 2;
+        if (packageName == null || launchFiles < 0 || launchFiles % 2 != 0
+                || !TEST_DIRS.containsKey(args[first + 1])) {
+            System.err.println("Usage: ColdStarts --list\n"
+                    + "       ColdStarts --package <package> [--sdk <api level>] <testdata dir> "
+                    + "<activity> [<am start output> <fully drawn events>]...");
+            System.exit(2);
+        }
+        File testDataDir = new File(args[first]);
+        String activity = args[first + 1];
+        String component = packageName + "/." + activity;
+        StartupReport report = new StartupReport(component, StartupReport.START_TYPE_COLD);
+        for (int i = first + 2; i < args.length; i += 2) {
+            report.addLaunch(readDisplayedMillis(new File(args[i])),
+                    readFullyDrawnMillis(new File(args[i + 1]), component));
+        }
+        List<String> violations =
+                write(report, new File(testDataDir, TEST_DIRS.get(activity)), sdkInt);
+        Writer out = new OutputStreamWriter(System.out);
+        for (String violation : violations) {
+            out.append(activity).append(" cold start: ").append(violation)
+                    .append(System.getProperty("line.separator"));
+        }
+        out.flush();
+    }
+
+    /**
+     * @return the API level of {@code getprop ro.build.version.sdk}, or {@link Integer#MAX_VALUE}
+     *     if it is unknown so that every budget is checked.
+     */
+    public static int parseSdk(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException ignored) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private static long readDisplayedMillis(File amStartOutput) throws IOException {
+        Reader reader = new FileReader(amStartOutput);
+        try {
+            return StartupReport.parseDisplayedMillis(reader);
+        } finally {
+            try { reader.close(); } catch (Exception e) { e.printStackTrace(); }
+        }
+    }
+
+    private static long readFullyDrawnMillis(File events, String component) throws IOException {
+        if (!events.isFile()) {
+            return -1;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(events));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                long fullyDrawnMillis = StartupReport.parseFullyDrawnMillis(line, component);
+                if (fullyDrawnMillis >= 0) {
+                    return fullyDrawnMillis;
+                }
+            }
+            return -1;
+        } finally {
+            try { reader.close(); } catch (Exception e) { e.printStackTrace(); }
+        }
+    }
+}
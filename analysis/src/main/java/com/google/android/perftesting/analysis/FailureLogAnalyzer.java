@@ -0,0 +1,57 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+/**
+ * Fails a test that the {@code TestListener} recorded a failure for.
+ */
+public class FailureLogAnalyzer implements ArtifactAnalyzer {
+
+    public static final String FAILURE_FILENAME = "test.failure.log";
+
+    @Override
+    public boolean accepts(File artifact) {
+        return FAILURE_FILENAME.equals(artifact.getName());
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        String firstLine = null;
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new FileReader(artifact));
+            String line;
+            while (firstLine == null && (line = bufferedReader.readLine()) != null) {
+                if (!line.trim().isEmpty()) {
+                    firstLine = line.trim();
+                }
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception ignored) { }
+            }
+        }
+        result.fail("Test failed" + (firstLine == null ? "" : " (" + firstLine + ")")
+                + ". See " + artifact.getPath() + " for details.");
+    }
+}
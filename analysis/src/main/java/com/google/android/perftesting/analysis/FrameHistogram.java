@@ -0,0 +1,309 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed-size, log-bucketed histogram of frame durations.
+ *
+ * <p>Durations are recorded with microsecond resolution into 32 linear sub-buckets per power of
+ * two, so any reported percentile is within about 3% of the real value while the histogram itself
+ * is a single preallocated {@code long[]}. Recording never allocates, which makes it safe to use
+ * from frame callbacks. Counts over the 16ms, 32ms and 700ms thresholds and the maximum are
+ * tracked exactly.
+ *
+ * <p>Every frame collector writes this histogram in the same {@link #SUMMARY_FILENAME} format so
+ * analysis doesn't need to care which collector was used on a device.
+ */
+public class FrameHistogram implements FrameStatsParser.FrameHandler {
+
+    /**
+     * Name of the per-test file the summary is written to.
+     */
+    public static final String SUMMARY_FILENAME = "frame.summary.log";
+
+    public static final long SLOW_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    public static final long VERY_SLOW_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(32);
+    public static final long FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700);
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    // Highest tracked value is 2^24us, roughly 16.7 seconds. Anything longer is clamped.
+    private static final int MAX_VALUE_BITS = 24;
+    private static final int BUCKET_COUNT =
+            SUB_BUCKET_COUNT + (MAX_VALUE_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private static final String KEY_FRAMES = "frames";
+    private static final String KEY_SLOW = "framesOver16ms";
+    private static final String KEY_VERY_SLOW = "framesOver32ms";
+    private static final String KEY_FROZEN = "framesOver700ms";
+    private static final String KEY_TOTAL_MICROS = "totalMicros";
+    private static final String KEY_MAX_MICROS = "maxMicros";
+    private static final String KEY_HISTOGRAM = "histogram";
+
+    private final long[] mCounts = new long[BUCKET_COUNT];
+    private long mTotalCount;
+    private long mTotalMicros;
+    private long mMaxMicros;
+    private long mSlowFrames;
+    private long mVerySlowFrames;
+    private long mFrozenFrames;
+
+    /**
+     * Record a frame row from {@link FrameStatsParser}. Rows with non-zero flags (e.g. the first
+     * frame of a window, or frames the platform marks as unreliable) are skipped as recommended by
+     * the framestats documentation.
+     */
+    @Override
+    public void onFrame(long[] frame) {
+        if (frame[FrameStatsParser.FLAGS] != 0) {
+            return;
+        }
+        recordNanos(frame[FrameStatsParser.FRAME_COMPLETED]
+                - frame[FrameStatsParser.INTENDED_VSYNC]);
+    }
+
+    /**
+     * Record a single frame duration.
+     */
+    public void recordNanos(long durationNanos) {
+        if (durationNanos < 0) {
+            return;
+        }
+        if (durationNanos > SLOW_FRAME_NANOS) {
+            mSlowFrames++;
+            if (durationNanos > VERY_SLOW_FRAME_NANOS) {
+                mVerySlowFrames++;
+                if (durationNanos > FROZEN_FRAME_NANOS) {
+                    mFrozenFrames++;
+                }
+            }
+        }
+        long micros = durationNanos / 1000;
+        mCounts[bucketIndex(micros)]++;
+        mTotalCount++;
+        mTotalMicros += micros;
+        if (micros > mMaxMicros) {
+            mMaxMicros = micros;
+        }
+    }
+
+    /**
+     * Add all the frames of another histogram to this one.
+     */
+    public void add(FrameHistogram other) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] += other.mCounts[i];
+        }
+        mTotalCount += other.mTotalCount;
+        mTotalMicros += other.mTotalMicros;
+        mMaxMicros = Math.max(mMaxMicros, other.mMaxMicros);
+        mSlowFrames += other.mSlowFrames;
+        mVerySlowFrames += other.mVerySlowFrames;
+        mFrozenFrames += other.mFrozenFrames;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            mCounts[i] = 0;
+        }
+        mTotalCount = 0;
+        mTotalMicros = 0;
+        mMaxMicros = 0;
+        mSlowFrames = 0;
+        mVerySlowFrames = 0;
+        mFrozenFrames = 0;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKET_COUNT) {
+            return (int) micros;
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(micros);
+        if (highestBit >= MAX_VALUE_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKET_COUNT;
+        return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_COUNT;
+        return ((long) (SUB_BUCKET_COUNT + subBucket)) << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_COUNT;
+        return bucketLowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * Duration, in microseconds, that the given percentage of frames completed within. The value
+     * is the upper bound of the bucket the percentile falls in, capped at the exact maximum.
+     */
+    public long getPercentileMicros(double percentile) {
+        if (mTotalCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * mTotalCount);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), mMaxMicros);
+            }
+        }
+        return mMaxMicros;
+    }
+
+    public double getPercentileMillis(double percentile) {
+        return getPercentileMicros(percentile) / 1000.0;
+    }
+
+    public long getFrameCount() {
+        return mTotalCount;
+    }
+
+    public long getMaxMicros() {
+        return mMaxMicros;
+    }
+
+    public double getMeanMillis() {
+        return mTotalCount == 0 ? 0 : mTotalMicros / 1000.0 / mTotalCount;
+    }
+
+    public long getSlowFrames() {
+        return mSlowFrames;
+    }
+
+    public long getVerySlowFrames() {
+        return mVerySlowFrames;
+    }
+
+    public long getFrozenFrames() {
+        return mFrozenFrames;
+    }
+
+    /**
+     * Percentage of frames that took longer than 16ms.
+     */
+    public double getSlowFramesPercent() {
+        return mTotalCount == 0 ? 0 : 100.0 * mSlowFrames / mTotalCount;
+    }
+
+    /**
+     * Write a human and machine readable summary as {@code key=value} lines. Derived values
+     * (percentiles, mean) are written for convenience; the histogram line holds everything needed
+     * to {@link #read(Reader) read} the histogram back.
+     */
+    public void writeSummary(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append(KEY_FRAMES).append('=').append(Long.toString(mTotalCount)).append(eol);
+        writer.append(KEY_SLOW).append('=').append(Long.toString(mSlowFrames)).append(eol);
+        writer.append(KEY_VERY_SLOW).append('=').append(Long.toString(mVerySlowFrames))
+                .append(eol);
+        writer.append(KEY_FROZEN).append('=').append(Long.toString(mFrozenFrames)).append(eol);
+        writer.append("slowFramesPercent=")
+                .append(formatDecimal(getSlowFramesPercent())).append(eol);
+        writer.append("meanMillis=").append(formatDecimal(getMeanMillis())).append(eol);
+        writer.append("p50Millis=").append(formatDecimal(getPercentileMillis(50))).append(eol);
+        writer.append("p90Millis=").append(formatDecimal(getPercentileMillis(90))).append(eol);
+        writer.append("p95Millis=").append(formatDecimal(getPercentileMillis(95))).append(eol);
+        writer.append("p99Millis=").append(formatDecimal(getPercentileMillis(99))).append(eol);
+        writer.append("maxMillis=").append(formatDecimal(mMaxMicros / 1000.0)).append(eol);
+        writer.append(KEY_TOTAL_MICROS).append('=').append(Long.toString(mTotalMicros))
+                .append(eol);
+        writer.append(KEY_MAX_MICROS).append('=').append(Long.toString(mMaxMicros)).append(eol);
+        writer.append(KEY_HISTOGRAM).append('=');
+        boolean first = true;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (mCounts[i] != 0) {
+                if (!first) {
+                    writer.append(',');
+                }
+                // Buckets are written as "lowerBoundMicros:count".
+                writer.append(Long.toString(bucketLowerBound(i))).append(':')
+                        .append(Long.toString(mCounts[i]));
+                first = false;
+            }
+        }
+        writer.append(eol);
+    }
+
+    /**
+     * Read back a histogram written with {@link #writeSummary(Writer)}. Unknown keys are ignored.
+     */
+    public static FrameHistogram read(Reader reader) throws IOException {
+        FrameHistogram histogram = new FrameHistogram();
+        BufferedReader bufferedReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            int separator = line.indexOf('=');
+            if (separator < 0) {
+                continue;
+            }
+            String key = line.substring(0, separator).trim();
+            String value = line.substring(separator + 1).trim();
+            try {
+                if (KEY_SLOW.equals(key)) {
+                    histogram.mSlowFrames = Long.parseLong(value);
+                } else if (KEY_VERY_SLOW.equals(key)) {
+                    histogram.mVerySlowFrames = Long.parseLong(value);
+                } else if (KEY_FROZEN.equals(key)) {
+                    histogram.mFrozenFrames = Long.parseLong(value);
+                } else if (KEY_TOTAL_MICROS.equals(key)) {
+                    histogram.mTotalMicros = Long.parseLong(value);
+                } else if (KEY_MAX_MICROS.equals(key)) {
+                    histogram.mMaxMicros = Long.parseLong(value);
+                } else if (KEY_HISTOGRAM.equals(key) && !value.isEmpty()) {
+                    for (String bucket : value.split(",")) {
+                        int colon = bucket.indexOf(':');
+                        long lowerBound = Long.parseLong(bucket.substring(0, colon));
+                        long count = Long.parseLong(bucket.substring(colon + 1));
+                        histogram.mCounts[bucketIndex(lowerBound)] += count;
+                        histogram.mTotalCount += count;
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed frame summary line: " + line, e);
+            }
+        }
+        return histogram;
+    }
+
+    static String formatDecimal(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+}
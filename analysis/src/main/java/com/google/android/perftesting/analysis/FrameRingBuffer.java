@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+/**
+ * Preallocated ring buffer of frame rows laid out like framestats rows (see the column constants
+ * of {@link FrameStatsParser}), backed by a single {@code long[]}.
+ *
+ * <p>{@link #record(long[])} copies a row into the buffer without allocating, so it can be called
+ * from a per-frame callback while a test is being measured. Once full, the oldest frames are
+ * overwritten and counted by {@link #getOverwrittenFrames()}. Rows are read back in recording
+ * order by {@link #drainTo(FrameStatsParser.FrameHandler)} so they can be fed to the same
+ * analysis as parsed dumps.
+ */
+public class FrameRingBuffer {
+
+    /**
+     * About a minute of frames at 60fps.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private final long[] mFrames;
+    private final long[] mDrainRow = new long[FrameStatsParser.COLUMN_COUNT];
+    private final int mCapacity;
+    private int mNext;
+    private int mSize;
+    private long mOverwrittenFrames;
+    private long mPlatformDroppedFrames;
+
+    public FrameRingBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public FrameRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        mCapacity = capacity;
+        mFrames = new long[capacity * FrameStatsParser.COLUMN_COUNT];
+    }
+
+    /**
+     * Copy a frame row into the buffer.
+     */
+    public synchronized void record(long[] frame) {
+        System.arraycopy(frame, 0, mFrames, mNext * FrameStatsParser.COLUMN_COUNT,
+                FrameStatsParser.COLUMN_COUNT);
+        mNext = (mNext + 1) % mCapacity;
+        if (mSize < mCapacity) {
+            mSize++;
+        } else {
+            mOverwrittenFrames++;
+        }
+    }
+
+    /**
+     * Count frames the platform reports as dropped before they reached the collector.
+     */
+    public synchronized void addPlatformDroppedFrames(long droppedFrames) {
+        mPlatformDroppedFrames += droppedFrames;
+    }
+
+    /**
+     * Hand every buffered frame, oldest first, to the handler and empty the buffer. The row array
+     * passed to the handler is reused.
+     */
+    public synchronized void drainTo(FrameStatsParser.FrameHandler handler) {
+        int start = (mNext - mSize + mCapacity) % mCapacity;
+        for (int i = 0; i < mSize; i++) {
+            int slot = (start + i) % mCapacity;
+            System.arraycopy(mFrames, slot * FrameStatsParser.COLUMN_COUNT, mDrainRow, 0,
+                    FrameStatsParser.COLUMN_COUNT);
+            handler.onFrame(mDrainRow);
+        }
+        mSize = 0;
+        mNext = 0;
+    }
+
+    /**
+     * Discard all frames and counters.
+     */
+    public synchronized void clear() {
+        mSize = 0;
+        mNext = 0;
+        mOverwrittenFrames = 0;
+        mPlatformDroppedFrames = 0;
+    }
+
+    public synchronized int size() {
+        return mSize;
+    }
+
+    public int getCapacity() {
+        return mCapacity;
+    }
+
+    /**
+     * Frames lost because the buffer was full.
+     */
+    public synchronized long getOverwrittenFrames() {
+        return mOverwrittenFrames;
+    }
+
+    /**
+     * Frames the platform dropped before delivering them, as reported to
+     * {@link #addPlatformDroppedFrames(long)}.
+     */
+    public synchronized long getPlatformDroppedFrames() {
+        return mPlatformDroppedFrames;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Splits each framestats row into the time spent in each stage of the rendering pipeline and
+ * aggregates the stage durations into a {@link FrameHistogram} per stage.
+ *
+ * <p>Frames slower than {@link FrameHistogram#SLOW_FRAME_NANOS} are attributed to the part of the
+ * pipeline where most of their time went:
+ * <ul>
+ *     <li>{@link Bottleneck#UI_THREAD}: waiting for, or running, input, animation, traversal
+ *     (measure and layout, which is where {@code ListView} calls {@code Adapter.getView}) and draw
+ *     recording on the main thread.</li>
+ *     <li>{@link Bottleneck#RENDER_THREAD}: syncing the display lists and issuing draw commands.
+ *     </li>
+ *     <li>{@link Bottleneck#GPU}: waiting for the GPU to accept and complete the swap.</li>
+ * </ul>
+ */
+public class FrameStageAnalyzer implements FrameStatsParser.FrameHandler {
+
+    /**
+     * Name of the per-test file the stage breakdown is written to.
+     */
+    public static final String STAGES_FILENAME = "frame.stages.log";
+
+    /**
+     * Part of the rendering pipeline a stage runs on.
+     */
+    public enum Bottleneck {
+        UI_THREAD,
+        RENDER_THREAD,
+        GPU
+    }
+
+    /**
+     * A stage of a frame, measured from the start column to the end column of a framestats row.
+     */
+    public enum Stage {
+        /** Main thread latency between the vsync and starting to handle input. */
+        VSYNC_DELAY(FrameStatsParser.INTENDED_VSYNC, FrameStatsParser.HANDLE_INPUT_START,
+                Bottleneck.UI_THREAD),
+        INPUT(FrameStatsParser.HANDLE_INPUT_START, FrameStatsParser.ANIMATION_START,
+                Bottleneck.UI_THREAD),
+        ANIMATION(FrameStatsParser.ANIMATION_START, FrameStatsParser.PERFORM_TRAVERSALS_START,
+                Bottleneck.UI_THREAD),
+        /** Measure and layout, including adapter view creation and binding. */
+        TRAVERSAL(FrameStatsParser.PERFORM_TRAVERSALS_START, FrameStatsParser.DRAW_START,
+                Bottleneck.UI_THREAD),
+        DRAW(FrameStatsParser.DRAW_START, FrameStatsParser.SYNC_QUEUED,
+                Bottleneck.UI_THREAD),
+        SYNC(FrameStatsParser.SYNC_QUEUED, FrameStatsParser.ISSUE_DRAW_COMMANDS_START,
+                Bottleneck.RENDER_THREAD),
+        ISSUE(FrameStatsParser.ISSUE_DRAW_COMMANDS_START, FrameStatsParser.SWAP_BUFFERS,
+                Bottleneck.RENDER_THREAD),
+        SWAP(FrameStatsParser.SWAP_BUFFERS, FrameStatsParser.FRAME_COMPLETED,
+                Bottleneck.GPU);
+
+        final int mStartColumn;
+        final int mEndColumn;
+        final Bottleneck mBottleneck;
+
+        Stage(int startColumn, int endColumn, Bottleneck bottleneck) {
+            mStartColumn = startColumn;
+            mEndColumn = endColumn;
+            mBottleneck = bottleneck;
+        }
+
+        public Bottleneck getBottleneck() {
+            return mBottleneck;
+        }
+
+        /**
+         * Duration of this stage in a framestats row, or -1 if the row doesn't have the data.
+         */
+        public long durationNanos(long[] frame) {
+            long start = frame[mStartColumn];
+            long end = frame[mEndColumn];
+            if (start <= 0 || end < start) {
+                return -1;
+            }
+            return end - start;
+        }
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Bottleneck[] BOTTLENECKS = Bottleneck.values();
+
+    private final FrameHistogram[] mStageHistograms = new FrameHistogram[STAGES.length];
+    private final FrameHistogram[] mSlowFrameStageHistograms = new FrameHistogram[STAGES.length];
+    private final long[] mSlowFramesByBottleneck = new long[BOTTLENECKS.length];
+    private final long[] mBottleneckNanos = new long[BOTTLENECKS.length];
+    private long mSlowFrames;
+
+    public FrameStageAnalyzer() {
+        for (int i = 0; i < STAGES.length; i++) {
+            mStageHistograms[i] = new FrameHistogram();
+            mSlowFrameStageHistograms[i] = new FrameHistogram();
+        }
+    }
+
+    @Override
+    public void onFrame(long[] frame) {
+        if (frame[FrameStatsParser.FLAGS] != 0) {
+            return;
+        }
+        long total = frame[FrameStatsParser.FRAME_COMPLETED]
+                - frame[FrameStatsParser.INTENDED_VSYNC];
+        boolean slow = total > FrameHistogram.SLOW_FRAME_NANOS;
+        if (slow) {
+            for (int i = 0; i < BOTTLENECKS.length; i++) {
+                mBottleneckNanos[i] = 0;
+            }
+        }
+        for (int i = 0; i < STAGES.length; i++) {
+            long duration = STAGES[i].durationNanos(frame);
+            if (duration < 0) {
+                continue;
+            }
+            mStageHistograms[i].recordNanos(duration);
+            if (slow) {
+                mSlowFrameStageHistograms[i].recordNanos(duration);
+                mBottleneckNanos[STAGES[i].mBottleneck.ordinal()] += duration;
+            }
+        }
+        if (slow) {
+            int worst = 0;
+            for (int i = 1; i < BOTTLENECKS.length; i++) {
+                if (mBottleneckNanos[i] > mBottleneckNanos[worst]) {
+                    worst = i;
+                }
+            }
+            mSlowFramesByBottleneck[worst]++;
+            mSlowFrames++;
+        }
+    }
+
+    /**
+     * Distribution of a stage's duration over all frames.
+     */
+    public FrameHistogram getStageHistogram(Stage stage) {
+        return mStageHistograms[stage.ordinal()];
+    }
+
+    /**
+     * Distribution of a stage's duration over frames slower than 16ms only.
+     */
+    public FrameHistogram getSlowFrameStageHistogram(Stage stage) {
+        return mSlowFrameStageHistograms[stage.ordinal()];
+    }
+
+    public long getSlowFrames() {
+        return mSlowFrames;
+    }
+
+    public long getSlowFrames(Bottleneck bottleneck) {
+        return mSlowFramesByBottleneck[bottleneck.ordinal()];
+    }
+
+    /**
+     * The part of the pipeline most slow frames were bound by, or null if there were no slow
+     * frames.
+     */
+    public Bottleneck getDominantBottleneck() {
+        if (mSlowFrames == 0) {
+            return null;
+        }
+        int worst = 0;
+        for (int i = 1; i < BOTTLENECKS.length; i++) {
+            if (mSlowFramesByBottleneck[i] > mSlowFramesByBottleneck[worst]) {
+                worst = i;
+            }
+        }
+        return BOTTLENECKS[worst];
+    }
+
+    /**
+     * The stage with the largest mean duration within slow frames, or null if there were no slow
+     * frames. This is the first place to look for a fix.
+     */
+    public Stage getDominantSlowFrameStage() {
+        Stage worst = null;
+        double worstMean = -1;
+        for (Stage stage : STAGES) {
+            double mean = mSlowFrameStageHistograms[stage.ordinal()].getMeanMillis();
+            if (mSlowFrameStageHistograms[stage.ordinal()].getFrameCount() > 0
+                    && mean > worstMean) {
+                worst = stage;
+                worstMean = mean;
+            }
+        }
+        return worst;
+    }
+
+    /**
+     * Write the breakdown as {@code key=value} lines, in the same register as
+     * {@link FrameHistogram#writeSummary(Writer)}.
+     */
+    public void writeSummary(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append("slowFrames=").append(Long.toString(mSlowFrames)).append(eol);
+        for (Bottleneck bottleneck : BOTTLENECKS) {
+            writer.append("slowFrames.").append(bottleneck.name()).append('=')
+                    .append(Long.toString(mSlowFramesByBottleneck[bottleneck.ordinal()]))
+                    .append(eol);
+        }
+        Bottleneck dominantBottleneck = getDominantBottleneck();
+        writer.append("dominantBottleneck=")
+                .append(dominantBottleneck == null ? "NONE" : dominantBottleneck.name())
+                .append(eol);
+        Stage dominantStage = getDominantSlowFrameStage();
+        writer.append("dominantSlowFrameStage=")
+                .append(dominantStage == null ? "NONE" : dominantStage.name()).append(eol);
+        for (Stage stage : STAGES) {
+            FrameHistogram all = mStageHistograms[stage.ordinal()];
+            FrameHistogram slow = mSlowFrameStageHistograms[stage.ordinal()];
+            String prefix = "stage." + stage.name() + ".";
+            writer.append(prefix).append("p50Millis=")
+                    .append(FrameHistogram.formatDecimal(all.getPercentileMillis(50)))
+                    .append(eol);
+            writer.append(prefix).append("p95Millis=")
+                    .append(FrameHistogram.formatDecimal(all.getPercentileMillis(95)))
+                    .append(eol);
+            writer.append(prefix).append("maxMillis=")
+                    .append(FrameHistogram.formatDecimal(all.getMaxMicros() / 1000.0))
+                    .append(eol);
+            writer.append(prefix).append("slowFrameMeanMillis=")
+                    .append(FrameHistogram.formatDecimal(slow.getMeanMillis()))
+                    .append(eol);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Merges repeated {@code dumpsys gfxinfo <package> framestats} polls into a single frame log.
+ *
+ * <p>The platform only keeps the most recent ~120 frames per window, so long tests need to be
+ * polled while they run. Consecutive polls overlap; frames are deduplicated per window by their
+ * INTENDED_VSYNC timestamp, which only ever increases within a window. Windows are told apart by
+ * the name {@link FrameStatsParser#getWindowName()} gives them rather than the position of their
+ * block, since dialogs and popups come and go between polls. Every new frame is written
+ * to the frame log and forwarded to an optional {@link FrameStatsParser.FrameHandler}.
+ *
+ * <p>The frame log is itself a valid framestats dump: a single {@code ---PROFILEDATA---} block
+ * followed by the platform's summary lines from the last poll, so it can be handed to
+ * {@link FrameStatsReport} like a normal dump.
+ *
+ * <p>The "Total frames rendered" counter of the last poll is compared against the number of
+ * captured frames to report how many frames were missed between polls.
+ */
+public class FrameStatsAccumulator {
+
+    /**
+     * Name of the per-test file with the capture completeness report.
+     */
+    public static final String SAMPLING_FILENAME = "frame.sampling.log";
+
+    /**
+     * Name of the per-test file every sampled frame is written to, in framestats format.
+     */
+    public static final String FRAME_LOG_FILENAME = "gfxinfo.frames.log";
+
+    private final FrameStatsParser.FrameHandler mDownstream;
+    private final Writer mFrameLog;
+    private final FrameStatsWriter mFrameLogRows;
+    private final String mEol = System.getProperty("line.separator");
+
+    /**
+     * Capture state of a window across polls.
+     */
+    private static class Window {
+        /**
+         * Highest INTENDED_VSYNC captured.
+         */
+        long mWatermark;
+        int mLastPoll;
+        boolean mOverlapped;
+    }
+
+    private final Map<String, Window> mWindows = new HashMap<>();
+    private Window mCurrentWindow;
+    private String mCurrentWindowName;
+
+    private FrameStatsParser mCurrentPoll;
+
+    private int mPolls;
+    private int mPollsWithoutOverlap;
+    private long mFramesCaptured;
+    private int mLastTotalFrames = -1;
+    private int mLastJankyFrames = -1;
+    private double mLastJankyFramesPercent = -1;
+
+    private final FrameStatsParser.FrameHandler mPollHandler =
+            new FrameStatsParser.FrameHandler() {
+        @Override
+        public void onFrame(long[] frame) {
+            onPolledFrame(frame);
+        }
+    };
+
+    /**
+     * @param downstream receives each newly captured frame, may be null.
+     * @param frameLog receives every captured frame as a framestats row, may be null. It isn't
+     *                 closed by this class.
+     */
+    public FrameStatsAccumulator(FrameStatsParser.FrameHandler downstream, Writer frameLog) {
+        mDownstream = downstream;
+        mFrameLog = frameLog;
+        mFrameLogRows = frameLog == null ? null : new FrameStatsWriter(frameLog);
+    }
+
+    /**
+     * Add the full output of one framestats dump.
+     */
+    public void addPoll(Reader dumpsysOutput) throws IOException {
+        mPolls++;
+        mCurrentPoll = new FrameStatsParser(mPollHandler);
+        mCurrentWindow = null;
+        mCurrentWindowName = null;
+        mCurrentPoll.parse(dumpsysOutput);
+
+        if (mPolls > 1) {
+            for (Window window : mWindows.values()) {
+                if (window.mLastPoll == mPolls && !window.mOverlapped) {
+                    mPollsWithoutOverlap++;
+                    break;
+                }
+            }
+        }
+        if (mCurrentPoll.getTotalFrames() >= 0) {
+            mLastTotalFrames = mCurrentPoll.getTotalFrames();
+        }
+        if (mCurrentPoll.getJankyFrames() >= 0) {
+            mLastJankyFrames = mCurrentPoll.getJankyFrames();
+            mLastJankyFramesPercent = mCurrentPoll.getJankyFramesPercent();
+        }
+        mCurrentPoll = null;
+    }
+
+    private void onPolledFrame(long[] frame) {
+        String windowName = mCurrentPoll.getWindowName();
+        if (!windowName.equals(mCurrentWindowName)) {
+            mCurrentWindowName = windowName;
+            mCurrentWindow = mWindows.get(windowName);
+            if (mCurrentWindow == null) {
+                mCurrentWindow = new Window();
+                mWindows.put(windowName, mCurrentWindow);
+            }
+        }
+        Window window = mCurrentWindow;
+        long intendedVsync = frame[FrameStatsParser.INTENDED_VSYNC];
+        if (window.mLastPoll != mPolls) {
+            // The oldest frame of the window in this poll tells us whether it overlaps with what
+            // was captured before. If it doesn't, frames may have fallen out of the buffer. A
+            // window seen for the first time can't have lost frames to polling.
+            window.mLastPoll = mPolls;
+            window.mOverlapped = window.mWatermark == 0 || intendedVsync <= window.mWatermark;
+        }
+        if (intendedVsync <= window.mWatermark) {
+            return;
+        }
+        window.mWatermark = intendedVsync;
+        mFramesCaptured++;
+        if (mFrameLogRows != null) {
+            mFrameLogRows.onFrame(frame);
+        }
+        if (mDownstream != null) {
+            mDownstream.onFrame(frame);
+        }
+    }
+
+    /**
+     * Terminate the frame log. Call once after the last poll.
+     */
+    public void finish() throws IOException {
+        if (mFrameLog == null) {
+            return;
+        }
+        mFrameLogRows.finish();
+        if (mLastTotalFrames >= 0) {
+            mFrameLog.append("Total frames rendered: ").append(Integer.toString(mLastTotalFrames))
+                    .append(mEol);
+        }
+        if (mLastJankyFrames >= 0) {
+            mFrameLog.append("Janky frames: ").append(Integer.toString(mLastJankyFrames));
+            if (mLastJankyFramesPercent >= 0) {
+                mFrameLog.append(" (")
+                        .append(FrameHistogram.formatDecimal(mLastJankyFramesPercent))
+                        .append("%)");
+            }
+            mFrameLog.append(mEol);
+        }
+        mFrameLog.flush();
+    }
+
+    public int getPolls() {
+        return mPolls;
+    }
+
+    /**
+     * Number of polls where a window's frames didn't overlap with the previous poll, meaning
+     * frames may have been lost in between.
+     */
+    public int getPollsWithoutOverlap() {
+        return mPollsWithoutOverlap;
+    }
+
+    public long getFramesCaptured() {
+        return mFramesCaptured;
+    }
+
+    /**
+     * The platform's count of frames rendered since the last reset, or -1 if unknown.
+     */
+    public int getFramesRendered() {
+        return mLastTotalFrames;
+    }
+
+    /**
+     * Frames the platform rendered that never showed up in a poll, or -1 if unknown.
+     */
+    public long getFramesMissed() {
+        if (mLastTotalFrames < 0) {
+            return -1;
+        }
+        return Math.max(0, mLastTotalFrames - mFramesCaptured);
+    }
+
+    public void writeSummary(Writer writer) throws IOException {
+        writer.append("polls=").append(Integer.toString(mPolls)).append(mEol);
+        writer.append("pollsWithoutOverlap=").append(Integer.toString(mPollsWithoutOverlap))
+                .append(mEol);
+        writer.append("framesRendered=").append(Integer.toString(mLastTotalFrames)).append(mEol);
+        writer.append("framesCaptured=").append(Long.toString(mFramesCaptured)).append(mEol);
+        writer.append("framesMissed=").append(Long.toString(getFramesMissed())).append(mEol);
+    }
+}
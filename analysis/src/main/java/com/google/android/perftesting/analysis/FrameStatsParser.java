@@ -0,0 +1,311 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Streaming parser for the output of {@code dumpsys gfxinfo <package> framestats}.
+ *
+ * <p>The parser reads the dump a line at a time and hands each frame row found between the
+ * {@code ---PROFILEDATA---} markers to a {@link FrameHandler}. Rows are never retained, so memory
+ * use is independent of the size of the dump. Columns are mapped by name from the header row of
+ * each block onto the fixed indexes defined in this class, which keeps callers working when newer
+ * platform versions append columns.
+ *
+ * <p>The legacy summary lines ({@code Total frames rendered} and {@code Janky frames}) are also
+ * recorded so existing jank-percentage checks keep working.
+ *
+ * <p>Each block belongs to the window named last before it: a {@code Window: <name>} line on newer
+ * platforms, the window's {@code ViewRootImpl} line on API level 23 to 27.
+ */
+public class FrameStatsParser {
+
+    public static final String PROFILE_DATA_MARKER = "---PROFILEDATA---";
+
+    public static final int FLAGS = 0;
+    public static final int INTENDED_VSYNC = 1;
+    public static final int VSYNC = 2;
+    public static final int OLDEST_INPUT_EVENT = 3;
+    public static final int NEWEST_INPUT_EVENT = 4;
+    public static final int HANDLE_INPUT_START = 5;
+    public static final int ANIMATION_START = 6;
+    public static final int PERFORM_TRAVERSALS_START = 7;
+    public static final int DRAW_START = 8;
+    public static final int SYNC_QUEUED = 9;
+    public static final int SYNC_START = 10;
+    public static final int ISSUE_DRAW_COMMANDS_START = 11;
+    public static final int SWAP_BUFFERS = 12;
+    public static final int FRAME_COMPLETED = 13;
+    public static final int COLUMN_COUNT = 14;
+
+    /**
+     * Header names as printed by the platform, indexed by the column constants above.
+     */
+    static final String[] COLUMN_NAMES = {
+            "Flags",
+            "IntendedVsync",
+            "Vsync",
+            "OldestInputEvent",
+            "NewestInputEvent",
+            "HandleInputStart",
+            "AnimationStart",
+            "PerformTraversalsStart",
+            "DrawStart",
+            "SyncQueued",
+            "SyncStart",
+            "IssueDrawCommandsStart",
+            "SwapBuffers",
+            "FrameCompleted"
+    };
+
+    private static final String TOTAL_FRAMES_PREFIX = "Total frames rendered:";
+    private static final String JANKY_FRAMES_PREFIX = "Janky frames:";
+    private static final String WINDOW_PREFIX = "Window:";
+    private static final String VIEW_ROOT_MARKER = "/android.view.ViewRootImpl@";
+    private static final String VISIBILITY_SUFFIX = " (visibility";
+
+    /**
+     * Receives each frame row. The array is reused between calls and must not be retained.
+     */
+    public interface FrameHandler {
+        void onFrame(long[] frame);
+    }
+
+    /**
+     * A handler that passes every frame to each of the given handlers in turn.
+     */
+    public static FrameHandler compose(final FrameHandler... handlers) {
+        return new FrameHandler() {
+            @Override
+            public void onFrame(long[] frame) {
+                for (FrameHandler handler : handlers) {
+                    handler.onFrame(frame);
+                }
+            }
+        };
+    }
+
+    private final FrameHandler mHandler;
+
+    private final long[] mFrame = new long[COLUMN_COUNT];
+
+    /**
+     * Maps a position in the current block's CSV rows to one of the column constants, or -1 if
+     * the column is not one we track.
+     */
+    private int[] mColumnMapping;
+
+    private boolean mInProfileData = false;
+
+    private int mTotalFrames = -1;
+    private int mJankyFrames = -1;
+    private double mJankyFramesPercent = -1;
+    private int mProfileDataBlocks = 0;
+    private long mFramesParsed = 0;
+    private String mNextWindowName;
+    private String mWindowName;
+
+    public FrameStatsParser(FrameHandler handler) {
+        mHandler = handler;
+    }
+
+    /**
+     * Parse an entire dump. The reader is consumed but not closed.
+     */
+    public void parse(Reader reader) throws IOException {
+        BufferedReader bufferedReader = reader instanceof BufferedReader
+                ? (BufferedReader) reader : new BufferedReader(reader);
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            parseLine(line);
+        }
+    }
+
+    /**
+     * Feed a single line of dumpsys output to the parser. This allows the parser to be driven
+     * directly from a process output stream while the output is being copied elsewhere.
+     */
+    public void parseLine(String line) {
+        String trimmed = line.trim();
+        if (PROFILE_DATA_MARKER.equals(trimmed)) {
+            mInProfileData = !mInProfileData;
+            if (mInProfileData) {
+                mProfileDataBlocks++;
+                mWindowName = mNextWindowName != null ? mNextWindowName
+                        : "#" + mProfileDataBlocks;
+                mNextWindowName = null;
+            }
+            mColumnMapping = null;
+            return;
+        }
+
+        if (mInProfileData) {
+            if (trimmed.isEmpty()) {
+                return;
+            }
+            if (mColumnMapping == null) {
+                mColumnMapping = mapColumns(trimmed);
+            } else if (parseRow(trimmed)) {
+                mFramesParsed++;
+                mHandler.onFrame(mFrame);
+            }
+        } else if (trimmed.startsWith(WINDOW_PREFIX)) {
+            mNextWindowName = trimmed.substring(WINDOW_PREFIX.length()).trim();
+        } else if (trimmed.contains(VIEW_ROOT_MARKER)) {
+            int visibility = trimmed.indexOf(VISIBILITY_SUFFIX);
+            mNextWindowName = visibility < 0 ? trimmed : trimmed.substring(0, visibility);
+        } else if (trimmed.startsWith(TOTAL_FRAMES_PREFIX)) {
+            mTotalFrames = (int) parseLeadingLong(trimmed, TOTAL_FRAMES_PREFIX.length());
+        } else if (trimmed.startsWith(JANKY_FRAMES_PREFIX)) {
+            // Janky frames: 12 (3.45%)
+            mJankyFrames = (int) parseLeadingLong(trimmed, JANKY_FRAMES_PREFIX.length());
+            int open = trimmed.indexOf('(');
+            int percent = trimmed.indexOf('%', open);
+            if (open >= 0 && percent > open) {
+                try {
+                    mJankyFramesPercent = Double.parseDouble(
+                            trimmed.substring(open + 1, percent));
+                } catch (NumberFormatException ignored) {
+                    // Leave the percentage unset, the raw frames are still usable.
+                }
+            }
+        }
+    }
+
+    private static int[] mapColumns(String header) {
+        String[] names = header.split(",");
+        int[] mapping = new int[names.length];
+        Arrays.fill(mapping, -1);
+        for (int i = 0; i < names.length; i++) {
+            String name = names[i].trim();
+            for (int column = 0; column < COLUMN_COUNT; column++) {
+                if (COLUMN_NAMES[column].equals(name)) {
+                    mapping[i] = column;
+                    break;
+                }
+            }
+        }
+        return mapping;
+    }
+
+    /**
+     * Parse a CSV row of numbers into {@link #mFrame} without allocating.
+     *
+     * @return false if the row is malformed and should be skipped.
+     */
+    private boolean parseRow(String row) {
+        Arrays.fill(mFrame, 0);
+        int position = 0;
+        int length = row.length();
+        int columnIndex = 0;
+        while (position < length && columnIndex < mColumnMapping.length) {
+            long value = 0;
+            boolean negative = false;
+            boolean hasDigits = false;
+            if (row.charAt(position) == '-') {
+                negative = true;
+                position++;
+            }
+            while (position < length) {
+                char c = row.charAt(position);
+                if (c >= '0' && c <= '9') {
+                    value = value * 10 + (c - '0');
+                    hasDigits = true;
+                    position++;
+                } else {
+                    break;
+                }
+            }
+            if (position < length && row.charAt(position) != ',') {
+                return false;
+            }
+            int column = mColumnMapping[columnIndex];
+            if (column >= 0) {
+                if (!hasDigits) {
+                    return false;
+                }
+                mFrame[column] = negative ? -value : value;
+            }
+            columnIndex++;
+            position++;
+        }
+        // A row must at least cover the start and end of the frame to be meaningful.
+        return mFrame[INTENDED_VSYNC] > 0 && mFrame[FRAME_COMPLETED] > 0;
+    }
+
+    private static long parseLeadingLong(String line, int offset) {
+        long value = 0;
+        boolean seenDigit = false;
+        for (int i = offset; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                seenDigit = true;
+            } else if (seenDigit || c != ' ') {
+                break;
+            }
+        }
+        return seenDigit ? value : -1;
+    }
+
+    /**
+     * Value of the "Total frames rendered" summary line, or -1 if it wasn't present.
+     */
+    public int getTotalFrames() {
+        return mTotalFrames;
+    }
+
+    /**
+     * Value of the "Janky frames" summary line, or -1 if it wasn't present.
+     */
+    public int getJankyFrames() {
+        return mJankyFrames;
+    }
+
+    /**
+     * Percentage from the "Janky frames" summary line, or -1 if it wasn't present.
+     */
+    public double getJankyFramesPercent() {
+        return mJankyFramesPercent;
+    }
+
+    /**
+     * Number of {@code ---PROFILEDATA---} blocks seen, one per window of the app.
+     */
+    public int getProfileDataBlocks() {
+        return mProfileDataBlocks;
+    }
+
+    /**
+     * Name of the window of the {@code ---PROFILEDATA---} block being parsed, or of the last one.
+     * Blocks without a recognizable window line are named {@code #<block number>}.
+     */
+    public String getWindowName() {
+        return mWindowName;
+    }
+
+    /**
+     * Number of frame rows handed to the {@link FrameHandler}.
+     */
+    public long getFramesParsed() {
+        return mFramesParsed;
+    }
+}
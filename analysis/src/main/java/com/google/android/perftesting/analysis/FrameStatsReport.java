@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Turns a {@code gfxinfo.dumpsys.log} written by the {@code EnablePostTestDumpsys} rule into a
+ * {@link FrameHistogram} summary and a {@link FrameStageAnalyzer per-stage breakdown}. Used on the
+ * device by the rule itself and on the host as a command line tool:
+ *
+ * <pre>
+ * java -cp analysis.jar com.google.android.perftesting.analysis.FrameStatsReport \
+ *         perftesting/&lt;device_id&gt;/testdata
+ * </pre>
+ */
+public class FrameStatsReport {
+
+    public static final String GFXINFO_DUMP_FILENAME = "gfxinfo.dumpsys.log";
+
+    private static final String KEY_JANKY_FRAMES = "jankyFrames";
+    private static final String KEY_JANKY_FRAMES_PERCENT = "jankyFramesPercent";
+
+    /**
+     * Stream a framestats dump into a histogram of its frame durations.
+     */
+    public static FrameHistogram readHistogram(File gfxinfoDump) throws IOException {
+        FrameHistogram histogram = new FrameHistogram();
+        parse(gfxinfoDump, histogram);
+        return histogram;
+    }
+
+    /**
+     * Summarize a framestats dump into {@link FrameHistogram#SUMMARY_FILENAME}, including the
+     * legacy jank summary lines reported by the platform, and break its frames down per stage
+     * into {@link FrameStageAnalyzer#STAGES_FILENAME}. Both files are written to
+     * {@code outputDir} after a single pass over the dump.
+     */
+    public static FrameHistogram summarize(File gfxinfoDump, File outputDir) throws IOException {
+        FrameHistogram histogram = new FrameHistogram();
+        FrameStageAnalyzer stageAnalyzer = new FrameStageAnalyzer();
+        FrameStatsParser parser =
+                parse(gfxinfoDump, FrameStatsParser.compose(histogram, stageAnalyzer));
+        writeSummaries(parser, histogram, stageAnalyzer, outputDir);
+        return histogram;
+    }
+
+    /**
+     * Write the summary and stage breakdown of frames collected some other way than from a
+     * framestats dump, in the same format as {@link #summarize(File, File)}.
+     */
+    public static void writeSummaries(FrameHistogram histogram, FrameStageAnalyzer stageAnalyzer,
+            File outputDir) throws IOException {
+        writeSummaries(null, histogram, stageAnalyzer, outputDir);
+    }
+
+    private static void writeSummaries(FrameStatsParser parser, FrameHistogram histogram,
+            FrameStageAnalyzer stageAnalyzer, File outputDir) throws IOException {
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(outputDir, FrameHistogram.SUMMARY_FILENAME));
+            writeSummary(parser, histogram, fileWriter);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception ignored) { }
+            }
+        }
+        fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(outputDir, FrameStageAnalyzer.STAGES_FILENAME));
+            stageAnalyzer.writeSummary(fileWriter);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+
+    static FrameStatsParser parse(File gfxinfoDump, FrameStatsParser.FrameHandler handler)
+            throws IOException {
+        FrameStatsParser parser = new FrameStatsParser(handler);
+        FileReader fileReader = null;
+        try {
+            fileReader = new FileReader(gfxinfoDump);
+            parser.parse(fileReader);
+        } finally {
+            if (fileReader != null) {
+                try { fileReader.close(); } catch (Exception ignored) { }
+            }
+        }
+        return parser;
+    }
+
+    private static void writeSummary(FrameStatsParser parser, FrameHistogram histogram,
+            Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        histogram.writeSummary(writer);
+        if (parser == null) {
+            return;
+        }
+        if (parser.getJankyFrames() >= 0) {
+            writer.append(KEY_JANKY_FRAMES).append('=')
+                    .append(Integer.toString(parser.getJankyFrames())).append(eol);
+        }
+        if (parser.getJankyFramesPercent() >= 0) {
+            writer.append(KEY_JANKY_FRAMES_PERCENT).append('=')
+                    .append(FrameHistogram.formatDecimal(parser.getJankyFramesPercent()))
+                    .append(eol);
+        }
+    }
+
+    /**
+     * Print a frame summary for each test directory found under the given paths.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: FrameStatsReport <testdata dir or gfxinfo dump>...");
+            System.exit(2);
+        }
+        Writer out = new OutputStreamWriter(System.out);
+        for (String arg : args) {
+            report(new File(arg), out);
+        }
+        out.flush();
+    }
+
+    private static void report(File file, Writer out) throws IOException {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    report(child, out);
+                }
+            }
+        } else if (GFXINFO_DUMP_FILENAME.equals(file.getName())) {
+            FrameHistogram histogram = new FrameHistogram();
+            FrameStageAnalyzer stageAnalyzer = new FrameStageAnalyzer();
+            FrameStatsParser parser =
+                    parse(file, FrameStatsParser.compose(histogram, stageAnalyzer));
+            out.append("# ").append(file.getParentFile().getName())
+                    .append(System.getProperty("line.separator"));
+            writeSummary(parser, histogram, out);
+            stageAnalyzer.writeSummary(out);
+        }
+    }
+}
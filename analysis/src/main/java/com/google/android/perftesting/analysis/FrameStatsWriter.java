@@ -0,0 +1,68 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes frame rows back out in framestats format, as a single {@code ---PROFILEDATA---} block
+ * that {@link FrameStatsParser} can read again.
+ */
+public class FrameStatsWriter implements FrameStatsParser.FrameHandler {
+
+    private final Writer mWriter;
+    private final String mEol = System.getProperty("line.separator");
+    private boolean mHeaderWritten = false;
+
+    /**
+     * @param writer receives the rows. It isn't closed by this class.
+     */
+    public FrameStatsWriter(Writer writer) {
+        mWriter = writer;
+    }
+
+    @Override
+    public void onFrame(long[] frame) {
+        try {
+            if (!mHeaderWritten) {
+                mWriter.append(FrameStatsParser.PROFILE_DATA_MARKER).append(mEol);
+                for (String columnName : FrameStatsParser.COLUMN_NAMES) {
+                    mWriter.append(columnName).append(',');
+                }
+                mWriter.append(mEol);
+                mHeaderWritten = true;
+            }
+            for (int i = 0; i < FrameStatsParser.COLUMN_COUNT; i++) {
+                mWriter.append(Long.toString(frame[i])).append(',');
+            }
+            mWriter.append(mEol);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to write frame row", e);
+        }
+    }
+
+    /**
+     * Close the {@code ---PROFILEDATA---} block, if any rows were written.
+     */
+    public void finish() throws IOException {
+        if (mHeaderWritten) {
+            mWriter.append(FrameStatsParser.PROFILE_DATA_MARKER).append(mEol);
+        }
+        mWriter.flush();
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Fails a test with too many janky frames in its {@code gfxinfo.dumpsys.log}. The platform's own
+ * janky frame percentage is used when the dump has one, otherwise the percentage of frames slower
+ * than {@link FrameHistogram#SLOW_FRAME_NANOS}.
+ *
+ * <p>The platform counts janky frames since the test started, but the dump only holds the last
+ * ~120 frames. The frame time distribution therefore comes from the device's
+ * {@link FrameHistogram#SUMMARY_FILENAME} when there is one, which {@link RecordedMetricsAnalyzer}
+ * reports, or else from the sampled {@link FrameStatsAccumulator#FRAME_LOG_FILENAME}. Only
+ * without either is it taken from the dump itself.
+ */
+public class GfxInfoAnalyzer implements ArtifactAnalyzer {
+
+    @Override
+    public boolean accepts(File artifact) {
+        return FrameStatsReport.GFXINFO_DUMP_FILENAME.equals(artifact.getName());
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        FrameHistogram histogram = new FrameHistogram();
+        FrameStatsParser parser = FrameStatsReport.parse(artifact, histogram);
+        File summary = new File(artifact.getParentFile(), FrameHistogram.SUMMARY_FILENAME);
+        File frameLog = new File(artifact.getParentFile(),
+                FrameStatsAccumulator.FRAME_LOG_FILENAME);
+        boolean summarized = summary.isFile();
+        if (summarized) {
+            histogram = readSummary(summary);
+        } else if (frameLog.isFile()) {
+            histogram = FrameStatsReport.readHistogram(frameLog);
+        }
+
+        double jankPercent = parser.getJankyFramesPercent();
+        if (jankPercent < 0 && histogram.getFrameCount() > 0) {
+            jankPercent = histogram.getSlowFramesPercent();
+        }
+        if (jankPercent < 0) {
+            result.fail("No dump results could be found in " + artifact.getName() + ".");
+            return;
+        }
+        result.putMetric(PerfMetrics.JANK_PERCENT, jankPercent);
+        if (!summarized && histogram.getFrameCount() > 0) {
+            result.putMetric(PerfMetrics.FRAMES, histogram.getFrameCount());
+            result.putMetric(PerfMetrics.P50_FRAME_MILLIS, histogram.getPercentileMillis(50));
+            result.putMetric(PerfMetrics.P95_FRAME_MILLIS, histogram.getPercentileMillis(95));
+            result.putMetric(PerfMetrics.P99_FRAME_MILLIS, histogram.getPercentileMillis(99));
+            result.putMetric(PerfMetrics.MAX_FRAME_MILLIS, histogram.getMaxMicros() / 1000.0);
+        }
+        if (jankPercent > config.getJankThresholdPercent()) {
+            result.fail(String.format(Locale.US, "High level of janky frames detected (%.2f%%). "
+                    + "See trace.html for details.", jankPercent));
+        }
+    }
+
+    private static FrameHistogram readSummary(File summary) throws IOException {
+        FileReader fileReader = null;
+        try {
+            fileReader = new FileReader(summary);
+            return FrameHistogram.read(fileReader);
+        } finally {
+            if (fileReader != null) {
+                try { fileReader.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics of every metric over the measured iterations of a test: median, median absolute
+ * deviation and a bootstrap confidence interval of the median.
+ */
+public class IterationSummary {
+
+    /**
+     * Name of the per-test file the summary is written to.
+     */
+    public static final String ITERATIONS_FILENAME = "iterations.summary.log";
+
+    public static final double CONFIDENCE = 0.95;
+
+    private final Map<String, List<Double>> mSamples = new LinkedHashMap<>();
+
+    public void add(PerfMetrics iteration) {
+        for (String name : iteration.names()) {
+            List<Double> samples = mSamples.get(name);
+            if (samples == null) {
+                samples = new ArrayList<>();
+                mSamples.put(name, samples);
+            }
+            samples.add(iteration.get(name));
+        }
+    }
+
+    /**
+     * Add the metrics recorded in each iteration directory.
+     */
+    public static IterationSummary readIterationDirs(List<File> iterationDirs) throws IOException {
+        IterationSummary summary = new IterationSummary();
+        for (File iterationDir : iterationDirs) {
+            summary.add(PerfMetrics.readTestDir(iterationDir));
+        }
+        return summary;
+    }
+
+    public double[] getSamples(String metric) {
+        List<Double> samples = mSamples.get(metric);
+        if (samples == null) {
+            return new double[0];
+        }
+        double[] values = new double[samples.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = samples.get(i);
+        }
+        return values;
+    }
+
+    /**
+     * The median of every metric, to be used as the test's representative value.
+     */
+    public PerfMetrics getMedians() {
+        PerfMetrics medians = new PerfMetrics();
+        for (String name : mSamples.keySet()) {
+            medians.put(name, Statistics.median(getSamples(name)));
+        }
+        return medians;
+    }
+
+    /**
+     * Write {@code <metric>.<statistic>=value} lines for every metric.
+     */
+    public void writeSummary(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        for (String name : mSamples.keySet()) {
+            double[] samples = getSamples(name);
+            double[] interval = Statistics.bootstrapMedianInterval(samples, CONFIDENCE,
+                    Statistics.DEFAULT_BOOTSTRAP_RESAMPLES);
+            writer.append(name).append(".n=").append(Integer.toString(samples.length))
+                    .append(eol);
+            writer.append(name).append(".median=")
+                    .append(FrameHistogram.formatDecimal(Statistics.median(samples))).append(eol);
+            writer.append(name).append(".mad=")
+                    .append(FrameHistogram.formatDecimal(
+                            Statistics.medianAbsoluteDeviation(samples))).append(eol);
+            writer.append(name).append(".ciLow=")
+                    .append(FrameHistogram.formatDecimal(interval[0])).append(eol);
+            writer.append(name).append(".ciHigh=")
+                    .append(FrameHistogram.formatDecimal(interval[1])).append(eol);
+        }
+    }
+}
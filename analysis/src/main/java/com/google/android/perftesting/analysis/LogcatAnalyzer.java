@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Scans the {@code logcat.log} of a test for crashes, ANRs, StrictMode violations, frames the
+ * Choreographer reported as skipped and garbage collections. Crashes and ANRs fail the test, the
+ * rest are recorded as metrics.
+ *
+ * <p>The log is system-wide, so when {@link AnalysisConfig#getAppPackage()} is set only crashes
+ * and ANRs of the app's processes count. A crash is attributed by the {@code Process:} line the
+ * platform logs after it from API level 21, or else by its pid, using the processes the
+ * ActivityManager logged starting. A crash of a process that can't be identified either way is
+ * counted rather than missed.
+ */
+public class LogcatAnalyzer implements ArtifactAnalyzer {
+
+    public static final String LOGCAT_FILENAME = "logcat.log";
+
+    public static final String CRASHES = "logcatCrashes";
+    public static final String ANRS = "logcatAnrs";
+    public static final String STRICT_MODE_VIOLATIONS = "logcatStrictModeViolations";
+    public static final String SKIPPED_FRAMES = "logcatSkippedFrames";
+    public static final String GC_COUNT = "logcatGcCount";
+
+    private static final String FATAL_EXCEPTION = "FATAL EXCEPTION";
+    private static final String ANR_PREFIX = "ANR in ";
+
+    private static final Pattern SKIPPED_FRAMES_PATTERN = Pattern.compile("Skipped (\\d+) frames!");
+
+    // Dalvik logs "GC_CONCURRENT freed ...", ART "... concurrent mark sweep GC freed ...".
+    private static final Pattern GC_PATTERN = Pattern.compile("\\bGC_\\w+ freed|\\bGC freed");
+
+    // The pid of a line in the threadtime format, "12-01 10:00:00.014  2345  2354 V Tag: ...", or
+    // in the brief format, "V/Tag( 2345): ...".
+    private static final Pattern PID_PATTERN = Pattern.compile(
+            "^\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d+\\s+(\\d+)\\s"
+                    + "|^[VDIWEFA]/[^(]*\\(\\s*(\\d+)\\)");
+
+    private static final Pattern CRASH_PROCESS_PATTERN = Pattern.compile("Process: ([^,\\s]+)");
+
+    // "Start proc 1234:com.example/u0a55 for activity ..." from API level 23, "Start proc
+    // com.example for activity ...: pid=1234 uid=10055 ..." before.
+    private static final Pattern START_PROC_PATTERN = Pattern.compile(
+            "Start proc (\\d+):([^/\\s]+)/|Start proc ([^\\s]+) .*\\bpid=(\\d+)");
+
+    @Override
+    public boolean accepts(File artifact) {
+        return LOGCAT_FILENAME.equals(artifact.getName());
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        String appPackage = config.getAppPackage();
+        Map<String, String> processesByPid = new HashMap<>();
+        int crashes = 0;
+        int anrs = 0;
+        int strictModeViolations = 0;
+        long skippedFrames = 0;
+        int gcCount = 0;
+        String firstCrash = null;
+
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new FileReader(artifact));
+            String line;
+            // The pid of a crash whose process is named on the next line, null if none.
+            String crashPid = null;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (crashPid != null) {
+                    Matcher process = CRASH_PROCESS_PATTERN.matcher(line);
+                    if (process.find() ? isAppProcess(process.group(1), appPackage)
+                            : isAppPid(crashPid, processesByPid, appPackage)) {
+                        crashes++;
+                        if (firstCrash == null) {
+                            // The process and exception follow on the next line.
+                            firstCrash = line.trim();
+                        }
+                    }
+                    crashPid = null;
+                } else if (line.contains(FATAL_EXCEPTION)) {
+                    crashPid = getPid(line);
+                } else if (line.contains(ANR_PREFIX)) {
+                    if (isAppProcess(getAnrProcess(line), appPackage)) {
+                        anrs++;
+                    }
+                } else if (line.contains("StrictMode policy violation")) {
+                    strictModeViolations++;
+                } else if (GC_PATTERN.matcher(line).find()) {
+                    gcCount++;
+                } else if (line.contains("Start proc ")) {
+                    Matcher matcher = START_PROC_PATTERN.matcher(line);
+                    if (matcher.find()) {
+                        if (matcher.group(1) != null) {
+                            processesByPid.put(matcher.group(1), matcher.group(2));
+                        } else {
+                            processesByPid.put(matcher.group(4), matcher.group(3));
+                        }
+                    }
+                } else {
+                    Matcher matcher = SKIPPED_FRAMES_PATTERN.matcher(line);
+                    if (matcher.find()) {
+                        skippedFrames += Long.parseLong(matcher.group(1));
+                    }
+                }
+            }
+            if (crashPid != null && isAppPid(crashPid, processesByPid, appPackage)) {
+                // The log ends right after the crash.
+                crashes++;
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception ignored) { }
+            }
+        }
+
+        result.putMetric(CRASHES, crashes);
+        result.putMetric(ANRS, anrs);
+        result.putMetric(STRICT_MODE_VIOLATIONS, strictModeViolations);
+        result.putMetric(SKIPPED_FRAMES, skippedFrames);
+        result.putMetric(GC_COUNT, gcCount);
+        if (crashes > 0) {
+            result.fail(crashes + " crash(es) in logcat"
+                    + (firstCrash == null ? "" : ", first: " + firstCrash) + ".");
+        }
+        if (anrs > 0) {
+            result.fail(anrs + " ANR(s) in logcat.");
+        }
+        if (strictModeViolations > 0) {
+            result.note(strictModeViolations + " StrictMode violation(s) in logcat.");
+        }
+    }
+
+    /**
+     * The pid of a logcat line, "" if the line has none.
+     */
+    private static String getPid(String line) {
+        Matcher matcher = PID_PATTERN.matcher(line);
+        if (!matcher.find()) {
+            return "";
+        }
+        return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    }
+
+    /**
+     * The process of "ANR in com.example (com.example/.MainActivity)".
+     */
+    private static String getAnrProcess(String line) {
+        int start = line.indexOf(ANR_PREFIX) + ANR_PREFIX.length();
+        int end = start;
+        while (end < line.length() && !Character.isWhitespace(line.charAt(end))
+                && line.charAt(end) != '(') {
+            end++;
+        }
+        return line.substring(start, end);
+    }
+
+    /**
+     * Whether the process is the app's, or one of its {@code android:process} processes, such as
+     * {@code com.example:remote}. Every process is the app's if its package is unknown.
+     */
+    private static boolean isAppProcess(String process, String appPackage) {
+        return appPackage == null || process.equals(appPackage)
+                || process.startsWith(appPackage + ":");
+    }
+
+    private static boolean isAppPid(String pid, Map<String, String> processesByPid,
+            String appPackage) {
+        String process = processesByPid.get(pid);
+        return process == null || isAppProcess(process, appPackage);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The app's memory as reported by {@code dumpsys meminfo <package>}, in kilobytes.
+ *
+ * <p>Totals come from the {@code TOTAL} row of the per-category table, whose columns are found by
+ * their two-line headers ({@code Pss Total}, {@code Private Dirty}) since platform versions add
+ * and reorder columns. The Java heap, native heap and graphics figures come from the
+ * {@code App Summary} section when the platform prints one (API level 23 and higher), otherwise
+ * they are approximated from the table's categories. Only the first process of the dump is read.
+ * Values that couldn't be found are -1.
+ */
+public class MemInfo {
+
+    private static final String TABLE_TOTAL = "TOTAL";
+    private static final String APP_SUMMARY = "App Summary";
+    private static final String[] GRAPHICS_CATEGORIES = {"Gfx dev", "EGL mtrack", "GL mtrack"};
+
+    private long mTotalPssKb = -1;
+    private long mPrivateDirtyKb = -1;
+    private long mJavaHeapKb = -1;
+    private long mNativeHeapKb = -1;
+    private long mGraphicsKb = -1;
+
+    public long getTotalPssKb() {
+        return mTotalPssKb;
+    }
+
+    public long getPrivateDirtyKb() {
+        return mPrivateDirtyKb;
+    }
+
+    public long getJavaHeapKb() {
+        return mJavaHeapKb;
+    }
+
+    public long getNativeHeapKb() {
+        return mNativeHeapKb;
+    }
+
+    public long getGraphicsKb() {
+        return mGraphicsKb;
+    }
+
+    public static MemInfo parse(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        MemInfo memInfo = new MemInfo();
+        // Pss Total of every category of the table, to fall back on without an App Summary.
+        Map<String, Long> categoryPss = new HashMap<>();
+        Map<String, Long> summary = new HashMap<>();
+        String[] topHeader = null;
+        int pssColumn = -1;
+        int privateDirtyColumn = -1;
+        boolean inTable = false;
+        boolean inSummary = false;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.startsWith("** MEMINFO") && (topHeader != null || inSummary)) {
+                break;
+            }
+            if (topHeader == null && trimmed.startsWith("Pss") && trimmed.contains("Private")) {
+                topHeader = trimmed.split("\\s+");
+                String bottomLine = bufferedReader.readLine();
+                String[] bottomHeader = bottomLine == null ? new String[0]
+                        : bottomLine.trim().split("\\s+");
+                for (int i = 0; i < Math.min(topHeader.length, bottomHeader.length); i++) {
+                    String column = topHeader[i] + " " + bottomHeader[i];
+                    if (pssColumn < 0 && "Pss Total".equals(column)) {
+                        pssColumn = i;
+                    } else if (privateDirtyColumn < 0 && "Private Dirty".equals(column)) {
+                        privateDirtyColumn = i;
+                    }
+                }
+                inTable = true;
+                continue;
+            }
+            if (inTable) {
+                if (trimmed.isEmpty()) {
+                    inTable = false;
+                } else if (!trimmed.startsWith("-")) {
+                    readTableRow(trimmed, pssColumn, privateDirtyColumn, memInfo, categoryPss);
+                }
+            } else if (trimmed.equals(APP_SUMMARY)) {
+                inSummary = true;
+            } else if (inSummary) {
+                int colon = trimmed.indexOf(':');
+                if (colon > 0) {
+                    Long value = firstNumber(trimmed.substring(colon + 1));
+                    if (value != null && !summary.containsKey(trimmed.substring(0, colon))) {
+                        summary.put(trimmed.substring(0, colon), value);
+                    }
+                }
+            }
+        }
+
+        memInfo.mJavaHeapKb = valueOrFallback(summary.get("Java Heap"),
+                categoryPss.get("Dalvik Heap"));
+        memInfo.mNativeHeapKb = valueOrFallback(summary.get("Native Heap"),
+                categoryPss.get("Native Heap"));
+        Long graphics = summary.get("Graphics");
+        if (graphics == null) {
+            for (String category : GRAPHICS_CATEGORIES) {
+                Long pss = categoryPss.get(category);
+                if (pss != null) {
+                    graphics = (graphics == null ? 0 : graphics) + pss;
+                }
+            }
+        }
+        memInfo.mGraphicsKb = graphics == null ? -1 : graphics;
+        return memInfo;
+    }
+
+    /**
+     * Write {@code <prefix><value>=kilobytes} lines for every value that was found.
+     */
+    public void writeSummary(Writer writer, String prefix) throws IOException {
+        String eol = System.getProperty("line.separator");
+        appendIfKnown(writer, prefix + PerfMetrics.PSS_KB, mTotalPssKb, eol);
+        appendIfKnown(writer, prefix + PerfMetrics.PRIVATE_DIRTY_KB, mPrivateDirtyKb, eol);
+        appendIfKnown(writer, prefix + PerfMetrics.JAVA_HEAP_KB, mJavaHeapKb, eol);
+        appendIfKnown(writer, prefix + PerfMetrics.NATIVE_HEAP_KB, mNativeHeapKb, eol);
+        appendIfKnown(writer, prefix + PerfMetrics.GRAPHICS_KB, mGraphicsKb, eol);
+    }
+
+    /**
+     * Categories are labels of one or more words followed by numbers, left-aligned under the
+     * header's columns; rows may have fewer numbers than there are columns.
+     */
+    private static void readTableRow(String row, int pssColumn, int privateDirtyColumn,
+            MemInfo memInfo, Map<String, Long> categoryPss) {
+        String[] tokens = row.split("\\s+");
+        int firstValue = 0;
+        while (firstValue < tokens.length && !isNumber(tokens[firstValue])) {
+            firstValue++;
+        }
+        if (firstValue == 0 || firstValue == tokens.length) {
+            return;
+        }
+        StringBuilder label = new StringBuilder(tokens[0]);
+        for (int i = 1; i < firstValue; i++) {
+            label.append(' ').append(tokens[i]);
+        }
+        int valueCount = tokens.length - firstValue;
+        long pss = pssColumn >= 0 && pssColumn < valueCount
+                ? Long.parseLong(tokens[firstValue + pssColumn]) : -1;
+        if (TABLE_TOTAL.equals(label.toString())) {
+            memInfo.mTotalPssKb = pss;
+            if (privateDirtyColumn >= 0 && privateDirtyColumn < valueCount) {
+                memInfo.mPrivateDirtyKb = Long.parseLong(tokens[firstValue + privateDirtyColumn]);
+            }
+        } else if (pss >= 0) {
+            categoryPss.put(label.toString(), pss);
+        }
+    }
+
+    private static Long firstNumber(String text) {
+        String first = text.trim().split("\\s+")[0];
+        return isNumber(first) ? Long.valueOf(first) : null;
+    }
+
+    private static boolean isNumber(String token) {
+        if (token.isEmpty() || token.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < token.length(); i++) {
+            if (!Character.isDigit(token.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long valueOrFallback(Long value, Long fallback) {
+        if (value != null) {
+            return value;
+        }
+        return fallback == null ? -1 : fallback;
+    }
+
+    private static void appendIfKnown(Writer writer, String key, long value, String eol)
+            throws IOException {
+        if (value >= 0) {
+            writer.append(key).append('=').append(Long.toString(value)).append(eol);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Notes every value of the memory sampled during a test
+ * ({@link MemoryTimeSeries#TIMESERIES_FILENAME}) that grew steadily over the test, since that is
+ * what a leak looks like. The peak and growth rate of PSS are recorded as metrics by the rule that
+ * sampled them, and their budgets are enforced on the device by the {@code PerfTest} annotation.
+ */
+public class MemoryAnalyzer implements ArtifactAnalyzer {
+
+    @Override
+    public boolean accepts(File artifact) {
+        return MemoryTimeSeries.TIMESERIES_FILENAME.equals(artifact.getName());
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        MemoryTimeSeries series;
+        FileReader fileReader = null;
+        try {
+            fileReader = new FileReader(artifact);
+            series = MemoryTimeSeries.read(fileReader);
+        } finally {
+            if (fileReader != null) {
+                try { fileReader.close(); } catch (Exception ignored) { }
+            }
+        }
+        for (String value : MemoryTimeSeries.VALUES) {
+            if (series.isGrowing(value)) {
+                result.note(String.format(Locale.US, "%s grew steadily during the test "
+                        + "(%+.1f KB/s, trend %.2f over %d samples), check for a leak.", value,
+                        series.getSlopePerSecond(value), series.getTrend(value),
+                        series.getValues(value).length));
+            }
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Memory of the app sampled at intervals during a test, in kilobytes, and the trend of each value
+ * over the test. A value is considered to be growing when it rises nearly monotonically (Kendall's
+ * tau of at least {@link #GROWTH_TREND}) rather than just ending higher than it started, which is
+ * what a leak while scrolling looks like as opposed to a cache filling up once.
+ *
+ * <p>The series is stored as {@link #TIMESERIES_FILENAME}, comma separated with a header row, so
+ * it can be plotted directly.
+ */
+public class MemoryTimeSeries {
+
+    /**
+     * Name of the per-test file with the samples.
+     */
+    public static final String TIMESERIES_FILENAME = "memory.timeseries.log";
+
+    /**
+     * Name of the per-test file with the peak and trend of every value.
+     */
+    public static final String SUMMARY_FILENAME = "memory.summary.log";
+
+    public static final String ELAPSED_MILLIS = "elapsedMillis";
+
+    /**
+     * The sampled values, in the order of the columns after {@link #ELAPSED_MILLIS}.
+     */
+    public static final String[] VALUES = {
+            PerfMetrics.PSS_KB,
+            PerfMetrics.PRIVATE_DIRTY_KB,
+            PerfMetrics.JAVA_HEAP_KB,
+            PerfMetrics.NATIVE_HEAP_KB,
+            PerfMetrics.GRAPHICS_KB
+    };
+
+    public static final double GROWTH_TREND = 0.7;
+
+    /**
+     * Fewer samples than this never count as growing, a handful of points are monotonic by chance.
+     */
+    public static final int MIN_TREND_SAMPLES = 6;
+
+    // Each sample is the elapsed time followed by VALUES, -1 for a value that wasn't available.
+    private final List<long[]> mSamples = new ArrayList<>();
+
+    public void addSample(long elapsedMillis, long pssKb, long privateDirtyKb, long javaHeapKb,
+            long nativeHeapKb, long graphicsKb) {
+        mSamples.add(new long[] {elapsedMillis, pssKb, privateDirtyKb, javaHeapKb, nativeHeapKb,
+                graphicsKb});
+    }
+
+    public int size() {
+        return mSamples.size();
+    }
+
+    /**
+     * @return the samples of the value that were available, in kilobytes.
+     */
+    public double[] getValues(String value) {
+        return column(indexOf(value), indexOf(value));
+    }
+
+    /**
+     * @return the times in seconds of the samples returned by {@link #getValues(String)}.
+     */
+    public double[] getSeconds(String value) {
+        double[] millis = column(0, indexOf(value));
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] /= 1000;
+        }
+        return millis;
+    }
+
+    /**
+     * @return the highest sample or -1 if the value was never available.
+     */
+    public long getPeak(String value) {
+        long peak = -1;
+        int index = indexOf(value);
+        for (long[] sample : mSamples) {
+            peak = Math.max(peak, sample[index]);
+        }
+        return peak;
+    }
+
+    /**
+     * Robust growth rate of the value over the test in kilobytes per second.
+     */
+    public double getSlopePerSecond(String value) {
+        return Statistics.theilSenSlope(getSeconds(value), getValues(value));
+    }
+
+    /**
+     * Kendall's tau of the value against time, 1 when every sample is higher than all before it.
+     */
+    public double getTrend(String value) {
+        return Statistics.kendallTau(getSeconds(value), getValues(value));
+    }
+
+    public boolean isGrowing(String value) {
+        return getValues(value).length >= MIN_TREND_SAMPLES && getTrend(value) >= GROWTH_TREND
+                && getSlopePerSecond(value) > 0;
+    }
+
+    /**
+     * Write the samples as comma separated values with a header row.
+     */
+    public void write(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append(ELAPSED_MILLIS);
+        for (String value : VALUES) {
+            writer.append(',').append(value);
+        }
+        writer.append(eol);
+        for (long[] sample : mSamples) {
+            for (int i = 0; i < sample.length; i++) {
+                if (i > 0) {
+                    writer.append(',');
+                }
+                writer.append(Long.toString(sample[i]));
+            }
+            writer.append(eol);
+        }
+    }
+
+    /**
+     * Read samples written by {@link #write(Writer)}. Malformed rows are skipped.
+     */
+    public static MemoryTimeSeries read(Reader reader) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        MemoryTimeSeries series = new MemoryTimeSeries();
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            String[] fields = line.trim().split(",");
+            if (fields.length != VALUES.length + 1) {
+                continue;
+            }
+            long[] sample = new long[fields.length];
+            try {
+                for (int i = 0; i < fields.length; i++) {
+                    sample[i] = Long.parseLong(fields[i].trim());
+                }
+            } catch (NumberFormatException ignored) {
+                // The header row or a truncated sample.
+                continue;
+            }
+            series.mSamples.add(sample);
+        }
+        return series;
+    }
+
+    /**
+     * Write {@code <value>.<statistic>=value} lines with the peak, slope and trend of every value
+     * that was sampled.
+     */
+    public void writeSummary(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append("samples=").append(Integer.toString(size())).append(eol);
+        for (String value : VALUES) {
+            if (getPeak(value) < 0) {
+                continue;
+            }
+            writer.append(value).append(".peak=").append(Long.toString(getPeak(value)))
+                    .append(eol);
+            writer.append(value).append(".slopePerSecond=")
+                    .append(FrameHistogram.formatDecimal(getSlopePerSecond(value))).append(eol);
+            writer.append(value).append(".trend=")
+                    .append(FrameHistogram.formatDecimal(getTrend(value))).append(eol);
+            writer.append(value).append(".growing=").append(Boolean.toString(isGrowing(value)))
+                    .append(eol);
+        }
+    }
+
+    private static int indexOf(String value) {
+        for (int i = 0; i < VALUES.length; i++) {
+            if (VALUES[i].equals(value)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("Not a sampled value: " + value);
+    }
+
+    /**
+     * The column at {@code index} of the samples where the column at {@code filterIndex} was
+     * available.
+     */
+    private double[] column(int index, int filterIndex) {
+        int count = 0;
+        for (long[] sample : mSamples) {
+            if (sample[filterIndex] >= 0) {
+                count++;
+            }
+        }
+        double[] values = new double[count];
+        int i = 0;
+        for (long[] sample : mSamples) {
+            if (sample[filterIndex] >= 0) {
+                values[i++] = sample[index];
+            }
+        }
+        return values;
+    }
+}
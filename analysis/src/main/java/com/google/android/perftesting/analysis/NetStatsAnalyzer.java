@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Totals the bytes in the {@code UID stats} section of a {@code dumpsys netstats full detail}
+ * written by the {@code EnableNetStatsDump} rule. Only the app's uid is counted when it is known
+ * from the {@link AnalysisConfig}, otherwise all uids are. Tagged entries are skipped since they
+ * are already included in the untagged totals.
+ */
+public class NetStatsAnalyzer implements ArtifactAnalyzer {
+
+    public static final String NETSTATS_FILENAME = "netstats.dumpsys.log";
+
+    public static final String RX_BYTES = "netstatsRxBytes";
+    public static final String TX_BYTES = "netstatsTxBytes";
+
+    private static final String UID_STATS_HEADER = "UID stats:";
+
+    private static final Pattern IDENT_PATTERN = Pattern.compile("\\buid=(-?\\d+).*\\btag=(\\S+)");
+    private static final Pattern BUCKET_PATTERN = Pattern.compile("\\brb=(\\d+).*\\btb=(\\d+)");
+
+    @Override
+    public boolean accepts(File artifact) {
+        return NETSTATS_FILENAME.equals(artifact.getName());
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        long rxBytes = 0;
+        long txBytes = 0;
+        boolean inUidStats = false;
+        boolean counting = false;
+
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new FileReader(artifact));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (!line.startsWith(" ")) {
+                    // Sections start at the beginning of a line, their entries are indented.
+                    inUidStats = line.trim().equals(UID_STATS_HEADER);
+                    counting = false;
+                    continue;
+                }
+                if (!inUidStats) {
+                    continue;
+                }
+                Matcher ident = IDENT_PATTERN.matcher(line);
+                if (ident.find()) {
+                    int uid = Integer.parseInt(ident.group(1));
+                    counting = isUntagged(ident.group(2))
+                            && (config.getAppUid() < 0 || uid == config.getAppUid());
+                    continue;
+                }
+                if (counting) {
+                    Matcher bucket = BUCKET_PATTERN.matcher(line);
+                    if (bucket.find()) {
+                        rxBytes += Long.parseLong(bucket.group(1));
+                        txBytes += Long.parseLong(bucket.group(2));
+                    }
+                }
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception ignored) { }
+            }
+        }
+
+        result.putMetric(RX_BYTES, rxBytes);
+        result.putMetric(TX_BYTES, txBytes);
+    }
+
+    private static boolean isUntagged(String tag) {
+        return "0x0".equals(tag) || "0".equals(tag);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Paired comparison of two variants of a test measured in alternation, such as two adapters of the
+ * same screen. Each measured run of the candidate is paired with the neighbouring run of the
+ * baseline, so drift shared by both (thermal state, background load) cancels out of the per-pair
+ * differences. Every metric is reported as the median of its differences with a bootstrap
+ * confidence interval. Whether the change is beyond the run-to-run noise is decided by an exact
+ * Wilcoxon signed-rank test of the differences, since a bootstrap interval of a handful of pairs
+ * is far too narrow. That needs at least {@link #MIN_SIGNIFICANT_PAIRS} pairs, more to detect
+ * changes that are small compared with the noise.
+ */
+public class PairedComparison {
+
+    /**
+     * Name of the per-test file the comparison is written to.
+     */
+    public static final String COMPARISON_FILENAME = "ab.comparison.log";
+
+    private static final String COMPARISON_FILENAME_PREFIX = "ab.";
+    private static final String COMPARISON_FILENAME_SUFFIX = ".comparison.log";
+
+    /**
+     * P-value below which a difference is reported as significant.
+     */
+    public static final double SIGNIFICANCE_LEVEL = 1 - IterationSummary.CONFIDENCE;
+
+    /**
+     * The fewest pairs whose signed-rank test can reach {@link #SIGNIFICANCE_LEVEL}.
+     */
+    public static final int MIN_SIGNIFICANT_PAIRS = 6;
+
+    private final String mBaseline;
+    private final String mCandidate;
+    private final Map<String, List<double[]>> mPairs = new LinkedHashMap<>();
+
+    public PairedComparison(String baseline, String candidate) {
+        mBaseline = baseline;
+        mCandidate = candidate;
+    }
+
+    /**
+     * Name of the per-test file the comparison with {@code candidate} is written to when a test
+     * compares several candidates with one baseline.
+     */
+    public static String getComparisonFilename(String candidate) {
+        return COMPARISON_FILENAME_PREFIX + candidate + COMPARISON_FILENAME_SUFFIX;
+    }
+
+    /**
+     * @return true for {@link #COMPARISON_FILENAME} and the names from
+     *     {@link #getComparisonFilename(String)}.
+     */
+    public static boolean isComparisonFilename(String name) {
+        return name.startsWith(COMPARISON_FILENAME_PREFIX)
+                && name.endsWith(COMPARISON_FILENAME_SUFFIX);
+    }
+
+    public String getBaseline() {
+        return mBaseline;
+    }
+
+    public String getCandidate() {
+        return mCandidate;
+    }
+
+    /**
+     * Add the metrics of one baseline run and the candidate run it is paired with. Metrics only
+     * one of the runs measured are skipped.
+     */
+    public void addPair(PerfMetrics baseline, PerfMetrics candidate) {
+        for (String name : baseline.names()) {
+            Double candidateValue = candidate.get(name);
+            if (candidateValue == null) {
+                continue;
+            }
+            List<double[]> pairs = mPairs.get(name);
+            if (pairs == null) {
+                pairs = new ArrayList<>();
+                mPairs.put(name, pairs);
+            }
+            pairs.add(new double[] {baseline.get(name), candidateValue});
+        }
+    }
+
+    /**
+     * Pair the metrics recorded in the iteration directories of each variant, in order.
+     */
+    public static PairedComparison readIterationDirs(String baseline, List<File> baselineDirs,
+            String candidate, List<File> candidateDirs) throws IOException {
+        if (baselineDirs.size() != candidateDirs.size()) {
+            throw new IllegalArgumentException("Unpaired iterations: " + baselineDirs.size()
+                    + " of " + baseline + ", " + candidateDirs.size() + " of " + candidate);
+        }
+        PairedComparison comparison = new PairedComparison(baseline, candidate);
+        for (int i = 0; i < baselineDirs.size(); i++) {
+            comparison.addPair(PerfMetrics.readTestDir(baselineDirs.get(i)),
+                    PerfMetrics.readTestDir(candidateDirs.get(i)));
+        }
+        return comparison;
+    }
+
+    public List<String> getMetrics() {
+        return new ArrayList<>(mPairs.keySet());
+    }
+
+    /**
+     * @return the candidate's value minus the baseline's for every pair measuring the metric.
+     */
+    public double[] getDifferences(String metric) {
+        return column(metric, -1);
+    }
+
+    /**
+     * Median of the differences with its bootstrap confidence interval.
+     *
+     * @return {@code {median, low, high}}.
+     */
+    public double[] getDifferenceEstimate(String metric) {
+        double[] differences = getDifferences(metric);
+        double[] interval = Statistics.bootstrapMedianInterval(differences,
+                IterationSummary.CONFIDENCE, Statistics.DEFAULT_BOOTSTRAP_RESAMPLES);
+        return new double[] {Statistics.median(differences), interval[0], interval[1]};
+    }
+
+    /**
+     * Two-sided p-value of the Wilcoxon signed-rank test of the metric's differences.
+     */
+    public double getPValue(String metric) {
+        return Statistics.wilcoxonSignedRankPValue(getDifferences(metric));
+    }
+
+    /**
+     * Write {@code <metric>.<statistic>=value} lines for every metric, differences being the
+     * candidate's value minus the baseline's.
+     */
+    public void writeReport(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append("baseline=").append(mBaseline).append(eol);
+        writer.append("candidate=").append(mCandidate).append(eol);
+        for (String name : mPairs.keySet()) {
+            double baselineMedian = Statistics.median(column(name, 0));
+            double[] estimate = getDifferenceEstimate(name);
+            writer.append(name).append(".pairs=").append(Integer.toString(mPairs.get(name).size()))
+                    .append(eol);
+            append(writer, name, "baselineMedian", baselineMedian, eol);
+            append(writer, name, "candidateMedian", Statistics.median(column(name, 1)), eol);
+            append(writer, name, "difference", estimate[0], eol);
+            append(writer, name, "differenceCiLow", estimate[1], eol);
+            append(writer, name, "differenceCiHigh", estimate[2], eol);
+            if (baselineMedian != 0) {
+                append(writer, name, "differencePercent",
+                        100 * estimate[0] / Math.abs(baselineMedian), eol);
+            }
+            double pValue = getPValue(name);
+            writer.append(name).append(".pValue=")
+                    .append(String.format(Locale.US, "%.4f", pValue)).append(eol);
+            writer.append(name).append(".significant=")
+                    .append(Boolean.toString(pValue < SIGNIFICANCE_LEVEL)).append(eol);
+        }
+    }
+
+    /**
+     * @param index 0 for the baseline's values, 1 for the candidate's and -1 for the differences.
+     */
+    private double[] column(String metric, int index) {
+        List<double[]> pairs = mPairs.get(metric);
+        if (pairs == null) {
+            return new double[0];
+        }
+        double[] values = new double[pairs.size()];
+        for (int i = 0; i < values.length; i++) {
+            double[] pair = pairs.get(i);
+            values[i] = index < 0 ? pair[1] - pair[0] : pair[index];
+        }
+        return values;
+    }
+
+    private static void append(Writer writer, String metric, String statistic, double value,
+            String eol) throws IOException {
+        writer.append(metric).append('.').append(statistic).append('=')
+                .append(FrameHistogram.formatDecimal(value)).append(eol);
+    }
+}
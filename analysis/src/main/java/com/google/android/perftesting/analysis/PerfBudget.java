@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Upper limits for a test's {@link PerfMetrics}. A budget that was set for a metric the test
+ * didn't measure is a violation too, so a missing collector can't make a test pass silently.
+ */
+public class PerfBudget {
+
+    /**
+     * Name of the per-test file with the outcome of every budget check.
+     */
+    public static final String BUDGET_FILENAME = "budget.log";
+
+    private final Map<String, Double> mLimits = new LinkedHashMap<>();
+
+    /**
+     * Set the upper limit of a metric. Negative limits mean "no budget" and are ignored, which
+     * matches the defaults of the {@code PerfTest} annotation.
+     */
+    public PerfBudget limit(String metric, double max) {
+        if (max >= 0) {
+            mLimits.put(metric, max);
+        }
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return mLimits.isEmpty();
+    }
+
+    public Map<String, Double> getLimits() {
+        return mLimits;
+    }
+
+    /**
+     * @return one message per metric over budget or not measured, empty if within budget.
+     */
+    public List<String> check(PerfMetrics metrics) {
+        List<String> violations = new ArrayList<>();
+        for (Map.Entry<String, Double> limit : mLimits.entrySet()) {
+            Double value = metrics.get(limit.getKey());
+            if (value == null) {
+                violations.add(limit.getKey() + ": budget " + format(limit.getValue())
+                        + " but the metric wasn't measured, check the collector rule is applied");
+            } else if (value > limit.getValue()) {
+                violations.add(limit.getKey() + ": " + format(value) + " exceeds budget "
+                        + format(limit.getValue()));
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Write one {@code metric=PASS|FAIL value/limit} line per budget.
+     */
+    public void writeReport(PerfMetrics metrics, Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        for (Map.Entry<String, Double> limit : mLimits.entrySet()) {
+            Double value = metrics.get(limit.getKey());
+            boolean passed = value != null && value <= limit.getValue();
+            writer.append(limit.getKey()).append('=').append(passed ? "PASS " : "FAIL ")
+                    .append(value == null ? "missing" : format(value)).append('/')
+                    .append(format(limit.getValue())).append(eol);
+        }
+    }
+
+    private static String format(double value) {
+        return PerfMetrics.formatValue(value);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Named numeric metrics of a single test, gathered from the files the collector rules write to the
+ * test's directory.
+ *
+ * <p>Rules that measure a single number per test append it to {@link #METRICS_FILENAME} with
+ * {@link #append(File, String, double)}. Frame metrics are taken from
+ * {@link FrameHistogram#SUMMARY_FILENAME}.
+ */
+public class PerfMetrics {
+
+    /**
+     * Per-test file of {@code key=value} metrics appended to by the collector rules.
+     */
+    public static final String METRICS_FILENAME = "metrics.log";
+
+    public static final String JANK_PERCENT = "jankPercent";
+    public static final String P50_FRAME_MILLIS = "p50FrameMillis";
+    public static final String P95_FRAME_MILLIS = "p95FrameMillis";
+    public static final String P99_FRAME_MILLIS = "p99FrameMillis";
+    public static final String MAX_FRAME_MILLIS = "maxFrameMillis";
+    public static final String FRAMES = "frames";
+    public static final String PSS_KB = "pssKb";
+    public static final String PEAK_PSS_KB = "peakPssKb";
+    public static final String PSS_SLOPE_KB_PER_SECOND = "pssSlopeKbPerSecond";
+    public static final String PRIVATE_DIRTY_KB = "privateDirtyKb";
+    public static final String JAVA_HEAP_KB = "javaHeapKb";
+    public static final String NATIVE_HEAP_KB = "nativeHeapKb";
+    public static final String GRAPHICS_KB = "graphicsKb";
+    public static final String ALLOCATED_BYTES = "allocatedBytes";
+    public static final String ALLOCATED_OBJECTS = "allocatedObjects";
+    public static final String MAIN_THREAD_ALLOCATED_BYTES = "mainThreadAllocatedBytes";
+    public static final String MAIN_THREAD_ALLOCATED_OBJECTS = "mainThreadAllocatedObjects";
+    public static final String GC_COUNT = "gcCount";
+    public static final String NETWORK_BYTES = "networkBytes";
+    public static final String IMAGES_SHOWN = "imagesShown";
+    public static final String IMAGE_LOADS_CANCELLED = "imageLoadsCancelled";
+    public static final String P50_IMAGE_LATENCY_MILLIS = "p50ImageLatencyMillis";
+    public static final String P95_IMAGE_LATENCY_MILLIS = "p95ImageLatencyMillis";
+    public static final String P99_IMAGE_LATENCY_MILLIS = "p99ImageLatencyMillis";
+    public static final String MAX_IMAGE_LATENCY_MILLIS = "maxImageLatencyMillis";
+    public static final String IMAGE_MEMORY_HITS = "imageMemoryHits";
+    public static final String IMAGE_DECODES = "imageDecodes";
+    public static final String IMAGE_REUSED_BITMAPS = "imageReusedBitmaps";
+    public static final String MEAN_IMAGE_DECODE_MILLIS = "meanImageDecodeMillis";
+    public static final String PAGES_LOADED = "pagesLoaded";
+    public static final String P50_PAGE_LOAD_MILLIS = "p50PageLoadMillis";
+    public static final String P95_PAGE_LOAD_MILLIS = "p95PageLoadMillis";
+    public static final String MAX_PAGE_LOAD_MILLIS = "maxPageLoadMillis";
+    public static final String VIEW_POOL_HITS = "viewPoolHits";
+    public static final String VIEW_POOL_MISSES = "viewPoolMisses";
+    public static final String NANOS_PER_OP = "nanosPerOp";
+    public static final String ALLOCATIONS_PER_OP = "allocationsPerOp";
+    public static final String ALLOCATED_BYTES_PER_OP = "allocatedBytesPerOp";
+    public static final String TIME_TO_INITIAL_DISPLAY_MILLIS = "timeToInitialDisplayMillis";
+    public static final String TIME_TO_FULL_DISPLAY_MILLIS = "timeToFullDisplayMillis";
+
+    private final Map<String, Double> mValues = new LinkedHashMap<>();
+
+    public void put(String name, double value) {
+        mValues.put(name, value);
+    }
+
+    /**
+     * @return the metric's value or null if it wasn't measured.
+     */
+    public Double get(String name) {
+        return mValues.get(name);
+    }
+
+    public boolean has(String name) {
+        return mValues.containsKey(name);
+    }
+
+    public Set<String> names() {
+        return mValues.keySet();
+    }
+
+    /**
+     * Read every metric known to be produced for a test from its directory. Missing files are
+     * skipped; a metric that wasn't measured is simply absent.
+     */
+    public static PerfMetrics readTestDir(File testDir) throws IOException {
+        PerfMetrics metrics = new PerfMetrics();
+
+        Map<String, String> frameSummary =
+                readKeyValueFile(new File(testDir, FrameHistogram.SUMMARY_FILENAME));
+        // Prefer the platform's own jank definition when a framestats dump was available.
+        String jankPercent = frameSummary.get("jankyFramesPercent");
+        if (jankPercent == null) {
+            jankPercent = frameSummary.get("slowFramesPercent");
+        }
+        putIfPresent(metrics, JANK_PERCENT, jankPercent);
+        putIfPresent(metrics, P50_FRAME_MILLIS, frameSummary.get("p50Millis"));
+        putIfPresent(metrics, P95_FRAME_MILLIS, frameSummary.get("p95Millis"));
+        putIfPresent(metrics, P99_FRAME_MILLIS, frameSummary.get("p99Millis"));
+        putIfPresent(metrics, MAX_FRAME_MILLIS, frameSummary.get("maxMillis"));
+        putIfPresent(metrics, FRAMES, frameSummary.get("frames"));
+
+        // Later lines win, so a rule can refine a value another rule already wrote.
+        Map<String, String> values = readKeyValueFile(new File(testDir, METRICS_FILENAME));
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            putIfPresent(metrics, entry.getKey(), entry.getValue());
+        }
+        return metrics;
+    }
+
+    /**
+     * Append a metric to the test directory's {@link #METRICS_FILENAME}.
+     */
+    public static void append(File testDir, String name, double value) throws IOException {
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(testDir, METRICS_FILENAME), true);
+            fileWriter.append(name).append('=').append(formatValue(value))
+                    .append(System.getProperty("line.separator"));
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Read a file of {@code key=value} lines, such as the summaries written by the analysis
+     * classes. Returns an empty map if the file doesn't exist.
+     */
+    public static Map<String, String> readKeyValueFile(File file) throws IOException {
+        Map<String, String> values = new LinkedHashMap<>();
+        if (!file.isFile()) {
+            return values;
+        }
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new FileReader(file));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                int separator = line.indexOf('=');
+                if (separator > 0) {
+                    values.put(line.substring(0, separator).trim(),
+                            line.substring(separator + 1).trim());
+                }
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception ignored) { }
+            }
+        }
+        return values;
+    }
+
+    static String formatValue(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    private static void putIfPresent(PerfMetrics metrics, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        try {
+            metrics.put(name, Double.parseDouble(value));
+        } catch (NumberFormatException ignored) {
+            // Not a numeric metric.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mValues.toString();
+    }
+}
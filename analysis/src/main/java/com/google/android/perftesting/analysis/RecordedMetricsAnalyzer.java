@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Picks up the summaries the collector rules already wrote on the device: the metrics in
+ * {@link PerfMetrics#METRICS_FILENAME}, the failed checks in {@link PerfBudget#BUDGET_FILENAME},
+ * the significant differences of an A/B test in {@link PairedComparison#COMPARISON_FILENAME}, or
+ * in one file per candidate from {@link PairedComparison#getComparisonFilename(String)}, and the
+ * frame time distribution in {@link FrameHistogram#SUMMARY_FILENAME}, which covers every frame the
+ * device captured. For tests without a framestats dump (e.g. Choreographer capture on older
+ * devices) the summary's slow frames are also the jank gate.
+ */
+public class RecordedMetricsAnalyzer implements ArtifactAnalyzer {
+
+    private static final String FAIL_PREFIX = "FAIL ";
+    private static final String SIGNIFICANT_SUFFIX = ".significant";
+
+    @Override
+    public boolean accepts(File artifact) {
+        String name = artifact.getName();
+        return PerfMetrics.METRICS_FILENAME.equals(name)
+                || PerfBudget.BUDGET_FILENAME.equals(name)
+                || PairedComparison.isComparisonFilename(name)
+                || FrameHistogram.SUMMARY_FILENAME.equals(name);
+    }
+
+    @Override
+    public void analyze(File artifact, AnalysisConfig config, TestResult result)
+            throws IOException {
+        Map<String, String> values = PerfMetrics.readKeyValueFile(artifact);
+        String name = artifact.getName();
+        if (PerfMetrics.METRICS_FILENAME.equals(name)) {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                putIfNumeric(result, entry.getKey(), entry.getValue());
+            }
+        } else if (PerfBudget.BUDGET_FILENAME.equals(name)) {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                if (entry.getValue().startsWith(FAIL_PREFIX)) {
+                    result.fail("Budget for " + entry.getKey() + " exceeded ("
+                            + entry.getValue().substring(FAIL_PREFIX.length()) + ").");
+                }
+            }
+        } else if (PairedComparison.isComparisonFilename(name)) {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                String key = entry.getKey();
+                if (key.endsWith(SIGNIFICANT_SUFFIX) && Boolean.parseBoolean(entry.getValue())) {
+                    String metric = key.substring(0, key.length() - SIGNIFICANT_SUFFIX.length());
+                    result.note(String.format(Locale.US, "A/B %s: %s - %s = %s [%s, %s], p=%s",
+                            metric, values.get("candidate"), values.get("baseline"),
+                            values.get(metric + ".difference"),
+                            values.get(metric + ".differenceCiLow"),
+                            values.get(metric + ".differenceCiHigh"),
+                            values.get(metric + ".pValue")));
+                }
+            }
+        } else {
+            putIfNumeric(result, PerfMetrics.FRAMES, values.get("frames"));
+            putIfNumeric(result, PerfMetrics.P50_FRAME_MILLIS, values.get("p50Millis"));
+            putIfNumeric(result, PerfMetrics.P95_FRAME_MILLIS, values.get("p95Millis"));
+            putIfNumeric(result, PerfMetrics.P99_FRAME_MILLIS, values.get("p99Millis"));
+            putIfNumeric(result, PerfMetrics.MAX_FRAME_MILLIS, values.get("maxMillis"));
+            if (new File(artifact.getParentFile(),
+                    FrameStatsReport.GFXINFO_DUMP_FILENAME).isFile()) {
+                // With a dump available GfxInfoAnalyzer gates on the platform's jank definition.
+                return;
+            }
+            String slowFramesPercent = values.get("slowFramesPercent");
+            if (slowFramesPercent != null) {
+                double percent = Double.parseDouble(slowFramesPercent);
+                result.putMetric(PerfMetrics.JANK_PERCENT, percent);
+                if (percent > config.getJankThresholdPercent()) {
+                    result.fail(String.format(Locale.US, "High level of slow frames detected "
+                            + "(%.2f%%). See trace.html for details.", percent));
+                }
+            }
+        }
+    }
+
+    private static void putIfNumeric(TestResult result, String name, String value) {
+        if (value == null) {
+            return;
+        }
+        try {
+            result.putMetric(name, Double.parseDouble(value));
+        } catch (NumberFormatException ignored) {
+            // Not a numeric metric.
+        }
+    }
+}
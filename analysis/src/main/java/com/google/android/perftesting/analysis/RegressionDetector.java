@@ -0,0 +1,317 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares a run's metrics with the recent history of the same tests on the same kind of device
+ * (same build fingerprint) in a {@link ResultsStore}. Each run counts once: the samples of the
+ * run's iterations are reduced to their median, and compared with the medians of the last
+ * {@link #DEFAULT_BASELINE_RUNS} runs of other commits, since iterations of one run vary much
+ * less than separate runs do. For every metric a one-sided robust prediction test
+ * ({@link Statistics#predictionGreaterPValue(double[], double)}) checks whether the run is higher
+ * (a regression, since every metric measures a cost) or lower (an improvement) than the baseline
+ * runs' spread allows for. Changes of the median smaller than {@link #DEFAULT_MIN_RELATIVE_CHANGE}
+ * of the baseline median are ignored, and the p-values of the remaining metrics are adjusted for
+ * the number compared with {@link Statistics#benjaminiHochberg(double[])}.
+ */
+public class RegressionDetector {
+
+    /**
+     * Name of the file the changes are written to, in the testdata directory.
+     */
+    public static final String REGRESSIONS_FILENAME = "regressions.log";
+
+    public static final int DEFAULT_BASELINE_RUNS = 30;
+    public static final int DEFAULT_MIN_BASELINE_RUNS = 5;
+    public static final double DEFAULT_FALSE_DISCOVERY_RATE = 0.05;
+    public static final double DEFAULT_MIN_RELATIVE_CHANGE = 0.05;
+
+    // Counts that describe the test rather than measure a cost.
+    private static final Set<String> NEUTRAL_METRICS = new HashSet<>(Arrays.asList(
+            PerfMetrics.FRAMES, PerfMetrics.IMAGES_SHOWN, PerfMetrics.IMAGE_MEMORY_HITS,
+            PerfMetrics.IMAGE_REUSED_BITMAPS, PerfMetrics.PAGES_LOADED,
+            PerfMetrics.VIEW_POOL_HITS));
+
+    public enum Direction {
+        REGRESSION,
+        IMPROVEMENT
+    }
+
+    /**
+     * A significant difference of one metric of one test.
+     */
+    public static class Change {
+        private final String mTest;
+        private final String mMetric;
+        private final Direction mDirection;
+        private final double mBaselineMedian;
+        private final double mCurrentMedian;
+        private final int mBaselineSize;
+        private final double mAdjustedPValue;
+
+        Change(String test, String metric, Direction direction, double baselineMedian,
+                double currentMedian, int baselineSize, double adjustedPValue) {
+            mTest = test;
+            mMetric = metric;
+            mDirection = direction;
+            mBaselineMedian = baselineMedian;
+            mCurrentMedian = currentMedian;
+            mBaselineSize = baselineSize;
+            mAdjustedPValue = adjustedPValue;
+        }
+
+        public String getTest() {
+            return mTest;
+        }
+
+        public String getMetric() {
+            return mMetric;
+        }
+
+        public Direction getDirection() {
+            return mDirection;
+        }
+
+        public double getBaselineMedian() {
+            return mBaselineMedian;
+        }
+
+        public double getCurrentMedian() {
+            return mCurrentMedian;
+        }
+
+        public double getAdjustedPValue() {
+            return mAdjustedPValue;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "%s %s %s: %s -> %s (%+.1f%%, p=%.4f, baseline of %d runs)",
+                    mDirection, mTest, mMetric, FrameHistogram.formatDecimal(mBaselineMedian),
+                    FrameHistogram.formatDecimal(mCurrentMedian),
+                    100 * (mCurrentMedian - mBaselineMedian) / Math.abs(mBaselineMedian),
+                    mAdjustedPValue, mBaselineSize);
+        }
+    }
+
+    private int mBaselineRuns = DEFAULT_BASELINE_RUNS;
+    private int mMinBaselineRuns = DEFAULT_MIN_BASELINE_RUNS;
+    private double mFalseDiscoveryRate = DEFAULT_FALSE_DISCOVERY_RATE;
+    private double mMinRelativeChange = DEFAULT_MIN_RELATIVE_CHANGE;
+
+    public RegressionDetector setBaselineRuns(int baselineRuns) {
+        mBaselineRuns = baselineRuns;
+        return this;
+    }
+
+    public RegressionDetector setMinBaselineRuns(int minBaselineRuns) {
+        mMinBaselineRuns = minBaselineRuns;
+        return this;
+    }
+
+    public RegressionDetector setFalseDiscoveryRate(double falseDiscoveryRate) {
+        mFalseDiscoveryRate = falseDiscoveryRate;
+        return this;
+    }
+
+    public RegressionDetector setMinRelativeChange(double minRelativeChange) {
+        mMinRelativeChange = minRelativeChange;
+        return this;
+    }
+
+    /**
+     * Compare a run's samples, as read by {@link RunResult#readSamples(File)}, with the store's
+     * history. The run itself may or may not have been appended to the store already.
+     *
+     * @return the significant regressions and improvements, regressions first.
+     */
+    public List<Change> compare(ResultsStore store, ResultsStore.Run run,
+            Map<String, Map<String, double[]>> samplesByTest) throws IOException {
+        List<String> tests = new ArrayList<>();
+        List<String> metrics = new ArrayList<>();
+        List<double[]> baselines = new ArrayList<>();
+        List<Double> currents = new ArrayList<>();
+        List<Double> pValues = new ArrayList<>();
+        for (Map.Entry<String, Map<String, double[]>> test : samplesByTest.entrySet()) {
+            for (Map.Entry<String, double[]> metric : test.getValue().entrySet()) {
+                if (NEUTRAL_METRICS.contains(metric.getKey())) {
+                    continue;
+                }
+                double[] baseline = store.getRecentRunMedians(run.getFingerprint(),
+                        test.getKey(), metric.getKey(), run.getCommit(), mBaselineRuns);
+                if (baseline.length < mMinBaselineRuns || metric.getValue().length == 0) {
+                    continue;
+                }
+                double current = Statistics.median(metric.getValue());
+                double baselineMedian = Statistics.median(baseline);
+                double change = current - baselineMedian;
+                // Changes too small to report aren't tested, so they don't dilute the adjustment.
+                if (change == 0
+                        || Math.abs(change) < mMinRelativeChange * Math.abs(baselineMedian)) {
+                    continue;
+                }
+                boolean higher = change > 0;
+                // Test in the direction the medians moved, the other can't be significant.
+                pValues.add(higher ? Statistics.predictionGreaterPValue(baseline, current)
+                        : Statistics.predictionGreaterPValue(negate(baseline), -current));
+                tests.add(test.getKey());
+                metrics.add(metric.getKey());
+                baselines.add(baseline);
+                currents.add(current);
+            }
+        }
+
+        double[] raw = new double[pValues.size()];
+        for (int i = 0; i < raw.length; i++) {
+            raw[i] = pValues.get(i);
+        }
+        double[] adjusted = Statistics.benjaminiHochberg(raw);
+        List<Change> regressions = new ArrayList<>();
+        List<Change> improvements = new ArrayList<>();
+        for (int i = 0; i < adjusted.length; i++) {
+            double baselineMedian = Statistics.median(baselines.get(i));
+            double currentMedian = currents.get(i);
+            if (adjusted[i] > mFalseDiscoveryRate) {
+                continue;
+            }
+            Direction direction = currentMedian > baselineMedian
+                    ? Direction.REGRESSION : Direction.IMPROVEMENT;
+            Change significant = new Change(tests.get(i), metrics.get(i), direction,
+                    baselineMedian, currentMedian, baselines.get(i).length, adjusted[i]);
+            (direction == Direction.REGRESSION ? regressions : improvements).add(significant);
+        }
+        List<Change> changes = new ArrayList<>(regressions);
+        changes.addAll(improvements);
+        return Collections.unmodifiableList(changes);
+    }
+
+    private static double[] negate(double[] values) {
+        double[] negated = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            negated[i] = -values[i];
+        }
+        return negated;
+    }
+
+    public static boolean hasRegressions(List<Change> changes) {
+        for (Change change : changes) {
+            if (change.getDirection() == Direction.REGRESSION) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write one {@code <test>.<metric>=REGRESSION|IMPROVEMENT <description>} line per change.
+     */
+    public static void writeReport(List<Change> changes, Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        for (Change change : changes) {
+            writer.append(change.getTest()).append('.').append(change.getMetric()).append('=')
+                    .append(change.toString()).append(eol);
+        }
+    }
+
+    /**
+     * Record an analyzed run in a store, compare it with the history and write
+     * {@link #REGRESSIONS_FILENAME} next to its results.
+     *
+     * @param testDataDir a testdata directory already analyzed by {@link AnalysisEngine}.
+     */
+    public List<Change> recordAndCompare(ResultsStore store, ResultsStore.Run run,
+            File testDataDir) throws IOException {
+        File resultsFile = new File(testDataDir, RunResult.RESULTS_FILENAME);
+        if (!resultsFile.isFile()) {
+            throw new IOException("No analysis results in " + testDataDir);
+        }
+        Map<String, Map<String, double[]>> samples = RunResult.readSamples(resultsFile);
+        List<Change> changes = compare(store, run, samples);
+        store.append(run, samples);
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(testDataDir, REGRESSIONS_FILENAME));
+            writeReport(changes, fileWriter);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception ignored) { }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Record the analyzed results of a device's run and compare them with the history. Exits with
+     * 1 if there are regressions.
+     */
+    public static void main(String[] args) throws IOException {
+        String storeDir = null;
+        String commit = null;
+        String apkHash = "unknown";
+        String fingerprint = null;
+        String device = "unknown";
+        File testDataDir = null;
+        for (int i = 0; i < args.length; i++) {
+            if ("--store".equals(args[i]) && i + 1 < args.length) {
+                storeDir = args[++i];
+            } else if ("--commit".equals(args[i]) && i + 1 < args.length) {
+                commit = args[++i];
+            } else if ("--apk-hash".equals(args[i]) && i + 1 < args.length) {
+                apkHash = args[++i];
+            } else if ("--fingerprint".equals(args[i]) && i + 1 < args.length) {
+                fingerprint = args[++i];
+            } else if ("--device".equals(args[i]) && i + 1 < args.length) {
+                device = args[++i];
+            } else {
+                testDataDir = new File(args[i]);
+            }
+        }
+        if (storeDir == null || commit == null || fingerprint == null || testDataDir == null) {
+            System.err.println("Usage: RegressionDetector --store <dir> --commit <sha> "
+                    + "--fingerprint <fingerprint> [--apk-hash <hash>] [--device <serial>] "
+                    + "<testdata dir>");
+            System.exit(2);
+        }
+        if (!AnalysisEngine.TEST_DATA_DIR_NAME.equals(testDataDir.getName())) {
+            testDataDir = new File(testDataDir, AnalysisEngine.TEST_DATA_DIR_NAME);
+        }
+
+        ResultsStore store = ResultsStore.open(new File(storeDir));
+        ResultsStore.Run run = new ResultsStore.Run(commit, apkHash, fingerprint, device,
+                System.currentTimeMillis());
+        List<Change> changes = new RegressionDetector().recordAndCompare(store, run, testDataDir);
+        Writer out = new OutputStreamWriter(System.out);
+        writeReport(changes, out);
+        out.flush();
+        System.exit(hasRegressions(changes) ? 1 : 0);
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only history of test metrics on local disk, keyed by run (git commit, APK hash, device
+ * fingerprint and serial) and by series (device fingerprint, test and metric).
+ *
+ * <p>The store is a directory of:
+ * <ul>
+ *     <li>{@code runs.log}: one tab separated line per run.</li>
+ *     <li>{@code series.log}: one tab separated line per (fingerprint, test, metric).</li>
+ *     <li>{@code series/<index>.bin}: the values of one series, as fixed size records of the
+ *     run's index and the value, oldest first.</li>
+ * </ul>
+ * A baseline only reads the end of each series file, so comparing a run costs the same however
+ * long the history grows. It is limited by runs rather than values, so tests with more
+ * iterations don't get a shorter history. A run's id is reserved in {@code next.run} and its
+ * values are written before its line in {@code runs.log}, which commits it: values of a run
+ * interrupted part way are never read back, nor attributed to a later run.
+ *
+ * <p>Writers hold a lock on the store directory, so runs of several devices or builds can be
+ * recorded to the same store.
+ */
+public class ResultsStore {
+
+    private static final String RUNS_FILENAME = "runs.log";
+    private static final String SERIES_FILENAME = "series.log";
+    private static final String SERIES_DIR_NAME = "series";
+    private static final String NEXT_RUN_FILENAME = "next.run";
+    private static final String LOCK_FILENAME = "store.lock";
+    private static final String SEPARATOR = "\t";
+    private static final String CHARSET = "UTF-8";
+
+    // int run index + double value.
+    private static final int RECORD_SIZE = 4 + 8;
+    private static final int CHUNK_RECORDS = 256;
+
+    /**
+     * Identifies one run of a device's tests.
+     */
+    public static class Run {
+        private final String mCommit;
+        private final String mApkHash;
+        private final String mFingerprint;
+        private final String mDevice;
+        private final long mTimeMillis;
+
+        public Run(String commit, String apkHash, String fingerprint, String device,
+                long timeMillis) {
+            mCommit = clean(commit);
+            mApkHash = clean(apkHash);
+            mFingerprint = clean(fingerprint);
+            mDevice = clean(device);
+            mTimeMillis = timeMillis;
+        }
+
+        public String getCommit() {
+            return mCommit;
+        }
+
+        public String getApkHash() {
+            return mApkHash;
+        }
+
+        public String getFingerprint() {
+            return mFingerprint;
+        }
+
+        public String getDevice() {
+            return mDevice;
+        }
+
+        public long getTimeMillis() {
+            return mTimeMillis;
+        }
+    }
+
+    private final File mDir;
+    private final Map<Integer, Run> mRuns = new HashMap<>();
+    private final Map<String, Integer> mSeries = new HashMap<>();
+    private int mNextSeries;
+    // Sizes of the logs when loaded, to tell whether another writer appended since.
+    private long mLoadedRunsLength = -1;
+    private long mLoadedSeriesLength = -1;
+
+    private ResultsStore(File dir) {
+        mDir = dir;
+    }
+
+    /**
+     * Open (or create) the store in a directory.
+     */
+    public static ResultsStore open(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create results store " + dir);
+        }
+        ResultsStore store = new ResultsStore(dir);
+        store.load();
+        return store;
+    }
+
+    private void load() throws IOException {
+        File runsFile = new File(mDir, RUNS_FILENAME);
+        File seriesFile = new File(mDir, SERIES_FILENAME);
+        if (runsFile.length() == mLoadedRunsLength
+                && seriesFile.length() == mLoadedSeriesLength) {
+            return;
+        }
+        mLoadedRunsLength = runsFile.length();
+        mLoadedSeriesLength = seriesFile.length();
+        mRuns.clear();
+        mSeries.clear();
+        mNextSeries = 0;
+        for (String[] fields : readLines(runsFile, 6)) {
+            mRuns.put(Integer.parseInt(fields[0]), new Run(fields[1], fields[2], fields[3],
+                    fields[4], Long.parseLong(fields[5])));
+        }
+        for (String[] fields : readLines(seriesFile, 4)) {
+            int series = Integer.parseInt(fields[0]);
+            mSeries.put(seriesKey(fields[1], fields[2], fields[3]), series);
+            mNextSeries = Math.max(mNextSeries, series + 1);
+        }
+    }
+
+    public int getRunCount() {
+        return mRuns.size();
+    }
+
+    /**
+     * @return the run with the given id, or null if there is none.
+     */
+    public Run getRun(int id) {
+        return mRuns.get(id);
+    }
+
+    /**
+     * Record the values of a run: for each test, each metric's samples (one per iteration).
+     *
+     * @return the run's id.
+     */
+    public int append(Run run, Map<String, Map<String, double[]>> samplesByTest)
+            throws IOException {
+        FileChannel lockChannel = new RandomAccessFile(new File(mDir, LOCK_FILENAME), "rw")
+                .getChannel();
+        // Writers in this process wait on the monitor, other processes on the file lock.
+        synchronized (ResultsStore.class) {
+            try {
+                FileLock lock = lockChannel.lock();
+                try {
+                    // Another writer may have appended since this store was loaded.
+                    load();
+                    int runIndex = reserveRunId();
+                    for (Map.Entry<String, Map<String, double[]>> test
+                            : samplesByTest.entrySet()) {
+                        for (Map.Entry<String, double[]> metric : test.getValue().entrySet()) {
+                            int series = getOrCreateSeries(run.getFingerprint(), test.getKey(),
+                                    metric.getKey());
+                            appendValues(series, runIndex, metric.getValue());
+                        }
+                    }
+                    appendLine(new File(mDir, RUNS_FILENAME), Integer.toString(runIndex),
+                            run.getCommit(), run.getApkHash(), run.getFingerprint(),
+                            run.getDevice(), Long.toString(run.getTimeMillis()));
+                    mRuns.put(runIndex, run);
+                    mLoadedRunsLength = new File(mDir, RUNS_FILENAME).length();
+                    mLoadedSeriesLength = new File(mDir, SERIES_FILENAME).length();
+                    return runIndex;
+                } finally {
+                    lock.release();
+                }
+            } finally {
+                lockChannel.close();
+            }
+        }
+    }
+
+    /**
+     * The median value of each of the most recent runs of a series, newest run first, skipping
+     * runs of the given commit (so a run isn't compared with itself or re-runs of the same code).
+     * A run's samples of a metric, one per iteration, count once: they were measured minutes
+     * apart on the same build, so they vary much less than separate runs do.
+     *
+     * @param maxRuns the maximum number of runs to return.
+     */
+    public double[] getRecentRunMedians(String fingerprint, String test, String metric,
+            String excludedCommit, int maxRuns) throws IOException {
+        Integer series = mSeries.get(seriesKey(clean(fingerprint), clean(test), clean(metric)));
+        if (series == null || maxRuns <= 0) {
+            return new double[0];
+        }
+        String excluded = excludedCommit == null ? null : clean(excludedCommit);
+        double[] medians = new double[maxRuns];
+        int count = 0;
+        // The values of the run being read, a run's values of a series are contiguous.
+        int runIndex = -1;
+        double[] runValues = new double[16];
+        int runValueCount = 0;
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(getSeriesFile(series), "r");
+            FileChannel channel = file.getChannel();
+            // A partially written last record is ignored.
+            long records = channel.size() / RECORD_SIZE;
+            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_RECORDS * RECORD_SIZE);
+            long end = records;
+            while (end > 0 && count < maxRuns) {
+                long start = Math.max(0, end - CHUNK_RECORDS);
+                buffer.clear();
+                buffer.limit((int) (end - start) * RECORD_SIZE);
+                long position = start * RECORD_SIZE;
+                while (buffer.hasRemaining()) {
+                    int read = channel.read(buffer, position + buffer.position());
+                    if (read < 0) {
+                        throw new IOException("Unexpected end of " + getSeriesFile(series));
+                    }
+                }
+                for (int i = (int) (end - start) - 1; i >= 0 && count < maxRuns; i--) {
+                    int recordRun = buffer.getInt(i * RECORD_SIZE);
+                    if (recordRun != runIndex) {
+                        if (isBaselineRun(runIndex, excluded)) {
+                            medians[count++] = Statistics.median(
+                                    Arrays.copyOf(runValues, runValueCount));
+                            if (count == maxRuns) {
+                                break;
+                            }
+                        }
+                        runIndex = recordRun;
+                        runValueCount = 0;
+                    }
+                    if (runValueCount == runValues.length) {
+                        runValues = Arrays.copyOf(runValues, runValueCount * 2);
+                    }
+                    runValues[runValueCount++] = buffer.getDouble(i * RECORD_SIZE + 4);
+                }
+                end = start;
+            }
+        } finally {
+            if (file != null) {
+                try { file.close(); } catch (Exception ignored) { }
+            }
+        }
+        // The oldest run read is complete once the start of the series is reached.
+        if (count < maxRuns && isBaselineRun(runIndex, excluded)) {
+            medians[count++] = Statistics.median(Arrays.copyOf(runValues, runValueCount));
+        }
+        return Arrays.copyOf(medians, count);
+    }
+
+    /**
+     * Values of runs that were never committed, or of the excluded commit, aren't compared with.
+     */
+    private boolean isBaselineRun(int runIndex, String excludedCommit) {
+        Run run = mRuns.get(runIndex);
+        return run != null && !run.getCommit().equals(excludedCommit);
+    }
+
+    /**
+     * Take the next run id, so it is never reused even if this run doesn't complete.
+     */
+    private int reserveRunId() throws IOException {
+        int next = 0;
+        for (int id : mRuns.keySet()) {
+            next = Math.max(next, id + 1);
+        }
+        File nextRunFile = new File(mDir, NEXT_RUN_FILENAME);
+        List<String[]> lines = readLines(nextRunFile, 1);
+        if (!lines.isEmpty()) {
+            try {
+                next = Math.max(next, Integer.parseInt(lines.get(0)[0]));
+            } catch (NumberFormatException ignored) {
+                // Left by an interrupted writer, the committed runs tell the next id.
+            }
+        }
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(nextRunFile), CHARSET);
+            writer.append(Integer.toString(next + 1)).append('\n');
+        } finally {
+            if (writer != null) {
+                try { writer.close(); } catch (Exception ignored) { }
+            }
+        }
+        return next;
+    }
+
+    private int getOrCreateSeries(String fingerprint, String test, String metric)
+            throws IOException {
+        String key = seriesKey(fingerprint, clean(test), clean(metric));
+        Integer series = mSeries.get(key);
+        if (series == null) {
+            series = mNextSeries++;
+            appendLine(new File(mDir, SERIES_FILENAME), Integer.toString(series), fingerprint,
+                    clean(test), clean(metric));
+            mSeries.put(key, series);
+        }
+        return series;
+    }
+
+    private void appendValues(int series, int runIndex, double[] values) throws IOException {
+        File seriesFile = getSeriesFile(series);
+        if (!seriesFile.getParentFile().isDirectory() && !seriesFile.getParentFile().mkdirs()) {
+            throw new IOException("Unable to create " + seriesFile.getParentFile());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * RECORD_SIZE);
+        for (double value : values) {
+            buffer.putInt(runIndex).putDouble(value);
+        }
+        buffer.flip();
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(seriesFile, "rw");
+            FileChannel channel = file.getChannel();
+            // Drop a partial record left by an interrupted writer so records stay aligned.
+            long aligned = channel.size() / RECORD_SIZE * RECORD_SIZE;
+            channel.truncate(aligned);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, aligned + buffer.position());
+            }
+        } finally {
+            if (file != null) {
+                try { file.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+
+    private File getSeriesFile(int series) {
+        return new File(new File(mDir, SERIES_DIR_NAME), series + ".bin");
+    }
+
+    private static String seriesKey(String fingerprint, String test, String metric) {
+        return fingerprint + SEPARATOR + test + SEPARATOR + metric;
+    }
+
+    private static String clean(String field) {
+        return field.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Read the lines of a log that have the expected number of fields. A partial last line left
+     * by an interrupted writer doesn't.
+     */
+    private static List<String[]> readLines(File file, int fieldCount) throws IOException {
+        List<String[]> lines = new ArrayList<>();
+        if (!file.isFile()) {
+            return lines;
+        }
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(
+                    new InputStreamReader(new FileInputStream(file), CHARSET));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                String[] fields = line.split(SEPARATOR, -1);
+                if (fields.length == fieldCount) {
+                    lines.add(fields);
+                }
+            }
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception ignored) { }
+            }
+        }
+        return lines;
+    }
+
+    private static void appendLine(File file, String... fields) throws IOException {
+        boolean partialLine = false;
+        if (file.length() > 0) {
+            RandomAccessFile existing = new RandomAccessFile(file, "r");
+            try {
+                existing.seek(file.length() - 1);
+                partialLine = existing.read() != '\n';
+            } finally {
+                existing.close();
+            }
+        }
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file, true), CHARSET);
+            if (partialLine) {
+                // Keep an interrupted writer's partial line apart so it can be skipped.
+                writer.append('\n');
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    writer.append(SEPARATOR);
+                }
+                writer.append(fields[i]);
+            }
+            writer.append('\n');
+        } finally {
+            if (writer != null) {
+                try { writer.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@link TestResult}s of every test of a device's run, in name order.
+ */
+public class RunResult {
+
+    /**
+     * Name of the machine readable file the results are written to, in the testdata directory.
+     */
+    public static final String RESULTS_FILENAME = "analysis.results.log";
+
+    private static final String TEST_PREFIX = "test.";
+    private static final String METRIC_INFIX = ".metric.";
+    private static final Pattern MEASURED_ITERATION_PATTERN =
+            Pattern.compile("(.+)/measured_(?:([A-Za-z0-9]+)_)?\\d+");
+
+    private final List<TestResult> mTestResults;
+    private final boolean mRunComplete;
+
+    public RunResult(List<TestResult> testResults, boolean runComplete) {
+        mTestResults = new ArrayList<>(testResults);
+        Collections.sort(mTestResults, new Comparator<TestResult>() {
+            @Override
+            public int compare(TestResult lhs, TestResult rhs) {
+                return lhs.getName().compareTo(rhs.getName());
+            }
+        });
+        mRunComplete = runComplete;
+    }
+
+    public List<TestResult> getTestResults() {
+        return mTestResults;
+    }
+
+    /**
+     * @return false if the {@code TestListener} didn't record the end of the run, in which case
+     *     the results are likely incomplete.
+     */
+    public boolean isRunComplete() {
+        return mRunComplete;
+    }
+
+    public boolean isPassed() {
+        if (!mRunComplete) {
+            return false;
+        }
+        for (TestResult testResult : mTestResults) {
+            if (!testResult.isPassed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the results as {@code key=value} lines: {@code overall}, {@code runComplete}, then
+     * {@code test.<name>.status}, {@code .failure.<n>}, {@code .note.<n>} and
+     * {@code .metric.<metric>} for each test.
+     */
+    public void writeResults(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append("overall=").append(status(isPassed())).append(eol);
+        writer.append("runComplete=").append(Boolean.toString(mRunComplete)).append(eol);
+        for (TestResult testResult : mTestResults) {
+            String prefix = TEST_PREFIX + testResult.getName() + '.';
+            writer.append(prefix).append("status=").append(status(testResult.isPassed()))
+                    .append(eol);
+            List<String> failures = testResult.getFailures();
+            for (int i = 0; i < failures.size(); i++) {
+                writer.append(prefix).append("failure.").append(Integer.toString(i + 1))
+                        .append('=').append(singleLine(failures.get(i))).append(eol);
+            }
+            List<String> notes = testResult.getNotes();
+            for (int i = 0; i < notes.size(); i++) {
+                writer.append(prefix).append("note.").append(Integer.toString(i + 1))
+                        .append('=').append(singleLine(notes.get(i))).append(eol);
+            }
+            PerfMetrics metrics = testResult.getMetrics();
+            for (String name : metrics.names()) {
+                writer.append(TEST_PREFIX).append(testResult.getName()).append(METRIC_INFIX)
+                        .append(name).append('=')
+                        .append(PerfMetrics.formatValue(metrics.get(name))).append(eol);
+            }
+        }
+    }
+
+    /**
+     * Print the human readable PASS/FAIL summary of every test and the run.
+     */
+    public void printSummary(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        for (TestResult testResult : mTestResults) {
+            writer.append(eol).append("Analysing test: ").append(testResult.getName()).append(eol);
+            for (String note : testResult.getNotes()) {
+                writer.append("NOTE: ").append(note).append(eol);
+            }
+            for (String failure : testResult.getFailures()) {
+                writer.append("FAIL: ").append(failure).append(eol);
+            }
+            if (testResult.isPassed()) {
+                writer.append("PASS. No issues detected.").append(eol);
+            }
+        }
+        if (!mRunComplete) {
+            writer.append(eol).append("FAIL: Could not find file indicating the test run "
+                    + "completed. Check that the TestListener is writing files to external "
+                    + "storage").append(eol);
+        }
+        writer.append(eol).append(isPassed() ? "OVERALL: PASSED." : "OVERALL: FAILED.")
+                .append(eol);
+    }
+
+    /**
+     * Read the metrics of every test back from a results file, as samples per metric. The
+     * measured iterations of a repeated test ({@code <test>/measured_NN}) are samples of that
+     * test; its own values (the medians of the iterations) are only used for metrics no
+     * iteration has. The iterations of each variant of an A/B test
+     * ({@code <test>/measured_<variant>_NN}) are samples of {@code <test>/<variant>}.
+     */
+    public static Map<String, Map<String, double[]>> readSamples(File resultsFile)
+            throws IOException {
+        Map<String, Map<String, List<Double>>> iterationSamples = new TreeMap<>();
+        Map<String, Map<String, Double>> testValues = new TreeMap<>();
+        for (Map.Entry<String, String> entry
+                : PerfMetrics.readKeyValueFile(resultsFile).entrySet()) {
+            String key = entry.getKey();
+            int metricStart = key.lastIndexOf(METRIC_INFIX);
+            if (!key.startsWith(TEST_PREFIX) || metricStart < TEST_PREFIX.length()) {
+                continue;
+            }
+            String test = key.substring(TEST_PREFIX.length(), metricStart);
+            String metric = key.substring(metricStart + METRIC_INFIX.length());
+            double value;
+            try {
+                value = Double.parseDouble(entry.getValue());
+            } catch (NumberFormatException ignored) {
+                continue;
+            }
+            Matcher iteration = MEASURED_ITERATION_PATTERN.matcher(test);
+            if (iteration.matches()) {
+                String sampledTest = iteration.group(2) == null ? iteration.group(1)
+                        : iteration.group(1) + '/' + iteration.group(2);
+                put(iterationSamples, sampledTest, metric).add(value);
+            } else {
+                Map<String, Double> values = testValues.get(test);
+                if (values == null) {
+                    values = new TreeMap<>();
+                    testValues.put(test, values);
+                }
+                values.put(metric, value);
+            }
+        }
+        for (Map.Entry<String, Map<String, Double>> test : testValues.entrySet()) {
+            Map<String, List<Double>> iterations = iterationSamples.get(test.getKey());
+            for (Map.Entry<String, Double> value : test.getValue().entrySet()) {
+                if (iterations == null || !iterations.containsKey(value.getKey())) {
+                    put(iterationSamples, test.getKey(), value.getKey()).add(value.getValue());
+                }
+            }
+        }
+
+        Map<String, Map<String, double[]>> samples = new TreeMap<>();
+        for (Map.Entry<String, Map<String, List<Double>>> test : iterationSamples.entrySet()) {
+            Map<String, double[]> metrics = new TreeMap<>();
+            for (Map.Entry<String, List<Double>> metric : test.getValue().entrySet()) {
+                double[] values = new double[metric.getValue().size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = metric.getValue().get(i);
+                }
+                metrics.put(metric.getKey(), values);
+            }
+            samples.put(test.getKey(), metrics);
+        }
+        return samples;
+    }
+
+    private static List<Double> put(Map<String, Map<String, List<Double>>> samples, String test,
+            String metric) {
+        Map<String, List<Double>> metrics = samples.get(test);
+        if (metrics == null) {
+            metrics = new TreeMap<>();
+            samples.put(test, metrics);
+        }
+        List<Double> values = metrics.get(metric);
+        if (values == null) {
+            values = new ArrayList<>();
+            metrics.put(metric, values);
+        }
+        return values;
+    }
+
+    private static String status(boolean passed) {
+        return passed ? "PASS" : "FAIL";
+    }
+
+    private static String singleLine(String message) {
+        return message.replace('\r', ' ').replace('\n', ' ');
+    }
+}
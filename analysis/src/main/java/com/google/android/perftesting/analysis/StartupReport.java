@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Launch times of one activity, as reported by the platform: the time to initial display from the
+ * output of {@code am start -W} ({@code TotalTime}, the time until the first frame of the activity
+ * was drawn) and the time to full display from the {@link #FULLY_DRAWN_EVENT_TAG} event the
+ * platform logs when the activity calls {@code reportFullyDrawn()}. Both are measured by the
+ * platform from the moment it started the launch, so they include creating the process on a cold
+ * start.
+ *
+ * <p>The launches and their medians are written to {@link #STARTUP_FILENAME} by the on-device
+ * rule for warm starts and by the host for cold starts, which have to kill the app's process and
+ * with it the instrumentation.
+ */
+public class StartupReport {
+
+    /**
+     * Name of the per-test file the launches are written to.
+     */
+    public static final String STARTUP_FILENAME = "startup.log";
+
+    /**
+     * Event log tag of the platform's {@code reportFullyDrawn()} timings, read with
+     * {@code logcat -b events}.
+     */
+    public static final String FULLY_DRAWN_EVENT_TAG = "am_activity_fully_drawn_time";
+
+    /**
+     * API level that added {@code reportFullyDrawn()}, activities on older platforms have no time
+     * to full display.
+     */
+    public static final int FULLY_DRAWN_MIN_SDK = 19;
+
+    public static final String START_TYPE_COLD = "cold";
+    public static final String START_TYPE_WARM = "warm";
+
+    private static final String TOTAL_TIME = "TotalTime:";
+    private static final String THIS_TIME = "ThisTime:";
+
+    private final String mComponent;
+    private final String mStartType;
+    private final List<Long> mDisplayedMillis = new ArrayList<>();
+    private final List<Long> mFullyDrawnMillis = new ArrayList<>();
+
+    /**
+     * @param component the activity in the short form both {@code am} and the event log use,
+     *     e.g. {@code com.example/.MainActivity}.
+     */
+    public StartupReport(String component, String startType) {
+        mComponent = component;
+        mStartType = startType;
+    }
+
+    /**
+     * @param displayedMillis time to initial display, or -1 if the launch didn't report it.
+     * @param fullyDrawnMillis time to full display, or -1 if the activity didn't report it.
+     */
+    public void addLaunch(long displayedMillis, long fullyDrawnMillis) {
+        mDisplayedMillis.add(displayedMillis);
+        mFullyDrawnMillis.add(fullyDrawnMillis);
+    }
+
+    public int getLaunches() {
+        return mDisplayedMillis.size();
+    }
+
+    /**
+     * @return the median time to initial display of the launches that reported one, NaN if none
+     *     did.
+     */
+    public double getMedianDisplayedMillis() {
+        return Statistics.median(reported(mDisplayedMillis));
+    }
+
+    /**
+     * @return the median time to full display of the launches that reported one, NaN if none did.
+     */
+    public double getMedianFullyDrawnMillis() {
+        return Statistics.median(reported(mFullyDrawnMillis));
+    }
+
+    /**
+     * The time to initial display from the output of {@code am start -W}. Older platforms only
+     * print {@code ThisTime}, which is the same for a launch of a single activity.
+     *
+     * @return the time in milliseconds, or -1 if the output has neither, e.g. when the launch
+     *     failed or the activity was already in front.
+     */
+    public static long parseDisplayedMillis(Reader amStartOutput) throws IOException {
+        BufferedReader bufferedReader = new BufferedReader(amStartOutput);
+        long thisTime = -1;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            line = line.trim();
+            if (line.startsWith(TOTAL_TIME)) {
+                return parseMillis(line.substring(TOTAL_TIME.length()));
+            } else if (line.startsWith(THIS_TIME)) {
+                thisTime = parseMillis(line.substring(THIS_TIME.length()));
+            }
+        }
+        return thisTime;
+    }
+
+    /**
+     * The time to full display from a {@link #FULLY_DRAWN_EVENT_TAG} line of the event log, such
+     * as {@code I/am_activity_fully_drawn_time( 612): [0,52173741,com.example/.MainActivity,845]}.
+     * The fields before the component differ between platform versions, the time always follows
+     * it.
+     *
+     * @return the time in milliseconds, or -1 if the line isn't an event of the component.
+     */
+    public static long parseFullyDrawnMillis(String eventLine, String component) {
+        int start = eventLine.indexOf('[');
+        int end = eventLine.lastIndexOf(']');
+        if (!eventLine.contains(FULLY_DRAWN_EVENT_TAG) || start < 0 || end < start) {
+            return -1;
+        }
+        String[] fields = eventLine.substring(start + 1, end).split(",");
+        for (int i = 0; i < fields.length - 1; i++) {
+            if (fields[i].trim().equals(component)) {
+                return parseMillis(fields[i + 1]);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Write the launches as {@code key=value} lines: the component, start type and number of
+     * launches, {@code launch.<n>.displayedMillis} and {@code launch.<n>.fullyDrawnMillis} of each
+     * launch that reported them, and the medians.
+     */
+    public void write(Writer writer) throws IOException {
+        String eol = System.getProperty("line.separator");
+        writer.append("component=").append(mComponent).append(eol);
+        writer.append("startType=").append(mStartType).append(eol);
+        writer.append("launches=").append(Integer.toString(getLaunches())).append(eol);
+        for (int i = 0; i < getLaunches(); i++) {
+            String prefix = "launch." + (i + 1) + '.';
+            if (mDisplayedMillis.get(i) >= 0) {
+                writer.append(prefix).append("displayedMillis=")
+                        .append(Long.toString(mDisplayedMillis.get(i))).append(eol);
+            }
+            if (mFullyDrawnMillis.get(i) >= 0) {
+                writer.append(prefix).append("fullyDrawnMillis=")
+                        .append(Long.toString(mFullyDrawnMillis.get(i))).append(eol);
+            }
+        }
+        if (!Double.isNaN(getMedianDisplayedMillis())) {
+            writer.append("p50DisplayedMillis=")
+                    .append(FrameHistogram.formatDecimal(getMedianDisplayedMillis())).append(eol);
+        }
+        if (!Double.isNaN(getMedianFullyDrawnMillis())) {
+            writer.append("p50FullyDrawnMillis=")
+                    .append(FrameHistogram.formatDecimal(getMedianFullyDrawnMillis())).append(eol);
+        }
+    }
+
+    /**
+     * Record the medians as the test's {@link PerfMetrics#TIME_TO_INITIAL_DISPLAY_MILLIS} and
+     * {@link PerfMetrics#TIME_TO_FULL_DISPLAY_MILLIS}, each only if some launch reported it.
+     */
+    public void recordMetrics(File testDir) throws IOException {
+        if (!Double.isNaN(getMedianDisplayedMillis())) {
+            PerfMetrics.append(testDir, PerfMetrics.TIME_TO_INITIAL_DISPLAY_MILLIS,
+                    getMedianDisplayedMillis());
+        }
+        if (!Double.isNaN(getMedianFullyDrawnMillis())) {
+            PerfMetrics.append(testDir, PerfMetrics.TIME_TO_FULL_DISPLAY_MILLIS,
+                    getMedianFullyDrawnMillis());
+        }
+    }
+
+    private static double[] reported(List<Long> millis) {
+        int count = 0;
+        for (long value : millis) {
+            if (value >= 0) {
+                count++;
+            }
+        }
+        double[] values = new double[count];
+        int index = 0;
+        for (long value : millis) {
+            if (value >= 0) {
+                values[index++] = value;
+            }
+        }
+        return values;
+    }
+
+    private static long parseMillis(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ignored) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Robust statistics for small samples of repeated measurements. Performance measurements are
+ * rarely normally distributed, so everything here is based on medians, ranks and resampling rather
+ * than means and standard deviations.
+ */
+public class Statistics {
+
+    public static final int DEFAULT_BOOTSTRAP_RESAMPLES = 2000;
+
+    // A fixed seed keeps reports reproducible for the same samples.
+    private static final long BOOTSTRAP_SEED = 0x5EED;
+
+    // Scale the median and the mean absolute deviation to the standard deviation of a normal
+    // distribution.
+    private static final double MAD_TO_STANDARD_DEVIATION = 1.4826;
+    private static final double MEAN_DEVIATION_TO_STANDARD_DEVIATION = Math.sqrt(Math.PI / 2);
+
+    // Keeps the exact signed-rank distribution's counts exact in a double.
+    private static final int MAX_EXACT_WILCOXON_PAIRS = 50;
+
+    private static final int MAX_CONTINUED_FRACTION_TERMS = 300;
+    private static final double CONTINUED_FRACTION_EPSILON = 1e-12;
+    private static final double[] LANCZOS_COEFFICIENTS = {
+            76.18009172947146, -86.50532032941677, 24.01409824083091, -1.231739572450155,
+            0.1208650973866179e-2, -0.5395239384953e-5
+    };
+
+    private Statistics() { }
+
+    public static double median(double[] samples) {
+        if (samples.length == 0) {
+            return Double.NaN;
+        }
+        double[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sortedMedian(sorted, sorted.length);
+    }
+
+    /**
+     * Median absolute deviation from the median, unscaled.
+     */
+    public static double medianAbsoluteDeviation(double[] samples) {
+        if (samples.length == 0) {
+            return Double.NaN;
+        }
+        double median = median(samples);
+        double[] deviations = new double[samples.length];
+        for (int i = 0; i < samples.length; i++) {
+            deviations[i] = Math.abs(samples[i] - median);
+        }
+        return median(deviations);
+    }
+
+    /**
+     * Percentile bootstrap confidence interval of the median.
+     *
+     * @param confidence e.g. 0.95 for a 95% interval.
+     * @return {@code {low, high}}.
+     */
+    public static double[] bootstrapMedianInterval(double[] samples, double confidence,
+            int resamples) {
+        if (samples.length == 0) {
+            return new double[] {Double.NaN, Double.NaN};
+        }
+        Random random = new Random(BOOTSTRAP_SEED);
+        double[] medians = new double[resamples];
+        double[] resample = new double[samples.length];
+        for (int r = 0; r < resamples; r++) {
+            for (int i = 0; i < samples.length; i++) {
+                resample[i] = samples[random.nextInt(samples.length)];
+            }
+            Arrays.sort(resample);
+            medians[r] = sortedMedian(resample, resample.length);
+        }
+        Arrays.sort(medians);
+        double tail = (1 - confidence) / 2;
+        int low = (int) Math.floor(tail * (resamples - 1));
+        int high = (int) Math.ceil((1 - tail) * (resamples - 1));
+        return new double[] {medians[low], medians[high]};
+    }
+
+    /**
+     * One-sided test of whether a new measurement is higher than a sample of earlier ones, such as
+     * the medians of past runs, can account for. The sample's spread is estimated from its median
+     * absolute deviation, or from its mean absolute deviation when more than half of it is equal,
+     * scaled to a standard deviation. The measurement's distance from the sample's median is then
+     * compared with a Student t distribution with n - 1 degrees of freedom, widened by
+     * sqrt(1 + 1/n) for the uncertainty of the median itself.
+     *
+     * <p>Unlike a rank test, this can find a single measurement significant against a small
+     * sample.
+     *
+     * @return the p-value, 0 if the sample has no spread at all and {@code x} is above it, or NaN
+     *     for a sample of fewer than two values.
+     */
+    public static double predictionGreaterPValue(double[] sample, double x) {
+        int n = sample.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double median = median(sample);
+        double scale = MAD_TO_STANDARD_DEVIATION * medianAbsoluteDeviation(sample);
+        if (scale == 0) {
+            double sum = 0;
+            for (double value : sample) {
+                sum += Math.abs(value - median);
+            }
+            scale = MEAN_DEVIATION_TO_STANDARD_DEVIATION * sum / n;
+        }
+        if (scale == 0) {
+            return x > median ? 0 : 1;
+        }
+        double t = (x - median) / (scale * Math.sqrt(1 + 1.0 / n));
+        return studentTUpperTail(t, n - 1);
+    }
+
+    /**
+     * P(T > t) of Student's t distribution with the given degrees of freedom.
+     */
+    public static double studentTUpperTail(double t, double degreesOfFreedom) {
+        double tail = 0.5 * regularizedIncompleteBeta(
+                degreesOfFreedom / (degreesOfFreedom + t * t), degreesOfFreedom / 2, 0.5);
+        return t >= 0 ? tail : 1 - tail;
+    }
+
+    /**
+     * Benjamini-Hochberg adjustment of p-values for testing many hypotheses at once, such as
+     * every metric of every test of a run. Comparing the adjusted values to a threshold bounds the
+     * expected fraction of false discoveries rather than the chance of each one.
+     */
+    public static double[] benjaminiHochberg(double[] pValues) {
+        int count = pValues.length;
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        final double[] values = pValues;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(values[lhs], values[rhs]);
+            }
+        });
+        double[] adjusted = new double[count];
+        double running = 1;
+        for (int rank = count; rank >= 1; rank--) {
+            int index = order[rank - 1];
+            running = Math.min(running, pValues[index] * count / rank);
+            adjusted[index] = running;
+        }
+        return adjusted;
+    }
+
+    /**
+     * Theil-Sen estimate of the slope of y over x: the median of the slopes between every pair of
+     * points. Unlike least squares it isn't pulled by a few outliers such as a GC in the middle of
+     * a series.
+     */
+    public static double theilSenSlope(double[] x, double[] y) {
+        int count = Math.min(x.length, y.length);
+        double[] slopes = new double[count * (count - 1) / 2];
+        int slopeCount = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (x[j] != x[i]) {
+                    slopes[slopeCount++] = (y[j] - y[i]) / (x[j] - x[i]);
+                }
+            }
+        }
+        if (slopeCount == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(slopes, 0, slopeCount);
+        return sortedMedian(slopes, slopeCount);
+    }
+
+    /**
+     * Kendall's tau-b rank correlation of x and y, from -1 to 1. A value close to 1 means y grows
+     * almost every time x does, whatever the shape of the growth.
+     */
+    public static double kendallTau(double[] x, double[] y) {
+        int count = Math.min(x.length, y.length);
+        long concordant = 0;
+        long discordant = 0;
+        long tiedX = 0;
+        long tiedY = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                double dx = Math.signum(x[j] - x[i]);
+                double dy = Math.signum(y[j] - y[i]);
+                if (dx == 0 && dy == 0) {
+                    continue;
+                } else if (dx == 0) {
+                    tiedX++;
+                } else if (dy == 0) {
+                    tiedY++;
+                } else if (dx == dy) {
+                    concordant++;
+                } else {
+                    discordant++;
+                }
+            }
+        }
+        double denominator = Math.sqrt((double) (concordant + discordant + tiedX)
+                * (concordant + discordant + tiedY));
+        return denominator == 0 ? Double.NaN : (concordant - discordant) / denominator;
+    }
+
+    /**
+     * Two-sided Wilcoxon signed-rank test of whether paired differences are centred on zero.
+     * Zero differences are dropped and tied magnitudes share their average rank. The p-value is
+     * exact, ties included, for up to {@link #MAX_EXACT_WILCOXON_PAIRS} differences, beyond that
+     * it uses the normal approximation with the tie correction and a continuity correction.
+     *
+     * <p>With n differences the smallest possible p-value is 2 / 2^n, so fewer than 6 pairs can
+     * never be significant at the 5% level.
+     *
+     * @return the p-value, 1 if every difference is zero.
+     */
+    public static double wilcoxonSignedRankPValue(double[] differences) {
+        int n = 0;
+        for (double difference : differences) {
+            if (difference != 0) {
+                n++;
+            }
+        }
+        if (n == 0) {
+            return 1;
+        }
+        final double[] magnitudes = new double[n];
+        boolean[] positive = new boolean[n];
+        int index = 0;
+        for (double difference : differences) {
+            if (difference != 0) {
+                magnitudes[index] = Math.abs(difference);
+                positive[index++] = difference > 0;
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(magnitudes[lhs], magnitudes[rhs]);
+            }
+        });
+
+        // Ranks are doubled so the average ranks of ties are integers too.
+        int[] doubledRanks = new int[n];
+        int doubledPositiveSum = 0;
+        // Sum of t^3 - t over groups of t tied magnitudes.
+        double tieCorrection = 0;
+        for (int start = 0; start < n; ) {
+            int end = start + 1;
+            while (end < n && magnitudes[order[end]] == magnitudes[order[start]]) {
+                end++;
+            }
+            for (int i = start; i < end; i++) {
+                doubledRanks[i] = start + 1 + end;
+                if (positive[order[i]]) {
+                    doubledPositiveSum += start + 1 + end;
+                }
+            }
+            double tied = end - start;
+            tieCorrection += tied * tied * tied - tied;
+            start = end;
+        }
+
+        int doubledMaxSum = n * (n + 1);
+        if (n <= MAX_EXACT_WILCOXON_PAIRS) {
+            // Each rank is positive or negative with probability 1/2 under the null hypothesis,
+            // count the sign assignments giving each rank sum.
+            double[] counts = new double[doubledMaxSum + 1];
+            counts[0] = 1;
+            for (int doubledRank : doubledRanks) {
+                for (int sum = doubledMaxSum; sum >= doubledRank; sum--) {
+                    counts[sum] += counts[sum - doubledRank];
+                }
+            }
+            // The distribution is symmetric, take the tail on the observed side of the mean.
+            int observed = Math.min(doubledPositiveSum, doubledMaxSum - doubledPositiveSum);
+            double tail = 0;
+            for (int sum = 0; sum <= observed; sum++) {
+                tail += counts[sum];
+            }
+            return Math.min(1, 2 * tail / Math.pow(2, n));
+        }
+        double positiveRankSum = doubledPositiveSum / 2.0;
+        double mean = n * (n + 1) / 4.0;
+        double variance = n * (n + 1) * (2 * n + 1) / 24.0 - tieCorrection / 48;
+        if (variance <= 0) {
+            return 1;
+        }
+        double z = (Math.abs(positiveRankSum - mean) - 0.5) / Math.sqrt(variance);
+        return Math.min(1, 2 * upperNormalTail(z));
+    }
+
+    /**
+     * I_x(a, b), evaluated with the continued fraction of Numerical Recipes' betai.
+     */
+    private static double regularizedIncompleteBeta(double x, double a, double b) {
+        if (x <= 0) {
+            return 0;
+        }
+        if (x >= 1) {
+            return 1;
+        }
+        double front = Math.exp(logGamma(a + b) - logGamma(a) - logGamma(b) + a * Math.log(x)
+                + b * Math.log(1 - x));
+        // The continued fraction converges quickly on this side of the mean, use symmetry past it.
+        if (x < (a + 1) / (a + b + 2)) {
+            return front * betaContinuedFraction(x, a, b) / a;
+        }
+        return 1 - front * betaContinuedFraction(1 - x, b, a) / b;
+    }
+
+    /**
+     * Modified Lentz evaluation of the continued fraction for the incomplete beta function.
+     */
+    private static double betaContinuedFraction(double x, double a, double b) {
+        double sum = a + b;
+        double c = 1;
+        double d = clampAwayFromZero(1 - sum * x / (a + 1));
+        d = 1 / d;
+        double result = d;
+        for (int m = 1; m <= MAX_CONTINUED_FRACTION_TERMS; m++) {
+            int m2 = 2 * m;
+            double even = m * (b - m) * x / ((a - 1 + m2) * (a + m2));
+            d = 1 / clampAwayFromZero(1 + even * d);
+            c = clampAwayFromZero(1 + even / c);
+            result *= d * c;
+            double odd = -(a + m) * (sum + m) * x / ((a + m2) * (a + 1 + m2));
+            d = 1 / clampAwayFromZero(1 + odd * d);
+            c = clampAwayFromZero(1 + odd / c);
+            double delta = d * c;
+            result *= delta;
+            if (Math.abs(delta - 1) < CONTINUED_FRACTION_EPSILON) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static double clampAwayFromZero(double value) {
+        return Math.abs(value) < Double.MIN_NORMAL ? Double.MIN_NORMAL : value;
+    }
+
+    /**
+     * ln(Gamma(x)) for x > 0, Lanczos approximation as in Numerical Recipes' gammln.
+     */
+    private static double logGamma(double x) {
+        double y = x;
+        double tmp = x + 5.5;
+        tmp -= (x + 0.5) * Math.log(tmp);
+        double series = 1.000000000190015;
+        for (double coefficient : LANCZOS_COEFFICIENTS) {
+            series += coefficient / ++y;
+        }
+        return -tmp + Math.log(2.5066282746310005 * series / x);
+    }
+
+    /**
+     * P(Z > z) of the standard normal distribution.
+     */
+    private static double upperNormalTail(double z) {
+        return 0.5 * erfc(z / Math.sqrt(2));
+    }
+
+    /**
+     * Complementary error function, accurate to about 1e-7 (Numerical Recipes' erfcc).
+     */
+    private static double erfc(double x) {
+        double z = Math.abs(x);
+        double t = 1 / (1 + 0.5 * z);
+        double result = t * Math.exp(-z * z - 1.26551223 + t * (1.00002368 + t * (0.37409196
+                + t * (0.09678418 + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398
+                + t * (1.48851587 + t * (-0.82215223 + t * 0.17087277)))))))));
+        return x >= 0 ? result : 2 - result;
+    }
+
+    private static double sortedMedian(double[] sorted, int length) {
+        int middle = length / 2;
+        if (length % 2 == 1) {
+            return sorted[middle];
+        }
+        return (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of analyzing the files of one test (or of the test run itself). Thread safe, since the
+ * analyzers of a test run concurrently.
+ */
+public class TestResult {
+
+    private final String mName;
+    private final PerfMetrics mMetrics = new PerfMetrics();
+    private final List<String> mFailures = new ArrayList<>();
+    private final List<String> mNotes = new ArrayList<>();
+
+    public TestResult(String name) {
+        mName = name;
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    public synchronized void putMetric(String name, double value) {
+        mMetrics.put(name, value);
+    }
+
+    /**
+     * Record a reason for this test to fail.
+     */
+    public synchronized void fail(String message) {
+        mFailures.add(message);
+    }
+
+    /**
+     * Record information worth printing that doesn't affect the outcome.
+     */
+    public synchronized void note(String message) {
+        mNotes.add(message);
+    }
+
+    public synchronized boolean isPassed() {
+        return mFailures.isEmpty();
+    }
+
+    public synchronized PerfMetrics getMetrics() {
+        PerfMetrics copy = new PerfMetrics();
+        for (String name : mMetrics.names()) {
+            copy.put(name, mMetrics.get(name));
+        }
+        return copy;
+    }
+
+    public synchronized List<String> getFailures() {
+        List<String> failures = new ArrayList<>(mFailures);
+        Collections.sort(failures);
+        return failures;
+    }
+
+    public synchronized List<String> getNotes() {
+        List<String> notes = new ArrayList<>(mNotes);
+        Collections.sort(notes);
+        return notes;
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class ColdStartsTest {
+
+    private static final String COMPONENT = "com.google.android.perftesting/.MainActivity";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void fullDisplayOnlyBudgetedWhereReported() {
+        PerfBudget kitKat = ColdStarts.getBudget(StartupReport.FULLY_DRAWN_MIN_SDK);
+        assertEquals(ColdStarts.MAX_TIME_TO_FULL_DISPLAY_MILLIS,
+                kitKat.getLimits().get(PerfMetrics.TIME_TO_FULL_DISPLAY_MILLIS), 0);
+
+        PerfBudget jellyBean = ColdStarts.getBudget(StartupReport.FULLY_DRAWN_MIN_SDK - 1);
+        assertEquals(ColdStarts.MAX_TIME_TO_INITIAL_DISPLAY_MILLIS,
+                jellyBean.getLimits().get(PerfMetrics.TIME_TO_INITIAL_DISPLAY_MILLIS), 0);
+        assertFalse(jellyBean.getLimits().containsKey(PerfMetrics.TIME_TO_FULL_DISPLAY_MILLIS));
+    }
+
+    @Test
+    public void writesReportMetricsAndBudget() throws IOException {
+        StartupReport report = new StartupReport(COMPONENT, StartupReport.START_TYPE_COLD);
+        report.addLaunch(400, -1);
+        report.addLaunch(1200, -1);
+        report.addLaunch(600, -1);
+        File testDir = new File(mTemporaryFolder.getRoot(),
+                ColdStarts.getTestDirs().get("MainActivity"));
+
+        List<String> violations = ColdStarts.write(report, testDir, 27);
+
+        PerfMetrics metrics = PerfMetrics.readTestDir(testDir);
+        assertEquals(600, metrics.get(PerfMetrics.TIME_TO_INITIAL_DISPLAY_MILLIS), 0);
+        assertTrue(read(testDir, StartupReport.STARTUP_FILENAME).contains("startType=cold"));
+        String budget = read(testDir, PerfBudget.BUDGET_FILENAME);
+        assertTrue(budget, budget.contains("timeToInitialDisplayMillis=PASS 600/1000"));
+        assertTrue(budget, budget.contains("timeToFullDisplayMillis=FAIL missing/2000"));
+        assertEquals(1, violations.size());
+    }
+
+    @Test
+    public void unknownSdkChecksEveryBudget() {
+        assertEquals(27, ColdStarts.parseSdk("27\n"));
+        assertEquals(Integer.MAX_VALUE, ColdStarts.parseSdk(""));
+    }
+
+    private static String read(File testDir, String filename) throws IOException {
+        return new String(Files.readAllBytes(new File(testDir, filename).toPath()),
+                StandardCharsets.UTF_8);
+    }
+}
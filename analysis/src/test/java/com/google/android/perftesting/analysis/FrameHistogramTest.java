@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+public class FrameHistogramTest {
+
+    /**
+     * Percentiles are reported as the upper bound of a bucket, 32 buckets per power of two.
+     */
+    private static final double RELATIVE_ERROR = 1 / 32.0;
+
+    @Test
+    public void percentilesOfUniformFrames() {
+        FrameHistogram histogram = new FrameHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+
+        assertEquals(100, histogram.getFrameCount());
+        assertPercentile(50, histogram.getPercentileMillis(50));
+        assertPercentile(95, histogram.getPercentileMillis(95));
+        assertPercentile(99, histogram.getPercentileMillis(99));
+        assertEquals(100, histogram.getPercentileMillis(100), 0);
+        assertEquals(100000, histogram.getMaxMicros());
+        assertEquals(50.5, histogram.getMeanMillis(), 1e-9);
+    }
+
+    @Test
+    public void percentileIsCappedAtExactMaximum() {
+        FrameHistogram histogram = new FrameHistogram();
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(16001));
+
+        assertEquals(16001, histogram.getPercentileMicros(50));
+    }
+
+    @Test
+    public void smallDurationsAreExact() {
+        FrameHistogram histogram = new FrameHistogram();
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(5));
+        histogram.recordNanos(TimeUnit.MICROSECONDS.toNanos(20));
+
+        assertEquals(5, histogram.getPercentileMicros(50));
+        assertEquals(20, histogram.getPercentileMicros(99));
+    }
+
+    @Test
+    public void countsFramesOverThresholds() {
+        FrameHistogram histogram = new FrameHistogram();
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(16));
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(20));
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(40));
+        histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(800));
+        histogram.recordNanos(-1);
+
+        assertEquals(5, histogram.getFrameCount());
+        assertEquals(3, histogram.getSlowFrames());
+        assertEquals(2, histogram.getVerySlowFrames());
+        assertEquals(1, histogram.getFrozenFrames());
+        assertEquals(60, histogram.getSlowFramesPercent(), 1e-9);
+    }
+
+    @Test
+    public void skipsFlaggedFrames() {
+        FrameHistogram histogram = new FrameHistogram();
+        long[] frame = new long[FrameStatsParser.COLUMN_COUNT];
+        frame[FrameStatsParser.INTENDED_VSYNC] = TimeUnit.MILLISECONDS.toNanos(100);
+        frame[FrameStatsParser.FRAME_COMPLETED] = TimeUnit.MILLISECONDS.toNanos(120);
+        histogram.onFrame(frame);
+        frame[FrameStatsParser.FLAGS] = 1;
+        histogram.onFrame(frame);
+
+        assertEquals(1, histogram.getFrameCount());
+        assertEquals(20000, histogram.getMaxMicros());
+    }
+
+    @Test
+    public void summaryRoundTrips() throws IOException {
+        FrameHistogram histogram = new FrameHistogram();
+        for (int millis = 1; millis <= 100; millis++) {
+            histogram.recordNanos(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+        histogram.recordNanos(TimeUnit.SECONDS.toNanos(1));
+        StringWriter summary = new StringWriter();
+        histogram.writeSummary(summary);
+
+        FrameHistogram read = FrameHistogram.read(new StringReader(summary.toString()));
+
+        assertEquals(histogram.getFrameCount(), read.getFrameCount());
+        assertEquals(histogram.getMaxMicros(), read.getMaxMicros());
+        assertEquals(histogram.getSlowFrames(), read.getSlowFrames());
+        assertEquals(histogram.getFrozenFrames(), read.getFrozenFrames());
+        assertEquals(histogram.getMeanMillis(), read.getMeanMillis(), 1e-9);
+        for (double percentile : new double[] {50, 90, 95, 99}) {
+            assertEquals(histogram.getPercentileMicros(percentile),
+                    read.getPercentileMicros(percentile));
+        }
+    }
+
+    @Test
+    public void addMergesHistograms() {
+        FrameHistogram first = new FrameHistogram();
+        FrameHistogram second = new FrameHistogram();
+        first.recordNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        second.recordNanos(TimeUnit.MILLISECONDS.toNanos(30));
+        first.add(second);
+
+        assertEquals(2, first.getFrameCount());
+        assertEquals(30000, first.getMaxMicros());
+        assertEquals(1, first.getSlowFrames());
+    }
+
+    private static void assertPercentile(double expectedMillis, double actualMillis) {
+        assertEquals(expectedMillis, actualMillis, expectedMillis * RELATIVE_ERROR);
+    }
+}
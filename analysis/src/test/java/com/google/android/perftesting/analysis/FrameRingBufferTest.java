@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameRingBufferTest {
+
+    @Test
+    public void drainsFramesOldestFirst() {
+        FrameRingBuffer buffer = new FrameRingBuffer(4);
+        buffer.record(frame(1));
+        buffer.record(frame(2));
+        buffer.record(frame(3));
+
+        assertEquals(3, buffer.size());
+        assertEquals(listOf(1, 2, 3), drain(buffer));
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getOverwrittenFrames());
+    }
+
+    @Test
+    public void overwritesOldestFramesWhenFull() {
+        FrameRingBuffer buffer = new FrameRingBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.record(frame(i));
+        }
+
+        assertEquals(3, buffer.size());
+        assertEquals(2, buffer.getOverwrittenFrames());
+        assertEquals(listOf(3, 4, 5), drain(buffer));
+    }
+
+    @Test
+    public void recordsAgainAfterDraining() {
+        FrameRingBuffer buffer = new FrameRingBuffer(2);
+        buffer.record(frame(1));
+        buffer.record(frame(2));
+        buffer.record(frame(3));
+        drain(buffer);
+        buffer.record(frame(4));
+
+        assertEquals(listOf(4), drain(buffer));
+        // Frames lost before draining stay counted until the buffer is cleared.
+        assertEquals(1, buffer.getOverwrittenFrames());
+    }
+
+    @Test
+    public void clearResetsFramesAndCounters() {
+        FrameRingBuffer buffer = new FrameRingBuffer(1);
+        buffer.record(frame(1));
+        buffer.record(frame(2));
+        buffer.addPlatformDroppedFrames(7);
+        buffer.clear();
+
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getOverwrittenFrames());
+        assertEquals(0, buffer.getPlatformDroppedFrames());
+        assertEquals(listOf(), drain(buffer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new FrameRingBuffer(0);
+    }
+
+    /**
+     * A frame row with every column set to {@code value}.
+     */
+    private static long[] frame(long value) {
+        long[] frame = new long[FrameStatsParser.COLUMN_COUNT];
+        for (int i = 0; i < frame.length; i++) {
+            frame[i] = value;
+        }
+        return frame;
+    }
+
+    private static List<Long> drain(FrameRingBuffer buffer) {
+        final List<Long> vsyncs = new ArrayList<>();
+        buffer.drainTo(new FrameStatsParser.FrameHandler() {
+            @Override
+            public void onFrame(long[] frame) {
+                assertEquals(frame[0], frame[FrameStatsParser.COLUMN_COUNT - 1]);
+                vsyncs.add(frame[FrameStatsParser.INTENDED_VSYNC]);
+            }
+        });
+        return vsyncs;
+    }
+
+    private static List<Long> listOf(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
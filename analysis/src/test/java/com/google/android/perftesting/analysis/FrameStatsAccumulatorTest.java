@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameStatsAccumulatorTest {
+
+    private static final String MAIN_WINDOW = "Window: com.example/com.example.MainActivity";
+    private static final String POPUP_WINDOW = "Window: PopupWindow:1234";
+
+    private final List<Long> mCaptured = new ArrayList<>();
+
+    private final FrameStatsAccumulator mAccumulator = new FrameStatsAccumulator(
+            new FrameStatsParser.FrameHandler() {
+                @Override
+                public void onFrame(long[] frame) {
+                    mCaptured.add(frame[FrameStatsParser.INTENDED_VSYNC]);
+                }
+            }, null);
+
+    @Test
+    public void deduplicatesOverlappingPolls() throws IOException {
+        poll(10, MAIN_WINDOW, 1, 2, 3);
+        poll(10, MAIN_WINDOW, 2, 3, 4, 5);
+
+        assertEquals(2, mAccumulator.getPolls());
+        assertEquals(0, mAccumulator.getPollsWithoutOverlap());
+        assertEquals(listOf(1, 2, 3, 4, 5), mCaptured);
+        assertEquals(5, mAccumulator.getFramesCaptured());
+        assertEquals(10, mAccumulator.getFramesRendered());
+        assertEquals(5, mAccumulator.getFramesMissed());
+    }
+
+    @Test
+    public void countsPollsThatMissedFrames() throws IOException {
+        poll(3, MAIN_WINDOW, 1, 2, 3);
+        // Frames 4 and 5 fell out of the platform's buffer before this poll.
+        poll(8, MAIN_WINDOW, 6, 7, 8);
+
+        assertEquals(1, mAccumulator.getPollsWithoutOverlap());
+        assertEquals(6, mAccumulator.getFramesCaptured());
+        assertEquals(2, mAccumulator.getFramesMissed());
+    }
+
+    @Test
+    public void tracksWindowsByNameAcrossPolls() throws IOException {
+        poll(-1, POPUP_WINDOW + "\n" + block(100, 101) + MAIN_WINDOW, 1, 2);
+        // The popup is gone, so the main window's frames are in the first block now.
+        poll(-1, MAIN_WINDOW, 2, 3);
+        // The popup is back in the second block, where the main window's frames were before.
+        poll(-1, MAIN_WINDOW + "\n" + block(3, 4) + POPUP_WINDOW, 101, 102);
+
+        assertEquals(listOf(100, 101, 1, 2, 3, 4, 102), mCaptured);
+        assertEquals(0, mAccumulator.getPollsWithoutOverlap());
+        assertEquals(-1, mAccumulator.getFramesMissed());
+    }
+
+    @Test
+    public void newWindowDoesNotCountAsMissedFrames() throws IOException {
+        poll(-1, MAIN_WINDOW, 1, 2);
+        poll(-1, MAIN_WINDOW + "\n" + block(2, 3) + POPUP_WINDOW, 50, 51);
+
+        assertEquals(0, mAccumulator.getPollsWithoutOverlap());
+        assertEquals(listOf(1, 2, 3, 50, 51), mCaptured);
+    }
+
+    @Test
+    public void frameLogIsAFramestatsDump() throws IOException {
+        StringWriter frameLog = new StringWriter();
+        FrameStatsAccumulator accumulator = new FrameStatsAccumulator(null, frameLog);
+        accumulator.addPoll(new StringReader(MAIN_WINDOW + "\n" + block(1, 2)
+                + "Total frames rendered: 4\nJanky frames: 1 (25.00%)\n"));
+        accumulator.addPoll(new StringReader(MAIN_WINDOW + "\n" + block(2, 3)));
+        accumulator.finish();
+
+        final List<Long> vsyncs = new ArrayList<>();
+        FrameStatsParser parser = new FrameStatsParser(new FrameStatsParser.FrameHandler() {
+            @Override
+            public void onFrame(long[] frame) {
+                vsyncs.add(frame[FrameStatsParser.INTENDED_VSYNC]);
+            }
+        });
+        parser.parse(new StringReader(frameLog.toString()));
+
+        assertEquals(listOf(1, 2, 3), vsyncs);
+        assertEquals(1, parser.getProfileDataBlocks());
+        assertEquals(4, parser.getTotalFrames());
+        assertEquals(25, parser.getJankyFramesPercent(), 1e-9);
+    }
+
+    /**
+     * Add a poll whose last block, preceded by {@code header}, has frames with the given
+     * intended vsyncs.
+     *
+     * @param totalFrames the platform's frame counter, left out if negative.
+     */
+    private void poll(int totalFrames, String header, long... vsyncs) throws IOException {
+        StringBuilder dump = new StringBuilder(header).append('\n').append(block(vsyncs));
+        if (totalFrames >= 0) {
+            dump.append("Total frames rendered: ").append(totalFrames).append('\n');
+        }
+        mAccumulator.addPoll(new StringReader(dump.toString()));
+    }
+
+    private static String block(long... vsyncs) {
+        StringBuilder block = new StringBuilder(FrameStatsParser.PROFILE_DATA_MARKER).append('\n')
+                .append("Flags,IntendedVsync,FrameCompleted,\n");
+        for (long vsync : vsyncs) {
+            block.append("0,").append(vsync).append(',').append(vsync + 1).append(",\n");
+        }
+        return block.append(FrameStatsParser.PROFILE_DATA_MARKER).append('\n').toString();
+    }
+
+    private static List<Long> listOf(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
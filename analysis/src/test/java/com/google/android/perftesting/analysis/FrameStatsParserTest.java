@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameStatsParserTest {
+
+    private final List<long[]> mFrames = new ArrayList<>();
+    private final List<String> mWindows = new ArrayList<>();
+
+    private FrameStatsParser mParser;
+
+    private final FrameStatsParser.FrameHandler mHandler = new FrameStatsParser.FrameHandler() {
+        @Override
+        public void onFrame(long[] frame) {
+            mFrames.add(frame.clone());
+            mWindows.add(mParser.getWindowName());
+        }
+    };
+
+    @Test
+    public void parsesRowsAndSummary() throws IOException {
+        parse("Total frames rendered: 42",
+                "Janky frames: 3 (7.14%)",
+                FrameStatsParser.PROFILE_DATA_MARKER,
+                "Flags,IntendedVsync,Vsync,HandleInputStart,FrameCompleted,",
+                "0,1000,1000,1100,17000,",
+                "1,2000,2000,2100,40000,",
+                FrameStatsParser.PROFILE_DATA_MARKER);
+
+        assertEquals(42, mParser.getTotalFrames());
+        assertEquals(3, mParser.getJankyFrames());
+        assertEquals(7.14, mParser.getJankyFramesPercent(), 1e-9);
+        assertEquals(1, mParser.getProfileDataBlocks());
+        assertEquals(2, mParser.getFramesParsed());
+        assertEquals(1000, mFrames.get(0)[FrameStatsParser.INTENDED_VSYNC]);
+        assertEquals(1100, mFrames.get(0)[FrameStatsParser.HANDLE_INPUT_START]);
+        assertEquals(17000, mFrames.get(0)[FrameStatsParser.FRAME_COMPLETED]);
+        assertEquals(1, mFrames.get(1)[FrameStatsParser.FLAGS]);
+    }
+
+    @Test
+    public void mapsColumnsByName() throws IOException {
+        // Columns out of order and one the parser doesn't know, as a newer platform may print.
+        parse(FrameStatsParser.PROFILE_DATA_MARKER,
+                "FrameCompleted,GpuCompleted,IntendedVsync,Flags,",
+                "9000,9500,1000,0,",
+                FrameStatsParser.PROFILE_DATA_MARKER);
+
+        long[] expected = new long[FrameStatsParser.COLUMN_COUNT];
+        expected[FrameStatsParser.INTENDED_VSYNC] = 1000;
+        expected[FrameStatsParser.FRAME_COMPLETED] = 9000;
+        assertArrayEquals(expected, mFrames.get(0));
+    }
+
+    @Test
+    public void skipsMalformedRows() throws IOException {
+        parse(FrameStatsParser.PROFILE_DATA_MARKER,
+                "Flags,IntendedVsync,FrameCompleted,",
+                "0,1000,x,",
+                "0,,3000,",
+                "0,0,3000,",
+                "0,2000,3000,",
+                FrameStatsParser.PROFILE_DATA_MARKER);
+
+        assertEquals(1, mFrames.size());
+        assertEquals(2000, mFrames.get(0)[FrameStatsParser.INTENDED_VSYNC]);
+    }
+
+    @Test
+    public void namesBlocksByWindow() throws IOException {
+        parse("Window: com.example/com.example.MainActivity",
+                FrameStatsParser.PROFILE_DATA_MARKER,
+                "Flags,IntendedVsync,FrameCompleted,",
+                "0,1000,2000,",
+                FrameStatsParser.PROFILE_DATA_MARKER,
+                "com.example/android.view.ViewRootImpl@1a2b3c (visibility=0)",
+                FrameStatsParser.PROFILE_DATA_MARKER,
+                "Flags,IntendedVsync,FrameCompleted,",
+                "0,1000,2000,",
+                FrameStatsParser.PROFILE_DATA_MARKER,
+                FrameStatsParser.PROFILE_DATA_MARKER,
+                "Flags,IntendedVsync,FrameCompleted,",
+                "0,1000,2000,",
+                FrameStatsParser.PROFILE_DATA_MARKER);
+
+        assertEquals(3, mParser.getProfileDataBlocks());
+        assertEquals("com.example/com.example.MainActivity", mWindows.get(0));
+        assertEquals("com.example/android.view.ViewRootImpl@1a2b3c", mWindows.get(1));
+        assertEquals("#3", mWindows.get(2));
+    }
+
+    @Test
+    public void reportsMissingSummaryAsUnknown() throws IOException {
+        parse("nothing to see");
+
+        assertEquals(-1, mParser.getTotalFrames());
+        assertEquals(-1, mParser.getJankyFrames());
+        assertEquals(-1, mParser.getJankyFramesPercent(), 0);
+        assertEquals(0, mParser.getFramesParsed());
+    }
+
+    private void parse(String... lines) throws IOException {
+        mParser = new FrameStatsParser(mHandler);
+        mParser.parse(new StringReader(join(lines)));
+    }
+
+    static String join(String... lines) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString();
+    }
+}
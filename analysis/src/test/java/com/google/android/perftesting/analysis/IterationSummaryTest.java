@@ -0,0 +1,95 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class IterationSummaryTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void mediansOfIterationDirs() throws IOException {
+        List<File> iterationDirs = new ArrayList<>();
+        double[] pssKb = {1000, 3000, 2000};
+        for (int i = 0; i < pssKb.length; i++) {
+            File iterationDir = mTemporaryFolder.newFolder("measured_0" + (i + 1));
+            PerfMetrics.append(iterationDir, PerfMetrics.PSS_KB, pssKb[i]);
+            if (i == 0) {
+                PerfMetrics.append(iterationDir, PerfMetrics.NETWORK_BYTES, 10);
+            }
+            iterationDirs.add(iterationDir);
+        }
+
+        IterationSummary summary = IterationSummary.readIterationDirs(iterationDirs);
+        assertArrayEquals(pssKb, summary.getSamples(PerfMetrics.PSS_KB), DELTA);
+        PerfMetrics medians = summary.getMedians();
+        assertEquals(2000, medians.get(PerfMetrics.PSS_KB), DELTA);
+        // A metric only some iterations measured is summarized over those.
+        assertEquals(10, medians.get(PerfMetrics.NETWORK_BYTES), DELTA);
+        assertFalse(medians.has(PerfMetrics.JANK_PERCENT));
+    }
+
+    @Test
+    public void summaryLines() throws IOException {
+        IterationSummary summary = new IterationSummary();
+        for (double value : new double[] {10, 12, 11, 30, 11}) {
+            PerfMetrics iteration = new PerfMetrics();
+            iteration.put(PerfMetrics.JANK_PERCENT, value);
+            summary.add(iteration);
+        }
+        StringWriter writer = new StringWriter();
+        summary.writeSummary(writer);
+
+        Map<String, String> values = parseLines(writer.toString());
+        assertEquals("5", values.get("jankPercent.n"));
+        assertEquals(11, Double.parseDouble(values.get("jankPercent.median")), DELTA);
+        assertEquals(1, Double.parseDouble(values.get("jankPercent.mad")), DELTA);
+        double ciLow = Double.parseDouble(values.get("jankPercent.ciLow"));
+        double ciHigh = Double.parseDouble(values.get("jankPercent.ciHigh"));
+        assertTrue(ciLow <= 11 && ciHigh >= 11);
+        assertTrue(ciHigh <= 30);
+    }
+
+    private static Map<String, String> parseLines(String text) {
+        Map<String, String> values = new HashMap<>();
+        for (String line : text.split("\\r?\\n")) {
+            int separator = line.indexOf('=');
+            if (separator > 0) {
+                values.put(line.substring(0, separator), line.substring(separator + 1));
+            }
+        }
+        return values;
+    }
+}
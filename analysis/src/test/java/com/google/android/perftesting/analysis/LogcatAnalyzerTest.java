@@ -0,0 +1,119 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+public class LogcatAnalyzerTest {
+
+    private static final String APP_PACKAGE = "com.google.android.perftesting";
+    private static final double DELTA = 1e-9;
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void countsOnlyTheAppsCrashes() throws IOException {
+        TestResult result = analyze(APP_PACKAGE,
+                "12-01 10:00:00.014  2345  2345 E AndroidRuntime: FATAL EXCEPTION: main",
+                "12-01 10:00:00.014  2345  2345 E AndroidRuntime: Process: com.other.app, "
+                        + "PID: 2345",
+                "12-01 10:00:01.000  3456  3456 E AndroidRuntime: FATAL EXCEPTION: main",
+                "12-01 10:00:01.000  3456  3456 E AndroidRuntime: Process: " + APP_PACKAGE
+                        + ":remote, PID: 3456",
+                "12-01 10:00:01.000  3456  3456 E AndroidRuntime: java.lang.NullPointerException");
+        assertEquals(1, result.getMetrics().get(LogcatAnalyzer.CRASHES), DELTA);
+        assertEquals(1, result.getFailures().size());
+        assertTrue(result.getFailures().get(0).contains(APP_PACKAGE + ":remote"));
+    }
+
+    @Test
+    public void attributesCrashesWithoutProcessLineByPid() throws IOException {
+        TestResult result = analyze(APP_PACKAGE,
+                "I/ActivityManager(  512): Start proc com.other.app for activity "
+                        + "com.other.app/.Main: pid=2345 uid=10055 gids={}",
+                "I/ActivityManager(  512): Start proc 3456:" + APP_PACKAGE + "/u0a87 for activity",
+                "E/AndroidRuntime( 2345): FATAL EXCEPTION: main",
+                "E/AndroidRuntime( 2345): java.lang.IllegalStateException",
+                "E/AndroidRuntime( 3456): FATAL EXCEPTION: main",
+                "E/AndroidRuntime( 3456): java.lang.NullPointerException",
+                // Not started during the test, so it can't be told apart from the app.
+                "E/AndroidRuntime( 4567): FATAL EXCEPTION: main",
+                "E/AndroidRuntime( 4567): java.lang.OutOfMemoryError");
+        assertEquals(2, result.getMetrics().get(LogcatAnalyzer.CRASHES), DELTA);
+    }
+
+    @Test
+    public void countsOnlyTheAppsAnrs() throws IOException {
+        TestResult result = analyze(APP_PACKAGE,
+                "12-01 10:00:00.014   512   530 E ActivityManager: ANR in com.other.app "
+                        + "(com.other.app/.Main)",
+                "12-01 10:00:05.014   512   530 E ActivityManager: ANR in " + APP_PACKAGE
+                        + " (" + APP_PACKAGE + "/.MainActivity)");
+        assertEquals(1, result.getMetrics().get(LogcatAnalyzer.ANRS), DELTA);
+        assertEquals(1, result.getFailures().size());
+    }
+
+    @Test
+    public void countsEveryCrashWithoutAppPackage() throws IOException {
+        TestResult result = analyze(null,
+                "12-01 10:00:00.014  2345  2345 E AndroidRuntime: FATAL EXCEPTION: main",
+                "12-01 10:00:00.014  2345  2345 E AndroidRuntime: Process: com.other.app, "
+                        + "PID: 2345",
+                "12-01 10:00:00.014   512   530 E ActivityManager: ANR in com.other.app",
+                "12-01 10:00:01.000  3456  3456 E AndroidRuntime: FATAL EXCEPTION: main");
+        assertEquals(2, result.getMetrics().get(LogcatAnalyzer.CRASHES), DELTA);
+        assertEquals(1, result.getMetrics().get(LogcatAnalyzer.ANRS), DELTA);
+    }
+
+    @Test
+    public void recordsSkippedFramesAndGcs() throws IOException {
+        TestResult result = analyze(APP_PACKAGE,
+                "12-01 10:00:00.014  3456  3456 I Choreographer: Skipped 31 frames!  The "
+                        + "application may be doing too much work on its main thread.",
+                "12-01 10:00:00.100  3456  3460 I art: Background concurrent mark sweep GC freed "
+                        + "1024(64KB) AllocSpace objects",
+                "12-01 10:00:00.200  3456  3456 I Choreographer: Skipped 2 frames!");
+        assertEquals(33, result.getMetrics().get(LogcatAnalyzer.SKIPPED_FRAMES), DELTA);
+        assertEquals(1, result.getMetrics().get(LogcatAnalyzer.GC_COUNT), DELTA);
+        assertTrue(result.isPassed());
+    }
+
+    private TestResult analyze(String appPackage, String... lines) throws IOException {
+        File logcat = new File(mTemporaryFolder.getRoot(), LogcatAnalyzer.LOGCAT_FILENAME);
+        FileWriter fileWriter = new FileWriter(logcat);
+        try {
+            for (String line : lines) {
+                fileWriter.append(line).append('\n');
+            }
+        } finally {
+            fileWriter.close();
+        }
+        TestResult result = new TestResult("test");
+        new LogcatAnalyzer().analyze(logcat, new AnalysisConfig().setAppPackage(appPackage),
+                result);
+        return result;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+public class PairedComparisonTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void differencesAreCandidateMinusBaseline() {
+        PairedComparison comparison = compare(new double[] {10, 20}, new double[] {12, 17});
+        assertArrayEquals(new double[] {2, -3},
+                comparison.getDifferences(PerfMetrics.JANK_PERCENT), DELTA);
+        assertEquals(1, comparison.getMetrics().size());
+    }
+
+    @Test
+    public void fourConsistentPairsAreNotSignificant() throws IOException {
+        PairedComparison comparison = compare(new double[] {20, 21, 19, 22},
+                new double[] {11, 13, 6, 10});
+        assertEquals(0.125, comparison.getPValue(PerfMetrics.JANK_PERCENT), DELTA);
+        assertTrue(report(comparison).contains("jankPercent.significant=false"));
+    }
+
+    @Test
+    public void tenPairsDetectChangeWithinTheNoise() throws IOException {
+        // The candidate is 1 lower in each pair while the pairs vary by 10.
+        double[] baseline = {20, 25, 18, 30, 22, 27, 19, 24, 28, 21};
+        double[] candidate = new double[baseline.length];
+        for (int i = 0; i < baseline.length; i++) {
+            candidate[i] = baseline[i] - 1 + (i % 3) * 0.25;
+        }
+        PairedComparison comparison = compare(baseline, candidate);
+        assertTrue(comparison.getPValue(PerfMetrics.JANK_PERCENT) < 0.01);
+        String report = report(comparison);
+        assertTrue(report.contains("jankPercent.pairs=10"));
+        assertTrue(report.contains("jankPercent.significant=true"));
+        assertFalse(report.contains("pValue=0.00\n"));
+    }
+
+    @Test
+    public void comparisonFilenames() {
+        assertTrue(PairedComparison.isComparisonFilename(PairedComparison.COMPARISON_FILENAME));
+        assertEquals("ab.cached.comparison.log", PairedComparison.getComparisonFilename("cached"));
+        assertTrue(PairedComparison.isComparisonFilename(
+                PairedComparison.getComparisonFilename("cached")));
+        assertFalse(PairedComparison.isComparisonFilename(PerfMetrics.METRICS_FILENAME));
+    }
+
+    private static PairedComparison compare(double[] baseline, double[] candidate) {
+        PairedComparison comparison = new PairedComparison("original", "fixed");
+        for (int i = 0; i < baseline.length; i++) {
+            PerfMetrics baselineMetrics = new PerfMetrics();
+            baselineMetrics.put(PerfMetrics.JANK_PERCENT, baseline[i]);
+            baselineMetrics.put(PerfMetrics.FRAMES, 100);
+            PerfMetrics candidateMetrics = new PerfMetrics();
+            candidateMetrics.put(PerfMetrics.JANK_PERCENT, candidate[i]);
+            comparison.addPair(baselineMetrics, candidateMetrics);
+        }
+        return comparison;
+    }
+
+    private static String report(PairedComparison comparison) throws IOException {
+        StringWriter writer = new StringWriter();
+        comparison.writeReport(writer);
+        return writer.toString();
+    }
+}
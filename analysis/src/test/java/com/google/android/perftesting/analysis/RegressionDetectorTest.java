@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class RegressionDetectorTest {
+
+    private static final double DELTA = 1e-9;
+    private static final String FINGERPRINT = "google/hammerhead/hammerhead:6.0/MRA58K";
+    private static final String TEST = "com.example.ListTest.scroll";
+    private static final double[] BASELINE_RUN_MEDIANS = {100, 104, 97, 102, 99, 101, 96, 103};
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    private ResultsStore mStore;
+
+    @Before
+    public void recordBaseline() throws IOException {
+        mStore = ResultsStore.open(mTemporaryFolder.getRoot());
+        for (int i = 0; i < BASELINE_RUN_MEDIANS.length; i++) {
+            double median = BASELINE_RUN_MEDIANS[i];
+            mStore.append(run("base" + i), samples(PerfMetrics.P95_FRAME_MILLIS,
+                    median - 1, median, median + 1));
+        }
+    }
+
+    @Test
+    public void regressionOfSingleSampleRun() throws IOException {
+        List<RegressionDetector.Change> changes = new RegressionDetector().compare(mStore,
+                run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 130));
+        assertEquals(1, changes.size());
+        RegressionDetector.Change change = changes.get(0);
+        assertEquals(RegressionDetector.Direction.REGRESSION, change.getDirection());
+        assertEquals(TEST, change.getTest());
+        assertEquals(PerfMetrics.P95_FRAME_MILLIS, change.getMetric());
+        assertEquals(100.5, change.getBaselineMedian(), DELTA);
+        assertEquals(130, change.getCurrentMedian(), DELTA);
+        assertTrue(change.getAdjustedPValue() < 0.05);
+        assertTrue(RegressionDetector.hasRegressions(changes));
+    }
+
+    @Test
+    public void currentRunIsReducedToItsMedian() throws IOException {
+        // One slow iteration doesn't make a regression.
+        List<RegressionDetector.Change> changes = new RegressionDetector().compare(mStore,
+                run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 101, 99, 300, 100, 102));
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void improvement() throws IOException {
+        List<RegressionDetector.Change> changes = new RegressionDetector().compare(mStore,
+                run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 70, 71, 69));
+        assertEquals(1, changes.size());
+        assertEquals(RegressionDetector.Direction.IMPROVEMENT, changes.get(0).getDirection());
+        assertFalse(RegressionDetector.hasRegressions(changes));
+    }
+
+    @Test
+    public void changesWithinTheBaselineSpreadAreIgnored() throws IOException {
+        assertTrue(new RegressionDetector().setMinRelativeChange(0).compare(mStore, run("new"),
+                samples(PerfMetrics.P95_FRAME_MILLIS, 104)).isEmpty());
+    }
+
+    @Test
+    public void baselineIsLimitedByRuns() throws IOException {
+        // Newer runs got faster, only they are the baseline.
+        for (int i = 0; i < 5; i++) {
+            mStore.append(run("fast" + i), samples(PerfMetrics.P95_FRAME_MILLIS, 50 + i));
+        }
+        List<RegressionDetector.Change> changes = new RegressionDetector().setBaselineRuns(5)
+                .compare(mStore, run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 80));
+        assertEquals(1, changes.size());
+        assertEquals(RegressionDetector.Direction.REGRESSION, changes.get(0).getDirection());
+        assertEquals(52, changes.get(0).getBaselineMedian(), DELTA);
+    }
+
+    @Test
+    public void runsOfTheSameCommitAreNotTheBaseline() throws IOException {
+        mStore.append(run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 130));
+        List<RegressionDetector.Change> changes = new RegressionDetector().compare(mStore,
+                run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 130));
+        assertEquals(1, changes.size());
+        assertEquals(100.5, changes.get(0).getBaselineMedian(), DELTA);
+    }
+
+    @Test
+    public void tooShortHistoryAndNeutralMetricsAreSkipped() throws IOException {
+        assertTrue(new RegressionDetector().setMinBaselineRuns(BASELINE_RUN_MEDIANS.length + 1)
+                .compare(mStore, run("new"), samples(PerfMetrics.P95_FRAME_MILLIS, 130))
+                .isEmpty());
+
+        for (int i = 0; i < BASELINE_RUN_MEDIANS.length; i++) {
+            mStore.append(run("base" + i), samples(PerfMetrics.FRAMES, 100 + i));
+        }
+        assertTrue(new RegressionDetector().compare(mStore, run("new"),
+                samples(PerfMetrics.FRAMES, 500)).isEmpty());
+    }
+
+    @Test
+    public void recordAndCompareWritesReportAndAppendsRun() throws IOException {
+        File testDataDir = mTemporaryFolder.newFolder("testdata");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(
+                new File(testDataDir, RunResult.RESULTS_FILENAME)), "UTF-8");
+        try {
+            writer.write("overall=PASS\nrunComplete=true\ntest." + TEST + ".status=PASS\n"
+                    + "test." + TEST + ".metric." + PerfMetrics.P95_FRAME_MILLIS + "=130\n");
+        } finally {
+            writer.close();
+        }
+        int runCount = mStore.getRunCount();
+
+        List<RegressionDetector.Change> changes =
+                new RegressionDetector().recordAndCompare(mStore, run("new"), testDataDir);
+        assertEquals(1, changes.size());
+        assertEquals(runCount + 1, mStore.getRunCount());
+        StringWriter report = new StringWriter();
+        RegressionDetector.writeReport(changes, report);
+        assertTrue(report.toString().startsWith(
+                TEST + "." + PerfMetrics.P95_FRAME_MILLIS + "=REGRESSION "));
+        assertTrue(new File(testDataDir, RegressionDetector.REGRESSIONS_FILENAME).length() > 0);
+    }
+
+    private static ResultsStore.Run run(String commit) {
+        return new ResultsStore.Run(commit, "apk", FINGERPRINT, "serial", 0);
+    }
+
+    private static Map<String, Map<String, double[]>> samples(String metric, double... values) {
+        return Collections.singletonMap(TEST, Collections.singletonMap(metric, values));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.Map;
+
+public class ResultsStoreTest {
+
+    private static final double DELTA = 1e-9;
+    private static final String FINGERPRINT = "google/hammerhead/hammerhead:6.0/MRA58K";
+    private static final String TEST = "com.example.ListTest.scroll";
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void oneMedianPerRunNewestFirst() throws IOException {
+        ResultsStore store = ResultsStore.open(mTemporaryFolder.getRoot());
+        store.append(run("a"), samples(TEST, PerfMetrics.JANK_PERCENT, 1, 2, 9));
+        store.append(run("b"), samples(TEST, PerfMetrics.JANK_PERCENT, 4, 5, 6, 7));
+        store.append(run("c"), samples(TEST, PerfMetrics.JANK_PERCENT, 3));
+
+        assertArrayEquals(new double[] {3, 5.5, 2}, store.getRecentRunMedians(FINGERPRINT, TEST,
+                PerfMetrics.JANK_PERCENT, null, 10), DELTA);
+        // Limited by runs, however many samples each has.
+        assertArrayEquals(new double[] {3, 5.5}, store.getRecentRunMedians(FINGERPRINT, TEST,
+                PerfMetrics.JANK_PERCENT, null, 2), DELTA);
+        assertArrayEquals(new double[] {3, 2}, store.getRecentRunMedians(FINGERPRINT, TEST,
+                PerfMetrics.JANK_PERCENT, "b", 10), DELTA);
+        assertArrayEquals(new double[0], store.getRecentRunMedians("other", TEST,
+                PerfMetrics.JANK_PERCENT, null, 10), DELTA);
+    }
+
+    @Test
+    public void longSeriesAreReadInChunks() throws IOException {
+        ResultsStore store = ResultsStore.open(mTemporaryFolder.getRoot());
+        double[] iterations = new double[100];
+        for (int run = 0; run < 5; run++) {
+            for (int i = 0; i < iterations.length; i++) {
+                iterations[i] = run * 10 + (i % 2);
+            }
+            store.append(run("commit" + run), samples(TEST, PerfMetrics.PSS_KB, iterations));
+        }
+        assertArrayEquals(new double[] {40.5, 30.5, 20.5, 10.5, 0.5}, store.getRecentRunMedians(
+                FINGERPRINT, TEST, PerfMetrics.PSS_KB, null, 10), DELTA);
+    }
+
+    @Test
+    public void reopenedStoreSkipsUncommittedRun() throws IOException {
+        File dir = mTemporaryFolder.getRoot();
+        ResultsStore store = ResultsStore.open(dir);
+        String test = "com.example.\u00dcmlautTest.scroll";
+        store.append(run("a"), samples(test, PerfMetrics.PSS_KB, 100));
+        store.append(run("b"), samples(test, PerfMetrics.PSS_KB, 200));
+        // Drop the last run's line, as if its writer was killed before committing it.
+        File runsFile = new File(dir, "runs.log");
+        RandomAccessFile runs = new RandomAccessFile(runsFile, "rw");
+        try {
+            long end = runs.length() - 1;
+            while (end > 0) {
+                runs.seek(end - 1);
+                if (runs.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            runs.setLength(end);
+        } finally {
+            runs.close();
+        }
+
+        ResultsStore reopened = ResultsStore.open(dir);
+        assertEquals(1, reopened.getRunCount());
+        assertArrayEquals(new double[] {100}, reopened.getRecentRunMedians(FINGERPRINT, test,
+                PerfMetrics.PSS_KB, null, 10), DELTA);
+        // The uncommitted run's id isn't reused.
+        int id = reopened.append(run("c"), samples(test, PerfMetrics.PSS_KB, 300));
+        assertEquals(2, id);
+        assertEquals("c", reopened.getRun(id).getCommit());
+        assertArrayEquals(new double[] {300, 100}, ResultsStore.open(dir).getRecentRunMedians(
+                FINGERPRINT, test, PerfMetrics.PSS_KB, null, 10), DELTA);
+    }
+
+    private static ResultsStore.Run run(String commit) {
+        return new ResultsStore.Run(commit, "apk", FINGERPRINT, "serial", 0);
+    }
+
+    private static Map<String, Map<String, double[]>> samples(String test, String metric,
+            double... values) {
+        return Collections.singletonMap(test, Collections.singletonMap(metric, values));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting.analysis;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StatisticsTest {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void median() {
+        assertEquals(2, Statistics.median(new double[] {3, 1, 2}), DELTA);
+        assertEquals(2.5, Statistics.median(new double[] {4, 1, 3, 2}), DELTA);
+        assertTrue(Double.isNaN(Statistics.median(new double[0])));
+    }
+
+    @Test
+    public void medianAbsoluteDeviation() {
+        // Median 2, deviations 1 1 0 0 2 4 7.
+        assertEquals(1, Statistics.medianAbsoluteDeviation(new double[] {1, 1, 2, 2, 4, 6, 9}),
+                DELTA);
+    }
+
+    @Test
+    public void bootstrapMedianIntervalContainsMedian() {
+        double[] samples = {10, 12, 11, 13, 50, 12, 11, 10, 12};
+        double[] interval = Statistics.bootstrapMedianInterval(samples, 0.95,
+                Statistics.DEFAULT_BOOTSTRAP_RESAMPLES);
+        assertTrue(interval[0] <= Statistics.median(samples));
+        assertTrue(interval[1] >= Statistics.median(samples));
+        assertTrue(interval[1] < 50);
+
+        assertArrayEquals(new double[] {5, 5},
+                Statistics.bootstrapMedianInterval(new double[] {5, 5, 5}, 0.95, 100), DELTA);
+    }
+
+    @Test
+    public void studentTUpperTail() {
+        assertEquals(0.5, Statistics.studentTUpperTail(0, 10), DELTA);
+        // Cauchy distribution.
+        assertEquals(0.25, Statistics.studentTUpperTail(1, 1), 1e-7);
+        // Two-sided 5% and 10% critical values for 10 degrees of freedom.
+        assertEquals(0.025, Statistics.studentTUpperTail(2.228139, 10), 1e-6);
+        assertEquals(0.05, Statistics.studentTUpperTail(1.812461, 10), 1e-6);
+        assertEquals(0.95, Statistics.studentTUpperTail(-1.812461, 10), 1e-6);
+    }
+
+    @Test
+    public void predictionFlagsSingleValueOutsideSpread() {
+        double[] runs = {100, 102, 98, 101, 99, 100, 103, 97};
+        assertTrue(Statistics.predictionGreaterPValue(runs, 120) < 0.001);
+        assertTrue(Statistics.predictionGreaterPValue(runs, 101) > 0.2);
+        assertTrue(Statistics.predictionGreaterPValue(runs, 80) > 0.99);
+    }
+
+    @Test
+    public void predictionWithoutSpread() {
+        // More than half equal: the mean absolute deviation is used.
+        double[] runs = {5, 5, 5, 5, 6};
+        double pValue = Statistics.predictionGreaterPValue(runs, 6);
+        assertTrue(pValue > 0 && pValue < 0.05);
+        assertTrue(Statistics.predictionGreaterPValue(runs, 5.2) > 0.2);
+
+        assertEquals(0, Statistics.predictionGreaterPValue(new double[] {5, 5, 5}, 6), DELTA);
+        assertEquals(1, Statistics.predictionGreaterPValue(new double[] {5, 5, 5}, 5), DELTA);
+        assertTrue(Double.isNaN(Statistics.predictionGreaterPValue(new double[] {5}, 6)));
+    }
+
+    @Test
+    public void wilcoxonSignedRankExact() {
+        // All 6 differences positive: 1 of the 2^6 sign assignments, doubled for two sides.
+        assertEquals(2 / 64.0, Statistics.wilcoxonSignedRankPValue(
+                new double[] {1, 2, 3, 4, 5, 6}), DELTA);
+        // The negative rank sum of 2 is reached by {}, {1} and {2}.
+        assertEquals(6 / 64.0, Statistics.wilcoxonSignedRankPValue(
+                new double[] {1, -2, 3, 4, 5, 6}), DELTA);
+        // Four pairs can't be significant however consistent.
+        assertEquals(2 / 16.0, Statistics.wilcoxonSignedRankPValue(
+                new double[] {-5, -6, -7, -8}), DELTA);
+        assertEquals(1, Statistics.wilcoxonSignedRankPValue(new double[] {0, 0}), DELTA);
+    }
+
+    @Test
+    public void wilcoxonSignedRankWithTies() {
+        // Five equal differences are exactly as likely all positive as five distinct ones.
+        assertEquals(2 / 32.0, Statistics.wilcoxonSignedRankPValue(
+                new double[] {3, 3, 3, 3, 3}), DELTA);
+        assertEquals(1, Statistics.wilcoxonSignedRankPValue(new double[] {1, -1, 2, -2}),
+                DELTA);
+        double pValue = Statistics.wilcoxonSignedRankPValue(
+                new double[] {2, 2, 2, 3, 3, 4, 4, 5, 0, -1});
+        assertTrue(pValue > 0 && pValue < 0.05);
+    }
+
+    @Test
+    public void wilcoxonSignedRankApproximatedForManyPairs() {
+        double[] differences = new double[60];
+        for (int i = 0; i < differences.length; i++) {
+            differences[i] = i % 4 == 0 ? -(i + 1) : i + 1;
+        }
+        double pValue = Statistics.wilcoxonSignedRankPValue(differences);
+        assertTrue(pValue > 0 && pValue < 0.001);
+    }
+
+    @Test
+    public void benjaminiHochberg() {
+        assertArrayEquals(new double[] {0.02, 0.04, 0.04, 0.02},
+                Statistics.benjaminiHochberg(new double[] {0.01, 0.04, 0.03, 0.005}), DELTA);
+    }
+
+    @Test
+    public void theilSenSlopeIgnoresOutlier() {
+        double[] x = {1, 2, 3, 4, 5};
+        double[] y = {3, 5, 7, 9, 100};
+        assertEquals(2, Statistics.theilSenSlope(x, y), DELTA);
+        assertTrue(Double.isNaN(Statistics.theilSenSlope(new double[] {1, 1},
+                new double[] {1, 2})));
+    }
+
+    @Test
+    public void kendallTau() {
+        double[] x = {1, 2, 3, 4};
+        assertEquals(1, Statistics.kendallTau(x, new double[] {1, 4, 9, 16}), DELTA);
+        assertEquals(-1, Statistics.kendallTau(x, new double[] {4, 3, 2, 1}), DELTA);
+        // 5 concordant, 1 discordant pair.
+        assertEquals(4 / 6.0, Statistics.kendallTau(x, new double[] {1, 3, 2, 4}), DELTA);
+    }
+}
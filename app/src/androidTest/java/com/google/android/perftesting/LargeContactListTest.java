@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.content.Intent;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.widget.ListView;
+
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.contacts.Contact;
+import com.google.android.perftesting.testrules.EnableMemorySampling;
+import com.google.android.perftesting.testrules.EnablePerfBudgets;
+import com.google.android.perftesting.testrules.EnablePerfIterations;
+import com.google.android.perftesting.testrules.EnableTestTracing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrolls {@link SimpleListActivity} over a million contacts created as they are bound. The list
+ * jumps to its middle and end and scrolls from there, with the same memory and frame budgets as
+ * the thousand contacts of {@link SimpleListActivityTest}: the contacts should cost nothing until
+ * they are shown.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class LargeContactListTest {
+    public static final int CONTACT_COUNT = 1000000;
+    public static final int SCROLL_ROWS = 200;
+
+    public ActivityTestRule<SimpleListActivity> mActivityRule =
+            new ActivityTestRule<SimpleListActivity>(SimpleListActivity.class) {
+                @Override
+                protected Intent getActivityIntent() {
+                    return new Intent(Intent.ACTION_MAIN)
+                            .putExtra(SimpleListActivity.EXTRA_ADAPTER,
+                                    SimpleListActivity.ADAPTER_FIXED)
+                            .putExtra(Contact.EXTRA_CONTACT_COUNT, CONTACT_COUNT);
+                }
+            };
+
+    /**
+     * Ordered like {@link SimpleListActivityTest}'s rules. The timeout covers both scrolls.
+     */
+    @Rule
+    public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+            .around(new EnablePerfIterations())
+            .around(new EnableTestTracing())
+            .around(mActivityRule)
+            .around(new EnableMemorySampling())
+            .around(SimpleListActivityTest.frameCapture(mActivityRule))
+            .around(new Timeout(2 * (SimpleListActivityTest.SCROLL_TIME_IN_MILLIS
+                    + SimpleListActivityTest.MAX_ADAPTER_VIEW_PROCESSING_TIME_IN_MILLIS),
+                    TimeUnit.MILLISECONDS));
+
+    @Test
+    @PerfTest(maxJankPercent = 10, maxP95FrameMillis = 24, maxPeakPssKb = 200 * 1024,
+            maxPssSlopeKbPerSecond = 1024, warmupIterations = 1, measuredIterations = 3)
+    public void scrollMiddleAndEnd() throws InterruptedException {
+        ListView listView = (ListView) mActivityRule.getActivity().findViewById(android.R.id.list);
+        SimpleListActivityTest.scrollRowsFrom(listView, CONTACT_COUNT / 2, SCROLL_ROWS);
+        SimpleListActivityTest.scrollRowsFrom(listView, CONTACT_COUNT - 1 - SCROLL_ROWS,
+                SCROLL_ROWS);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.content.Intent;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.widget.ListView;
+
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.contacts.PagedContactStore;
+import com.google.android.perftesting.testrules.EnablePageLoadTracking;
+import com.google.android.perftesting.testrules.EnablePerfBudgets;
+import com.google.android.perftesting.testrules.EnablePerfIterations;
+import com.google.android.perftesting.testrules.EnableTestTracing;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrolls {@link SimpleListActivity} with its contacts paged in from storage that takes
+ * {@link #PAGE_LATENCY_MILLIS} per page. The pages have to keep up with the scroll without
+ * costing frames, so both the page load latency and the frames are budgeted.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class PagedContactListTest {
+    public static final int PAGE_SIZE = 50;
+    public static final int PAGE_LATENCY_MILLIS = 50;
+
+    public ActivityTestRule<SimpleListActivity> mActivityRule =
+            new ActivityTestRule<SimpleListActivity>(SimpleListActivity.class) {
+                @Override
+                protected Intent getActivityIntent() {
+                    return new Intent(Intent.ACTION_MAIN)
+                            .putExtra(SimpleListActivity.EXTRA_ADAPTER,
+                                    SimpleListActivity.ADAPTER_FIXED)
+                            .putExtra(PagedContactStore.EXTRA_PAGE_SIZE, PAGE_SIZE)
+                            .putExtra(PagedContactStore.EXTRA_PAGE_LATENCY_MS,
+                                    PAGE_LATENCY_MILLIS);
+                }
+            };
+
+    /**
+     * The page loads are tracked from outside the activity rule to include the first pages,
+     * which are asked for while the activity is created.
+     */
+    @Rule
+    public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+            .around(new EnablePerfIterations())
+            .around(new EnableTestTracing())
+            .around(new EnablePageLoadTracking())
+            .around(mActivityRule)
+            .around(SimpleListActivityTest.frameCapture(mActivityRule))
+            .around(new Timeout(SimpleListActivityTest.SCROLL_TIME_IN_MILLIS
+                    + SimpleListActivityTest.MAX_ADAPTER_VIEW_PROCESSING_TIME_IN_MILLIS,
+                    TimeUnit.MILLISECONDS));
+
+    /**
+     * A page is loaded after the simulated latency unless it queues behind the pages prefetched
+     * ahead of it.
+     */
+    @Test
+    @PerfTest(maxJankPercent = 10, maxP95FrameMillis = 24,
+            maxP95PageLoadMillis = 3 * PAGE_LATENCY_MILLIS, warmupIterations = 1,
+            measuredIterations = 5)
+    public void scrollFullList() throws InterruptedException {
+        SimpleListActivityTest.scrollToEnd(
+                (ListView) mActivityRule.getActivity().findViewById(android.R.id.list));
+    }
+}
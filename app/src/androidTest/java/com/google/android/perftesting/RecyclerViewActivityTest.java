@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.content.Intent;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.contacts.ContactViewPool;
+import com.google.android.perftesting.testrules.EnableAllocationCounting;
+import com.google.android.perftesting.testrules.EnableImageCacheStats;
+import com.google.android.perftesting.testrules.EnablePerfBudgets;
+import com.google.android.perftesting.testrules.EnableViewPoolStats;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.Timeout;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scrolls {@link RecyclerViewActivity} to measure what binding its rows costs. The allocation
+ * counters slow down every allocation, so the frames of this test aren't budgeted, see
+ * {@link SimpleListActivityTest} for that.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class RecyclerViewActivityTest {
+    public static final int SCROLL_ROWS = 100;
+    public static final long MAX_SCROLL_TIME_IN_MILLIS = 10000;
+
+    /**
+     * Rows inflated in the background before the list is shown, enough to fill the screen.
+     */
+    public static final int PREWARM_VIEW_HOLDERS = 12;
+
+    public ActivityTestRule<RecyclerViewActivity> mActivityRule =
+            new ActivityTestRule<RecyclerViewActivity>(RecyclerViewActivity.class) {
+                @Override
+                protected Intent getActivityIntent() {
+                    return new Intent(Intent.ACTION_MAIN).putExtra(
+                            ContactViewPool.EXTRA_PREWARM_VIEW_HOLDERS, PREWARM_VIEW_HOLDERS);
+                }
+            };
+
+    /**
+     * Allocations are counted inside the activity rule so only the scroll is counted, not
+     * launching the activity. The view pool's misses and the image cache counts include the first
+     * layout.
+     */
+    @Rule
+    public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+            .around(new EnableImageCacheStats())
+            .around(mActivityRule)
+            .around(new EnableViewPoolStats(mActivityRule))
+            .around(new EnableAllocationCounting())
+            .around(new Timeout(MAX_SCROLL_TIME_IN_MILLIS, TimeUnit.MILLISECONDS));
+
+    @Test
+    @PerfTest(maxMainThreadAllocatedObjects = 50000, maxAllocatedBytes = 16 * 1024 * 1024,
+            maxViewPoolMisses = 5)
+    public void scrollRows() throws InterruptedException {
+        final RecyclerView recyclerView =
+                (RecyclerView) mActivityRule.getActivity().findViewById(R.id.contactList);
+        // The list only gets its adapter once the prewarmed rows are inflated.
+        while (recyclerView.getAdapter() == null) {
+            Thread.sleep(100);
+        }
+        final int lastPosition =
+                Math.min(SCROLL_ROWS, recyclerView.getAdapter().getItemCount() - 1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                recyclerView.smoothScrollToPosition(lastPosition);
+            }
+        });
+
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        while (layoutManager.findLastVisibleItemPosition() < lastPosition) {
+            Thread.sleep(300);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.support.v4.content.ContextCompat;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.analysis.Statistics;
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.common.PerfTestingUtils;
+import com.google.android.perftesting.contacts.Contact;
+import com.google.android.perftesting.contacts.ContactRowFactory;
+import com.google.android.perftesting.contacts.ContactRowViews;
+import com.google.android.perftesting.contacts.ContactStore;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TestName;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks of producing one contact row: inflating {@code R.layout.item_contact},
+ * building the same row in code with {@link ContactRowFactory}, finding its views with
+ * {@code findViewById} or a {@link ContactRowViews} holder, and binding a contact, each on its own
+ * and combined the way the adapters produce rows.
+ *
+ * Every test runs its operation on the main thread until it is warm, then times batches of it and
+ * records the median nanoseconds per operation and, where the runtime's allocation counters work,
+ * the objects and bytes allocated per operation as the test's metrics. Rows are bound with the
+ * name and a drawable only, as image loading has benchmarks of its own. The class is a
+ * {@link PerfTest} so the test runners run it with the other performance tests, it has no budgets.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+@PerfTest
+public class RowConstructionBenchmarkTest {
+
+    private static final String LOG_TAG = "RowConstructionBench";
+    private static final long WARMUP_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int BATCHES = 25;
+
+    private interface RowOperation {
+        void run(int iteration);
+    }
+
+    @Rule
+    public TestName mTestName = new TestName();
+
+    private LayoutInflater mInflater;
+    private ContactRowFactory mRowFactory;
+    private ContactStore mContacts;
+    private ListView mParent;
+    private View mRow;
+    private Drawable mImage;
+    private final ContactStore.NameBuffer mNameBuffer = new ContactStore.NameBuffer();
+
+    @Before
+    public void setUp() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                // A plain themed context, so neither way of building rows gets AppCompat widgets.
+                Context context = new ContextThemeWrapper(PerfTestingUtils.getAppContext(),
+                        R.style.AppTheme);
+                mInflater = LayoutInflater.from(context);
+                mRowFactory = new ContactRowFactory(context);
+                mContacts = ContactStore.of(
+                        Contact.createVirtualContactsList(Contact.DEFAULT_CONTACT_COUNT));
+                mParent = new ListView(context);
+                mRow = mInflater.inflate(R.layout.item_contact, mParent, false);
+                mImage = ContextCompat.getDrawable(context, R.drawable.bbq);
+            }
+        });
+    }
+
+    @Test
+    public void inflate() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                mInflater.inflate(R.layout.item_contact, mParent, false);
+            }
+        });
+    }
+
+    @Test
+    public void construct() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                mRowFactory.create();
+            }
+        });
+    }
+
+    @Test
+    public void findViewById() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                mRow.findViewById(R.id.contact_name);
+                mRow.findViewById(R.id.contact_image);
+            }
+        });
+    }
+
+    @Test
+    public void holderLookup() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                ContactRowViews.of(mRow);
+            }
+        });
+    }
+
+    @Test
+    public void bind() throws Exception {
+        final ContactRowViews views = ContactRowViews.of(mRow);
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                bind(views, iteration);
+            }
+        });
+    }
+
+    /**
+     * A row the way {@code ContactsArrayAdapter} produces one, inflating it every time.
+     */
+    @Test
+    public void inflateFindBindRow() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                View row = mInflater.inflate(R.layout.item_contact, mParent, false);
+                findAndBind(row, iteration);
+            }
+        });
+    }
+
+    /**
+     * A row the way {@code ContactsArrayAdapterFixed} produces one from a recycled view.
+     */
+    @Test
+    public void convertViewFindBindRow() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                findAndBind(mRow, iteration);
+            }
+        });
+    }
+
+    /**
+     * A recycled row of an adapter keeping its views in a holder.
+     */
+    @Test
+    public void holderBindRow() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                bind(ContactRowViews.of(mRow), iteration);
+            }
+        });
+    }
+
+    /**
+     * A new row built in code, with its holder.
+     */
+    @Test
+    public void constructBindRow() throws Exception {
+        measure(new RowOperation() {
+            @Override
+            public void run(int iteration) {
+                bind(ContactRowViews.of(mRowFactory.create()), iteration);
+            }
+        });
+    }
+
+    private void findAndBind(View row, int iteration) {
+        TextView name = (TextView) row.findViewById(R.id.contact_name);
+        ImageView image = (ImageView) row.findViewById(R.id.contact_image);
+        mContacts.readName(iteration % mContacts.size(), mNameBuffer);
+        name.setText(mNameBuffer.getChars(), 0, mNameBuffer.getLength());
+        image.setImageDrawable(mImage);
+    }
+
+    private void bind(ContactRowViews views, int iteration) {
+        views.bindName(mContacts, iteration % mContacts.size());
+        views.imageView.setImageDrawable(mImage);
+    }
+
+    private void measure(final RowOperation operation) throws Exception {
+        final double[] nanosPerOp = new double[BATCHES];
+        final long[] allocations = new long[3];
+        final int[] batchSize = new int[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                // Run until the JIT has compiled the path, counting how many runs fit a batch.
+                int iteration = 0;
+                long start = System.nanoTime();
+                long elapsed;
+                do {
+                    operation.run(iteration++);
+                    elapsed = System.nanoTime() - start;
+                } while (elapsed < WARMUP_NANOS);
+                int size = (int) Math.max(1, iteration * BATCH_NANOS / elapsed);
+                for (int batch = 0; batch < BATCHES; batch++) {
+                    long batchStart = System.nanoTime();
+                    for (int i = 0; i < size; i++) {
+                        operation.run(iteration++);
+                    }
+                    nanosPerOp[batch] = (System.nanoTime() - batchStart) / (double) size;
+                }
+                // Counting slows allocations down, so it gets a batch of its own.
+                Debug.resetAllCounts();
+                Debug.startAllocCounting();
+                for (int i = 0; i < size; i++) {
+                    operation.run(iteration++);
+                }
+                Debug.stopAllocCounting();
+                allocations[0] = Debug.getThreadAllocCount();
+                allocations[1] = Debug.getThreadAllocSize();
+                allocations[2] = Debug.getGlobalAllocCount();
+                batchSize[0] = size;
+            }
+        });
+
+        String testName = mTestName.getMethodName();
+        File testDir = PerfTestingUtils.getTestDir(getClass().getName(), testName);
+        double median = Statistics.median(nanosPerOp);
+        PerfMetrics.append(testDir, PerfMetrics.NANOS_PER_OP, median);
+        String result = String.format(Locale.US, "%s: %.0f ns/op (MAD %.0f, %d ops per batch)",
+                testName, median, Statistics.medianAbsoluteDeviation(nanosPerOp), batchSize[0]);
+        // The counters are stubs on some runtimes, they report nothing although the app allocated.
+        if (allocations[2] > 0) {
+            double objectsPerOp = allocations[0] / (double) batchSize[0];
+            double bytesPerOp = allocations[1] / (double) batchSize[0];
+            PerfMetrics.append(testDir, PerfMetrics.ALLOCATIONS_PER_OP, objectsPerOp);
+            PerfMetrics.append(testDir, PerfMetrics.ALLOCATED_BYTES_PER_OP, bytesPerOp);
+            result += String.format(Locale.US, ", %.1f allocations/op, %.0f bytes/op",
+                    objectsPerOp, bytesPerOp);
+        }
+        Log.i(LOG_TAG, result);
+    }
+}
@@ -16,26 +16,58 @@
 
 package com.google.android.perftesting;
 
+import android.app.Activity;
+import android.content.Intent;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.rule.ActivityTestRule;
 import android.support.test.runner.AndroidJUnit4;
 import android.test.ActivityInstrumentationTestCase2;
 import android.test.suitebuilder.annotation.LargeTest;
+import android.widget.ListView;
+
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.testrules.EnableAllocationCounting;
+import com.google.android.perftesting.testrules.EnableChoreographerFrameCapture;
+import com.google.android.perftesting.testrules.EnableFrameMetricsCapture;
+import com.google.android.perftesting.testrules.EnableImageCacheStats;
+import com.google.android.perftesting.testrules.EnableImageLatencyTracking;
+import com.google.android.perftesting.testrules.EnableLogcatDump;
+import com.google.android.perftesting.testrules.EnableMemorySampling;
+import com.google.android.perftesting.testrules.EnableNetStatsDump;
+import com.google.android.perftesting.testrules.EnablePerfBudgets;
+import com.google.android.perftesting.testrules.EnablePerfIterations;
+import com.google.android.perftesting.testrules.EnableTestTracing;
 
 import org.junit.Before;
 import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
 import org.junit.runner.RunWith;
 
+import java.util.concurrent.TimeUnit;
+
 /**
+ * Budgets scrolling {@link SimpleListActivity} with the fixed adapter. The original adapter is
+ * janky on purpose, {@link SimpleListAdapterComparisonTest} measures it against the fixed one
+ * without budgets.
+ *
  * For a small sample on just the Espresso framework see https://goo.gl/GOUP47
  */
 @RunWith(AndroidJUnit4.class)
 @LargeTest
-// TODO(developer): Uncomment the below annotation to have this test added to the set of perf tests.
-// @PerfTest
 public class SimpleListActivityTest {
     public static final int SCROLL_TIME_IN_MILLIS = 4000;
     public static final long MAX_ADAPTER_VIEW_PROCESSING_TIME_IN_MILLIS = 500;
 
+    /**
+     * How often the frame stats are polled while scrolling, the platform only keeps the last ~120
+     * frames.
+     */
+    public static final long FRAME_SAMPLING_INTERVAL_MILLIS = 1000;
+
     /**
      * A JUnit {@link Rule @Rule} to launch your activity under test. This is a replacement
      * for {@link ActivityInstrumentationTestCase2}.
@@ -47,48 +79,113 @@ public class SimpleListActivityTest {
      * the activity under test. To get a reference to the activity you can use
      * the {@link ActivityTestRule#getActivity()} method.
      */
-      // TODO(developer): Uncomment below member variable to add a test activity to this test class.
-//    @Rule
-//    public ActivityTestRule<SimpleListActivity> mActivityRule = new ActivityTestRule<>(
-//            SimpleListActivity.class);
-//
-//    @Rule
-//    public Timeout globalTimeout= new Timeout(
-//        SCROLL_TIME_IN_MILLIS + MAX_ADAPTER_VIEW_PROCESSING_TIME_IN_MILLIS, TimeUnit.MILLISECONDS);
-//
-//    @Rule
-//    public EnableTestTracing mEnableTestTracing = new EnableTestTracing();
-//
-//    @Rule
-//    public EnablePostTestDumpsys mEnablePostTestDumpsys = new EnablePostTestDumpsys();
-//
-//    @Rule
-//    public EnableLogcatDump mEnableLogcatDump = new EnableLogcatDump();
-//
-//    @Rule
-//    public EnableNetStatsDump mEnableNetStatsDump = new EnableNetStatsDump();
-
-
-      // TODO(developer): Uncomment below test method to add a list scrolling test to the project.
-//    @Test
-//    @PerfTest
-//    public void scrollFullList() throws InterruptedException {
-//        ListView listView = (ListView) mActivityRule.getActivity().findViewById(android.R.id.list);
-//
-//        // Get last position and offset for zero-indexed position tracking.
-//        int lastPosition = listView.getAdapter().getCount() - 1;
-//
-//        // Espresso method of scrolling to the last item.
-//        // onData(anything()).atPosition(lastPosition);
-//
-//        // Standard Android method of scrolling to the last position.
-//        listView.smoothScrollToPositionFromTop(lastPosition, 0, SCROLL_TIME_IN_MILLIS);
-//
-//        // Scrolling is performed asynchronously so we need to periodically loop and detect if
-//        // we're finished scrolling yet. This can be delayed by any work being done to display
-//        // data items in the ListView.
-//        while (listView.getLastVisiblePosition() != lastPosition) {
-//            Thread.sleep(300);
-//        }
-//    }
+    public ActivityTestRule<SimpleListActivity> mActivityRule =
+            new ActivityTestRule<SimpleListActivity>(SimpleListActivity.class) {
+                @Override
+                protected Intent getActivityIntent() {
+                    return new Intent(Intent.ACTION_MAIN).putExtra(
+                            SimpleListActivity.EXTRA_ADAPTER, SimpleListActivity.ADAPTER_FIXED);
+                }
+            };
+
+    /**
+     * The budgets are checked once every collector has written its files, so
+     * {@link EnablePerfBudgets} is the outermost rule. {@link EnablePerfIterations} repeats
+     * everything inside it, so every run is traced, dumped and measured on its own and the budgets
+     * apply to the median run. Frames are recorded in-process by
+     * {@link EnableFrameMetricsCapture}, or by {@link EnableChoreographerFrameCapture} on devices
+     * without framestats. The image cache counts are reset and the time rows wait for their
+     * pictures is tracked from before the activity is created, so the first rows are included.
+     * Memory is sampled while the activity is running. Allocations are counted inside the activity
+     * rule, so only the scroll is counted; the counters slow down allocating, which makes the
+     * frame budgets a little stricter. The timeout only covers the scroll itself.
+     */
+    @Rule
+    public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+            .around(new EnablePerfIterations())
+            .around(new EnableTestTracing())
+            .around(new EnableLogcatDump())
+            .around(new EnableNetStatsDump())
+            .around(new EnableImageCacheStats())
+            .around(new EnableImageLatencyTracking())
+            .around(mActivityRule)
+            .around(new EnableMemorySampling())
+            .around(new EnableAllocationCounting())
+            .around(frameCapture(mActivityRule))
+            .around(new Timeout(SCROLL_TIME_IN_MILLIS + MAX_ADAPTER_VIEW_PROCESSING_TIME_IN_MILLIS,
+                    TimeUnit.MILLISECONDS));
+
+    /**
+     * The frame collector for the device: framestats based from API level 23, vsync intervals from
+     * Choreographer before.
+     */
+    static TestRule frameCapture(ActivityTestRule<? extends Activity> activityRule) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return new EnableFrameMetricsCapture(activityRule);
+        }
+        return new EnableChoreographerFrameCapture();
+    }
+
+    @Test
+    @PerfTest(maxJankPercent = 10, maxP95FrameMillis = 24, maxPeakPssKb = 200 * 1024,
+            maxPssSlopeKbPerSecond = 1024, maxP95ImageLatencyMillis = 250,
+            maxMainThreadAllocatedObjects = 100000, warmupIterations = 1, measuredIterations = 5)
+    public void scrollFullList() throws InterruptedException {
+        scrollToEnd((ListView) mActivityRule.getActivity().findViewById(android.R.id.list));
+    }
+
+    /**
+     * Smoothly scroll {@code listView} to its last row over {@link #SCROLL_TIME_IN_MILLIS} and
+     * wait until it is shown.
+     */
+    static void scrollToEnd(final ListView listView) throws InterruptedException {
+        // Get last position and offset for zero-indexed position tracking.
+        final int lastPosition = listView.getAdapter().getCount() - 1;
+
+        // Espresso method of scrolling to the last item.
+        // onData(anything()).atPosition(lastPosition);
+
+        // Standard Android method of scrolling to the last position, which has to be started on
+        // the main thread.
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                listView.smoothScrollToPositionFromTop(lastPosition, 0, SCROLL_TIME_IN_MILLIS);
+            }
+        });
+
+        // Scrolling is performed asynchronously so we need to periodically loop and detect if
+        // we're finished scrolling yet. This can be delayed by any work being done to display
+        // data items in the ListView.
+        while (listView.getLastVisiblePosition() != lastPosition) {
+            Thread.sleep(300);
+        }
+    }
+
+    /**
+     * Jump {@code listView} to {@code firstPosition}, then smoothly scroll {@code rows} further
+     * over {@link #SCROLL_TIME_IN_MILLIS} and wait until they are shown. For lists too long to
+     * scroll through.
+     */
+    static void scrollRowsFrom(final ListView listView, final int firstPosition, int rows)
+            throws InterruptedException {
+        final int lastPosition =
+                Math.min(firstPosition + rows, listView.getAdapter().getCount() - 1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                listView.setSelection(firstPosition);
+            }
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                listView.smoothScrollToPositionFromTop(lastPosition, 0, SCROLL_TIME_IN_MILLIS);
+            }
+        });
+        while (listView.getLastVisiblePosition() < lastPosition) {
+            Thread.sleep(300);
+        }
+    }
 }
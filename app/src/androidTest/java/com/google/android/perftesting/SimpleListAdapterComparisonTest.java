@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.content.Intent;
+import android.support.test.rule.ActivityTestRule;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.widget.ListView;
+
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.testrules.EnableImageCacheStats;
+import com.google.android.perftesting.testrules.EnableInterleavedComparison;
+import com.google.android.perftesting.testrules.EnablePostTestDumpsys;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares scrolling {@link SimpleListActivity} with the original adapter against the fixed one,
+ * which loads images with Glide, and the cached one, which uses the app's image loader, with
+ * {@link EnableInterleavedComparison} alternating the three within one session. The paired
+ * differences of the frame and image cache metrics are written to a comparison file per
+ * candidate. Ten pairs let the signed-rank test detect a consistent difference at p < 0.002.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class SimpleListAdapterComparisonTest {
+
+    public EnableInterleavedComparison mComparison = new EnableInterleavedComparison(
+            SimpleListActivity.ADAPTER_ORIGINAL, SimpleListActivity.ADAPTER_FIXED,
+            SimpleListActivity.ADAPTER_CACHED);
+
+    public ActivityTestRule<SimpleListActivity> mActivityRule =
+            new ActivityTestRule<SimpleListActivity>(SimpleListActivity.class) {
+                @Override
+                protected Intent getActivityIntent() {
+                    return new Intent(Intent.ACTION_MAIN)
+                            .putExtra(SimpleListActivity.EXTRA_ADAPTER, mComparison.getVariant());
+                }
+            };
+
+    /**
+     * The image caches' counts are reset before each run's activity is created.
+     */
+    @Rule
+    public RuleChain mRuleChain = RuleChain.outerRule(mComparison)
+            .around(new EnableImageCacheStats())
+            .around(mActivityRule)
+            .around(new EnablePostTestDumpsys(
+                    SimpleListActivityTest.FRAME_SAMPLING_INTERVAL_MILLIS));
+
+    @Test
+    @PerfTest(warmupIterations = 1, measuredIterations = 10)
+    public void scrollFullListWithEachAdapter() throws InterruptedException {
+        SimpleListActivityTest.scrollToEnd(
+                (ListView) mActivityRule.getActivity().findViewById(android.R.id.list));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.test.suitebuilder.annotation.LargeTest;
+
+import com.google.android.perftesting.analysis.ColdStarts;
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.testrules.EnablePerfBudgets;
+import com.google.android.perftesting.testrules.EnableStartupTiming;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.RuleChain;
+import org.junit.runner.RunWith;
+
+/**
+ * Warm start times of the app's activities, measured by {@link EnableStartupTiming}.
+ *
+ * Cold starts kill the app's process, so the test runners measure them from the host before the
+ * tests run and write them to the same layout, as the {@code <activity>ColdStart} tests of this
+ * class. The budgets and the cold started activities are defined once in {@link ColdStarts}.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+@PerfTest(maxTimeToInitialDisplayMillis = ColdStarts.MAX_TIME_TO_INITIAL_DISPLAY_MILLIS,
+        maxTimeToFullDisplayMillis = ColdStarts.MAX_TIME_TO_FULL_DISPLAY_MILLIS)
+public class StartupTest {
+
+    private final EnableStartupTiming mEnableStartupTiming = new EnableStartupTiming();
+
+    @Rule
+    public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+            .around(mEnableStartupTiming);
+
+    @Test
+    public void mainActivityWarmStart() throws Exception {
+        mEnableStartupTiming.measureWarmStarts(MainActivity.class);
+    }
+
+    @Test
+    public void simpleListActivityWarmStart() throws Exception {
+        mEnableStartupTiming.measureWarmStarts(SimpleListActivity.class);
+    }
+
+    @Test
+    public void recyclerViewActivityWarmStart() throws Exception {
+        mEnableStartupTiming.measureWarmStarts(RecyclerViewActivity.class);
+    }
+}
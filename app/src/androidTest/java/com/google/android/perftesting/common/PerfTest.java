@@ -16,11 +16,126 @@
 
 package com.google.android.perftesting.common;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
 /**
  * Used to annotate a test as having a performance component to it.
  *
+ * Budgets are optional and enforced per test by
+ * {@link com.google.android.perftesting.testrules.EnablePerfBudgets}. A negative value, the
+ * default, means the metric has no budget.
+ *
+ * <pre>
+ * @Test
+ * @PerfTest(maxJankPercent = 10, maxP95FrameMillis = 24)
+ * public void scrollFullList() { ... }
+ * </pre>
+ *
  * TODO: Perhaps add a timeout parameter.
  */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
 public @interface PerfTest {
 
+    /**
+     * Maximum percentage of janky frames.
+     */
+    double maxJankPercent() default -1;
+
+    /**
+     * Maximum 95th percentile frame duration in milliseconds.
+     */
+    double maxP95FrameMillis() default -1;
+
+    /**
+     * Maximum proportional set size of the app in kilobytes.
+     */
+    long maxPssKb() default -1;
+
+    /**
+     * Maximum proportional set size of the app at any point of the test in kilobytes, as sampled
+     * by {@link com.google.android.perftesting.testrules.EnableMemorySampling}.
+     */
+    long maxPeakPssKb() default -1;
+
+    /**
+     * Maximum growth rate of the app's proportional set size over the test in kilobytes per
+     * second, as sampled by {@link com.google.android.perftesting.testrules.EnableMemorySampling}.
+     */
+    double maxPssSlopeKbPerSecond() default -1;
+
+    /**
+     * Maximum bytes allocated by the app during the test.
+     */
+    long maxAllocatedBytes() default -1;
+
+    /**
+     * Maximum objects allocated by the app during the test, as counted by
+     * {@link com.google.android.perftesting.testrules.EnableAllocationCounting}.
+     */
+    long maxAllocatedObjects() default -1;
+
+    /**
+     * Maximum bytes allocated on the main thread during the test, as counted by
+     * {@link com.google.android.perftesting.testrules.EnableAllocationCounting}.
+     */
+    long maxMainThreadAllocatedBytes() default -1;
+
+    /**
+     * Maximum objects allocated on the main thread during the test, as counted by
+     * {@link com.google.android.perftesting.testrules.EnableAllocationCounting}.
+     */
+    long maxMainThreadAllocatedObjects() default -1;
+
+    /**
+     * Maximum bytes sent and received by the app during the test.
+     */
+    long maxNetworkBytes() default -1;
+
+    /**
+     * Maximum 95th percentile time from binding a row to showing its image in milliseconds, as
+     * measured by {@link com.google.android.perftesting.testrules.EnableImageLatencyTracking}.
+     */
+    double maxP95ImageLatencyMillis() default -1;
+
+    /**
+     * Maximum 95th percentile time from asking for a page of contacts to it reaching the main
+     * thread in milliseconds, as measured by
+     * {@link com.google.android.perftesting.testrules.EnablePageLoadTracking}.
+     */
+    double maxP95PageLoadMillis() default -1;
+
+    /**
+     * Maximum rows the list had to inflate on the main thread because neither its view pool nor
+     * the prewarmed rows had one, as counted by
+     * {@link com.google.android.perftesting.testrules.EnableViewPoolStats}.
+     */
+    long maxViewPoolMisses() default -1;
+
+    /**
+     * Maximum median time from launching an activity to its first frame in milliseconds, as
+     * measured by {@link com.google.android.perftesting.testrules.EnableStartupTiming}.
+     */
+    long maxTimeToInitialDisplayMillis() default -1;
+
+    /**
+     * Maximum median time from launching an activity to its {@code reportFullyDrawn()} in
+     * milliseconds, as measured by
+     * {@link com.google.android.perftesting.testrules.EnableStartupTiming}. Not checked below API
+     * level 19, where activities can't report it.
+     */
+    long maxTimeToFullDisplayMillis() default -1;
+
+    /**
+     * Number of unmeasured runs of the test before measuring.
+     */
+    int warmupIterations() default 0;
+
+    /**
+     * Number of measured runs of the test.
+     */
+    int measuredIterations() default 1;
 }
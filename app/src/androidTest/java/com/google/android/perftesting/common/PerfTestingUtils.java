@@ -25,11 +25,36 @@ import java.io.File;
  * Centralized methods to ensure tests perform certain actions in the same manner.
  */
 public class PerfTestingUtils {
+
+    /**
+     * Subdirectory of the test directory for the iteration currently running, if any.
+     */
+    private static volatile String sIterationDirName = null;
+
     /**
      * Retrieve the directory where test files should be written to.
      * This directory is local to the application and removed when the app is uninstalled.
+     * While a test is being repeated the directory of the current iteration is returned, see
+     * {@link #setIterationDirName(String)}.
      */
     public static File getTestDir(String className, String testName) {
+        File testFileDir = getTestDirIgnoringIteration(className, testName);
+        String iterationDirName = sIterationDirName;
+        if (iterationDirName != null && className != null && testName != null) {
+            testFileDir = new File(testFileDir, iterationDirName);
+            if (!testFileDir.exists()) {
+                if (!testFileDir.mkdirs()) {
+                    throw new RuntimeException("Unable to create iteration file directory.");
+                }
+            }
+        }
+        return testFileDir;
+    }
+
+    /**
+     * Retrieve the test's own directory, even while an iteration of it is running.
+     */
+    public static File getTestDirIgnoringIteration(String className, String testName) {
 
         File rootDir = getAppContext().getFilesDir();
 
@@ -48,6 +73,15 @@ public class PerfTestingUtils {
 
     }
 
+    /**
+     * Direct the files of every test to a subdirectory of its test directory, or back to the test
+     * directory itself when {@code iterationDirName} is null. Used when a test is run repeatedly so
+     * each run keeps its own files.
+     */
+    public static void setIterationDirName(String iterationDirName) {
+        sIterationDirName = iterationDirName;
+    }
+
     /**
      * Retrieve the app-under-test's {@code Context}.
      */
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.os.Debug;
+import android.support.test.InstrumentationRegistry;
+
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTestingUtils;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule counts the objects and bytes allocated during a test, on the main thread, where
+ * adapters bind their views, and in the whole process. The counts are written to
+ * {@link #ALLOCATIONS_FILENAME} and recorded as metrics, so the {@code PerfTest} allocation budgets
+ * fail the test when a bind path starts allocating more.
+ *
+ * The runtime's allocation counters ({@link Debug#startAllocCounting()}) are used where they
+ * work. They slow down every allocation, so frame timings measured in the same test are
+ * pessimistic. When the counters report nothing, only the bytes the whole process allocated are
+ * available, from the runtime's {@code art.gc.bytes-allocated} statistic on API level 23 and
+ * higher, and the main thread and object counts are left unmeasured. The garbage collections
+ * during the test are recorded too where the runtime reports them.
+ *
+ * Everything the rules inside this one do is counted, so put it outside the
+ * {@code ActivityTestRule} to include launching the activity and inside it to count only the test:
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+ *         .around(new EnableAllocationCounting())
+ *         .around(mActivityRule);
+ * </pre>
+ */
+public class EnableAllocationCounting extends ExternalResource {
+
+    /**
+     * Name of the per-test allocation report.
+     */
+    public static final String ALLOCATIONS_FILENAME = "allocations.log";
+
+    private static final String GC_COUNT_STAT = "art.gc.gc-count";
+    private static final String GC_TIME_STAT = "art.gc.gc-time";
+
+    private Logger logger = Logger.getLogger(EnableAllocationCounting.class.getName());
+
+    private String mTestName;
+    private String mTestClass;
+
+    private long mAllocatedBytesBefore;
+    private long mGcCountBefore;
+    private long mGcMillisBefore;
+
+    // Read on the main thread, published to the test thread by runOnMainSync.
+    private long mMainThreadObjects;
+    private long mMainThreadBytes;
+    private long mProcessObjects;
+    private long mProcessBytes;
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void before() {
+        mAllocatedBytesBefore = EnablePerfBudgets.getAllocatedBytes();
+        mGcCountBefore = EnablePerfBudgets.getRuntimeStat(GC_COUNT_STAT);
+        mGcMillisBefore = EnablePerfBudgets.getRuntimeStat(GC_TIME_STAT);
+        // Thread counters belong to the thread calling them, so start counting on the main thread.
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                Debug.resetAllCounts();
+                Debug.startAllocCounting();
+            }
+        });
+    }
+
+    @Override
+    public void after() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            @SuppressWarnings("deprecation")
+            public void run() {
+                Debug.stopAllocCounting();
+                mMainThreadObjects = Debug.getThreadAllocCount();
+                mMainThreadBytes = Debug.getThreadAllocSize();
+                mProcessObjects = Debug.getGlobalAllocCount();
+                mProcessBytes = Debug.getGlobalAllocSize();
+            }
+        });
+        long allocatedBytesAfter = EnablePerfBudgets.getAllocatedBytes();
+        long allocatedBytes = mAllocatedBytesBefore >= 0 && allocatedBytesAfter >= 0
+                ? allocatedBytesAfter - mAllocatedBytesBefore : -1;
+        long gcCount = difference(mGcCountBefore,
+                EnablePerfBudgets.getRuntimeStat(GC_COUNT_STAT));
+        long gcMillis = difference(mGcMillisBefore,
+                EnablePerfBudgets.getRuntimeStat(GC_TIME_STAT));
+
+        // The counters are stubs on some runtimes, they report nothing although the app allocated.
+        boolean countersWork = mProcessObjects > 0;
+        if (!countersWork) {
+            mMainThreadObjects = -1;
+            mMainThreadBytes = -1;
+            mProcessObjects = -1;
+            mProcessBytes = allocatedBytes;
+        }
+
+        writeReport(countersWork, gcCount, gcMillis);
+        File testDir = PerfTestingUtils.getTestDir(mTestClass, mTestName);
+        try {
+            appendIfMeasured(testDir, PerfMetrics.MAIN_THREAD_ALLOCATED_OBJECTS,
+                    mMainThreadObjects);
+            appendIfMeasured(testDir, PerfMetrics.MAIN_THREAD_ALLOCATED_BYTES, mMainThreadBytes);
+            appendIfMeasured(testDir, PerfMetrics.ALLOCATED_OBJECTS, mProcessObjects);
+            appendIfMeasured(testDir, PerfMetrics.ALLOCATED_BYTES, mProcessBytes);
+            appendIfMeasured(testDir, PerfMetrics.GC_COUNT, gcCount);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record allocation metrics", exception);
+        }
+    }
+
+    private void writeReport(boolean countersWork, long gcCount, long gcMillis) {
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName, ALLOCATIONS_FILENAME));
+            String eol = System.getProperty("line.separator");
+            fileWriter.append("source=").append(countersWork ? "counters" : "runtimeStats")
+                    .append(eol);
+            fileWriter.append("mainThreadObjects=").append(Long.toString(mMainThreadObjects))
+                    .append(eol);
+            fileWriter.append("mainThreadBytes=").append(Long.toString(mMainThreadBytes))
+                    .append(eol);
+            fileWriter.append("processObjects=").append(Long.toString(mProcessObjects))
+                    .append(eol);
+            fileWriter.append("processBytes=").append(Long.toString(mProcessBytes)).append(eol);
+            fileWriter.append("gcCount=").append(Long.toString(gcCount)).append(eol);
+            fileWriter.append("gcMillis=").append(Long.toString(gcMillis)).append(eol);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write allocation report", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    private static long difference(long before, long after) {
+        return before >= 0 && after >= 0 ? after - before : -1;
+    }
+
+    private static void appendIfMeasured(File testDir, String name, long value)
+            throws Exception {
+        if (value >= 0) {
+            PerfMetrics.append(testDir, name, value);
+        }
+    }
+}
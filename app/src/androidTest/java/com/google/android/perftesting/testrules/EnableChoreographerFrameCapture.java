@@ -0,0 +1,179 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import com.google.android.perftesting.analysis.FrameHistogram;
+import com.google.android.perftesting.common.PerfTestingUtils;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.FileWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule detects jank on devices that can't provide framestats (API levels lower than 23) by
+ * posting a {@link Choreographer.FrameCallback} for every vsync during the test. The interval
+ * between consecutive frame times is recorded in a {@link FrameHistogram} and written to
+ * {@link FrameHistogram#SUMMARY_FILENAME}, the same output as the framestats based rules, along
+ * with the number of vsyncs the main thread missed.
+ *
+ * Frame intervals are vsync aligned, so an interval of a single refresh period is recorded as
+ * exactly 16ms; only intervals with missed vsyncs count as slow frames. The rule does nothing on
+ * API levels lower than 16 where Choreographer isn't available.
+ *
+ * <pre>
+ * @Rule
+ * public EnableChoreographerFrameCapture mEnableChoreographerFrameCapture =
+ *         new EnableChoreographerFrameCapture();
+ * </pre>
+ */
+public class EnableChoreographerFrameCapture extends ExternalResource {
+
+    private Logger logger = Logger.getLogger(EnableChoreographerFrameCapture.class.getName());
+
+    private String mTestName;
+    private String mTestClass;
+
+    private FrameIntervalCallback mCallback;
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void before() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mCallback = new FrameIntervalCallback(getRefreshPeriodNanos());
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mCallback.start();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void after() {
+        if (mCallback == null) {
+            return;
+        }
+        // Stopping on the main thread also makes the callback's counters visible to this thread.
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mCallback.stop();
+            }
+        });
+
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    FrameHistogram.SUMMARY_FILENAME));
+            mCallback.mHistogram.writeSummary(fileWriter);
+            String eol = System.getProperty("line.separator");
+            fileWriter.append("missedVsyncs=").append(Long.toString(mCallback.mMissedVsyncs))
+                    .append(eol);
+            fileWriter.append("refreshPeriodMicros=")
+                    .append(Long.toString(mCallback.mRefreshPeriodNanos / 1000)).append(eol);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write frame summary", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+        mCallback = null;
+    }
+
+    private static long getRefreshPeriodNanos() {
+        Context context = PerfTestingUtils.getAppContext();
+        WindowManager windowManager =
+                (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+        if (refreshRate < 1) {
+            refreshRate = 60;
+        }
+        return (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate);
+    }
+
+    /**
+     * Re-posts itself every frame and records the interval since the previous frame. Runs on the
+     * main thread only and doesn't allocate.
+     */
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class FrameIntervalCallback implements Choreographer.FrameCallback {
+
+        final FrameHistogram mHistogram = new FrameHistogram();
+        final long mRefreshPeriodNanos;
+        long mMissedVsyncs;
+
+        private Choreographer mChoreographer;
+        private long mLastFrameTimeNanos;
+        private boolean mRunning;
+
+        FrameIntervalCallback(long refreshPeriodNanos) {
+            mRefreshPeriodNanos = refreshPeriodNanos;
+        }
+
+        void start() {
+            mChoreographer = Choreographer.getInstance();
+            mRunning = true;
+            mChoreographer.postFrameCallback(this);
+        }
+
+        void stop() {
+            mRunning = false;
+            mChoreographer.removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastFrameTimeNanos != 0) {
+                long interval = frameTimeNanos - mLastFrameTimeNanos;
+                long missed = Math.round((double) interval / mRefreshPeriodNanos) - 1;
+                if (missed > 0) {
+                    mMissedVsyncs += missed;
+                    mHistogram.recordNanos(interval);
+                } else {
+                    mHistogram.recordNanos(Math.min(interval, FrameHistogram.SLOW_FRAME_NANOS));
+                }
+            }
+            mLastFrameTimeNanos = frameTimeNanos;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+}
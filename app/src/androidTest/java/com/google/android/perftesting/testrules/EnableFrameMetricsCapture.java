@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import com.google.android.perftesting.analysis.FrameHistogram;
+import com.google.android.perftesting.analysis.FrameRingBuffer;
+import com.google.android.perftesting.analysis.FrameStageAnalyzer;
+import com.google.android.perftesting.analysis.FrameStatsParser;
+import com.google.android.perftesting.analysis.FrameStatsReport;
+import com.google.android.perftesting.analysis.FrameStatsWriter;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule records every frame of the activity under test in-process using
+ * {@link Window.OnFrameMetricsAvailableListener}, which avoids spawning dumpsys processes and
+ * writing files while the test is being measured. Frames are copied into a preallocated
+ * {@link FrameRingBuffer} without allocating and are only summarized after the test, into the same
+ * {@link FrameHistogram#SUMMARY_FILENAME} and {@link FrameStageAnalyzer#STAGES_FILENAME} files
+ * written by {@link EnablePostTestDumpsys}. On API levels lower than 24 the rule falls back to
+ * {@link EnablePostTestDumpsys} polling framestats every
+ * {@link #FALLBACK_SAMPLING_INTERVAL_MILLIS}, so long tests don't lose frames there either.
+ *
+ * The activity has to be launched before this rule runs, so chain it inside the
+ * {@link ActivityTestRule}:
+ *
+ * <pre>
+ * public ActivityTestRule<SimpleListActivity> mActivityRule = new ActivityTestRule<>(
+ *         SimpleListActivity.class);
+ *
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(mActivityRule)
+ *         .around(new EnableFrameMetricsCapture(mActivityRule));
+ * </pre>
+ */
+public class EnableFrameMetricsCapture extends ExternalResource {
+
+    /**
+     * Every captured frame, in framestats format.
+     */
+    public static final String FRAME_LOG_FILENAME = "framemetrics.frames.log";
+
+    /**
+     * How often the {@link EnablePostTestDumpsys} fallback polls framestats, well within the ~120
+     * frames the platform keeps.
+     */
+    public static final long FALLBACK_SAMPLING_INTERVAL_MILLIS = 1000;
+
+    private Logger logger = Logger.getLogger(EnableFrameMetricsCapture.class.getName());
+
+    private final ActivityTestRule<? extends Activity> mActivityRule;
+    private final FrameRingBuffer mRingBuffer;
+    private final EnablePostTestDumpsys mFallback =
+            new EnablePostTestDumpsys(FALLBACK_SAMPLING_INTERVAL_MILLIS);
+
+    private String mTestName;
+    private String mTestClass;
+
+    private HandlerThread mListenerThread;
+    private Window mWindow;
+    private Window.OnFrameMetricsAvailableListener mListener;
+
+    public EnableFrameMetricsCapture(ActivityTestRule<? extends Activity> activityRule) {
+        this(activityRule, FrameRingBuffer.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of frames kept; older frames are overwritten and counted.
+     */
+    public EnableFrameMetricsCapture(ActivityTestRule<? extends Activity> activityRule,
+            int capacity) {
+        mActivityRule = activityRule;
+        mRingBuffer = new FrameRingBuffer(capacity);
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return mFallback.apply(base, description);
+        }
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    @Override
+    public void before() {
+        mRingBuffer.clear();
+        mListenerThread = new HandlerThread("FrameMetricsCapture");
+        mListenerThread.start();
+        final Handler handler = new Handler(mListenerThread.getLooper());
+        mWindow = mActivityRule.getActivity().getWindow();
+        mListener = new FrameMetricsListener(mRingBuffer);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mWindow.addOnFrameMetricsAvailableListener(mListener, handler);
+            }
+        });
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    @Override
+    public void after() {
+        try {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+                @Override
+                public void run() {
+                    mWindow.removeOnFrameMetricsAvailableListener(mListener);
+                }
+            });
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to remove frame metrics listener", exception);
+        }
+        // Let any frame already queued on the listener thread be recorded.
+        mListenerThread.quitSafely();
+        try {
+            mListenerThread.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        mListenerThread = null;
+        mWindow = null;
+        mListener = null;
+
+        writeFrames();
+    }
+
+    private void writeFrames() {
+        if (mRingBuffer.getOverwrittenFrames() > 0) {
+            logger.warning("Frame metrics buffer overflowed, lost "
+                    + mRingBuffer.getOverwrittenFrames() + " frames. Use a larger capacity.");
+        }
+        FileWriter fileWriter = null;
+        try {
+            File frameLog = getTestFile(mTestClass, mTestName, FRAME_LOG_FILENAME);
+            fileWriter = new FileWriter(frameLog);
+            FrameStatsWriter frameStatsWriter = new FrameStatsWriter(fileWriter);
+            FrameHistogram histogram = new FrameHistogram();
+            FrameStageAnalyzer stageAnalyzer = new FrameStageAnalyzer();
+            mRingBuffer.drainTo(
+                    FrameStatsParser.compose(histogram, stageAnalyzer, frameStatsWriter));
+            frameStatsWriter.finish();
+            String eol = System.getProperty("line.separator");
+            fileWriter.append("Overwritten frames: ")
+                    .append(Long.toString(mRingBuffer.getOverwrittenFrames())).append(eol);
+            fileWriter.append("Dropped frames: ")
+                    .append(Long.toString(mRingBuffer.getPlatformDroppedFrames())).append(eol);
+            FrameStatsReport.writeSummaries(histogram, stageAnalyzer, frameLog.getParentFile());
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write frame metrics", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    /**
+     * Converts each {@link FrameMetrics} into a framestats-style row of cumulative timestamps and
+     * records it. The row is reused so nothing is allocated per frame.
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private static class FrameMetricsListener implements Window.OnFrameMetricsAvailableListener {
+
+        private final FrameRingBuffer mRingBuffer;
+        private final long[] mRow = new long[FrameStatsParser.COLUMN_COUNT];
+        // Frames without a vsync timestamp (before API 26) are laid out on a synthetic timeline.
+        private long mSyntheticTimeNanos = 0;
+
+        FrameMetricsListener(FrameRingBuffer ringBuffer) {
+            mRingBuffer = ringBuffer;
+        }
+
+        @Override
+        public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics,
+                int dropCountSinceLastInvocation) {
+            if (dropCountSinceLastInvocation > 0) {
+                mRingBuffer.addPlatformDroppedFrames(dropCountSinceLastInvocation);
+            }
+            long start;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                start = frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP);
+            } else {
+                start = mSyntheticTimeNanos + 1;
+            }
+            long[] row = mRow;
+            row[FrameStatsParser.FLAGS] = frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME);
+            row[FrameStatsParser.INTENDED_VSYNC] = start;
+            row[FrameStatsParser.VSYNC] = start;
+            row[FrameStatsParser.HANDLE_INPUT_START] = row[FrameStatsParser.INTENDED_VSYNC]
+                    + frameMetrics.getMetric(FrameMetrics.UNKNOWN_DELAY_DURATION);
+            row[FrameStatsParser.ANIMATION_START] = row[FrameStatsParser.HANDLE_INPUT_START]
+                    + frameMetrics.getMetric(FrameMetrics.INPUT_HANDLING_DURATION);
+            row[FrameStatsParser.PERFORM_TRAVERSALS_START] = row[FrameStatsParser.ANIMATION_START]
+                    + frameMetrics.getMetric(FrameMetrics.ANIMATION_DURATION);
+            row[FrameStatsParser.DRAW_START] = row[FrameStatsParser.PERFORM_TRAVERSALS_START]
+                    + frameMetrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION);
+            row[FrameStatsParser.SYNC_QUEUED] = row[FrameStatsParser.DRAW_START]
+                    + frameMetrics.getMetric(FrameMetrics.DRAW_DURATION);
+            row[FrameStatsParser.SYNC_START] = row[FrameStatsParser.SYNC_QUEUED];
+            row[FrameStatsParser.ISSUE_DRAW_COMMANDS_START] = row[FrameStatsParser.SYNC_QUEUED]
+                    + frameMetrics.getMetric(FrameMetrics.SYNC_DURATION);
+            row[FrameStatsParser.SWAP_BUFFERS] = row[FrameStatsParser.ISSUE_DRAW_COMMANDS_START]
+                    + frameMetrics.getMetric(FrameMetrics.COMMAND_ISSUE_DURATION);
+            row[FrameStatsParser.FRAME_COMPLETED] = row[FrameStatsParser.SWAP_BUFFERS]
+                    + frameMetrics.getMetric(FrameMetrics.SWAP_BUFFERS_DURATION);
+            mSyntheticTimeNanos = row[FrameStatsParser.FRAME_COMPLETED];
+            mRingBuffer.record(row);
+        }
+    }
+}
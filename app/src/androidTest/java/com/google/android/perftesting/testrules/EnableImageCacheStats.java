@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.support.test.InstrumentationRegistry;
+
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTestingUtils;
+import com.google.android.perftesting.images.GlideBindStats;
+import com.google.android.perftesting.images.ImageLoader;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule reports how the images bound during a test were served: from a memory cache or by
+ * decoding. Both the app's {@link ImageLoader} and Glide, as counted by {@link GlideBindStats},
+ * are covered; Glide's decodes include reading its disk cache. For the {@link ImageLoader} it
+ * also reports how long the decodes took and how many reused a pooled bitmap. The counts are
+ * written to {@link #IMAGE_CACHE_FILENAME} and the memory hits and decodes of both recorded as
+ * metrics, unless the test bound no images.
+ *
+ * The counts are reset before the activity is created so its first rows are included, so put the
+ * rule outside the {@code ActivityTestRule}:
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+ *         .around(new EnableImageCacheStats())
+ *         .around(mActivityRule);
+ * </pre>
+ */
+public class EnableImageCacheStats extends ExternalResource {
+
+    /**
+     * Name of the per-test image cache report.
+     */
+    public static final String IMAGE_CACHE_FILENAME = "imagecache.log";
+
+    private Logger logger = Logger.getLogger(EnableImageCacheStats.class.getName());
+
+    private String mTestName;
+    private String mTestClass;
+
+    // Read on the main thread, published to the test thread by runOnMainSync.
+    private ImageLoader.Stats mStats;
+    private int mGlideMemoryHits;
+    private int mGlideLoads;
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void before() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                getImageLoader().resetStats();
+                GlideBindStats.getInstance().reset();
+            }
+        });
+    }
+
+    @Override
+    public void after() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mStats = getImageLoader().getStats();
+                mGlideMemoryHits = GlideBindStats.getInstance().getMemoryHits();
+                mGlideLoads = GlideBindStats.getInstance().getLoads();
+            }
+        });
+        if (mStats.getRequests() == 0 && mGlideMemoryHits + mGlideLoads == 0) {
+            return;
+        }
+
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName, IMAGE_CACHE_FILENAME));
+            String eol = System.getProperty("line.separator");
+            fileWriter.append("imageLoader: ").append(mStats.toString()).append(eol);
+            fileWriter.append("glide: ").append(GlideBindStats.getInstance().toString())
+                    .append(eol);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write image cache report", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+
+        File testDir = PerfTestingUtils.getTestDir(mTestClass, mTestName);
+        try {
+            PerfMetrics.append(testDir, PerfMetrics.IMAGE_MEMORY_HITS,
+                    mStats.getMemoryHits() + mGlideMemoryHits);
+            PerfMetrics.append(testDir, PerfMetrics.IMAGE_DECODES,
+                    mStats.getDecodes() + mGlideLoads);
+            PerfMetrics.append(testDir, PerfMetrics.IMAGE_REUSED_BITMAPS,
+                    mStats.getReusedBitmaps());
+            if (mStats.getDecodes() > 0) {
+                PerfMetrics.append(testDir, PerfMetrics.MEAN_IMAGE_DECODE_MILLIS,
+                        mStats.getDecodeNanos() / 1e6 / mStats.getDecodes());
+            }
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record image cache metrics", exception);
+        }
+    }
+
+    private static ImageLoader getImageLoader() {
+        return ImageLoader.get(InstrumentationRegistry.getTargetContext());
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.support.test.InstrumentationRegistry;
+
+import com.google.android.perftesting.analysis.FrameHistogram;
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTestingUtils;
+import com.google.android.perftesting.images.ImageLatencyTracker;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule measures how long the rows bound during a test showed no image, with the app's
+ * {@link ImageLatencyTracker}. The latencies from binding a row to its image being set are
+ * written as a histogram to {@link #IMAGE_LATENCY_FILENAME}, in the {@link FrameHistogram}
+ * summary format with every image counted as a frame, together with the number of loads cancelled
+ * because the row's view was recycled first. The count and percentiles are also recorded as
+ * metrics.
+ *
+ * The first rows are bound while the activity is launched, so put the rule outside the
+ * {@code ActivityTestRule} to track them too:
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+ *         .around(new EnableImageLatencyTracking())
+ *         .around(mActivityRule);
+ * </pre>
+ */
+public class EnableImageLatencyTracking extends ExternalResource {
+
+    /**
+     * Name of the per-test image latency histogram.
+     */
+    public static final String IMAGE_LATENCY_FILENAME = "image.latency.log";
+
+    private Logger logger = Logger.getLogger(EnableImageLatencyTracking.class.getName());
+
+    private String mTestName;
+    private String mTestClass;
+
+    // Only changed on the main thread, and read after runOnMainSync stops the tracking.
+    private final FrameHistogram mHistogram = new FrameHistogram();
+    private long mCancelledLoads;
+
+    private final ImageLatencyTracker.Listener mListener = new ImageLatencyTracker.Listener() {
+        @Override
+        public void onImageShown(long latencyNanos) {
+            mHistogram.recordNanos(latencyNanos);
+        }
+
+        @Override
+        public void onImageCancelled(long waitedNanos) {
+            mCancelledLoads++;
+        }
+    };
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void before() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mHistogram.reset();
+                mCancelledLoads = 0;
+                ImageLatencyTracker.getInstance().setListener(mListener);
+            }
+        });
+    }
+
+    @Override
+    public void after() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ImageLatencyTracker.getInstance().setListener(null);
+            }
+        });
+
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    IMAGE_LATENCY_FILENAME));
+            fileWriter.append("cancelledLoads=").append(Long.toString(mCancelledLoads))
+                    .append(System.getProperty("line.separator"));
+            mHistogram.writeSummary(fileWriter);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write image latency histogram", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+
+        File testDir = PerfTestingUtils.getTestDir(mTestClass, mTestName);
+        try {
+            PerfMetrics.append(testDir, PerfMetrics.IMAGES_SHOWN, mHistogram.getFrameCount());
+            PerfMetrics.append(testDir, PerfMetrics.IMAGE_LOADS_CANCELLED, mCancelledLoads);
+            if (mHistogram.getFrameCount() > 0) {
+                PerfMetrics.append(testDir, PerfMetrics.P50_IMAGE_LATENCY_MILLIS,
+                        mHistogram.getPercentileMillis(50));
+                PerfMetrics.append(testDir, PerfMetrics.P95_IMAGE_LATENCY_MILLIS,
+                        mHistogram.getPercentileMillis(95));
+                PerfMetrics.append(testDir, PerfMetrics.P99_IMAGE_LATENCY_MILLIS,
+                        mHistogram.getPercentileMillis(99));
+                PerfMetrics.append(testDir, PerfMetrics.MAX_IMAGE_LATENCY_MILLIS,
+                        mHistogram.getMaxMicros() / 1000.0);
+            }
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record image latency metrics", exception);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import com.google.android.perftesting.analysis.PairedComparison;
+import com.google.android.perftesting.common.PerfTest;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * This rule compares variants of a {@link PerfTest} method, e.g. adapters selected with an intent
+ * extra, within one instrumentation session: a baseline and one or more candidates. The variants
+ * alternate in ABBA order (A B B A A B B A ...), or A B C C B A ... with more candidates, so drift
+ * in thermal state or background load during the session affects all of them equally, instead of
+ * comparing runs made minutes apart.
+ *
+ * The runs are made by the {@link EnablePerfIterations} loop: each variant is run
+ * {@link PerfTest#warmupIterations()} times without measuring and then
+ * {@link PerfTest#measuredIterations()} times, with every rule inside this one re-applied for each
+ * run and writing its files to its own subdirectory ({@code warmup_<variant>_01},
+ * {@code measured_<variant>_01}, ...). The test reads the variant to run from
+ * {@link #getVariant()}. Afterwards every metric's paired differences, candidate minus baseline,
+ * are summarized in {@link PairedComparison#COMPARISON_FILENAME}, or for several candidates in a
+ * file per candidate named by {@link PairedComparison#getComparisonFilename(String)}. Each
+ * measured iteration is one pair, and a difference can only be significant with at least
+ * {@link PairedComparison#MIN_SIGNIFICANT_PAIRS} of them.
+ *
+ * <pre>
+ * public EnableInterleavedComparison mComparison = new EnableInterleavedComparison(
+ *         SimpleListActivity.ADAPTER_ORIGINAL, SimpleListActivity.ADAPTER_FIXED);
+ *
+ * public ActivityTestRule&lt;SimpleListActivity&gt; mActivityRule =
+ *         new ActivityTestRule&lt;SimpleListActivity&gt;(SimpleListActivity.class) {
+ *             protected Intent getActivityIntent() {
+ *                 return new Intent(Intent.ACTION_MAIN)
+ *                         .putExtra(SimpleListActivity.EXTRA_ADAPTER, mComparison.getVariant());
+ *             }
+ *         };
+ *
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(mComparison)
+ *         .around(mActivityRule)
+ *         .around(new EnablePostTestDumpsys());
+ * </pre>
+ */
+public class EnableInterleavedComparison extends EnablePerfIterations {
+
+    // Variants name directories, so keep them to characters safe in paths and results keys.
+    private static final Pattern VARIANT_PATTERN = Pattern.compile("[A-Za-z0-9]+");
+
+    private Logger logger = Logger.getLogger(EnableInterleavedComparison.class.getName());
+
+    private final String mBaseline;
+    private final String[] mCandidates;
+    private volatile String mVariant;
+
+    /**
+     * @param baseline the variant differences are measured from, e.g. the current implementation.
+     * @param candidates the variants being evaluated, each compared with the baseline.
+     */
+    public EnableInterleavedComparison(String baseline, String... candidates) {
+        List<String> variants = new ArrayList<>();
+        variants.add(baseline);
+        variants.addAll(Arrays.asList(candidates));
+        for (String variant : variants) {
+            if (!VARIANT_PATTERN.matcher(variant).matches()) {
+                throw new IllegalArgumentException("Variants must be alphanumeric: " + variants);
+            }
+        }
+        if (candidates.length == 0 || new HashSet<>(variants).size() != variants.size()) {
+            throw new IllegalArgumentException("Need a baseline and distinct candidates: "
+                    + variants);
+        }
+        mBaseline = baseline;
+        mCandidates = candidates.clone();
+        mVariant = baseline;
+    }
+
+    /**
+     * The variant the current run should exercise.
+     */
+    public String getVariant() {
+        return mVariant;
+    }
+
+    @Override
+    protected boolean repeats(PerfTest perfTest) {
+        return true;
+    }
+
+    /**
+     * The variants run in order in odd pairs and in reverse in even ones, giving A B B A A B B A,
+     * so every variant's runs are on average as far into the session.
+     */
+    @Override
+    protected String[] getVariants(int pair) {
+        List<String> variants = new ArrayList<>();
+        variants.add(mBaseline);
+        variants.addAll(Arrays.asList(mCandidates));
+        if (pair % 2 == 0) {
+            Collections.reverse(variants);
+        }
+        return variants.toArray(new String[variants.size()]);
+    }
+
+    @Override
+    protected void onVariant(String variant) {
+        mVariant = variant != null ? variant : mBaseline;
+    }
+
+    @Override
+    protected void summarize(Map<String, List<File>> measuredDirs, File testDir)
+            throws Exception {
+        int pairs = measuredDirs.get(mBaseline).size();
+        if (pairs < PairedComparison.MIN_SIGNIFICANT_PAIRS) {
+            logger.warning(pairs + " pairs can't show a significant difference, measure at least "
+                    + PairedComparison.MIN_SIGNIFICANT_PAIRS + " iterations");
+        }
+        for (String candidate : mCandidates) {
+            String filename = mCandidates.length == 1 ? PairedComparison.COMPARISON_FILENAME
+                    : PairedComparison.getComparisonFilename(candidate);
+            writeComparison(PairedComparison.readIterationDirs(mBaseline,
+                    measuredDirs.get(mBaseline), candidate, measuredDirs.get(candidate)),
+                    new File(testDir, filename));
+        }
+    }
+
+    private static void writeComparison(PairedComparison comparison, File file)
+            throws Exception {
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(file);
+            comparison.writeReport(fileWriter);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+    }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.os.Build;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import com.google.android.perftesting.analysis.MemInfo;
+import com.google.android.perftesting.analysis.MemoryTimeSeries;
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTestingUtils;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule samples the app's memory on a background thread while the test runs and takes a
+ * {@code dumpsys meminfo} of the app before and after it.
+ *
+ * Every sample records the total PSS and private dirty memory from {@link Debug#getMemoryInfo},
+ * the Java heap in use from {@link Runtime}, the native heap allocated and, on API level 23 and
+ * higher, the graphics memory. The samples are written to
+ * {@link MemoryTimeSeries#TIMESERIES_FILENAME} and their peak and trend to
+ * {@link MemoryTimeSeries#SUMMARY_FILENAME}, along with the values parsed from both dumps. Note
+ * the sampled heaps are bytes allocated while the dumps report the heaps' PSS.
+ *
+ * The metrics recorded for the test are the final dump's values, the peak PSS of the samples and
+ * dumps, and the growth rate of PSS over the test, so {@code PerfTest#maxPeakPssKb()} and
+ * {@code PerfTest#maxPssSlopeKbPerSecond()} can budget them. A steady rise of any value is logged
+ * as a possible leak.
+ *
+ * <pre>
+ * @Rule
+ * public EnableMemorySampling mEnableMemorySampling = new EnableMemorySampling();
+ * </pre>
+ */
+public class EnableMemorySampling extends ExternalResource {
+
+    public static final String MEMINFO_BEFORE_FILENAME = "meminfo.before.dumpsys.log";
+    public static final String MEMINFO_AFTER_FILENAME = "meminfo.after.dumpsys.log";
+
+    public static final long DEFAULT_SAMPLING_INTERVAL_MILLIS = 250;
+
+    private static final String GRAPHICS_STAT = "summary.graphics";
+
+    private Logger logger = Logger.getLogger(EnableMemorySampling.class.getName());
+
+    private String mTestName;
+    private String mTestClass;
+
+    private final long mSamplingIntervalMillis;
+    private MemorySampler mSampler;
+
+    public EnableMemorySampling() {
+        this(DEFAULT_SAMPLING_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Sample every {@code samplingIntervalMillis}. Each sample takes a few milliseconds of CPU
+     * time in the app's process, so very short intervals disturb the test.
+     */
+    public EnableMemorySampling(long samplingIntervalMillis) {
+        mSamplingIntervalMillis = samplingIntervalMillis;
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void before() {
+        takeMeminfo(getTestFile(mTestClass, mTestName, MEMINFO_BEFORE_FILENAME));
+        mSampler = new MemorySampler(mSamplingIntervalMillis);
+        mSampler.start();
+    }
+
+    @Override
+    public void after() {
+        MemoryTimeSeries series = null;
+        if (mSampler != null) {
+            mSampler.finish();
+            try {
+                mSampler.join();
+                series = mSampler.mSeries;
+            } catch (InterruptedException exception) {
+                logger.log(Level.SEVERE, "Interrupted waiting for memory sampling", exception);
+                Thread.currentThread().interrupt();
+            }
+            mSampler = null;
+        }
+        File afterFile = getTestFile(mTestClass, mTestName, MEMINFO_AFTER_FILENAME);
+        takeMeminfo(afterFile);
+        if (series == null) {
+            return;
+        }
+
+        MemInfo before = parseMeminfo(getTestFile(mTestClass, mTestName,
+                MEMINFO_BEFORE_FILENAME));
+        MemInfo after = parseMeminfo(afterFile);
+        writeSeries(series, before, after);
+        recordMetrics(series, before, after);
+        for (String value : MemoryTimeSeries.VALUES) {
+            if (series.isGrowing(value)) {
+                logger.warning(value + " grew steadily during " + mTestClass + "#" + mTestName
+                        + " at " + series.getSlopePerSecond(value) + " KB/s, check for a leak");
+            }
+        }
+    }
+
+    private void writeSeries(MemoryTimeSeries series, MemInfo before, MemInfo after) {
+        FileWriter seriesWriter = null;
+        FileWriter summaryWriter = null;
+        try {
+            seriesWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    MemoryTimeSeries.TIMESERIES_FILENAME));
+            series.write(seriesWriter);
+            summaryWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    MemoryTimeSeries.SUMMARY_FILENAME));
+            series.writeSummary(summaryWriter);
+            if (before != null) {
+                before.writeSummary(summaryWriter, "before.");
+            }
+            if (after != null) {
+                after.writeSummary(summaryWriter, "after.");
+            }
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write memory samples", exception);
+        } finally {
+            if (seriesWriter != null) {
+                try { seriesWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+            if (summaryWriter != null) {
+                try { summaryWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    private void recordMetrics(MemoryTimeSeries series, MemInfo before, MemInfo after) {
+        File testDir = PerfTestingUtils.getTestDir(mTestClass, mTestName);
+        try {
+            long peakPssKb = series.getPeak(PerfMetrics.PSS_KB);
+            if (before != null) {
+                peakPssKb = Math.max(peakPssKb, before.getTotalPssKb());
+            }
+            if (after != null) {
+                peakPssKb = Math.max(peakPssKb, after.getTotalPssKb());
+                appendIfKnown(testDir, PerfMetrics.PSS_KB, after.getTotalPssKb());
+                appendIfKnown(testDir, PerfMetrics.PRIVATE_DIRTY_KB, after.getPrivateDirtyKb());
+                appendIfKnown(testDir, PerfMetrics.JAVA_HEAP_KB, after.getJavaHeapKb());
+                appendIfKnown(testDir, PerfMetrics.NATIVE_HEAP_KB, after.getNativeHeapKb());
+                appendIfKnown(testDir, PerfMetrics.GRAPHICS_KB, after.getGraphicsKb());
+            }
+            appendIfKnown(testDir, PerfMetrics.PEAK_PSS_KB, peakPssKb);
+            double slope = series.getSlopePerSecond(PerfMetrics.PSS_KB);
+            if (!Double.isNaN(slope)) {
+                PerfMetrics.append(testDir, PerfMetrics.PSS_SLOPE_KB_PER_SECOND, slope);
+            }
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record memory metrics", exception);
+        }
+    }
+
+    private static void appendIfKnown(File testDir, String name, long value) throws Exception {
+        if (value >= 0) {
+            PerfMetrics.append(testDir, name, value);
+        }
+    }
+
+    private MemInfo parseMeminfo(File dumpFile) {
+        if (!dumpFile.isFile()) {
+            return null;
+        }
+        FileReader fileReader = null;
+        try {
+            fileReader = new FileReader(dumpFile);
+            return MemInfo.parse(fileReader);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to parse meminfo", exception);
+            return null;
+        } finally {
+            if (fileReader != null) {
+                try { fileReader.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    private void takeMeminfo(File dumpFile) {
+        FileWriter fileWriter = null;
+        BufferedReader bufferedReader = null;
+        try {
+            Trace.beginSection("Taking meminfo dumpsys");
+            ProcessBuilder processBuilder = new ProcessBuilder();
+            processBuilder.command("dumpsys", "meminfo",
+                    // NOTE: Using the android app BuildConfig specifically.
+                    com.google.android.perftesting.BuildConfig.APPLICATION_ID);
+            processBuilder.redirectErrorStream(true);
+            Process process = processBuilder.start();
+            fileWriter = new FileWriter(dumpFile);
+            bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                fileWriter.append(line);
+                fileWriter.append(System.lineSeparator());
+            }
+            process.waitFor();
+            if (process.exitValue() != 0) {
+                throw new Exception("Error while taking dumpsys, exitCode=" +
+                        process.exitValue());
+            }
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to take a dumpsys", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Background thread sampling the app's memory into a {@link MemoryTimeSeries} until
+     * finished. The series must only be read after the thread has been joined.
+     */
+    private static class MemorySampler extends Thread {
+
+        final MemoryTimeSeries mSeries = new MemoryTimeSeries();
+
+        private final long mIntervalMillis;
+        private volatile boolean mFinished = false;
+
+        MemorySampler(long intervalMillis) {
+            super("MemorySampler");
+            mIntervalMillis = intervalMillis;
+        }
+
+        void finish() {
+            mFinished = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            long startMillis = SystemClock.uptimeMillis();
+            Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+            Runtime runtime = Runtime.getRuntime();
+            while (!mFinished) {
+                Debug.getMemoryInfo(memoryInfo);
+                long javaHeapKb = (runtime.totalMemory() - runtime.freeMemory()) / 1024;
+                mSeries.addSample(SystemClock.uptimeMillis() - startMillis,
+                        memoryInfo.getTotalPss(), memoryInfo.getTotalPrivateDirty(), javaHeapKb,
+                        Debug.getNativeHeapAllocatedSize() / 1024, getGraphicsKb(memoryInfo));
+                try {
+                    Thread.sleep(mIntervalMillis);
+                } catch (InterruptedException ignored) {
+                    return;
+                }
+            }
+        }
+
+        private static long getGraphicsKb(Debug.MemoryInfo memoryInfo) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                String graphics = memoryInfo.getMemoryStat(GRAPHICS_STAT);
+                if (graphics != null) {
+                    try {
+                        return Long.parseLong(graphics);
+                    } catch (NumberFormatException ignored) {
+                        // Fall through, the platform doesn't report the stat.
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+}
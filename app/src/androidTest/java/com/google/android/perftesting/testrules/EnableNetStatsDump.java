@@ -93,11 +93,10 @@ public class EnableNetStatsDump extends ExternalResource {
                 processBuilder.command("dumpsys", "netstats", "full", "detail");
                 processBuilder.redirectErrorStream();
                 Process process = processBuilder.start();
-                if (mLogFileAbsoluteLocation == null) {
-                    mLogFileAbsoluteLocation = getTestFile(mTestClass, mTestName,
-                            "netstats.dumpsys.log");
-                }
-                fileWriter = new FileWriter(mLogFileAbsoluteLocation);
+                // Resolved on every run, a repeated test writes each run to its own directory.
+                File logFile = mLogFileAbsoluteLocation != null ? mLogFileAbsoluteLocation
+                        : getTestFile(mTestClass, mTestName, "netstats.dumpsys.log");
+                fileWriter = new FileWriter(logFile);
                 bufferedReader = new BufferedReader(
                         new InputStreamReader(process.getInputStream()));
                 String line;
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.support.test.InstrumentationRegistry;
+
+import com.google.android.perftesting.analysis.FrameHistogram;
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTestingUtils;
+import com.google.android.perftesting.contacts.PagedContactStore;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule measures how long the {@link PagedContactStore} pages loaded during a test took from
+ * being asked for to reaching the main thread. The latencies are written as a histogram to
+ * {@link #PAGE_LOAD_FILENAME}, in the {@link FrameHistogram} summary format with every page
+ * counted as a frame, and the count and percentiles are recorded as metrics.
+ *
+ * The first pages are asked for while the activity is created, so put the rule outside the
+ * {@code ActivityTestRule}:
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+ *         .around(new EnablePageLoadTracking())
+ *         .around(mActivityRule);
+ * </pre>
+ */
+public class EnablePageLoadTracking extends ExternalResource {
+
+    /**
+     * Name of the per-test page load histogram.
+     */
+    public static final String PAGE_LOAD_FILENAME = "page.latency.log";
+
+    private Logger logger = Logger.getLogger(EnablePageLoadTracking.class.getName());
+
+    private String mTestName;
+    private String mTestClass;
+
+    // Only changed on the main thread, and read after runOnMainSync stops the tracking.
+    private final FrameHistogram mHistogram = new FrameHistogram();
+
+    private final PagedContactStore.LoadTimeListener mListener =
+            new PagedContactStore.LoadTimeListener() {
+                @Override
+                public void onPageLoaded(long latencyNanos) {
+                    mHistogram.recordNanos(latencyNanos);
+                }
+            };
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void before() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                mHistogram.reset();
+                PagedContactStore.setLoadTimeListener(mListener);
+            }
+        });
+    }
+
+    @Override
+    public void after() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                PagedContactStore.setLoadTimeListener(null);
+            }
+        });
+
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName, PAGE_LOAD_FILENAME));
+            mHistogram.writeSummary(fileWriter);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write page load histogram", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+
+        File testDir = PerfTestingUtils.getTestDir(mTestClass, mTestName);
+        try {
+            PerfMetrics.append(testDir, PerfMetrics.PAGES_LOADED, mHistogram.getFrameCount());
+            if (mHistogram.getFrameCount() > 0) {
+                PerfMetrics.append(testDir, PerfMetrics.P50_PAGE_LOAD_MILLIS,
+                        mHistogram.getPercentileMillis(50));
+                PerfMetrics.append(testDir, PerfMetrics.P95_PAGE_LOAD_MILLIS,
+                        mHistogram.getPercentileMillis(95));
+                PerfMetrics.append(testDir, PerfMetrics.MAX_PAGE_LOAD_MILLIS,
+                        mHistogram.getMaxMicros() / 1000.0);
+            }
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record page load metrics", exception);
+        }
+    }
+}
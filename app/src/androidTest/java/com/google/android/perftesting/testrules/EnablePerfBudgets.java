@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.net.TrafficStats;
+import android.os.Build;
+import android.os.Debug;
+
+import com.google.android.perftesting.analysis.IterationSummary;
+import com.google.android.perftesting.analysis.PerfBudget;
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.analysis.StartupReport;
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.common.PerfTestingUtils;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestDir;
+
+/**
+ * This rule enforces the budgets declared on a test's {@link PerfTest} annotation (or on its
+ * class) once the test and the other collector rules have finished. The test fails with one line
+ * per metric that is over budget or wasn't measured, and the outcome of every check is written to
+ * {@link PerfBudget#BUDGET_FILENAME}.
+ *
+ * Frame metrics come from the summaries written by the frame collector rules. Network bytes
+ * (from {@link TrafficStats}), PSS at the end of the test and, on API level 23 and higher, bytes
+ * allocated are measured by this rule unless another rule already recorded them. For a test
+ * repeated by {@link EnablePerfIterations} they are measured per iteration instead, so the
+ * budgets apply to the median run.
+ *
+ * The collector rules must finish first, so this rule has to be the outermost one:
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+ *         .around(mActivityRule)
+ *         .around(new EnablePostTestDumpsys());
+ * </pre>
+ */
+public class EnablePerfBudgets implements TestRule {
+
+    private static final String ALLOCATED_BYTES_STAT = "art.gc.bytes-allocated";
+
+    private Logger logger = Logger.getLogger(EnablePerfBudgets.class.getName());
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        final PerfTest perfTest = getPerfTest(description);
+        if (perfTest == null) {
+            return base;
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                FallbackMeasurement fallback = FallbackMeasurement.start();
+
+                base.evaluate();
+
+                File testDir = getTestDir(description.getClassName(),
+                        description.getMethodName());
+                // A repeated test measured every iteration on its own and recorded the medians, a
+                // total over all iterations can't be compared to a budget for a single run.
+                if (!EnablePerfIterations.isRepeated(perfTest) || !new File(testDir,
+                        IterationSummary.ITERATIONS_FILENAME).isFile()) {
+                    fallback.record(testDir);
+                }
+
+                checkBudget(toBudget(perfTest), PerfMetrics.readTestDir(testDir), testDir,
+                        description);
+            }
+        };
+    }
+
+    private void checkBudget(PerfBudget budget, PerfMetrics metrics, File testDir,
+            Description description) {
+        if (budget.isEmpty()) {
+            return;
+        }
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(testDir, PerfBudget.BUDGET_FILENAME));
+            budget.writeReport(metrics, fileWriter);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write budget report", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+
+        List<String> violations = budget.check(metrics);
+        if (!violations.isEmpty()) {
+            StringBuilder message = new StringBuilder("Performance budget exceeded for ")
+                    .append(description.getDisplayName()).append(':');
+            for (String violation : violations) {
+                message.append("\n  ").append(violation);
+            }
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    /**
+     * The method's annotation takes precedence over the class's.
+     */
+    static PerfTest getPerfTest(Description description) {
+        PerfTest perfTest = description.getAnnotation(PerfTest.class);
+        if (perfTest == null && description.getTestClass() != null) {
+            perfTest = description.getTestClass().getAnnotation(PerfTest.class);
+        }
+        return perfTest;
+    }
+
+    static PerfBudget toBudget(PerfTest perfTest) {
+        return new PerfBudget()
+                .limit(PerfMetrics.JANK_PERCENT, perfTest.maxJankPercent())
+                .limit(PerfMetrics.P95_FRAME_MILLIS, perfTest.maxP95FrameMillis())
+                .limit(PerfMetrics.PSS_KB, perfTest.maxPssKb())
+                .limit(PerfMetrics.PEAK_PSS_KB, perfTest.maxPeakPssKb())
+                .limit(PerfMetrics.PSS_SLOPE_KB_PER_SECOND, perfTest.maxPssSlopeKbPerSecond())
+                .limit(PerfMetrics.ALLOCATED_BYTES, perfTest.maxAllocatedBytes())
+                .limit(PerfMetrics.ALLOCATED_OBJECTS, perfTest.maxAllocatedObjects())
+                .limit(PerfMetrics.MAIN_THREAD_ALLOCATED_BYTES,
+                        perfTest.maxMainThreadAllocatedBytes())
+                .limit(PerfMetrics.MAIN_THREAD_ALLOCATED_OBJECTS,
+                        perfTest.maxMainThreadAllocatedObjects())
+                .limit(PerfMetrics.NETWORK_BYTES, perfTest.maxNetworkBytes())
+                .limit(PerfMetrics.P95_IMAGE_LATENCY_MILLIS, perfTest.maxP95ImageLatencyMillis())
+                .limit(PerfMetrics.P95_PAGE_LOAD_MILLIS, perfTest.maxP95PageLoadMillis())
+                .limit(PerfMetrics.VIEW_POOL_MISSES, perfTest.maxViewPoolMisses())
+                .limit(PerfMetrics.TIME_TO_INITIAL_DISPLAY_MILLIS,
+                        perfTest.maxTimeToInitialDisplayMillis())
+                // Activities can't report being fully drawn before API level 19.
+                .limit(PerfMetrics.TIME_TO_FULL_DISPLAY_MILLIS,
+                        Build.VERSION.SDK_INT >= StartupReport.FULLY_DRAWN_MIN_SDK
+                                ? perfTest.maxTimeToFullDisplayMillis() : -1);
+    }
+
+    /**
+     * The metrics this rule measures itself when no collector rule recorded them: network bytes,
+     * bytes allocated and PSS. {@link EnablePerfIterations} uses it for each iteration.
+     */
+    static class FallbackMeasurement {
+        private final int mUid;
+        private final long mNetworkBytesBefore;
+        private final long mAllocatedBytesBefore;
+
+        private FallbackMeasurement() {
+            mUid = PerfTestingUtils.getAppContext().getApplicationInfo().uid;
+            mNetworkBytesBefore = getNetworkBytes(mUid);
+            mAllocatedBytesBefore = getAllocatedBytes();
+        }
+
+        static FallbackMeasurement start() {
+            return new FallbackMeasurement();
+        }
+
+        /**
+         * Append the metrics measured since {@link #start()} that the directory doesn't have yet.
+         */
+        void record(File testDir) throws IOException {
+            PerfMetrics recorded = PerfMetrics.readTestDir(testDir);
+            if (!recorded.has(PerfMetrics.NETWORK_BYTES) && mNetworkBytesBefore >= 0) {
+                PerfMetrics.append(testDir, PerfMetrics.NETWORK_BYTES,
+                        getNetworkBytes(mUid) - mNetworkBytesBefore);
+            }
+            if (!recorded.has(PerfMetrics.ALLOCATED_BYTES) && mAllocatedBytesBefore >= 0) {
+                PerfMetrics.append(testDir, PerfMetrics.ALLOCATED_BYTES,
+                        getAllocatedBytes() - mAllocatedBytesBefore);
+            }
+            if (!recorded.has(PerfMetrics.PSS_KB)) {
+                Debug.MemoryInfo memoryInfo = new Debug.MemoryInfo();
+                Debug.getMemoryInfo(memoryInfo);
+                PerfMetrics.append(testDir, PerfMetrics.PSS_KB, memoryInfo.getTotalPss());
+            }
+        }
+    }
+
+    private static long getNetworkBytes(int uid) {
+        long rxBytes = TrafficStats.getUidRxBytes(uid);
+        long txBytes = TrafficStats.getUidTxBytes(uid);
+        if (rxBytes == TrafficStats.UNSUPPORTED || txBytes == TrafficStats.UNSUPPORTED) {
+            return -1;
+        }
+        return rxBytes + txBytes;
+    }
+
+    static long getAllocatedBytes() {
+        return getRuntimeStat(ALLOCATED_BYTES_STAT);
+    }
+
+    /**
+     * @return the value of one of {@link Debug#getRuntimeStats()} or -1 if the runtime doesn't
+     *     report it.
+     */
+    static long getRuntimeStat(String name) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            String value = Debug.getRuntimeStat(name);
+            if (value != null) {
+                try {
+                    return Long.parseLong(value);
+                } catch (NumberFormatException ignored) {
+                    // Fall through, the runtime doesn't support the stat.
+                }
+            }
+        }
+        return -1;
+    }
+}
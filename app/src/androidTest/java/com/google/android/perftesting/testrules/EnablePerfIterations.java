@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.util.Log;
+
+import com.google.android.perftesting.analysis.IterationSummary;
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTest;
+import com.google.android.perftesting.common.PerfTestingUtils;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * This rule runs a {@link PerfTest} method {@link PerfTest#warmupIterations()} times without
+ * measuring and then {@link PerfTest#measuredIterations()} times. Every rule inside this one,
+ * including the {@code ActivityTestRule}, is re-applied for each run and writes its files to its
+ * own subdirectory of the test directory ({@code warmup_01}, {@code measured_01}, ...).
+ *
+ * After the last run the median, median absolute deviation and a bootstrap confidence interval of
+ * every metric are written to {@link IterationSummary#ITERATIONS_FILENAME}, and the medians are
+ * recorded as the test's metrics so {@link EnablePerfBudgets}, placed outside this rule, checks
+ * them instead of a single sample. The metrics {@link EnablePerfBudgets} would otherwise measure
+ * itself across the whole test are measured for each iteration here.
+ *
+ * Subclasses can run several variants of the test in every iteration and summarize them
+ * differently, see {@link EnableInterleavedComparison}.
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(new EnablePerfBudgets())
+ *         .around(new EnablePerfIterations())
+ *         .around(mActivityRule)
+ *         .around(new EnablePostTestDumpsys());
+ * </pre>
+ */
+public class EnablePerfIterations implements TestRule {
+
+    private static final String LOG_TAG = "EnablePerfIterations";
+
+    @Override
+    public Statement apply(final Statement base, final Description description) {
+        final PerfTest perfTest = EnablePerfBudgets.getPerfTest(description);
+        if (perfTest == null || !repeats(perfTest)) {
+            return base;
+        }
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                File testDir = PerfTestingUtils.getTestDirIgnoringIteration(
+                        description.getClassName(), description.getMethodName());
+                Map<String, List<File>> measuredDirs = new LinkedHashMap<>();
+                try {
+                    for (int i = 1; i <= perfTest.warmupIterations(); i++) {
+                        for (String variant : getVariants(i)) {
+                            runIteration(base, description, variant,
+                                    iterationDirName("warmup", variant, i));
+                        }
+                    }
+                    for (int i = 1; i <= Math.max(1, perfTest.measuredIterations()); i++) {
+                        for (String variant : getVariants(i)) {
+                            String dirName = iterationDirName("measured", variant, i);
+                            runIteration(base, description, variant, dirName);
+                            List<File> dirs = measuredDirs.get(variant);
+                            if (dirs == null) {
+                                dirs = new ArrayList<>();
+                                measuredDirs.put(variant, dirs);
+                            }
+                            dirs.add(new File(testDir, dirName));
+                        }
+                    }
+                } finally {
+                    PerfTestingUtils.setIterationDirName(null);
+                    onVariant(null);
+                }
+                summarize(measuredDirs, testDir);
+            }
+        };
+    }
+
+    static boolean isRepeated(PerfTest perfTest) {
+        return perfTest.warmupIterations() > 0 || perfTest.measuredIterations() > 1;
+    }
+
+    /**
+     * Whether the test is run by this rule rather than once as usual.
+     */
+    protected boolean repeats(PerfTest perfTest) {
+        return isRepeated(perfTest);
+    }
+
+    /**
+     * The variants of the test run in the given iteration, in order. A null variant is the test
+     * itself, which is all this rule runs.
+     */
+    protected String[] getVariants(int iteration) {
+        return new String[] {null};
+    }
+
+    /**
+     * Called before each run with the variant it exercises, and with null after the last one.
+     */
+    protected void onVariant(String variant) {
+    }
+
+    /**
+     * Summarize the measured runs once all of them have finished.
+     *
+     * @param measuredDirs the directories of the measured runs of each variant, in order.
+     */
+    protected void summarize(Map<String, List<File>> measuredDirs, File testDir)
+            throws Exception {
+        writeSummary(IterationSummary.readIterationDirs(measuredDirs.get(null)), testDir);
+    }
+
+    private void runIteration(Statement base, Description description, String variant,
+            String dirName) throws Throwable {
+        Log.i(LOG_TAG, "Running " + description.getDisplayName() + " " + dirName);
+        onVariant(variant);
+        PerfTestingUtils.setIterationDirName(dirName);
+        EnablePerfBudgets.FallbackMeasurement fallback =
+                EnablePerfBudgets.FallbackMeasurement.start();
+        base.evaluate();
+        fallback.record(PerfTestingUtils.getTestDir(description.getClassName(),
+                description.getMethodName()));
+    }
+
+    private static String iterationDirName(String kind, String variant, int iteration) {
+        return variant == null ? String.format(Locale.US, "%s_%02d", kind, iteration)
+                : String.format(Locale.US, "%s_%s_%02d", kind, variant, iteration);
+    }
+
+    private static void writeSummary(IterationSummary summary, File testDir) throws Exception {
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(new File(testDir, IterationSummary.ITERATIONS_FILENAME));
+            summary.writeSummary(fileWriter);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+        PerfMetrics medians = summary.getMedians();
+        for (String name : medians.names()) {
+            PerfMetrics.append(testDir, name, medians.get(name));
+        }
+    }
+}
@@ -18,11 +18,18 @@ package com.google.android.perftesting.testrules;
 
 import android.os.Trace;
 
+import com.google.android.perftesting.analysis.FrameHistogram;
+import com.google.android.perftesting.analysis.FrameStatsAccumulator;
+import com.google.android.perftesting.analysis.FrameStageAnalyzer;
+import com.google.android.perftesting.analysis.FrameStatsReport;
+
 import org.junit.rules.ExternalResource;
 import org.junit.runner.Description;
 import org.junit.runners.model.Statement;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.util.logging.Level;
@@ -34,18 +41,55 @@ import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile
  * This rule executes a dumpsys graphics data dump after performing the test. If the API level is
  * less than 23 then this rule will do nothing since this dumpsys command isn't supported.
  *
+ * The per-frame framestats rows of the dump are summarized into a {@link FrameHistogram} which is
+ * written next to the dump as {@link FrameHistogram#SUMMARY_FILENAME}, and broken down per
+ * rendering stage into {@link FrameStageAnalyzer#STAGES_FILENAME}.
+ *
  * <pre>
  * @Rule
  * public EnablePostTestDumpSys mEnablePostTestDumpSys = new EnablePostTestDumpSys();
  * </pre>
+ *
+ * The platform only keeps the last ~120 frames, so for tests longer than about two seconds use
+ * the sampling mode. It polls framestats on a background thread at the given interval and merges
+ * every poll into {@link #FRAME_LOG_FILENAME}, which is then summarized instead of the final dump.
+ * How complete the capture was is written to {@link FrameStatsAccumulator#SAMPLING_FILENAME}.
+ *
+ * <pre>
+ * @Rule
+ * public EnablePostTestDumpsys mEnablePostTestDumpsys = new EnablePostTestDumpsys(1000);
+ * </pre>
  */
 public class EnablePostTestDumpsys extends ExternalResource {
 
+    /**
+     * Every frame captured while sampling, in framestats format.
+     */
+    public static final String FRAME_LOG_FILENAME = FrameStatsAccumulator.FRAME_LOG_FILENAME;
+
     private Logger logger = Logger.getLogger(EnablePostTestDumpsys.class.getName());
 
     private String mTestName;
     private String mTestClass;
 
+    private final long mSamplingIntervalMillis;
+    private FramestatsSampler mSampler;
+    private FrameStatsAccumulator mAccumulator;
+    private FileWriter mFrameLogWriter;
+
+    public EnablePostTestDumpsys() {
+        this(0);
+    }
+
+    /**
+     * Poll framestats every {@code samplingIntervalMillis} during the test so no frames are lost
+     * to the platform's frame buffer. The interval should stay well under two seconds (120 frames
+     * at 60fps). An interval of 0 disables sampling.
+     */
+    public EnablePostTestDumpsys(long samplingIntervalMillis) {
+        mSamplingIntervalMillis = samplingIntervalMillis;
+    }
+
     @Override
     public Statement apply(Statement base, Description description) {
         mTestName = description.getMethodName();
@@ -65,10 +109,15 @@ public class EnablePostTestDumpsys extends ExternalResource {
         } catch (Exception exception) {
             logger.log(Level.SEVERE, "Unable to reset dumpsys", exception);
         }
+        if (mSamplingIntervalMillis > 0 && android.os.Build.VERSION.SDK_INT >= 23) {
+            startSampling();
+        }
     }
 
     public void after() {
+        stopSampling();
         if (android.os.Build.VERSION.SDK_INT >= 23) {
+            File dumpFile = null;
             FileWriter fileWriter = null;
             BufferedReader bufferedReader = null;
             try {
@@ -80,10 +129,11 @@ public class EnablePostTestDumpsys extends ExternalResource {
                         // NOTE: Using the android app BuildConfig specifically.
                         com.google.android.perftesting.BuildConfig.APPLICATION_ID,
                         "framestats");
-                processBuilder.redirectErrorStream();
+                processBuilder.redirectErrorStream(true);
                 Process process = processBuilder.start();
-                fileWriter = new FileWriter(getTestFile(mTestClass, mTestName, "gfxinfo.dumpsys"
-                        + ".log"));
+                dumpFile = getTestFile(mTestClass, mTestName,
+                        FrameStatsReport.GFXINFO_DUMP_FILENAME);
+                fileWriter = new FileWriter(dumpFile);
                 bufferedReader = new BufferedReader(
                         new InputStreamReader(process.getInputStream()));
                 String line;
@@ -107,6 +157,156 @@ public class EnablePostTestDumpsys extends ExternalResource {
                 }
                 Trace.endSection();
             }
+            if (dumpFile != null && dumpFile.exists()) {
+                if (mAccumulator != null) {
+                    File frameLog = finishSampling(dumpFile);
+                    if (frameLog != null) {
+                        summarizeFrames(frameLog);
+                    }
+                } else {
+                    summarizeFrames(dumpFile);
+                }
+            }
+        }
+        mAccumulator = null;
+    }
+
+    private void summarizeFrames(File dumpFile) {
+        try {
+            FrameStatsReport.summarize(dumpFile, dumpFile.getParentFile());
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to summarize framestats", exception);
+        }
+    }
+
+    private void startSampling() {
+        try {
+            mFrameLogWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    FRAME_LOG_FILENAME));
+            mAccumulator = new FrameStatsAccumulator(null, mFrameLogWriter);
+            mSampler = new FramestatsSampler(mAccumulator, mSamplingIntervalMillis);
+            mSampler.start();
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to start framestats sampling", exception);
+            mAccumulator = null;
+            closeFrameLog();
+        }
+    }
+
+    private void stopSampling() {
+        if (mSampler != null) {
+            mSampler.finish();
+            try {
+                mSampler.join();
+            } catch (InterruptedException exception) {
+                logger.log(Level.SEVERE, "Interrupted waiting for framestats sampling", exception);
+                Thread.currentThread().interrupt();
+            }
+            mSampler = null;
+        }
+    }
+
+    /**
+     * Add the final dump as the last poll and write the sampling report.
+     *
+     * @return the complete frame log, or null if it couldn't be written.
+     */
+    private File finishSampling(File finalDumpFile) {
+        FileReader fileReader = null;
+        FileWriter summaryWriter = null;
+        try {
+            fileReader = new FileReader(finalDumpFile);
+            mAccumulator.addPoll(fileReader);
+            mAccumulator.finish();
+            closeFrameLog();
+
+            summaryWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    FrameStatsAccumulator.SAMPLING_FILENAME));
+            mAccumulator.writeSummary(summaryWriter);
+            if (mAccumulator.getFramesMissed() > 0) {
+                logger.warning("Framestats sampling missed " + mAccumulator.getFramesMissed()
+                        + " of " + mAccumulator.getFramesRendered() + " frames, consider a "
+                        + "shorter sampling interval");
+            }
+            return getTestFile(mTestClass, mTestName, FRAME_LOG_FILENAME);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to finish framestats sampling", exception);
+            return null;
+        } finally {
+            closeFrameLog();
+            if (fileReader != null) {
+                try { fileReader.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+            if (summaryWriter != null) {
+                try { summaryWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+    }
+
+    private void closeFrameLog() {
+        if (mFrameLogWriter != null) {
+            try { mFrameLogWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            mFrameLogWriter = null;
+        }
+    }
+
+    /**
+     * Background thread polling framestats into a {@link FrameStatsAccumulator} until finished.
+     */
+    private static class FramestatsSampler extends Thread {
+
+        private final Logger mLogger = Logger.getLogger(FramestatsSampler.class.getName());
+
+        private final FrameStatsAccumulator mAccumulator;
+        private final long mIntervalMillis;
+        private volatile boolean mFinished = false;
+
+        FramestatsSampler(FrameStatsAccumulator accumulator, long intervalMillis) {
+            super("FramestatsSampler");
+            mAccumulator = accumulator;
+            mIntervalMillis = intervalMillis;
+        }
+
+        void finish() {
+            mFinished = true;
+            interrupt();
+        }
+
+        @Override
+        public void run() {
+            while (!mFinished) {
+                try {
+                    Thread.sleep(mIntervalMillis);
+                } catch (InterruptedException ignored) {
+                    // The final poll is taken by the rule itself.
+                    return;
+                }
+                poll();
+            }
+        }
+
+        private void poll() {
+            InputStreamReader reader = null;
+            try {
+                ProcessBuilder processBuilder = new ProcessBuilder();
+                processBuilder.command("dumpsys", "gfxinfo",
+                        // NOTE: Using the android app BuildConfig specifically.
+                        com.google.android.perftesting.BuildConfig.APPLICATION_ID,
+                        "framestats");
+                processBuilder.redirectErrorStream(true);
+                Process process = processBuilder.start();
+                reader = new InputStreamReader(process.getInputStream());
+                mAccumulator.addPoll(reader);
+                process.waitFor();
+            } catch (InterruptedException ignored) {
+                // Finishing, the final poll is taken by the rule itself.
+            } catch (Exception exception) {
+                mLogger.log(Level.SEVERE, "Unable to poll framestats", exception);
+            } finally {
+                if (reader != null) {
+                    try { reader.close(); } catch (Exception e) { e.printStackTrace(); }
+                }
+            }
         }
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.ComponentName;
+import android.os.Build;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.lifecycle.ActivityLifecycleMonitor;
+import android.support.test.runner.lifecycle.ActivityLifecycleMonitorRegistry;
+import android.support.test.runner.lifecycle.Stage;
+
+import com.google.android.perftesting.analysis.StartupReport;
+import com.google.android.perftesting.common.PerfTestingUtils;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule measures warm starts of an activity: the app's process keeps running while the
+ * activity is launched again and again with {@code am start -W}, each time as a new task so it is
+ * created from scratch. Each launch's time to initial display comes from the output of
+ * {@code am start -W} and its time to full display from the platform's event log, once the
+ * activity calls {@code reportFullyDrawn()}. Reading the event log needs the READ_LOGS permission,
+ * granted by the test runners like DUMP; without it, or below API level 19 where activities can't
+ * report it, only the initial display is measured.
+ *
+ * The launches are written to {@link StartupReport#STARTUP_FILENAME} and their medians recorded
+ * as metrics, so {@code PerfTest#maxTimeToInitialDisplayMillis()} and
+ * {@code PerfTest#maxTimeToFullDisplayMillis()} can budget them.
+ *
+ * Cold starts can't be measured here since killing the app's process kills the instrumentation
+ * too. The test runners launch the activities from the host before running the tests instead.
+ *
+ * <pre>
+ * @Rule
+ * public EnableStartupTiming mEnableStartupTiming = new EnableStartupTiming();
+ *
+ * @Test
+ * public void mainActivityWarmStart() throws Exception {
+ *     mEnableStartupTiming.measureWarmStarts(MainActivity.class);
+ * }
+ * </pre>
+ */
+public class EnableStartupTiming extends ExternalResource {
+
+    public static final int DEFAULT_LAUNCHES = 10;
+
+    // Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK
+    private static final String NEW_TASK_FLAGS = "0x10008000";
+    private static final long FULLY_DRAWN_TIMEOUT_MILLIS = 5000;
+    private static final long POLL_INTERVAL_MILLIS = 100;
+    // Lets the previous launch's activity be destroyed and the launcher settle.
+    private static final long SETTLE_MILLIS = 1000;
+
+    private Logger logger = Logger.getLogger(EnableStartupTiming.class.getName());
+
+    private final int mLaunches;
+    private String mTestName;
+    private String mTestClass;
+    private StartupReport mReport;
+
+    public EnableStartupTiming() {
+        this(DEFAULT_LAUNCHES);
+    }
+
+    /**
+     * @param launches the number of measured launches, after one unmeasured launch that loads the
+     *     activity's classes and resources.
+     */
+    public EnableStartupTiming(int launches) {
+        mLaunches = launches;
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    /**
+     * Launch the activity repeatedly and record its launch times.
+     *
+     * @param amStartExtras extras of the launch intent as {@code am start} arguments, e.g.
+     *     {@code "--es", SimpleListActivity.EXTRA_ADAPTER, SimpleListActivity.ADAPTER_FIXED}.
+     */
+    public void measureWarmStarts(Class<? extends Activity> activityClass,
+            String... amStartExtras) throws Exception {
+        String component = new ComponentName(PerfTestingUtils.getAppContext(), activityClass)
+                .flattenToShortString();
+        mReport = new StartupReport(component, StartupReport.START_TYPE_WARM);
+        finishActivities();
+        boolean fullyDrawnReadable = Build.VERSION.SDK_INT >= StartupReport.FULLY_DRAWN_MIN_SDK;
+        for (int launch = 0; launch <= mLaunches; launch++) {
+            String previousFullyDrawn =
+                    fullyDrawnReadable ? getLastFullyDrawnEvent(component) : null;
+            long displayedMillis = launch(component, amStartExtras);
+            long fullyDrawnMillis = -1;
+            if (fullyDrawnReadable) {
+                fullyDrawnMillis = waitForFullyDrawn(component, previousFullyDrawn);
+            }
+            if (launch == 0) {
+                // Waiting for every launch would only make the test slower.
+                if (fullyDrawnReadable && fullyDrawnMillis < 0) {
+                    fullyDrawnReadable = false;
+                    logger.warning("No fully drawn time was logged for " + component + ", check "
+                            + "the activity calls reportFullyDrawn() and READ_LOGS is granted");
+                }
+            } else {
+                mReport.addLaunch(displayedMillis, fullyDrawnMillis);
+            }
+            finishActivities();
+        }
+    }
+
+    @Override
+    public void after() {
+        if (mReport == null) {
+            return;
+        }
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName,
+                    StartupReport.STARTUP_FILENAME));
+            mReport.write(fileWriter);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write startup report", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+        try {
+            mReport.recordMetrics(PerfTestingUtils.getTestDir(mTestClass, mTestName));
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record startup metrics", exception);
+        }
+        mReport = null;
+    }
+
+    /**
+     * @return the time to initial display, or -1 if {@code am start} didn't report it.
+     */
+    private long launch(String component, String[] amStartExtras) throws Exception {
+        List<String> command = new ArrayList<>(Arrays.asList("am", "start", "-W",
+                "-f", NEW_TASK_FLAGS, "-n", component));
+        command.addAll(Arrays.asList(amStartExtras));
+        String output = run(command);
+        long displayedMillis = StartupReport.parseDisplayedMillis(new StringReader(output));
+        if (displayedMillis < 0) {
+            logger.warning("am start didn't report a launch time: " + output);
+        }
+        return displayedMillis;
+    }
+
+    private long waitForFullyDrawn(String component, String previousEvent) throws Exception {
+        long deadline = System.currentTimeMillis() + FULLY_DRAWN_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            String event = getLastFullyDrawnEvent(component);
+            if (event != null && !event.equals(previousEvent)) {
+                return StartupReport.parseFullyDrawnMillis(event, component);
+            }
+            Thread.sleep(POLL_INTERVAL_MILLIS);
+        }
+        return -1;
+    }
+
+    /**
+     * Every event has the activity record's hash code, so a new launch's event never equals the
+     * previous one.
+     *
+     * @return the component's latest fully drawn event, or null if the log has none.
+     */
+    private String getLastFullyDrawnEvent(String component) throws Exception {
+        String lastEvent = null;
+        String output = run(Arrays.asList("logcat", "-d", "-b", "events", "-s",
+                StartupReport.FULLY_DRAWN_EVENT_TAG));
+        BufferedReader bufferedReader = new BufferedReader(new StringReader(output));
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            if (StartupReport.parseFullyDrawnMillis(line, component) >= 0) {
+                lastEvent = line;
+            }
+        }
+        return lastEvent;
+    }
+
+    private static String run(List<String> command) throws Exception {
+        ProcessBuilder processBuilder = new ProcessBuilder(command);
+        processBuilder.redirectErrorStream(true);
+        Process process = processBuilder.start();
+        StringBuilder output = new StringBuilder();
+        BufferedReader bufferedReader = null;
+        try {
+            bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                output.append(line).append('\n');
+            }
+            process.waitFor();
+        } finally {
+            if (bufferedReader != null) {
+                try { bufferedReader.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Finish every activity of the app so the next launch creates its activity again.
+     */
+    private static void finishActivities() throws InterruptedException {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        instrumentation.runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ActivityLifecycleMonitor monitor = ActivityLifecycleMonitorRegistry.getInstance();
+                for (Stage stage : Stage.values()) {
+                    if (stage == Stage.DESTROYED) {
+                        continue;
+                    }
+                    for (Activity activity : monitor.getActivitiesInStage(stage)) {
+                        activity.finish();
+                    }
+                }
+            }
+        });
+        instrumentation.waitForIdleSync();
+        Thread.sleep(SETTLE_MILLIS);
+    }
+}
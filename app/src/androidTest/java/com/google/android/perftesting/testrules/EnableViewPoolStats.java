@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.testrules;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.rule.ActivityTestRule;
+
+import com.google.android.perftesting.RecyclerViewActivity;
+import com.google.android.perftesting.analysis.PerfMetrics;
+import com.google.android.perftesting.common.PerfTestingUtils;
+import com.google.android.perftesting.contacts.ContactViewPool;
+
+import org.junit.rules.ExternalResource;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static com.google.android.perftesting.common.PerfTestingUtils.getTestFile;
+
+/**
+ * This rule reports how often the {@link RecyclerViewActivity}'s list found a row in its
+ * {@link ContactViewPool}, how often it created one from a prewarmed view and how often it had to
+ * inflate one on the main thread, since the activity was created, so the first layout is
+ * included. It also reports how many rows were prewarmed before the first layout. The counts are
+ * written to {@link #VIEW_POOL_FILENAME} and the hits and misses recorded as metrics.
+ *
+ * The activity has to still be running when the rule finishes, so put the rule inside the
+ * {@code ActivityTestRule}:
+ *
+ * <pre>
+ * @Rule
+ * public RuleChain mRuleChain = RuleChain.outerRule(mActivityRule)
+ *         .around(new EnableViewPoolStats(mActivityRule));
+ * </pre>
+ */
+public class EnableViewPoolStats extends ExternalResource {
+
+    /**
+     * Name of the per-test view pool report.
+     */
+    public static final String VIEW_POOL_FILENAME = "viewpool.log";
+
+    private Logger logger = Logger.getLogger(EnableViewPoolStats.class.getName());
+
+    private final ActivityTestRule<? extends RecyclerViewActivity> mActivityRule;
+    private String mTestName;
+    private String mTestClass;
+
+    // Read on the main thread, published to the test thread by runOnMainSync.
+    private int mHits;
+    private int mPrewarmedHits;
+    private int mMisses;
+    private int mPrewarmed;
+    private int mPrewarmedBeforeLayout;
+    private int mMaxContactViews;
+
+    public EnableViewPoolStats(ActivityTestRule<? extends RecyclerViewActivity> activityRule) {
+        mActivityRule = activityRule;
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        mTestName = description.getMethodName();
+        mTestClass = description.getClassName();
+        return super.apply(base, description);
+    }
+
+    @Override
+    public void after() {
+        final RecyclerViewActivity activity = mActivityRule.getActivity();
+        if (activity == null) {
+            logger.warning("No activity to report the view pool of");
+            return;
+        }
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                ContactViewPool viewPool = activity.getViewPool();
+                mHits = viewPool.getHits();
+                mPrewarmedHits = viewPool.getPrewarmedHits();
+                mMisses = viewPool.getMisses();
+                mPrewarmed = viewPool.getPrewarmed();
+                mPrewarmedBeforeLayout = viewPool.getPrewarmedBeforeLayout();
+                mMaxContactViews = viewPool.getMaxContactViews();
+            }
+        });
+
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(getTestFile(mTestClass, mTestName, VIEW_POOL_FILENAME));
+            String eol = System.getProperty("line.separator");
+            fileWriter.append("hits=").append(Integer.toString(mHits)).append(eol);
+            fileWriter.append("prewarmedHits=").append(Integer.toString(mPrewarmedHits))
+                    .append(eol);
+            fileWriter.append("misses=").append(Integer.toString(mMisses)).append(eol);
+            fileWriter.append("prewarmed=").append(Integer.toString(mPrewarmed)).append(eol);
+            fileWriter.append("prewarmedBeforeLayout=")
+                    .append(Integer.toString(mPrewarmedBeforeLayout)).append(eol);
+            fileWriter.append("maxContactViews=").append(Integer.toString(mMaxContactViews))
+                    .append(eol);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to write view pool report", exception);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception e) { e.printStackTrace(); }
+            }
+        }
+
+        File testDir = PerfTestingUtils.getTestDir(mTestClass, mTestName);
+        try {
+            PerfMetrics.append(testDir, PerfMetrics.VIEW_POOL_HITS, mHits);
+            PerfMetrics.append(testDir, PerfMetrics.VIEW_POOL_MISSES, mMisses);
+        } catch (Exception exception) {
+            logger.log(Level.SEVERE, "Unable to record view pool metrics", exception);
+        }
+    }
+}
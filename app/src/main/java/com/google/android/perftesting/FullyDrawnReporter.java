@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting;
+
+import android.app.Activity;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Calls {@link Activity#reportFullyDrawn()} once the activity's content is on screen, so the
+ * platform logs its time to full display next to the time to the first frame. The activity decides
+ * when its content is complete and calls {@link #contentReady()}; the report then waits for the
+ * frame that draws it. Only the first call reports, later updates of the content don't count.
+ */
+public class FullyDrawnReporter {
+
+    private final Activity mActivity;
+    private final View mContentView;
+    private boolean mReady = false;
+
+    public FullyDrawnReporter(Activity activity, View contentView) {
+        mActivity = activity;
+        mContentView = contentView;
+    }
+
+    public void contentReady() {
+        // reportFullyDrawn() was added in API level 19.
+        if (mReady || Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) {
+            return;
+        }
+        mReady = true;
+        mContentView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        mContentView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Runs after the frame being drawn now has been handed to the display.
+                        mContentView.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!mActivity.isFinishing()) {
+                                    mActivity.reportFullyDrawn();
+                                }
+                            }
+                        });
+                        return true;
+                    }
+                });
+        mContentView.invalidate();
+    }
+}
@@ -27,6 +27,8 @@ public class MainActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
+        // Everything the activity shows is in its layout.
+        new FullyDrawnReporter(this, getWindow().getDecorView()).contentReady();
     }
 
     public void openRecyclerView(View view) {
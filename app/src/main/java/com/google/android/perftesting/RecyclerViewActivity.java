@@ -20,28 +20,113 @@ import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 
-import com.google.android.perftesting.contacts.Contact;
+import com.google.android.perftesting.contacts.ContactStore;
+import com.google.android.perftesting.contacts.ContactViewPool;
 import com.google.android.perftesting.contacts.ContactsRecyclerAdapter;
-
-import java.util.List;
+import com.google.android.perftesting.contacts.PagedContactStore;
+import com.google.android.perftesting.images.ContactImages;
+import com.google.android.perftesting.images.GlideBindStats;
+import com.google.android.perftesting.images.RecyclerViewPreloader;
 
 /**
- * RecyclerViewActivity creates a RecyclerView and fills it with Contacts.
+ * RecyclerViewActivity creates a RecyclerView and fills it with Contacts, paged in the background
+ * with {@link PagedContactStore#EXTRA_PAGE_SIZE}. With
+ * {@link ContactViewPool#EXTRA_PREWARM_VIEW_HOLDERS} rows are inflated in the background first
+ * and the list only gets its adapter once they are ready. The activity reports itself fully drawn
+ * with the first rows' names on screen.
  */
 public class RecyclerViewActivity extends AppCompatActivity {
 
+    private static final String TAG = "RecyclerViewActivity";
+
+    private PagedContactStore mPagedContacts;
+    private final ContactViewPool mViewPool = new ContactViewPool();
+    private FullyDrawnReporter mFullyDrawnReporter;
+    private boolean mAdapterSet;
+    private boolean mFirstPageLoaded;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_recyclerview);
 
-        // Create a new list of 1000 contacts.
-        List<Contact> contacts = Contact.createContactsList(1000);
+        // Contacts are created or read from a mapped file as rows are bound, so even millions
+        // don't slow down startup.
+        ContactStore contacts = ContactStore.forIntent(this, getIntent());
+        mPagedContacts = PagedContactStore.forIntent(contacts, getIntent());
+        if (mPagedContacts != null) {
+            contacts = mPagedContacts;
+        }
 
-        RecyclerView contactsView = (RecyclerView) findViewById(R.id.contactList);
-        ContactsRecyclerAdapter adapter = new ContactsRecyclerAdapter(contacts);
-        contactsView.setAdapter(adapter);
+        final RecyclerView contactsView = (RecyclerView) findViewById(R.id.contactList);
+        final ContactsRecyclerAdapter adapter = new ContactsRecyclerAdapter(contacts);
         contactsView.setLayoutManager(new LinearLayoutManager(this));
+        mViewPool.setMaxRecycledViews(ContactsRecyclerAdapter.VIEW_TYPE_CONTACT,
+                getIntent().getIntExtra(ContactViewPool.EXTRA_VIEW_POOL_SIZE,
+                        ContactViewPool.DEFAULT_MAX_CONTACT_VIEWS));
+        contactsView.setRecycledViewPool(mViewPool);
+        adapter.setViewPool(mViewPool);
+        // Load the pictures of the rows about to scroll into view before they are bound.
+        contactsView.addOnScrollListener(
+                new RecyclerViewPreloader(new ContactImages(this).createPreloader()));
+        GlideBindStats.getInstance().reset();
+
+        // The activity is fully drawn once it shows the names of the first rows, their pictures
+        // are reported separately by the image latency tracking.
+        mFullyDrawnReporter = new FullyDrawnReporter(this, contactsView);
+        mFirstPageLoaded = mPagedContacts == null;
+        if (mPagedContacts != null) {
+            mPagedContacts.setListener(new PagedContactStore.Listener() {
+                @Override
+                public void onContactsLoaded(int start, int count) {
+                    if (start == 0) {
+                        mFirstPageLoaded = true;
+                        reportFullyDrawnIfReady();
+                    }
+                    adapter.notifyItemRangeChanged(start, count);
+                }
+            });
+        }
+
+        // Rows are inflated in the background before the adapter is set, so the first layout
+        // creates its holders from them rather than inflating rows on the main thread.
+        mViewPool.prewarm(contactsView,
+                getIntent().getIntExtra(ContactViewPool.EXTRA_PREWARM_VIEW_HOLDERS, 0),
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        if (isFinishing()) {
+                            return;
+                        }
+                        contactsView.setAdapter(adapter);
+                        mAdapterSet = true;
+                        reportFullyDrawnIfReady();
+                    }
+                });
+    }
+
+    private void reportFullyDrawnIfReady() {
+        if (mAdapterSet && mFirstPageLoaded) {
+            mFullyDrawnReporter.contentReady();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPagedContacts != null) {
+            mPagedContacts.close();
+        }
+        Log.i(TAG, "Images: " + GlideBindStats.getInstance());
+        Log.i(TAG, "View pool: " + mViewPool);
+        super.onDestroy();
+    }
+
+    /**
+     * The list's view pool, to report its hits and misses. Must be called on the main thread.
+     */
+    public ContactViewPool getViewPool() {
+        return mViewPool;
     }
 }
@@ -18,30 +18,111 @@ package com.google.android.perftesting;
 
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.widget.ArrayAdapter;
 import android.widget.ListView;
 
 import com.google.android.perftesting.contacts.Contact;
+import com.google.android.perftesting.contacts.ContactStore;
 import com.google.android.perftesting.contacts.ContactsArrayAdapter;
-
-import java.util.List;
+import com.google.android.perftesting.contacts.ContactsArrayAdapterCached;
+import com.google.android.perftesting.contacts.ContactsArrayAdapterFixed;
+import com.google.android.perftesting.contacts.PagedContactStore;
+import com.google.android.perftesting.images.GlideBindStats;
+import com.google.android.perftesting.images.ImageLoader;
 
 /**
  * RecyclerViewActivity creates a ListView and fills it with Contacts.
+ *
+ * The adapter can be chosen with {@link #EXTRA_ADAPTER} so tests can compare the implementations
+ * on the same build, and the contacts paged in the background with
+ * {@link PagedContactStore#EXTRA_PAGE_SIZE}. The activity reports itself fully drawn with the
+ * first rows' names on screen.
  */
 public class SimpleListActivity extends AppCompatActivity {
 
+    /**
+     * Intent extra naming the adapter to use, {@link #ADAPTER_ORIGINAL} if absent.
+     */
+    public static final String EXTRA_ADAPTER = "com.google.android.perftesting.extra.ADAPTER";
+
+    public static final String ADAPTER_ORIGINAL = "original";
+    public static final String ADAPTER_FIXED = "fixed";
+    public static final String ADAPTER_CACHED = "cached";
+
+    private static final String TAG = "SimpleListActivity";
+
+    private PagedContactStore mPagedContacts;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_simple_list);
 
-        // Create a new list of 1000 contacts.
-        List<Contact> contacts = Contact.createContactsList(1000);
+        // Contacts are created or read from a mapped file as rows are bound, so even millions
+        // don't slow down startup.
+        ContactStore contacts = ContactStore.forIntent(this, getIntent());
+        mPagedContacts = PagedContactStore.forIntent(contacts, getIntent());
+        if (mPagedContacts != null) {
+            contacts = mPagedContacts;
+        }
 
-        ListView listView = (ListView) findViewById(android.R.id.list);
+        final ListView listView = (ListView) findViewById(android.R.id.list);
         // TODO(developer): Use the ContactsArrayAdapterFixed for a quick performance improvement.
         // ContactsArrayAdapterFixed adapter = new ContactsArrayAdapterFixed(this, contacts);
-        ContactsArrayAdapter adapter = new ContactsArrayAdapter(this, contacts);
+        final ArrayAdapter<Contact> adapter;
+        String adapterName = getIntent().getStringExtra(EXTRA_ADAPTER);
+        if (ADAPTER_FIXED.equals(adapterName)) {
+            ContactsArrayAdapterFixed fixedAdapter = new ContactsArrayAdapterFixed(this, contacts);
+            // Load the pictures of the rows about to scroll into view before they are bound.
+            listView.setOnScrollListener(fixedAdapter.getContactImages().createPreloader());
+            GlideBindStats.getInstance().reset();
+            adapter = fixedAdapter;
+        } else if (ADAPTER_CACHED.equals(adapterName)) {
+            ImageLoader.get(this).resetStats();
+            adapter = new ContactsArrayAdapterCached(this, contacts);
+        } else {
+            adapter = new ContactsArrayAdapter(this, contacts);
+        }
         listView.setAdapter(adapter);
+
+        // The activity is fully drawn once it shows the names of the first rows, their pictures
+        // are reported separately by the image latency tracking.
+        final FullyDrawnReporter fullyDrawnReporter = new FullyDrawnReporter(this, listView);
+        if (mPagedContacts == null) {
+            fullyDrawnReporter.contentReady();
+        } else {
+            mPagedContacts.setListener(new PagedContactStore.Listener() {
+                @Override
+                public void onContactsLoaded(int start, int count) {
+                    if (start == 0) {
+                        fullyDrawnReporter.contentReady();
+                    }
+                    if (adapter instanceof ContactsArrayAdapterFixed) {
+                        ((ContactsArrayAdapterFixed) adapter).notifyRangeChanged(listView, start,
+                                count);
+                    } else {
+                        adapter.notifyDataSetChanged();
+                    }
+                }
+            });
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        if (mPagedContacts != null) {
+            mPagedContacts.close();
+        }
+        String adapterName = getIntent().getStringExtra(EXTRA_ADAPTER);
+        if (ADAPTER_FIXED.equals(adapterName)) {
+            Log.i(TAG, "Images: " + GlideBindStats.getInstance());
+        } else if (ADAPTER_CACHED.equals(adapterName)) {
+            ImageLoader.Stats stats = ImageLoader.get(this).getStats();
+            Log.i(TAG, "Images: " + stats + " decodeMsPerDecode="
+                    + (stats.getDecodes() == 0 ? 0 : stats.getDecodeNanos() / 1e6
+                            / stats.getDecodes()));
+        }
+        super.onDestroy();
     }
 }
@@ -23,6 +23,16 @@ import java.util.List;
  * a particular person to be stored in your phone.
  */
 public class Contact {
+
+    /**
+     * Intent extra with the number of contacts a list activity should show,
+     * {@link #DEFAULT_CONTACT_COUNT} if absent.
+     */
+    public static final String EXTRA_CONTACT_COUNT =
+            "com.google.android.perftesting.extra.CONTACT_COUNT";
+
+    public static final int DEFAULT_CONTACT_COUNT = 1000;
+
     private String mName;
 
     public Contact(String name) {
@@ -42,4 +52,12 @@ public class Contact {
 
         return contacts;
     }
+
+    /**
+     * The same contacts as {@link #createContactsList(int)}, created as they are needed instead
+     * of up front. Suitable for lists of millions of contacts.
+     */
+    public static List<Contact> createVirtualContactsList(int numContacts) {
+        return new VirtualContactList(numContacts);
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.RelativeLayout;
+import android.widget.TextView;
+
+import com.google.android.perftesting.R;
+
+/**
+ * Builds the same row as {@code R.layout.item_contact} in code, without parsing the compiled XML
+ * or resolving its attributes by reflection. The sizes are resolved once when the factory is
+ * created. A {@code LayoutInflater} of an {@code AppCompatActivity} creates AppCompat versions of
+ * the widgets instead, which this doesn't, so compare the two outside of one.
+ */
+public class ContactRowFactory {
+
+    private static final int NAME_PADDING_DP = 20;
+
+    private final Context mContext;
+    private final int mImageWidth;
+    private final int mImageHeight;
+    private final int mNamePadding;
+    private final CharSequence mImageDescription;
+
+    public ContactRowFactory(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+        mImageWidth = resources.getDimensionPixelSize(R.dimen.contact_image_width);
+        mImageHeight = resources.getDimensionPixelSize(R.dimen.contact_image_height);
+        mNamePadding = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP,
+                NAME_PADDING_DP, resources.getDisplayMetrics());
+        mImageDescription = resources.getText(R.string.contact_image);
+    }
+
+    /**
+     * A new row for a list. Its layout params are converted by the list it is added to.
+     */
+    public View create() {
+        RelativeLayout row = new RelativeLayout(mContext);
+        row.setLayoutParams(new ViewGroup.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+
+        ImageView image = new ImageView(mContext);
+        image.setId(R.id.contact_image);
+        image.setContentDescription(mImageDescription);
+        RelativeLayout.LayoutParams imageParams =
+                new RelativeLayout.LayoutParams(mImageWidth, mImageHeight);
+        imageParams.addRule(RelativeLayout.CENTER_VERTICAL);
+        imageParams.addRule(RelativeLayout.ALIGN_PARENT_TOP);
+        row.addView(image, imageParams);
+
+        TextView name = new TextView(mContext);
+        name.setId(R.id.contact_name);
+        name.setPadding(mNamePadding, mNamePadding, mNamePadding, mNamePadding);
+        RelativeLayout.LayoutParams nameParams = new RelativeLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        nameParams.addRule(RelativeLayout.CENTER_VERTICAL);
+        nameParams.addRule(RelativeLayout.RIGHT_OF, R.id.contact_image);
+        row.addView(name, nameParams);
+        return row;
+    }
+}
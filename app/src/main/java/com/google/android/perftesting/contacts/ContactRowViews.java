@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.google.android.perftesting.R;
+
+/**
+ * The views of a contact row, looked up once and kept in the row's tag so rebinding a recycled
+ * row doesn't search its hierarchy with {@link View#findViewById(int)} again. Also holds the
+ * row's name buffer.
+ */
+public class ContactRowViews {
+
+    public final TextView nameTextView;
+    public final ImageView imageView;
+    public final ContactStore.NameBuffer nameBuffer = new ContactStore.NameBuffer();
+
+    private ContactRowViews(View row) {
+        nameTextView = (TextView) row.findViewById(R.id.contact_name);
+        imageView = (ImageView) row.findViewById(R.id.contact_image);
+    }
+
+    /**
+     * The views of a row inflated from {@code R.layout.item_contact} or built by
+     * {@link ContactRowFactory}, looking them up the first time.
+     */
+    public static ContactRowViews of(View row) {
+        ContactRowViews views = (ContactRowViews) row.getTag();
+        if (views == null) {
+            views = new ContactRowViews(row);
+            row.setTag(views);
+        }
+        return views;
+    }
+
+    /**
+     * Show the name of the contact at {@code position} without creating a String.
+     */
+    public void bindName(ContactStore store, int position) {
+        store.readName(position, nameBuffer);
+        nameTextView.setText(nameBuffer.getChars(), 0, nameBuffer.getLength());
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Where the adapters read contacts from. Names are copied into a caller's {@code char[]} so a row
+ * can be bound with {@link android.widget.TextView#setText(char[], int, int)} without creating a
+ * {@code String} per bind. The TextView keeps a reference to the array it is given, so every view
+ * needs its own.
+ */
+public abstract class ContactStore {
+
+    /**
+     * Intent extra choosing where a list activity's contacts come from, {@link #SOURCE_VIRTUAL} if
+     * absent.
+     */
+    public static final String EXTRA_CONTACT_SOURCE =
+            "com.google.android.perftesting.extra.CONTACT_SOURCE";
+
+    /**
+     * Contacts created as they are needed, see {@link VirtualContactList}.
+     */
+    public static final String SOURCE_VIRTUAL = "virtual";
+
+    /**
+     * Contacts read from a memory-mapped file, see {@link MappedContactStore}.
+     */
+    public static final String SOURCE_MAPPED = "mapped";
+
+    private static final String TAG = "ContactStore";
+
+    public abstract int size();
+
+    /**
+     * Copy as much of the name of the contact at {@code position} as fits into {@code buffer}.
+     *
+     * @return the length of the whole name; if it is larger than the buffer, read it again into a
+     *     buffer at least that large.
+     */
+    public abstract int getName(int position, char[] buffer);
+
+    /**
+     * The contacts as a list, creating a {@link Contact} for each one asked for.
+     */
+    public List<Contact> asList() {
+        return new ContactStoreList(this);
+    }
+
+    public static ContactStore of(List<Contact> contacts) {
+        return new ListContactStore(contacts);
+    }
+
+    /**
+     * The contacts a list activity was started for, from {@link Contact#EXTRA_CONTACT_COUNT} and
+     * {@link #EXTRA_CONTACT_SOURCE}. A mapped store's file is generated in the app's files
+     * directory the first time, which takes a while for large counts, so tests should generate it
+     * up front with {@link MappedContactStore#getFile(Context, int)} and
+     * {@link MappedContactStore#generate(File, int)}.
+     */
+    public static ContactStore forIntent(Context context, Intent intent) {
+        int contactCount = intent.getIntExtra(Contact.EXTRA_CONTACT_COUNT,
+                Contact.DEFAULT_CONTACT_COUNT);
+        if (SOURCE_MAPPED.equals(intent.getStringExtra(EXTRA_CONTACT_SOURCE))) {
+            File file = MappedContactStore.getFile(context, contactCount);
+            try {
+                if (!MappedContactStore.isValid(file, contactCount)) {
+                    MappedContactStore.generate(file, contactCount);
+                }
+                return MappedContactStore.open(file);
+            } catch (IOException e) {
+                Log.e(TAG, "Unable to map " + file + ", creating contacts in memory", e);
+            }
+        }
+        return of(Contact.createVirtualContactsList(contactCount));
+    }
+
+    /**
+     * Read the name of the contact at {@code position} into {@code buffer}, growing it if needed.
+     */
+    public void readName(int position, NameBuffer buffer) {
+        int length = getName(position, buffer.mChars);
+        if (length > buffer.mChars.length) {
+            buffer.mChars = new char[length];
+            getName(position, buffer.mChars);
+        }
+        buffer.mLength = length;
+    }
+
+    /**
+     * A reusable name, for one view to bind with {@code setText(getChars(), 0, getLength())}.
+     */
+    public static final class NameBuffer {
+        private char[] mChars = new char[MappedContactStore.MAX_NAME_LENGTH];
+        private int mLength;
+
+        public char[] getChars() {
+            return mChars;
+        }
+
+        public int getLength() {
+            return mLength;
+        }
+
+        @Override
+        public String toString() {
+            return new String(mChars, 0, mLength);
+        }
+    }
+
+    private static class ListContactStore extends ContactStore {
+        private final List<Contact> mContacts;
+
+        ListContactStore(List<Contact> contacts) {
+            mContacts = contacts;
+        }
+
+        @Override
+        public int size() {
+            return mContacts.size();
+        }
+
+        @Override
+        public int getName(int position, char[] buffer) {
+            String name = mContacts.get(position).getName();
+            name.getChars(0, Math.min(name.length(), buffer.length), buffer, 0);
+            return name.length();
+        }
+
+        @Override
+        public List<Contact> asList() {
+            return mContacts;
+        }
+    }
+
+    private static class ContactStoreList extends AbstractList<Contact> implements RandomAccess {
+        private final ContactStore mStore;
+
+        ContactStoreList(ContactStore store) {
+            mStore = store;
+        }
+
+        @Override
+        public Contact get(int index) {
+            NameBuffer name = new NameBuffer();
+            mStore.readName(index, name);
+            return new Contact(name.toString());
+        }
+
+        @Override
+        public int size() {
+            return mStore.size();
+        }
+    }
+}
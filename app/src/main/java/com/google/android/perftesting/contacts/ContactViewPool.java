@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.google.android.perftesting.R;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.Queue;
+
+/**
+ * A {@link RecyclerView.RecycledViewPool} for contact rows that can inflate rows in the
+ * background before the list needs them, so neither the first layout nor a fast fling has to
+ * inflate rows inside a frame. The views are inflated one after another with
+ * {@link AsyncLayoutInflater}, which queues at most ten at a time and would block the main thread
+ * on more, into a queue the {@link ContactsRecyclerAdapter} creates holders from.
+ *
+ * Counts the holders the list took from the pool, the ones the adapter created from a prewarmed
+ * view and the ones it had to inflate instead. Only holders actually taken or created count, not
+ * the times the list's prefetch looks into the pool and gives up for lack of time. Must be used on
+ * the main thread.
+ */
+public class ContactViewPool extends RecyclerView.RecycledViewPool {
+
+    /**
+     * Intent extra for the number of rows to inflate in the background before the list is shown,
+     * none if absent.
+     */
+    public static final String EXTRA_PREWARM_VIEW_HOLDERS =
+            "com.google.android.perftesting.extra.PREWARM_VIEW_HOLDERS";
+
+    /**
+     * Intent extra for the number of contact holders the pool keeps,
+     * {@link #DEFAULT_MAX_CONTACT_VIEWS} if absent.
+     */
+    public static final String EXTRA_VIEW_POOL_SIZE =
+            "com.google.android.perftesting.extra.VIEW_POOL_SIZE";
+
+    /**
+     * The pool size {@link RecyclerView.RecycledViewPool} uses for every view type.
+     */
+    public static final int DEFAULT_MAX_CONTACT_VIEWS = 5;
+
+    private final Queue<View> mInflatedViews = new ArrayDeque<>();
+    private int mMaxContactViews = DEFAULT_MAX_CONTACT_VIEWS;
+    private int mHits;
+    private int mPrewarmedHits;
+    private int mMisses;
+    private int mPrewarmed;
+    private int mPrewarmedBeforeLayout = -1;
+
+    @Override
+    public RecyclerView.ViewHolder getRecycledView(int viewType) {
+        if (mPrewarmedBeforeLayout < 0) {
+            // The list asks the pool for the first time in its first layout.
+            mPrewarmedBeforeLayout = mPrewarmed;
+        }
+        RecyclerView.ViewHolder holder = super.getRecycledView(viewType);
+        if (holder != null) {
+            // A holder taken out of the pool is always used, if only for the prefetch cache.
+            mHits++;
+        }
+        return holder;
+    }
+
+    /**
+     * A contact row inflated ahead of time, for the adapter to create a holder from. If there is
+     * none the adapter inflates one itself, which counts as a miss.
+     *
+     * @return null if no prewarmed row is left.
+     */
+    View takeInflatedView() {
+        View view = mInflatedViews.poll();
+        if (view != null) {
+            mPrewarmedHits++;
+        } else {
+            mMisses++;
+        }
+        return view;
+    }
+
+    /**
+     * Inflate {@code count} contact rows in the background for {@link #takeInflatedView()} and
+     * run {@code onWarm} once they are all there, or right away if {@code count} isn't positive.
+     * Set the list's adapter in {@code onWarm} so its first layout finds the rows warm.
+     */
+    public void prewarm(ViewGroup parent, int count, Runnable onWarm) {
+        if (count <= 0) {
+            onWarm.run();
+            return;
+        }
+        inflateNext(new AsyncLayoutInflater(parent.getContext()), parent, count, onWarm);
+    }
+
+    private void inflateNext(final AsyncLayoutInflater inflater, final ViewGroup parent,
+            final int remaining, final Runnable onWarm) {
+        inflater.inflate(R.layout.item_contact, parent,
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+                    @Override
+                    public void onInflateFinished(View view, int resid, ViewGroup parent) {
+                        mInflatedViews.add(view);
+                        mPrewarmed++;
+                        if (remaining > 1) {
+                            inflateNext(inflater, parent, remaining - 1, onWarm);
+                        } else {
+                            onWarm.run();
+                        }
+                    }
+                });
+    }
+
+    @Override
+    public void setMaxRecycledViews(int viewType, int max) {
+        super.setMaxRecycledViews(viewType, max);
+        if (viewType == ContactsRecyclerAdapter.VIEW_TYPE_CONTACT) {
+            mMaxContactViews = max;
+        }
+    }
+
+    public int getMaxContactViews() {
+        return mMaxContactViews;
+    }
+
+    /**
+     * Holders the list took from the pool rather than creating them.
+     */
+    public int getHits() {
+        return mHits;
+    }
+
+    /**
+     * Holders the list created from a prewarmed view, without inflating one.
+     */
+    public int getPrewarmedHits() {
+        return mPrewarmedHits;
+    }
+
+    /**
+     * Times the list found neither a holder in the pool nor a prewarmed view, so the adapter
+     * inflated one on the main thread.
+     */
+    public int getMisses() {
+        return mMisses;
+    }
+
+    public int getPrewarmed() {
+        return mPrewarmed;
+    }
+
+    /**
+     * Rows that were prewarmed when the list was first laid out, or -1 if it wasn't yet.
+     */
+    public int getPrewarmedBeforeLayout() {
+        return mPrewarmedBeforeLayout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "hits=%d prewarmedHits=%d misses=%d prewarmed=%d "
+                + "prewarmedBeforeLayout=%d maxContactViews=%d", mHits, mPrewarmedHits, mMisses,
+                mPrewarmed, mPrewarmedBeforeLayout, mMaxContactViews);
+    }
+}
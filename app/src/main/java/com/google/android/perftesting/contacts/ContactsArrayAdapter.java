@@ -19,6 +19,8 @@ package com.google.android.perftesting.contacts;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Trace;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -27,6 +29,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.google.android.perftesting.R;
+import com.google.android.perftesting.images.ImageLatencyTracker;
 
 import java.util.List;
 
@@ -41,6 +44,10 @@ public class ContactsArrayAdapter extends ArrayAdapter<Contact> {
         super(context, 0, contacts);
     }
 
+    public ContactsArrayAdapter(Context context, ContactStore store) {
+        this(context, store.asList());
+    }
+
     @ Override
     public View getView(int position, View convertView, ViewGroup parent ) {
 
@@ -49,18 +56,40 @@ public class ContactsArrayAdapter extends ArrayAdapter<Contact> {
 
         // This line is wrong, we're inflating a new view always instead of only if it's null.
         // For demonstration purposes, we will leave this here to show the resulting jank.
+        beginSection("ContactsArrayAdapter inflate");
         convertView = inflater.inflate(R.layout.item_contact, parent, false);
+        endSection();
 
         TextView contactName = (TextView) convertView.findViewById(R.id.contact_name);
         ImageView contactImage = (ImageView) convertView.findViewById(R.id.contact_image);
 
         contactName.setText(contact.getName());
+        ImageLatencyTracker.getInstance().onBind(contactImage);
 
         // Let's just create another bitmap when we need one. This makes no attempts to re-use
         // bitmaps that were previously used in rendering past list view elements, causing a large
         // amount of memory to be consumed as you scroll farther down the list.
+        beginSection("ContactsArrayAdapter decode");
         Bitmap bm = BitmapFactory.decodeResource(convertView.getResources(), R.drawable.bbq);
+        endSection();
         contactImage.setImageBitmap(bm);
+        ImageLatencyTracker.getInstance().onImageSet(contactImage);
         return convertView;
     }
+
+    /**
+     * Mark the expensive parts of getView so they can be picked out of the traversal stage of a
+     * frame in a systrace.
+     */
+    private static void beginSection(String sectionName) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(sectionName);
+        }
+    }
+
+    private static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.content.Context;
+import android.widget.ImageView;
+
+import com.google.android.perftesting.R;
+import com.google.android.perftesting.images.ImageLoader;
+
+/**
+ * ContactsArrayAdapterCached binds rows like {@link ContactsArrayAdapterFixed} but loads the
+ * pictures with the app's own {@link ImageLoader} instead of Glide, to compare the two.
+ */
+public class ContactsArrayAdapterCached extends ContactsArrayAdapterFixed {
+
+    private final ImageLoader mImageLoader;
+
+    public ContactsArrayAdapterCached(Context context, ContactStore store) {
+        super(context, store);
+        mImageLoader = ImageLoader.get(context);
+    }
+
+    @Override
+    protected void bindImage(ImageView contactImage, int position) {
+        mImageLoader.load(contactImage, R.drawable.bbq);
+    }
+}
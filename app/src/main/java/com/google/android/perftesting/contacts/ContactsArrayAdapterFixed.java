@@ -20,13 +20,14 @@ import android.content.Context;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
 import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.google.android.perftesting.R;
-
-import com.bumptech.glide.Glide;
+import com.google.android.perftesting.images.ContactImages;
+import com.google.android.perftesting.images.ImageLatencyTracker;
 
 import java.util.List;
 
@@ -37,30 +38,88 @@ public class ContactsArrayAdapterFixed extends ArrayAdapter<Contact> {
 
     public final String TAG = "ContactsArrayAdapter";
 
+    private final ContactStore mStore;
+    private final ContactImages mImages;
+
     public ContactsArrayAdapterFixed(Context context, List<Contact> contacts) {
-        super(context, 0, contacts);
+        this(context, ContactStore.of(contacts));
+    }
+
+    public ContactsArrayAdapterFixed(Context context, ContactStore store) {
+        super(context, 0, store.asList());
+        mStore = store;
+        mImages = new ContactImages(context);
     }
 
     @ Override
     public View getView(int position, View convertView, ViewGroup parent ) {
 
-        Contact contact = getItem(position);
         LayoutInflater inflater = LayoutInflater.from(getContext());
 
         if (convertView == null) {
             convertView = inflater.inflate(R.layout.item_contact, parent, false);
+            convertView.setTag(new BoundRow());
         }
 
         TextView contactName = (TextView) convertView.findViewById(R.id.contact_name);
         ImageView contactImage = (ImageView) convertView.findViewById(R.id.contact_image);
 
-        Glide.with(contactImage.getContext())
-                .load(R.drawable.bbq)
-                .fitCenter()
-                .into(contactImage);
+        ImageLatencyTracker.getInstance().onBind(contactImage);
+        bindImage(contactImage, position);
 
-        contactName.setText(contact.getName());
+        BoundRow row = (BoundRow) convertView.getTag();
+        row.mPosition = position;
+        bindName(contactName, row);
 
         return convertView;
     }
+
+    /**
+     * Read the name into the row's own buffer rather than creating a Contact and String.
+     */
+    private void bindName(TextView contactName, BoundRow row) {
+        mStore.readName(row.mPosition, row.mName);
+        contactName.setText(row.mName.getChars(), 0, row.mName.getLength());
+    }
+
+    /**
+     * Show the contact's picture, loaded by Glide.
+     */
+    protected void bindImage(ImageView contactImage, int position) {
+        mImages.bind(contactImage, position);
+    }
+
+    /**
+     * The Glide requests of the pictures, to preload them with the same size and transformation.
+     */
+    public ContactImages getContactImages() {
+        return mImages;
+    }
+
+    /**
+     * Show the names of positions {@code start} to {@code start + count - 1} in the rows of
+     * {@code listView} bound to them, e.g. once they were loaded in the background. ListView has
+     * no way to rebind part of the list and {@link #notifyDataSetChanged()} would rebind the
+     * pictures too, so only the names of the rows this adapter bound are updated.
+     */
+    public void notifyRangeChanged(AbsListView listView, int start, int count) {
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            View child = listView.getChildAt(i);
+            if (!(child.getTag() instanceof BoundRow)) {
+                continue;
+            }
+            BoundRow row = (BoundRow) child.getTag();
+            if (row.mPosition >= start && row.mPosition < start + count) {
+                bindName((TextView) child.findViewById(R.id.contact_name), row);
+            }
+        }
+    }
+
+    /**
+     * What a row was last bound to, kept in its tag.
+     */
+    private static class BoundRow {
+        final ContactStore.NameBuffer mName = new ContactStore.NameBuffer();
+        int mPosition;
+    }
 }
@@ -25,8 +25,8 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.google.android.perftesting.R;
-
-import com.bumptech.glide.Glide;
+import com.google.android.perftesting.images.ContactImages;
+import com.google.android.perftesting.images.ImageLatencyTracker;
 
 import java.util.List;
 
@@ -37,45 +37,67 @@ public class ContactsRecyclerAdapter extends RecyclerView.Adapter<ContactsRecycl
 
     private static final String TAG = "ContactsRecyclerAdapter";
 
-    private List<Contact> mContacts;
+    public static final int VIEW_TYPE_CONTACT = 0;
+
+    private final ContactStore mStore;
+    private ContactImages mImages;
+    private ContactViewPool mViewPool;
 
     public ContactsRecyclerAdapter(List<Contact> contacts) {
-        mContacts = contacts;
+        this(ContactStore.of(contacts));
+    }
+
+    public ContactsRecyclerAdapter(ContactStore store) {
+        mStore = store;
     }
 
     @Override
     public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         Context context = parent.getContext();
         LayoutInflater inflater = LayoutInflater.from(context);
+        if (mImages == null) {
+            mImages = new ContactImages(context);
+        }
 
-        View contactView = inflater.inflate(R.layout.item_contact, parent, false);
+        View contactView = mViewPool != null ? mViewPool.takeInflatedView() : null;
+        if (contactView == null) {
+            contactView = inflater.inflate(R.layout.item_contact, parent, false);
+        }
 
         return new ViewHolder(contactView);
     }
 
+    /**
+     * Create holders from the rows {@link ContactViewPool#prewarm} inflated on a background thread
+     * before inflating new ones, and count both in the pool's stats.
+     */
+    public void setViewPool(ContactViewPool viewPool) {
+        mViewPool = viewPool;
+    }
+
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
-        Contact contact = mContacts.get(position);
-
         TextView textView = holder.nameTextView;
         ImageView contactPic = holder.imageView;
 
-        textView.setText(contact.getName());
-        Glide.with(contactPic.getContext())
-                .load(R.drawable.bbq)
-                .fitCenter()
-                .into(contactPic);
+        // The name is copied into the holder's own buffer, so binding creates no String.
+        ContactStore.NameBuffer name = holder.nameBuffer;
+        mStore.readName(position, name);
+        textView.setText(name.getChars(), 0, name.getLength());
+        ImageLatencyTracker.getInstance().onBind(contactPic);
+        mImages.bind(contactPic, position);
     }
 
     @Override
     public int getItemCount() {
-        return mContacts.size();
+        return mStore.size();
     }
 
     public static class ViewHolder extends RecyclerView.ViewHolder {
 
         public TextView nameTextView;
         public ImageView imageView;
+        public final ContactStore.NameBuffer nameBuffer = new ContactStore.NameBuffer();
 
         public ViewHolder(View itemView) {
             super(itemView);
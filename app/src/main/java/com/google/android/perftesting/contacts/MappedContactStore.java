@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Locale;
+
+/**
+ * Contacts read from a file of fixed-size records mapped into memory with
+ * {@link FileChannel#map}, so only the pages of the rows being bound are read from storage and
+ * nothing is copied onto the heap beyond the caller's name buffer.
+ *
+ * The file starts with a {@link #HEADER_SIZE} byte header (magic, version, number of contacts and
+ * record size, as big-endian ints) followed by one {@link #RECORD_SIZE} byte record per contact:
+ * the length of the name as an unsigned short and up to {@link #MAX_NAME_LENGTH} UTF-16 chars.
+ * The mapping is read with absolute gets only, so the store can be read from any thread.
+ */
+public class MappedContactStore extends ContactStore {
+
+    public static final int MAGIC = 0x434e5443;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int MAX_NAME_LENGTH = 23;
+    public static final int RECORD_SIZE = 2 + 2 * MAX_NAME_LENGTH;
+
+    private final MappedByteBuffer mBuffer;
+    private final int mSize;
+
+    private MappedContactStore(MappedByteBuffer buffer, int size) {
+        mBuffer = buffer;
+        mSize = size;
+    }
+
+    /**
+     * The file {@link ContactStore#forIntent} uses for {@code count} contacts.
+     */
+    public static File getFile(Context context, int count) {
+        return new File(context.getFilesDir(), String.format(Locale.US, "contacts_%d.bin", count));
+    }
+
+    /**
+     * Map a file written by {@link #generate(File, int)}. The mapping stays valid after the file
+     * is closed, and is released when the store is garbage collected.
+     */
+    public static MappedContactStore open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a contacts file: " + file);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            int size = buffer.getInt(8);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(12) != RECORD_SIZE || size < 0
+                    || channel.size() != HEADER_SIZE + (long) size * RECORD_SIZE) {
+                throw new IOException("Not a version " + VERSION + " contacts file: " + file);
+            }
+            return new MappedContactStore(buffer, size);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * @return true if {@code file} is a complete contacts file of {@code count} contacts.
+     */
+    public static boolean isValid(File file, int count) {
+        if (file.length() != HEADER_SIZE + (long) count * RECORD_SIZE) {
+            return false;
+        }
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            return randomAccessFile.readInt() == MAGIC && randomAccessFile.readInt() == VERSION
+                    && randomAccessFile.readInt() == count
+                    && randomAccessFile.readInt() == RECORD_SIZE;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            if (randomAccessFile != null) {
+                try { randomAccessFile.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+
+    /**
+     * Write a contacts file of {@code count} contacts named like those of
+     * {@link Contact#createContactsList(int)}. The file is written next to {@code file} and renamed
+     * into place, so a reader never sees a partial file.
+     */
+    public static void generate(File file, int count) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        FileOutputStream outputStream = new FileOutputStream(tempFile);
+        try {
+            FileChannel channel = outputStream.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(1024 * RECORD_SIZE);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(RECORD_SIZE);
+            StringBuilder name = new StringBuilder(MAX_NAME_LENGTH);
+            for (int i = 1; i <= count; i++) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    writeFully(channel, buffer);
+                }
+                name.setLength(0);
+                name.append("Contact ").append(i);
+                int length = Math.min(name.length(), MAX_NAME_LENGTH);
+                int recordStart = buffer.position();
+                buffer.putChar((char) length);
+                for (int c = 0; c < length; c++) {
+                    buffer.putChar(name.charAt(c));
+                }
+                buffer.position(recordStart + RECORD_SIZE);
+            }
+            writeFully(channel, buffer);
+            outputStream.getFD().sync();
+        } finally {
+            outputStream.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Unable to rename " + tempFile + " to " + file);
+        }
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public int getName(int position, char[] buffer) {
+        if (position < 0 || position >= mSize) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", size: " + mSize);
+        }
+        int recordStart = HEADER_SIZE + position * RECORD_SIZE;
+        int length = mBuffer.getChar(recordStart);
+        int copied = Math.min(length, buffer.length);
+        for (int i = 0; i < copied; i++) {
+            buffer[i] = mBuffer.getChar(recordStart + 2 + 2 * i);
+        }
+        return length;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the contacts of another store in pages on a background thread, the way a list backed by
+ * a database or a network service has to, so binding never waits for storage. A row whose page
+ * isn't loaded yet binds an empty name and asks for the page; the page after it and
+ * {@link #getPrefetchPages()} more in the direction of the scroll are loaded too. When a page
+ * arrives the {@link Listener} is told which positions changed, so the adapter can rebind just
+ * those rows.
+ *
+ * Pages are only read and changed on the main thread, and the pages farthest from the last
+ * position bound are dropped to keep a bounded number in memory. The source is read from a single
+ * background thread, after sleeping for a simulated latency if one is set.
+ *
+ * How long each page took from being asked for to reaching the main thread is reported to the
+ * {@link LoadTimeListener}, if one is set, e.g. by a test rule.
+ */
+public class PagedContactStore extends ContactStore {
+
+    /**
+     * Intent extra turning on paging with pages of this many contacts. Absent or 0 binds straight
+     * from the source.
+     */
+    public static final String EXTRA_PAGE_SIZE = "com.google.android.perftesting.extra.PAGE_SIZE";
+
+    /**
+     * Intent extra for the number of pages to load ahead of the scroll direction,
+     * {@link #DEFAULT_PREFETCH_PAGES} if absent.
+     */
+    public static final String EXTRA_PREFETCH_PAGES =
+            "com.google.android.perftesting.extra.PREFETCH_PAGES";
+
+    /**
+     * Intent extra for a delay, in milliseconds, added to loading each page to simulate slow
+     * storage.
+     */
+    public static final String EXTRA_PAGE_LATENCY_MS =
+            "com.google.android.perftesting.extra.PAGE_LATENCY_MS";
+
+    public static final int DEFAULT_PREFETCH_PAGES = 2;
+
+    /**
+     * Told on the main thread about contacts that have been loaded.
+     */
+    public interface Listener {
+        void onContactsLoaded(int start, int count);
+    }
+
+    /**
+     * Told on the main thread about every page loaded by any store.
+     */
+    public interface LoadTimeListener {
+        void onPageLoaded(long latencyNanos);
+    }
+
+    private static volatile LoadTimeListener sLoadTimeListener;
+
+    private static class Page {
+        final char[][] mNames;
+
+        Page(char[][] names) {
+            mNames = names;
+        }
+    }
+
+    private final ContactStore mSource;
+    private final int mPageSize;
+    private final int mPrefetchPages;
+    private final long mLatencyMs;
+    private final int mMaxPages;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final SparseArray<Page> mPages = new SparseArray<>();
+    private final SparseBooleanArray mPendingPages = new SparseBooleanArray();
+    private Listener mListener;
+    private int mLastPosition = -1;
+    // Read by the loading thread to skip pages the list has already scrolled away from.
+    private volatile int mCurrentPage;
+
+    public PagedContactStore(ContactStore source, int pageSize, int prefetchPages,
+            long latencyMs) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        mSource = source;
+        mPageSize = pageSize;
+        mPrefetchPages = Math.max(0, prefetchPages);
+        mLatencyMs = latencyMs;
+        // The pages ahead and behind, the current one and the one after it.
+        mMaxPages = 2 * (mPrefetchPages + 1) + 1;
+    }
+
+    /**
+     * Page {@code source} as asked for by {@link #EXTRA_PAGE_SIZE},
+     * {@link #EXTRA_PREFETCH_PAGES} and {@link #EXTRA_PAGE_LATENCY_MS}.
+     *
+     * @return null if the intent doesn't ask for paging.
+     */
+    public static PagedContactStore forIntent(ContactStore source, Intent intent) {
+        int pageSize = intent.getIntExtra(EXTRA_PAGE_SIZE, 0);
+        if (pageSize <= 0) {
+            return null;
+        }
+        return new PagedContactStore(source, pageSize,
+                intent.getIntExtra(EXTRA_PREFETCH_PAGES, DEFAULT_PREFETCH_PAGES),
+                intent.getIntExtra(EXTRA_PAGE_LATENCY_MS, 0));
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Set before the list is created to time its first pages too.
+     */
+    public static void setLoadTimeListener(LoadTimeListener listener) {
+        sLoadTimeListener = listener;
+    }
+
+    public int getPageSize() {
+        return mPageSize;
+    }
+
+    public int getPrefetchPages() {
+        return mPrefetchPages;
+    }
+
+    /**
+     * Must be called on the main thread.
+     */
+    public boolean isLoaded(int position) {
+        return mPages.get(position / mPageSize) != null;
+    }
+
+    /**
+     * Stop loading pages, e.g. when the activity is destroyed.
+     */
+    public void close() {
+        mListener = null;
+        mExecutor.shutdownNow();
+        mMainHandler.removeCallbacksAndMessages(null);
+    }
+
+    @Override
+    public int size() {
+        return mSource.size();
+    }
+
+    /**
+     * Must be called on the main thread. Copies nothing and returns 0 if the contact's page isn't
+     * loaded yet.
+     */
+    @Override
+    public int getName(int position, char[] buffer) {
+        int pageIndex = position / mPageSize;
+        onPositionBound(position, pageIndex);
+        Page page = mPages.get(pageIndex);
+        if (page == null) {
+            return 0;
+        }
+        char[] name = page.mNames[position - pageIndex * mPageSize];
+        System.arraycopy(name, 0, buffer, 0, Math.min(name.length, buffer.length));
+        return name.length;
+    }
+
+    private void onPositionBound(int position, int pageIndex) {
+        boolean forward = position >= mLastPosition;
+        mLastPosition = position;
+        if (pageIndex == mCurrentPage && mPages.get(pageIndex) != null) {
+            return;
+        }
+        mCurrentPage = pageIndex;
+        requestPage(pageIndex);
+        // Rows are bound a little beyond the edge of the list, so the next page is needed soon
+        // whichever way the list scrolls.
+        requestPage(forward ? pageIndex + 1 : pageIndex - 1);
+        for (int i = 2; i <= mPrefetchPages + 1; i++) {
+            requestPage(forward ? pageIndex + i : pageIndex - i);
+        }
+    }
+
+    private void requestPage(final int pageIndex) {
+        if (pageIndex < 0 || (long) pageIndex * mPageSize >= size()
+                || mPages.get(pageIndex) != null || mPendingPages.get(pageIndex)
+                || mExecutor.isShutdown()) {
+            return;
+        }
+        mPendingPages.put(pageIndex, true);
+        final long requestNanos = System.nanoTime();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Page page = isWanted(pageIndex) ? loadPage(pageIndex) : null;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(pageIndex, page, requestNanos);
+                    }
+                });
+            }
+        });
+    }
+
+    private boolean isWanted(int pageIndex) {
+        return Math.abs(pageIndex - mCurrentPage) <= mPrefetchPages + 1;
+    }
+
+    /**
+     * Runs on the loading thread.
+     */
+    private Page loadPage(int pageIndex) {
+        if (mLatencyMs > 0) {
+            SystemClock.sleep(mLatencyMs);
+        }
+        int start = pageIndex * mPageSize;
+        int count = Math.min(mPageSize, size() - start);
+        char[][] names = new char[count][];
+        NameBuffer name = new NameBuffer();
+        for (int i = 0; i < count; i++) {
+            mSource.readName(start + i, name);
+            names[i] = Arrays.copyOf(name.getChars(), name.getLength());
+        }
+        return new Page(names);
+    }
+
+    private void onPageLoaded(int pageIndex, Page page, long requestNanos) {
+        mPendingPages.delete(pageIndex);
+        if (page == null) {
+            // Skipped as the list had moved on, it is asked for again if it comes back into view.
+            return;
+        }
+        LoadTimeListener loadTimeListener = sLoadTimeListener;
+        if (loadTimeListener != null) {
+            loadTimeListener.onPageLoaded(System.nanoTime() - requestNanos);
+        }
+        mPages.put(pageIndex, page);
+        evictDistantPages();
+        if (mListener != null) {
+            mListener.onContactsLoaded(pageIndex * mPageSize, page.mNames.length);
+        }
+    }
+
+    private void evictDistantPages() {
+        while (mPages.size() > mMaxPages) {
+            int farthest = 0;
+            for (int i = 1; i < mPages.size(); i++) {
+                if (Math.abs(mPages.keyAt(i) - mCurrentPage)
+                        > Math.abs(mPages.keyAt(farthest) - mCurrentPage)) {
+                    farthest = i;
+                }
+            }
+            mPages.removeAt(farthest);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.contacts;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A read-only list of contacts that creates each contact from its index when it is asked for,
+ * instead of holding them all, so its memory use doesn't depend on its size. The contacts are the
+ * same as those of {@link Contact#createContactsList(int)}.
+ *
+ * The most recently requested contacts are kept in a small cache so rebinding the rows on screen
+ * returns the same objects without recreating them. The list can be read from any thread.
+ */
+public class VirtualContactList extends AbstractList<Contact> implements RandomAccess {
+
+    // A power of two, a few screens of rows.
+    private static final int CACHE_SIZE = 64;
+
+    private final int mSize;
+
+    // Direct-mapped by index; entries are immutable so they are safe to share between threads.
+    private final CacheEntry[] mCache = new CacheEntry[CACHE_SIZE];
+
+    public VirtualContactList(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Negative size: " + size);
+        }
+        mSize = size;
+    }
+
+    @Override
+    public Contact get(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + mSize);
+        }
+        int slot = index & (CACHE_SIZE - 1);
+        CacheEntry entry = mCache[slot];
+        if (entry == null || entry.mIndex != index) {
+            entry = new CacheEntry(index, new Contact("Contact " + (index + 1)));
+            mCache[slot] = entry;
+        }
+        return entry.mContact;
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    private static final class CacheEntry {
+        final int mIndex;
+        final Contact mContact;
+
+        CacheEntry(int index, Contact contact) {
+            mIndex = index;
+            mContact = contact;
+        }
+    }
+}
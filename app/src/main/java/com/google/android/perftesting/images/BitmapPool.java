@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmaps no longer displayed or cached, kept to be decoded into again with
+ * {@link android.graphics.BitmapFactory.Options#inBitmap} rather than allocating new ones. They
+ * are bucketed by allocation size, and a bitmap is only handed out for a decode needing at least
+ * half of it so the pool doesn't waste memory on bitmaps much larger than the rows show.
+ *
+ * Decoding into a bitmap of a different size than the image needs KitKat, so older devices don't
+ * keep bitmaps at all. Safe to use from any thread.
+ */
+public class BitmapPool {
+
+    private static final int MAX_SIZE_MULTIPLE = 2;
+
+    private final long mMaxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> mBuckets = new TreeMap<>();
+    // Every pooled bitmap, oldest first, to know which to drop when the pool is full.
+    private final LinkedHashSet<Bitmap> mBitmaps = new LinkedHashSet<>();
+    private long mBytes;
+
+    public BitmapPool(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    public static boolean isSupported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    }
+
+    /**
+     * The memory used by {@code bitmap}, which for a reused bitmap can be more than its pixels.
+     */
+    public static int getBytes(Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    /**
+     * Keep {@code bitmap} for reuse. It must not be displayed or cached anywhere any more.
+     */
+    public synchronized void put(Bitmap bitmap) {
+        int bytes = getBytes(bitmap);
+        if (!isSupported() || !bitmap.isMutable() || bitmap.isRecycled() || bytes > mMaxBytes
+                || mBitmaps.contains(bitmap)) {
+            return;
+        }
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            mBuckets.put(bytes, bucket);
+        }
+        bucket.addLast(bitmap);
+        mBitmaps.add(bitmap);
+        mBytes += bytes;
+        while (mBytes > mMaxBytes) {
+            Iterator<Bitmap> oldest = mBitmaps.iterator();
+            Bitmap evicted = oldest.next();
+            oldest.remove();
+            remove(evicted, getBytes(evicted));
+        }
+    }
+
+    /**
+     * @return a bitmap to decode an image of {@code bytes} bytes into, or null.
+     */
+    public synchronized Bitmap get(int bytes) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> bucket = mBuckets.ceilingEntry(bytes);
+        if (bucket == null || bucket.getKey() > (long) bytes * MAX_SIZE_MULTIPLE) {
+            return null;
+        }
+        // The most recently pooled bitmap is the most likely to still be in the CPU's caches.
+        Bitmap bitmap = bucket.getValue().peekLast();
+        mBitmaps.remove(bitmap);
+        remove(bitmap, bucket.getKey());
+        return bitmap;
+    }
+
+    public synchronized long getBytes() {
+        return mBytes;
+    }
+
+    public synchronized void clear() {
+        mBuckets.clear();
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+
+    private void remove(Bitmap bitmap, int bytes) {
+        ArrayDeque<Bitmap> bucket = mBuckets.get(bytes);
+        bucket.removeLastOccurrence(bitmap);
+        if (bucket.isEmpty()) {
+            mBuckets.remove(bytes);
+        }
+        mBytes -= bytes;
+    }
+}
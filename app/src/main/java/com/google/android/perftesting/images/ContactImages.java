@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.widget.ImageView;
+
+import com.google.android.perftesting.R;
+
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.GenericRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.util.FixedPreloadSizeProvider;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Glide requests for the contact rows' pictures. Binding and preloading build the same
+ * request at the fixed size of {@code R.layout.item_contact}'s image, so a preloaded image is
+ * found in the memory cache when its row is bound.
+ */
+public class ContactImages implements ListPreloader.PreloadModelProvider<Integer> {
+
+    /**
+     * Rows to preload ahead of the scroll, about a screen on a phone.
+     */
+    public static final int MAX_PRELOAD = 12;
+
+    private final Context mContext;
+    private final int mWidth;
+    private final int mHeight;
+
+    public ContactImages(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+        mWidth = resources.getDimensionPixelSize(R.dimen.contact_image_width);
+        mHeight = resources.getDimensionPixelSize(R.dimen.contact_image_height);
+    }
+
+    /**
+     * The picture of the contact at {@code position}.
+     */
+    public int getImageResource(int position) {
+        return R.drawable.bbq;
+    }
+
+    public void bind(ImageView imageView, int position) {
+        request(getImageResource(position))
+                .override(mWidth, mHeight)
+                .listener(GlideBindStats.getInstance())
+                .into(imageView);
+    }
+
+    /**
+     * A preloader for a {@code ListView}'s scroll listener, or a {@link RecyclerViewPreloader}.
+     */
+    public ListPreloader<Integer> createPreloader() {
+        return new ListPreloader<>(this, new FixedPreloadSizeProvider<Integer>(mWidth, mHeight),
+                MAX_PRELOAD);
+    }
+
+    @Override
+    public List<Integer> getPreloadItems(int position) {
+        return Collections.singletonList(getImageResource(position));
+    }
+
+    @Override
+    public GenericRequestBuilder getPreloadRequestBuilder(Integer resId) {
+        return request(resId);
+    }
+
+    private DrawableRequestBuilder<Integer> request(int resId) {
+        return Glide.with(mContext)
+                .load(resId)
+                .fitCenter();
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.widget.ImageView;
+
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.request.target.ViewTarget;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts how the images bound to rows were loaded: from Glide's memory cache, which finishes
+ * within the bind, or from disk or a decode, which shows the row without its image for a frame
+ * or more. Preloads aren't counted, so with preloading working well nearly every bind is a hit.
+ * Also tells the {@link ImageLatencyTracker} when a bound row's image is set.
+ */
+public class GlideBindStats implements RequestListener<Object, GlideDrawable> {
+
+    private static final GlideBindStats sInstance = new GlideBindStats();
+
+    private final AtomicInteger mMemoryHits = new AtomicInteger();
+    private final AtomicInteger mLoads = new AtomicInteger();
+    private final AtomicInteger mFailures = new AtomicInteger();
+
+    public static GlideBindStats getInstance() {
+        return sInstance;
+    }
+
+    public int getMemoryHits() {
+        return mMemoryHits.get();
+    }
+
+    /**
+     * Binds whose image came from the disk cache or a decode.
+     */
+    public int getLoads() {
+        return mLoads.get();
+    }
+
+    public int getFailures() {
+        return mFailures.get();
+    }
+
+    public void reset() {
+        mMemoryHits.set(0);
+        mLoads.set(0);
+        mFailures.set(0);
+    }
+
+    @Override
+    public boolean onException(Exception e, Object model, Target<GlideDrawable> target,
+            boolean isFirstResource) {
+        mFailures.incrementAndGet();
+        ImageView imageView = getImageView(target);
+        if (imageView != null) {
+            ImageLatencyTracker.getInstance().onImageFailed(imageView);
+        }
+        return false;
+    }
+
+    @Override
+    public boolean onResourceReady(GlideDrawable resource, Object model,
+            Target<GlideDrawable> target, boolean isFromMemoryCache, boolean isFirstResource) {
+        (isFromMemoryCache ? mMemoryHits : mLoads).incrementAndGet();
+        // Returning false has the target set the image right after this.
+        ImageView imageView = getImageView(target);
+        if (imageView != null) {
+            ImageLatencyTracker.getInstance().onImageSet(imageView);
+        }
+        return false;
+    }
+
+    private static ImageView getImageView(Target<?> target) {
+        if (target instanceof ViewTarget) {
+            Object view = ((ViewTarget<?, ?>) target).getView();
+            if (view instanceof ImageView) {
+                return (ImageView) view;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        int memoryHits = getMemoryHits();
+        int total = memoryHits + getLoads();
+        return String.format(Locale.US, "memoryHits=%d loads=%d failures=%d memoryHitPercent=%.1f",
+                memoryHits, getLoads(), getFailures(), total == 0 ? 0 : 100.0 * memoryHits / total);
+    }
+}
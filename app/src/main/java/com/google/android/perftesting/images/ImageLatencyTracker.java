@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.widget.ImageView;
+
+import com.google.android.perftesting.R;
+
+/**
+ * Measures how long rows show an empty image: from binding a row to its image being set on the
+ * {@link ImageView}, whether that happens within the bind or when a load finishes later. A row
+ * rebound before its image arrived, because its view was recycled, counts as a cancelled load.
+ *
+ * Nothing is measured until a {@link Listener} is set, e.g. by a test rule. Must be used on the
+ * main thread, where it doesn't allocate after the first bind of each view.
+ */
+public class ImageLatencyTracker {
+
+    private static final ImageLatencyTracker sInstance = new ImageLatencyTracker();
+
+    /**
+     * Told on the main thread about every image shown or cancelled.
+     */
+    public interface Listener {
+        void onImageShown(long latencyNanos);
+
+        void onImageCancelled(long waitedNanos);
+    }
+
+    /**
+     * The bind a view is waiting on an image for, kept in the view's tag.
+     */
+    private static class PendingBind {
+        long mBindNanos;
+    }
+
+    private volatile Listener mListener;
+
+    public static ImageLatencyTracker getInstance() {
+        return sInstance;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * A row showing {@code imageView} was bound and its image requested.
+     */
+    public void onBind(ImageView imageView) {
+        Listener listener = mListener;
+        if (listener == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        PendingBind pending = (PendingBind) imageView.getTag(R.id.image_latency_bind);
+        if (pending == null) {
+            pending = new PendingBind();
+            imageView.setTag(R.id.image_latency_bind, pending);
+        } else if (pending.mBindNanos != 0) {
+            listener.onImageCancelled(now - pending.mBindNanos);
+        }
+        pending.mBindNanos = now;
+    }
+
+    /**
+     * The image requested by the last bind was set on {@code imageView}.
+     */
+    public void onImageSet(ImageView imageView) {
+        Listener listener = mListener;
+        PendingBind pending = (PendingBind) imageView.getTag(R.id.image_latency_bind);
+        if (listener == null || pending == null || pending.mBindNanos == 0) {
+            return;
+        }
+        listener.onImageShown(System.nanoTime() - pending.mBindNanos);
+        pending.mBindNanos = 0;
+    }
+
+    /**
+     * The image requested by the last bind couldn't be loaded, so it won't be set.
+     */
+    public void onImageFailed(ImageView imageView) {
+        PendingBind pending = (PendingBind) imageView.getTag(R.id.image_latency_bind);
+        if (pending != null) {
+            pending.mBindNanos = 0;
+        }
+    }
+}
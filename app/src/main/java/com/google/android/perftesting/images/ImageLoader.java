@@ -0,0 +1,448 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.Trace;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import com.google.android.perftesting.R;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A small image pipeline for list rows, to compare with Glide: resources are decoded on
+ * background threads, downsampled to the size of the {@link ImageView} and kept in an LRU memory
+ * cache limited by bytes. Bitmaps dropped from the cache that no view displays any more go to a
+ * {@link BitmapPool} to be decoded into again.
+ *
+ * Rows showing the same image at the same size share one decode, and rebinding a recycled view
+ * cancels its previous load. Everything but decoding happens on the main thread, which is the
+ * only thread {@link #load(ImageView, int)} may be called from.
+ */
+public class ImageLoader {
+
+    private static final String TAG = "ImageLoader";
+    private static final int DECODE_THREADS = 2;
+    private static final int CACHE_FRACTION_OF_HEAP = 8;
+    private static final int POOL_FRACTION_OF_HEAP = 16;
+
+    private static ImageLoader sInstance;
+
+    /**
+     * Counts of the loader's work since it was created or {@link #resetStats()}.
+     */
+    public static class Stats {
+        private final int mRequests;
+        private final int mMemoryHits;
+        private final int mDecodes;
+        private final int mReusedBitmaps;
+        private final long mDecodeNanos;
+        private final long mDecodedBytes;
+        private final long mCacheBytes;
+        private final long mPoolBytes;
+
+        Stats(int requests, int memoryHits, int decodes, int reusedBitmaps, long decodeNanos,
+                long decodedBytes, long cacheBytes, long poolBytes) {
+            mRequests = requests;
+            mMemoryHits = memoryHits;
+            mDecodes = decodes;
+            mReusedBitmaps = reusedBitmaps;
+            mDecodeNanos = decodeNanos;
+            mDecodedBytes = decodedBytes;
+            mCacheBytes = cacheBytes;
+            mPoolBytes = poolBytes;
+        }
+
+        public int getRequests() {
+            return mRequests;
+        }
+
+        public int getMemoryHits() {
+            return mMemoryHits;
+        }
+
+        public int getDecodes() {
+            return mDecodes;
+        }
+
+        /**
+         * Decodes into a bitmap from the {@link BitmapPool} rather than a new one.
+         */
+        public int getReusedBitmaps() {
+            return mReusedBitmaps;
+        }
+
+        public long getDecodeNanos() {
+            return mDecodeNanos;
+        }
+
+        public long getDecodedBytes() {
+            return mDecodedBytes;
+        }
+
+        public long getCacheBytes() {
+            return mCacheBytes;
+        }
+
+        public long getPoolBytes() {
+            return mPoolBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "requests=%d memoryHits=%d decodes=%d "
+                    + "reusedBitmaps=%d decodeMs=%.1f decodedBytes=%d cacheBytes=%d poolBytes=%d",
+                    mRequests, mMemoryHits, mDecodes, mReusedBitmaps, mDecodeNanos / 1e6,
+                    mDecodedBytes, mCacheBytes, mPoolBytes);
+        }
+    }
+
+    /**
+     * The load a view is showing or waiting for, kept in the view's tag.
+     */
+    private static class Request {
+        final ImageView mView;
+        final String mKey;
+        DecodeJob mJob;
+        Bitmap mBitmap;
+
+        Request(ImageView view, String key) {
+            mView = view;
+            mKey = key;
+        }
+    }
+
+    private final class DecodeJob implements Runnable {
+        final String mKey;
+        final int mResId;
+        final int mWidth;
+        final int mHeight;
+        final List<Request> mRequests = new ArrayList<>();
+        Future<?> mFuture;
+        volatile boolean mCancelled;
+
+        DecodeJob(String key, int resId, int width, int height) {
+            mKey = key;
+            mResId = resId;
+            mWidth = width;
+            mHeight = height;
+        }
+
+        @Override
+        public void run() {
+            if (mCancelled) {
+                return;
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            beginSection("ImageLoader decode");
+            long start = System.nanoTime();
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            final Bitmap bitmap;
+            try {
+                bitmap = decode(mResId, mWidth, mHeight, options);
+            } finally {
+                endSection();
+            }
+            final long decodeNanos = System.nanoTime() - start;
+            final boolean reused = bitmap != null && bitmap == options.inBitmap;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onDecoded(DecodeJob.this, bitmap, decodeNanos, reused);
+                }
+            });
+        }
+    }
+
+    private final Resources mResources;
+    private final BitmapPool mPool;
+    private final LruCache<String, Bitmap> mCache;
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(DECODE_THREADS);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, DecodeJob> mJobs = new HashMap<>();
+    // How many views show each bitmap; only bitmaps shown by none can be reused. Weak so views
+    // dropped without being rebound don't keep their bitmaps, which are then just not reused.
+    private final Map<Bitmap, Integer> mDisplayCounts = new WeakHashMap<>();
+    private final Set<Bitmap> mCachedBitmaps =
+            Collections.newSetFromMap(new IdentityHashMap<Bitmap, Boolean>());
+
+    private int mRequests;
+    private int mMemoryHits;
+    private int mDecodes;
+    private int mReusedBitmaps;
+    private long mDecodeNanos;
+    private long mDecodedBytes;
+
+    public ImageLoader(Context context, int cacheBytes, long poolBytes) {
+        mResources = context.getResources();
+        mPool = new BitmapPool(poolBytes);
+        mCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return BitmapPool.getBytes(bitmap);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
+                    Bitmap newValue) {
+                if (oldValue != newValue) {
+                    mCachedBitmaps.remove(oldValue);
+                    recycleIfUnused(oldValue);
+                }
+            }
+        };
+    }
+
+    /**
+     * The app's loader, with a cache of an eighth of the heap and a pool of a sixteenth.
+     */
+    public static synchronized ImageLoader get(Context context) {
+        if (sInstance == null) {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            sInstance = new ImageLoader(context.getApplicationContext(),
+                    (int) Math.min(Integer.MAX_VALUE, maxMemory / CACHE_FRACTION_OF_HEAP),
+                    maxMemory / POOL_FRACTION_OF_HEAP);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Show the drawable resource {@code resId} in {@code view}, from memory if it was decoded at
+     * this size before, otherwise once decoded in the background.
+     */
+    public void load(ImageView view, int resId) {
+        mRequests++;
+        ViewGroup.LayoutParams params = view.getLayoutParams();
+        int width = getTargetSize(view.getWidth(), params == null ? 0 : params.width);
+        int height = getTargetSize(view.getHeight(), params == null ? 0 : params.height);
+        String key = resId + ":" + width + "x" + height;
+
+        Request previous = (Request) view.getTag(R.id.image_loader_request);
+        if (previous != null && previous.mBitmap != null && previous.mKey.equals(key)) {
+            mMemoryHits++;
+            ImageLatencyTracker.getInstance().onImageSet(view);
+            return;
+        }
+        Request request = new Request(view, key);
+        view.setTag(R.id.image_loader_request, request);
+        Bitmap cached = mCache.get(key);
+        if (cached != null) {
+            mMemoryHits++;
+            display(request, cached);
+        } else {
+            view.setImageDrawable(null);
+            DecodeJob job = mJobs.get(key);
+            if (job == null) {
+                job = new DecodeJob(key, resId, width, height);
+                mJobs.put(key, job);
+                job.mFuture = mExecutor.submit(job);
+            }
+            job.mRequests.add(request);
+            request.mJob = job;
+        }
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(mRequests, mMemoryHits, mDecodes, mReusedBitmaps, mDecodeNanos,
+                mDecodedBytes, mCache.size(), mPool.getBytes());
+    }
+
+    public void resetStats() {
+        mRequests = 0;
+        mMemoryHits = 0;
+        mDecodes = 0;
+        mReusedBitmaps = 0;
+        mDecodeNanos = 0;
+        mDecodedBytes = 0;
+    }
+
+    /**
+     * Drop every cached and pooled bitmap, e.g. to measure loading from a cold start.
+     */
+    public void clearMemory() {
+        mCache.evictAll();
+        mPool.clear();
+    }
+
+    private void display(Request request, Bitmap bitmap) {
+        request.mBitmap = bitmap;
+        Integer count = mDisplayCounts.get(bitmap);
+        mDisplayCounts.put(bitmap, count == null ? 1 : count + 1);
+        request.mView.setImageBitmap(bitmap);
+        ImageLatencyTracker.getInstance().onImageSet(request.mView);
+    }
+
+    /**
+     * Cancel a view's previous load or stop counting it as showing its bitmap.
+     */
+    private void release(Request request) {
+        DecodeJob job = request.mJob;
+        if (job != null) {
+            request.mJob = null;
+            job.mRequests.remove(request);
+            if (job.mRequests.isEmpty()) {
+                job.mCancelled = true;
+                job.mFuture.cancel(false);
+                mJobs.remove(job.mKey);
+            }
+        }
+        Bitmap bitmap = request.mBitmap;
+        if (bitmap != null) {
+            request.mBitmap = null;
+            Integer count = mDisplayCounts.get(bitmap);
+            if (count == null || count <= 1) {
+                mDisplayCounts.remove(bitmap);
+                recycleIfUnused(bitmap);
+            } else {
+                mDisplayCounts.put(bitmap, count - 1);
+            }
+        }
+    }
+
+    private void recycleIfUnused(Bitmap bitmap) {
+        if (!mDisplayCounts.containsKey(bitmap) && !mCachedBitmaps.contains(bitmap)) {
+            mPool.put(bitmap);
+        }
+    }
+
+    private void onDecoded(DecodeJob job, Bitmap bitmap, long decodeNanos, boolean reused) {
+        if (mJobs.get(job.mKey) == job) {
+            mJobs.remove(job.mKey);
+        }
+        mDecodes++;
+        mDecodeNanos += decodeNanos;
+        if (bitmap == null) {
+            return;
+        }
+        if (reused) {
+            mReusedBitmaps++;
+        }
+        mDecodedBytes += BitmapPool.getBytes(bitmap);
+        // Cached even if every view moved on, as they are likely to be back.
+        mCachedBitmaps.add(bitmap);
+        mCache.put(job.mKey, bitmap);
+        for (Request request : job.mRequests) {
+            request.mJob = null;
+            display(request, bitmap);
+        }
+        job.mRequests.clear();
+    }
+
+    /**
+     * Runs on a decoding thread.
+     */
+    private Bitmap decode(int resId, int width, int height, BitmapFactory.Options options) {
+        // Decode the resource's own pixels, the view scales them to fit.
+        options.inScaled = false;
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(mResources, resId, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(TAG, "Unable to decode resource " + resId);
+            return null;
+        }
+        options.inSampleSize = getSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        options.inMutable = true;
+        if (BitmapPool.isSupported()) {
+            int sampledWidth = (options.outWidth + options.inSampleSize - 1)
+                    / options.inSampleSize;
+            int sampledHeight = (options.outHeight + options.inSampleSize - 1)
+                    / options.inSampleSize;
+            // ARGB_8888, the default config.
+            options.inBitmap = mPool.get(sampledWidth * sampledHeight * 4);
+        }
+        try {
+            return BitmapFactory.decodeResource(mResources, resId, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            // The pooled bitmap couldn't be reused after all.
+            Bitmap unused = options.inBitmap;
+            options.inBitmap = null;
+            mPool.put(unused);
+            return BitmapFactory.decodeResource(mResources, resId, options);
+        }
+    }
+
+    /**
+     * The largest power of two to divide the image's size by and still be at least as large as
+     * the target, where a target size of 0 doesn't constrain that dimension.
+     */
+    static int getSampleSize(int imageWidth, int imageHeight, int targetWidth,
+            int targetHeight) {
+        int sampleSize = 1;
+        while ((targetWidth <= 0 || imageWidth / (sampleSize * 2) >= targetWidth)
+                && (targetHeight <= 0 || imageHeight / (sampleSize * 2) >= targetHeight)
+                && (targetWidth > 0 || targetHeight > 0)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * The view's fixed size in the layout, its laid out size for match_parent or 0 for
+     * wrap_content, which takes the image's size. A wrap_content view's laid out size depends on
+     * the image it showed last, so isn't used to keep the cache key stable.
+     */
+    private static int getTargetSize(int laidOut, int layoutSize) {
+        if (layoutSize > 0) {
+            return layoutSize;
+        }
+        if (layoutSize == ViewGroup.LayoutParams.MATCH_PARENT) {
+            return Math.max(0, laidOut);
+        }
+        return 0;
+    }
+
+    private static void beginSection(String sectionName) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.beginSection(sectionName);
+        }
+    }
+
+    private static void endSection() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            Trace.endSection();
+        }
+    }
+}
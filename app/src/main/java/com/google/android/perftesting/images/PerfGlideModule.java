@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.module.GlideModule;
+
+/**
+ * Sizes Glide's caches for the device's memory class rather than its screen, which is what Glide
+ * bases its defaults on: an eighth of the memory class for the memory cache and another eighth
+ * for the bitmap pool, half that on low memory devices. Registered in the manifest.
+ */
+public class PerfGlideModule implements GlideModule {
+
+    private static final String TAG = "PerfGlideModule";
+    private static final int LOW_MEMORY_CLASS_MB = 64;
+    private static final int CACHE_FRACTION = 8;
+    private static final int LOW_MEMORY_CACHE_FRACTION = 16;
+    private static final int DISK_CACHE_BYTES = 100 * 1024 * 1024;
+    private static final int LOW_MEMORY_DISK_CACHE_BYTES = 25 * 1024 * 1024;
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryClassMb = activityManager.getMemoryClass();
+        boolean lowMemory = memoryClassMb <= LOW_MEMORY_CLASS_MB
+                || (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                        && activityManager.isLowRamDevice());
+        int memoryClassBytes = memoryClassMb * 1024 * 1024;
+        int cacheBytes = memoryClassBytes
+                / (lowMemory ? LOW_MEMORY_CACHE_FRACTION : CACHE_FRACTION);
+        int diskCacheBytes = lowMemory ? LOW_MEMORY_DISK_CACHE_BYTES : DISK_CACHE_BYTES;
+
+        builder.setMemoryCache(new LruResourceCache(cacheBytes));
+        builder.setBitmapPool(new LruBitmapPool(cacheBytes));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, diskCacheBytes));
+        Log.i(TAG, "Memory class " + memoryClassMb + "MB" + (lowMemory ? " (low)" : "")
+                + ": memory cache and bitmap pool " + cacheBytes + " bytes each, disk cache "
+                + diskCacheBytes + " bytes");
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide) {
+        // The default components.
+    }
+}
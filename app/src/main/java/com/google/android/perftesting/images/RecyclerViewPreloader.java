@@ -0,0 +1,46 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.images;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.ListPreloader;
+
+/**
+ * Feeds a {@link RecyclerView}'s scrolling to a {@link ListPreloader}, which Glide 3 only wires up
+ * to {@code AbsListView}. Needs a {@link LinearLayoutManager}.
+ */
+public class RecyclerViewPreloader extends RecyclerView.OnScrollListener {
+
+    private final ListPreloader<?> mPreloader;
+
+    public RecyclerViewPreloader(ListPreloader<?> preloader) {
+        mPreloader = preloader;
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int firstVisible = layoutManager.findFirstVisibleItemPosition();
+        if (firstVisible == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int visibleCount = layoutManager.findLastVisibleItemPosition() - firstVisible + 1;
+        mPreloader.onScroll(null, firstVisible, visibleCount, layoutManager.getItemCount());
+    }
+}
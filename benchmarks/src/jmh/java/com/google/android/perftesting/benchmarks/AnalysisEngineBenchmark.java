@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.benchmarks;
+
+import com.google.android.perftesting.analysis.AnalysisConfig;
+import com.google.android.perftesting.analysis.AnalysisEngine;
+import com.google.android.perftesting.analysis.ArtifactAnalyzer;
+import com.google.android.perftesting.analysis.RunResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collections;
+
+/**
+ * Throughput of analyzing a whole device's {@code testdata} directory, one run per operation:
+ * walking the results tree alone, and walking it with every registered analyzer followed by the
+ * pass/fail verdict and the results file, as {@code AnalysisEngine} does for every device in CI.
+ */
+@State(Scope.Benchmark)
+public class AnalysisEngineBenchmark {
+
+    @Param({"16"})
+    public int tests;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private File mDir;
+    private File mTestDataDir;
+    private AnalysisEngine mWalkingEngine;
+    private AnalysisEngine mAnalyzingEngine;
+
+    @Setup(Level.Trial)
+    public void createResultsTree() throws IOException {
+        mDir = Fixtures.createTempDir();
+        mTestDataDir = Fixtures.createResultsTree(mDir, tests);
+        AnalysisConfig config = new AnalysisConfig().setAppUid(Fixtures.APP_UID);
+        mWalkingEngine = new AnalysisEngine(Collections.<ArtifactAnalyzer>emptyList(), config,
+                parallelism);
+        mAnalyzingEngine = new AnalysisEngine(
+                AnalysisEngine.loadAnalyzers(AnalysisEngine.class.getClassLoader()), config,
+                parallelism);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteResultsTree() {
+        mWalkingEngine.shutdown();
+        mAnalyzingEngine.shutdown();
+        Fixtures.delete(mDir);
+    }
+
+    @Benchmark
+    public RunResult walkResultsTree() {
+        return mWalkingEngine.analyze(mTestDataDir);
+    }
+
+    @Benchmark
+    public String analyzeRun() throws IOException {
+        RunResult runResult = mAnalyzingEngine.analyze(mTestDataDir);
+        StringWriter writer = new StringWriter();
+        writer.append(runResult.isPassed() ? "PASS" : "FAIL");
+        runResult.writeResults(writer);
+        return writer.toString();
+    }
+}
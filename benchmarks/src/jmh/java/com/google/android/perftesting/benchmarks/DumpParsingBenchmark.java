@@ -0,0 +1,101 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.benchmarks;
+
+import com.google.android.perftesting.analysis.AnalysisConfig;
+import com.google.android.perftesting.analysis.ArtifactAnalyzer;
+import com.google.android.perftesting.analysis.BatteryStatsAnalyzer;
+import com.google.android.perftesting.analysis.FrameHistogram;
+import com.google.android.perftesting.analysis.FrameStatsReport;
+import com.google.android.perftesting.analysis.GfxInfoAnalyzer;
+import com.google.android.perftesting.analysis.LogcatAnalyzer;
+import com.google.android.perftesting.analysis.NetStatsAnalyzer;
+import com.google.android.perftesting.analysis.TestResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Throughput of parsing each kind of dump, one whole fixture dump per operation. The dumps are
+ * read from files like the analyzers do in a run, so the first iterations also warm the page cache.
+ */
+@State(Scope.Benchmark)
+public class DumpParsingBenchmark {
+
+    private final AnalysisConfig mConfig = new AnalysisConfig().setAppUid(Fixtures.APP_UID);
+
+    private File mDir;
+    private File mGfxInfo;
+    private File mLogcat;
+    private File mNetStats;
+    private File mBatteryStats;
+
+    @Setup(Level.Trial)
+    public void unpackFixtures() throws IOException {
+        mDir = Fixtures.createTempDir();
+        mGfxInfo = Fixtures.unpack(FrameStatsReport.GFXINFO_DUMP_FILENAME, mDir);
+        mLogcat = Fixtures.unpack(LogcatAnalyzer.LOGCAT_FILENAME, mDir);
+        mNetStats = Fixtures.unpack(NetStatsAnalyzer.NETSTATS_FILENAME, mDir);
+        mBatteryStats = Fixtures.unpack(BatteryStatsAnalyzer.RUN_BATTERY_FILENAME, mDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFixtures() {
+        Fixtures.delete(mDir);
+    }
+
+    /**
+     * The framestats parser alone, into a histogram.
+     */
+    @Benchmark
+    public FrameHistogram framestatsHistogram() throws IOException {
+        return FrameStatsReport.readHistogram(mGfxInfo);
+    }
+
+    @Benchmark
+    public TestResult gfxInfoAnalyzer() throws IOException {
+        return analyze(new GfxInfoAnalyzer(), mGfxInfo);
+    }
+
+    @Benchmark
+    public TestResult logcatAnalyzer() throws IOException {
+        return analyze(new LogcatAnalyzer(), mLogcat);
+    }
+
+    @Benchmark
+    public TestResult netStatsAnalyzer() throws IOException {
+        return analyze(new NetStatsAnalyzer(), mNetStats);
+    }
+
+    @Benchmark
+    public TestResult batteryStatsAnalyzer() throws IOException {
+        return analyze(new BatteryStatsAnalyzer(), mBatteryStats);
+    }
+
+    private TestResult analyze(ArtifactAnalyzer analyzer, File artifact) throws IOException {
+        TestResult result = new TestResult(artifact.getName());
+        analyzer.analyze(artifact, mConfig, result);
+        return result;
+    }
+}
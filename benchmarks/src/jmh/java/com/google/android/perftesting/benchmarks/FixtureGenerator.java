@@ -0,0 +1,641 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.benchmarks;
+
+import com.google.android.perftesting.analysis.BatteryStatsAnalyzer;
+import com.google.android.perftesting.analysis.FrameStatsReport;
+import com.google.android.perftesting.analysis.LogcatAnalyzer;
+import com.google.android.perftesting.analysis.NetStatsAnalyzer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the {@link Fixtures}: dumps synthesized in the layout and at the size of the real ones
+ * of a long list scroll, from a fixed seed so regenerating them gives the same files. The gfxinfo
+ * summary (janky frames, percentiles, histogram) is computed from the generated frames.
+ *
+ * <pre>
+ * ./gradlew :benchmarks:generateFixtures
+ * </pre>
+ */
+final class FixtureGenerator {
+
+    private static final long SEED = 0x5EED;
+
+    private static final String APP_PACKAGE = "com.google.android.perftesting";
+    private static final int APP_PID = 4321;
+    private static final int SYSTEM_SERVER_PID = 612;
+    private static final int[] OTHER_PIDS = {SYSTEM_SERVER_PID, 987, 1234, 2345};
+
+    private static final int FRAMES = 5000;
+    private static final long VSYNC_PERIOD_NANOS = 16666667;
+    // The first frame's intended vsync, in nanoseconds of uptime.
+    private static final long FIRST_VSYNC_NANOS = 8093472790123L;
+
+    private static final int LOGCAT_LINES = 24000;
+
+    private static final int[] SYSTEM_UIDS = {0, 1000, 1013, 1021, 1051};
+    private static final int FIRST_APP_UID = 10000;
+    private static final int APP_UIDS = 160;
+    private static final int TAGGED_UIDS = 80;
+    private static final long FIRST_BUCKET_SECONDS = 1512007200;
+    private static final int BUCKET_SECONDS = 7200;
+    private static final String WIFI_IDENT = "ident=[{type=WIFI, subType=COMBINED, "
+            + "networkId=\"perflab\", metered=false, defaultNetwork=true}]";
+
+    private static final int BATTERY_HISTORY_LINES = 26000;
+    private static final int DISCHARGE_STEPS = 60;
+
+    private FixtureGenerator() { }
+
+    /**
+     * @param args the fixtures directory, {@code src/jmh/resources/fixtures} if absent.
+     */
+    public static void main(String[] args) throws IOException {
+        File dir = new File(args.length > 0 ? args[0] : "src/jmh/resources/fixtures");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        Writer writer = open(dir, FrameStatsReport.GFXINFO_DUMP_FILENAME);
+        try {
+            writeGfxInfo(new Random(SEED), writer);
+        } finally {
+            writer.close();
+        }
+        writer = open(dir, LogcatAnalyzer.LOGCAT_FILENAME);
+        try {
+            writeLogcat(new Random(SEED), writer);
+        } finally {
+            writer.close();
+        }
+        writer = open(dir, NetStatsAnalyzer.NETSTATS_FILENAME);
+        try {
+            writeNetStats(new Random(SEED), writer);
+        } finally {
+            writer.close();
+        }
+        writer = open(dir, BatteryStatsAnalyzer.RUN_BATTERY_FILENAME);
+        try {
+            writeBatteryStats(new Random(SEED), writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * {@code dumpsys gfxinfo <package> framestats} after a scroll of {@link #FRAMES} frames: most
+     * well inside the deadline, some a few milliseconds over it and a few long ones.
+     */
+    static void writeGfxInfo(Random random, Writer out) throws IOException {
+        List<long[]> frames = new ArrayList<>();
+        for (int i = 0; i < FRAMES; i++) {
+            frames.add(frame(random, FIRST_VSYNC_NANOS + i * VSYNC_PERIOD_NANOS));
+        }
+
+        int[] buckets = histogramBuckets();
+        int[] counts = new int[buckets.length];
+        int[] sortedMillis = new int[FRAMES];
+        int janky = 0;
+        int missedVsync = 0;
+        int slowUiThread = 0;
+        int slowBitmapUploads = 0;
+        int slowIssueDrawCommands = 0;
+        for (int i = 0; i < FRAMES; i++) {
+            long[] frame = frames.get(i);
+            long duration = frame[13] - frame[1];
+            int millis = (int) (duration / 1000000);
+            sortedMillis[i] = millis;
+            counts[bucketIndex(buckets, millis)]++;
+            if (duration > 2 * VSYNC_PERIOD_NANOS) {
+                missedVsync++;
+            }
+            if (duration > VSYNC_PERIOD_NANOS) {
+                janky++;
+                if (frame[9] - frame[1] > VSYNC_PERIOD_NANOS / 2) {
+                    slowUiThread++;
+                }
+                if (frame[11] - frame[10] > 4000000) {
+                    slowBitmapUploads++;
+                }
+                if (frame[13] - frame[11] > VSYNC_PERIOD_NANOS / 2) {
+                    slowIssueDrawCommands++;
+                }
+            }
+        }
+        Arrays.sort(sortedMillis);
+        long lastFrameCompleted = frames.get(FRAMES - 1)[13];
+        long uptimeMillis = lastFrameCompleted / 1000000 + 1500;
+
+        line(out, "Applications Graphics Acceleration Info:");
+        line(out, "Uptime: %d Realtime: %d", uptimeMillis, uptimeMillis);
+        line(out, "");
+        line(out, "** Graphics info for pid %d [%s] **", APP_PID, APP_PACKAGE);
+        line(out, "");
+        line(out, "Stats since: %dns", FIRST_VSYNC_NANOS - VSYNC_PERIOD_NANOS);
+        line(out, "Total frames rendered: %d", FRAMES);
+        line(out, "Janky frames: %d (%.2f%%)", janky, 100.0 * janky / FRAMES);
+        for (int percentile : new int[] {50, 90, 95, 99}) {
+            int millis = sortedMillis[(int) Math.ceil(percentile / 100.0 * FRAMES) - 1];
+            line(out, "%dth percentile: %dms", percentile,
+                    buckets[bucketIndex(buckets, millis)]);
+        }
+        line(out, "Number Missed Vsync: %d", missedVsync);
+        line(out, "Number High input latency: 0");
+        line(out, "Number Slow UI thread: %d", slowUiThread);
+        line(out, "Number Slow bitmap uploads: %d", slowBitmapUploads);
+        line(out, "Number Slow issue draw commands: %d", slowIssueDrawCommands);
+        StringBuilder histogram = new StringBuilder("HISTOGRAM:");
+        for (int i = 0; i < buckets.length; i++) {
+            histogram.append(' ').append(buckets[i]).append("ms=").append(counts[i]);
+        }
+        line(out, histogram.toString());
+        line(out, "");
+        String activity = APP_PACKAGE + "/" + APP_PACKAGE + ".SimpleListActivity";
+        line(out, "\t%s/android.view.ViewRootImpl@5f2a1b3 (visibility=0)", activity);
+        line(out, "Window: %s", activity);
+        line(out, "---PROFILEDATA---");
+        line(out, "Flags,IntendedVsync,Vsync,OldestInputEvent,NewestInputEvent,"
+                + "HandleInputStart,AnimationStart,PerformTraversalsStart,DrawStart,SyncQueued,"
+                + "SyncStart,IssueDrawCommandsStart,SwapBuffers,FrameCompleted,"
+                + "DequeueBufferDuration,QueueBufferDuration,");
+        for (long[] frame : frames) {
+            StringBuilder row = new StringBuilder();
+            for (long value : frame) {
+                row.append(value).append(',');
+            }
+            line(out, row.toString());
+        }
+        line(out, "---PROFILEDATA---");
+        line(out, "");
+        line(out, "View hierarchy:");
+        line(out, "");
+        line(out, "  %s/android.view.ViewRootImpl@5f2a1b3", activity);
+        line(out, "  57 views, 98.27 kB of display lists");
+        line(out, "");
+        line(out, "Total ViewRootImpl: 1");
+        line(out, "Total Views:        57");
+        line(out, "Total DisplayList:  98.27 kB");
+    }
+
+    /**
+     * One framestats row, its stages at increasing fractions of the frame's duration.
+     */
+    private static long[] frame(Random random, long intendedVsync) {
+        double type = random.nextDouble();
+        double millis;
+        if (type < 0.85) {
+            millis = 4.5 + 9 * random.nextDouble();
+        } else if (type < 0.97) {
+            // Binding a row.
+            millis = 13.5 + 12 * random.nextDouble();
+        } else {
+            // Decoding a picture on the main thread.
+            millis = 25 + 30 * random.nextDouble();
+        }
+        long duration = (long) (millis * 1000000);
+        long handleInput = intendedVsync + fraction(random, duration, 0.05, 0.12);
+        long animation = handleInput + fraction(random, duration, 0.01, 0.04);
+        long traversals = animation + fraction(random, duration, 0.01, 0.03);
+        long draw = intendedVsync + fraction(random, duration, 0.4, 0.6);
+        long syncQueued = draw + fraction(random, duration, 0.02, 0.06);
+        long syncStart = syncQueued + fraction(random, duration, 0.002, 0.01);
+        long issueDraw = syncStart + fraction(random, duration, 0.05, 0.15);
+        long swapBuffers = issueDraw + fraction(random, duration, 0.05, 0.15);
+        return new long[] {0, intendedVsync, intendedVsync, Long.MAX_VALUE, 0, handleInput,
+                animation, traversals, draw, syncQueued, syncStart, issueDraw, swapBuffers,
+                intendedVsync + duration, 20000 + random.nextInt(70000),
+                30000 + random.nextInt(170000)};
+    }
+
+    private static long fraction(Random random, long duration, double min, double max) {
+        return (long) (duration * (min + (max - min) * random.nextDouble()));
+    }
+
+    /**
+     * The platform's frame time histogram buckets, in milliseconds.
+     */
+    private static int[] histogramBuckets() {
+        List<Integer> buckets = new ArrayList<>();
+        for (int millis = 5; millis <= 32; millis++) {
+            buckets.add(millis);
+        }
+        for (int millis = 34; millis <= 48; millis += 2) {
+            buckets.add(millis);
+        }
+        for (int millis = 53; millis <= 148; millis += 5) {
+            buckets.add(millis);
+        }
+        for (int millis = 150; millis <= 4950; millis += 50) {
+            buckets.add(millis);
+        }
+        int[] values = new int[buckets.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = buckets.get(i);
+        }
+        return values;
+    }
+
+    private static int bucketIndex(int[] buckets, int millis) {
+        for (int i = 0; i < buckets.length; i++) {
+            if (millis <= buckets[i]) {
+                return i;
+            }
+        }
+        return buckets.length - 1;
+    }
+
+    /**
+     * {@code logcat -v threadtime} of a test run: the app starting, drawing and collecting
+     * garbage among the chatter of the rest of the system.
+     */
+    static void writeLogcat(Random random, Writer out) throws IOException {
+        line(out, "--------- beginning of main");
+        line(out, "--------- beginning of system");
+        long millis = 36000000;
+        for (int i = 0; i < LOGCAT_LINES - 2; i++) {
+            millis += random.nextInt(40);
+            boolean app = random.nextInt(3) == 0;
+            int pid = app ? APP_PID : OTHER_PIDS[random.nextInt(OTHER_PIDS.length)];
+            int tid = random.nextInt(4) == 0 ? pid : pid + 2 + random.nextInt(60);
+            String message;
+            if (i == 10) {
+                pid = SYSTEM_SERVER_PID;
+                message = "I ActivityManager: Start proc " + APP_PID + ":" + APP_PACKAGE
+                        + "/u0a87 for activity " + APP_PACKAGE + "/.SimpleListActivity";
+            } else if (app) {
+                message = appMessage(random);
+            } else if (random.nextInt(200) == 0) {
+                pid = SYSTEM_SERVER_PID;
+                message = "I ActivityManager: Displayed " + APP_PACKAGE
+                        + "/.SimpleListActivity: +" + (380 + random.nextInt(80)) + "ms";
+            } else {
+                message = systemMessage(random);
+            }
+            line(out, "12-01 %02d:%02d:%02d.%03d %5d %5d %s", millis / 3600000 % 24,
+                    millis / 60000 % 60, millis / 1000 % 60, millis % 1000, pid, tid, message);
+        }
+    }
+
+    private static String appMessage(Random random) {
+        int kind = random.nextInt(100);
+        if (kind < 55) {
+            return "D OpenGLRenderer: HWUI GL Pipeline";
+        } else if (kind < 75) {
+            return String.format(Locale.US, "I art     : Background sticky concurrent mark sweep "
+                    + "GC freed %d(%dKB) AllocSpace objects, %d(%dMB) LOS objects, %d%% free, "
+                    + "%dMB/%dMB, paused %dus total %.3fms", 10000 + random.nextInt(40000),
+                    500 + random.nextInt(2000), random.nextInt(12), 1 + random.nextInt(4),
+                    5 + random.nextInt(30), 10 + random.nextInt(10), 20 + random.nextInt(10),
+                    300 + random.nextInt(900), 5 + 30 * random.nextDouble());
+        } else if (kind < 88) {
+            return "I Choreographer: Skipped " + (1 + random.nextInt(60)) + " frames!  The "
+                    + "application may be doing too much work on its main thread.";
+        } else if (kind < 96) {
+            return "W System  : A resource failed to call close.";
+        }
+        return "D StrictMode: StrictMode policy violation; ~duration=" + (1 + random.nextInt(90))
+                + " ms: android.os.StrictMode$StrictModeDiskReadViolation: policy=31 "
+                + "violation=2";
+    }
+
+    private static String systemMessage(Random random) {
+        int kind = random.nextInt(100);
+        if (kind < 25) {
+            return "D WifiStateMachine: handleMessage: E msg.what=" + (131140 + random.nextInt(30));
+        } else if (kind < 45) {
+            return "D ConnectivityService: notifyType CAP_CHANGED for NetworkAgentInfo [WIFI () - "
+                    + (60 + random.nextInt(41)) + "]";
+        } else if (kind < 61) {
+            return "D NetworkController.MobileSignalController(1): onSignalStrengthsChanged "
+                    + "signalStrength=SignalStrength: 99 0 -120 -160 -120 -1 -1 99 2147483647 "
+                    + "2147483647 2147483647 2147483647 0 " + random.nextInt(4) + " gsm|lte level="
+                    + random.nextInt(5);
+        } else if (kind < 74) {
+            return "V AlarmManager: Triggering alarm #0: 3 when ="
+                    + (990000 + random.nextInt(10000)) + " pkg=android";
+        } else if (kind < 83) {
+            return "I GCoreUlr: Unbound from all location providers";
+        } else if (kind < 90) {
+            return "I chatty  : uid=1000(system) Binder:" + (1000 + random.nextInt(2000)) + "_"
+                    + (1 + random.nextInt(9)) + " identical " + (1 + random.nextInt(20))
+                    + " lines";
+        }
+        return String.format(Locale.US, "I art     : Background concurrent mark sweep GC freed "
+                + "%d(%dMB) AllocSpace objects, %d(%dMB) LOS objects, %d%% free, %dMB/%dMB, "
+                + "paused %.3fms total %.3fms", 50000 + random.nextInt(200000),
+                2 + random.nextInt(20), random.nextInt(20), 1 + random.nextInt(10),
+                20 + random.nextInt(30), 20 + random.nextInt(40), 40 + random.nextInt(60),
+                random.nextDouble() * 2, 50 + 150 * random.nextDouble());
+    }
+
+    /**
+     * {@code dumpsys netstats full detail} of a device with {@link #APP_UIDS} apps on wifi.
+     */
+    static void writeNetStats(Random random, Writer out) throws IOException {
+        line(out, "Active interfaces:");
+        line(out, "  iface=wlan0 %s", WIFI_IDENT);
+        line(out, "Active UID interfaces:");
+        line(out, "  iface=wlan0 %s", WIFI_IDENT);
+        writeDeviceStats(random, out, "Dev stats:", "FOREGROUND");
+        writeDeviceStats(random, out, "Xt stats:", "DEFAULT");
+
+        int[] uids = new int[SYSTEM_UIDS.length + APP_UIDS];
+        System.arraycopy(SYSTEM_UIDS, 0, uids, 0, SYSTEM_UIDS.length);
+        for (int i = 0; i < APP_UIDS; i++) {
+            uids[SYSTEM_UIDS.length + i] = FIRST_APP_UID + i;
+        }
+        line(out, "UID stats:");
+        line(out, "  Pending bytes: %d", random.nextInt(100000));
+        line(out, "  Complete history:");
+        for (int uid : uids) {
+            line(out, "  %s uid=%d set=%s tag=0x0", WIFI_IDENT, uid,
+                    random.nextBoolean() ? "FOREGROUND" : "DEFAULT");
+            writeBuckets(random, out, 24);
+        }
+        line(out, "UID tag stats:");
+        line(out, "  Pending bytes: %d", random.nextInt(20000));
+        line(out, "  Complete history:");
+        for (int i = 0; i < TAGGED_UIDS; i++) {
+            line(out, "  %s uid=%d set=FOREGROUND tag=0x%x", WIFI_IDENT, uids[i],
+                    1 + random.nextInt(0xffffff));
+            writeBuckets(random, out, 12);
+        }
+    }
+
+    private static void writeDeviceStats(Random random, Writer out, String title, String set)
+            throws IOException {
+        line(out, title);
+        line(out, "  Pending bytes: %d", random.nextInt(100000));
+        line(out, "  History since boot:");
+        line(out, "  %s uid=-1 set=%s tag=0x0", WIFI_IDENT, set);
+        writeBuckets(random, out, 300);
+    }
+
+    private static void writeBuckets(Random random, Writer out, int count) throws IOException {
+        line(out, "    NetworkStatsHistory: bucketDuration=%d", BUCKET_SECONDS);
+        for (int i = 0; i < count; i++) {
+            int received = random.nextInt(5000000);
+            int sent = random.nextInt(800000);
+            line(out, "      st=%d rb=%d rp=%d tb=%d tp=%d op=%d",
+                    FIRST_BUCKET_SECONDS + (long) i * BUCKET_SECONDS, received, received / 1400,
+                    sent, sent / 1400, random.nextInt(4));
+        }
+    }
+
+    /**
+     * {@code dumpsys batterystats} of a working day on battery: the history of
+     * {@link #BATTERY_HISTORY_LINES} events, then the per-uid statistics the analyzer reads.
+     */
+    static void writeBatteryStats(Random random, Writer out) throws IOException {
+        long[] stepMillis = new long[DISCHARGE_STEPS];
+        for (int i = 0; i < DISCHARGE_STEPS; i++) {
+            stepMillis[i] = 180000 + random.nextInt(420000);
+        }
+
+        line(out, "Battery History (38%% used, 1560KB used of 4096KB, 312 strings using 26KB):");
+        line(out, "%20s (15) RESET:TIME: 2017-12-01-08-00-00", "0");
+        line(out, "%20s (2) 100 status=discharging health=good plug=none temp=250 volt=4350 "
+                + "charge=3000 +running +wake_lock +screen phone_signal_strength=great "
+                + "brightness=medium +wifi +wifi_running +wifi_radio wifi_signal_strength=4 "
+                + "wifi_suppl=completed top=u0a87:\"%s\"", "0", APP_PACKAGE);
+        long millis = 0;
+        int level = 100;
+        int step = 0;
+        long nextStepMillis = stepMillis[0];
+        for (int i = 0; i < BATTERY_HISTORY_LINES; i++) {
+            millis += 100 + random.nextInt(1800);
+            while (step < DISCHARGE_STEPS && millis >= nextStepMillis) {
+                level--;
+                step++;
+                nextStepMillis += step < DISCHARGE_STEPS ? stepMillis[step] : 0;
+            }
+            StringBuilder events = new StringBuilder();
+            int eventCount = 1 + random.nextInt(3);
+            for (int j = 0; j < eventCount; j++) {
+                events.append(' ').append(historyEvent(random));
+            }
+            line(out, "%20s (2) %03d%s", "+" + formatCompactDuration(millis), level, events);
+        }
+        long batteryMillis = millis;
+
+        line(out, "");
+        line(out, "Per-PID Stats:");
+        for (int pid = 3000; pid < 3000 + APP_UIDS; pid++) {
+            line(out, "  PID %d wake time: +%dms", pid, 1000 + random.nextInt(90000));
+        }
+        line(out, "");
+        line(out, "Discharge step durations:");
+        for (int i = 0; i < DISCHARGE_STEPS; i++) {
+            line(out, "  #%d: +%s to %d (screen-on, power-save-off, device-idle-off)", i,
+                    formatCompactDuration(stepMillis[i]), 99 - i);
+        }
+
+        final List<String> uids = new ArrayList<>();
+        for (int uid : SYSTEM_UIDS) {
+            uids.add(Integer.toString(uid));
+        }
+        for (int i = 0; i < APP_UIDS; i++) {
+            uids.add("u0a" + i);
+        }
+        final double[] power = new double[uids.size()];
+        double uidsPower = 0;
+        for (int i = 0; i < power.length; i++) {
+            power[i] = uids.get(i).equals("u0a87") ? 77.87 : 0.1 + random.nextDouble() * 6;
+            uidsPower += power[i];
+        }
+        double screen = 512.1;
+        double cell = 61.2;
+        double idle = 40.3;
+        double computedDrain = screen + cell + idle + uidsPower;
+
+        line(out, "");
+        line(out, "Statistics since last charge:");
+        line(out, "  System starts: 0, currently on battery: true");
+        line(out, "  Time on battery: %s (99.9%%) realtime, %s (28.0%%) uptime",
+                formatDuration(batteryMillis), formatDuration(batteryMillis * 28 / 100));
+        line(out, "  Total run time: %s realtime, %s uptime", formatDuration(batteryMillis + 444),
+                formatDuration(batteryMillis * 28 / 100 + 401));
+        line(out, "  Discharge: %d mAh", (int) computedDrain + 30);
+        line(out, "  Screen on discharge: %d mAh", (int) (computedDrain * 0.75));
+        line(out, "");
+        line(out, "  Estimated power use (mAh):");
+        line(out, "    Capacity: 3000, Computed drain: %.2f, actual drain: %d-%d", computedDrain,
+                (int) computedDrain + 10, (int) computedDrain + 40);
+        line(out, "    Screen: %.1f Excluded from smearing", screen);
+        line(out, "    Cell standby: %.1f ( radio=%.1f ) Excluded from smearing", cell, cell);
+        line(out, "    Idle: %.1f Excluded from smearing", idle);
+        Integer[] byPower = new Integer[uids.size()];
+        for (int i = 0; i < byPower.length; i++) {
+            byPower[i] = i;
+        }
+        Arrays.sort(byPower, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(power[rhs], power[lhs]);
+            }
+        });
+        for (int i : byPower) {
+            double smeared = power[i] * (screen + cell + idle) / uidsPower;
+            line(out, "    Uid %s: %.2f ( cpu=%.2f wake=%.3f wifi=%.2f ) Including smearing: %.2f",
+                    uids.get(i), power[i], power[i] * 0.6, power[i] * 0.02, power[i] * 0.1,
+                    power[i] + smeared);
+        }
+
+        line(out, "");
+        line(out, "  All kernel wake locks:");
+        for (int i = 0; i < 300; i++) {
+            line(out, "  Kernel Wake lock PowerManagerService.WakeLocks%d: %s (%d times) "
+                    + "realtime", i, formatDuration(random.nextInt(3600000)),
+                    100 + random.nextInt(800));
+        }
+        line(out, "");
+        line(out, "  All wakeup reasons:");
+        for (int i = 0; i < 200; i++) {
+            line(out, "  Wakeup reason %d qcom,smd-modem:%d: %s (%d times) realtime", i, i,
+                    formatDuration(random.nextInt(60000)), 50 + random.nextInt(350));
+        }
+
+        List<String> sectionUids = new ArrayList<>(uids);
+        Collections.sort(sectionUids, new Comparator<String>() {
+            @Override
+            public int compare(String lhs, String rhs) {
+                return Integer.compare(uidOrder(lhs), uidOrder(rhs));
+            }
+        });
+        for (String uid : sectionUids) {
+            line(out, "");
+            line(out, "  %s:", uid);
+            int received = random.nextInt(8000000);
+            int sent = random.nextInt(800000);
+            line(out, "    Wi-Fi network: %d B received, %d B sent (packets %d received, %d sent)",
+                    received, sent, received / 1400 + random.nextInt(5000),
+                    sent / 1400 + random.nextInt(800));
+            line(out, "    Wake lock *alarm*: %s partial (%d times) max=%d realtime",
+                    formatDuration(random.nextInt(60000)), 20 + random.nextInt(180),
+                    100 + random.nextInt(8000));
+            if (!uid.equals("1000")) {
+                line(out, "    Sensor 1: %s realtime (%d times)",
+                        formatDuration(random.nextInt(2700000)), 1 + random.nextInt(20));
+                line(out, "    Foreground activities: %s realtime (%d times)",
+                        formatDuration(random.nextInt(2700000)), 1 + random.nextInt(30));
+            }
+            line(out, "    Total cpu time: u=%s s=%s", formatDuration(random.nextInt(3000000)),
+                    formatDuration(random.nextInt(60000)));
+        }
+    }
+
+    private static String historyEvent(Random random) {
+        int uid = random.nextInt(APP_UIDS);
+        switch (random.nextInt(14)) {
+            case 0:
+                return "+job=u0a" + uid + ":\"com.example.sync/.SyncJob\"";
+            case 1:
+                return "-job=u0a" + uid + ":\"com.example.sync/.SyncJob\"";
+            case 2:
+                return "Ejb=u0a" + uid + ":\"com.example.sync/.SyncJob\"";
+            case 3:
+                return "+top=u0a" + uid + ":\"com.example.app" + uid + "\"";
+            case 4:
+                return "-top=u0a" + uid + ":\"com.example.app" + uid + "\"";
+            case 5:
+                return "+wake_lock_in=u0a" + uid + ":\"*alarm*\"";
+            case 6:
+                return "-wake_lock_in=u0a" + uid + ":\"*alarm*\"";
+            case 7:
+                return "Wl=u0a" + uid + ":\"NlpWakeLock\"";
+            case 8:
+                return "+sync=u0a" + uid
+                        + ":\"com.google.android.gm.email/com.google:perflab@example.com\"";
+            case 9:
+                return random.nextBoolean() ? "+gps" : "-gps";
+            case 10:
+                return random.nextBoolean() ? "+mobile_radio" : "-mobile_radio";
+            case 11:
+                return random.nextBoolean() ? "+wake_lock" : "-wake_lock";
+            case 12:
+                return random.nextBoolean() ? "temp=" + (240 + random.nextInt(120))
+                        : "volt=" + (3700 + random.nextInt(650));
+            default:
+                return random.nextBoolean()
+                        ? "phone_signal_strength="
+                                + new String[] {"poor", "moderate", "good", "great"}[
+                                        random.nextInt(4)]
+                        : "wifi_signal_strength=" + random.nextInt(5);
+        }
+    }
+
+    /**
+     * System uids first, then apps in uid order, as batterystats lists them.
+     */
+    private static int uidOrder(String uid) {
+        return uid.startsWith("u0a") ? FIRST_APP_UID + Integer.parseInt(uid.substring(3))
+                : Integer.parseInt(uid);
+    }
+
+    /**
+     * The history's durations, e.g. {@code 1h02m03s004ms}.
+     */
+    private static String formatCompactDuration(long millis) {
+        long hours = millis / 3600000;
+        String rest = String.format(Locale.US, "%02dm%02ds%03dms", millis / 60000 % 60,
+                millis / 1000 % 60, millis % 1000);
+        if (hours > 0) {
+            return hours + "h" + rest;
+        }
+        return rest.startsWith("0") ? rest.substring(1) : rest;
+    }
+
+    /**
+     * The statistics' durations, e.g. {@code 1h 2m 3s 4ms}, leading zero units left out.
+     */
+    private static String formatDuration(long millis) {
+        StringBuilder duration = new StringBuilder();
+        long hours = millis / 3600000;
+        long minutes = millis / 60000 % 60;
+        if (hours > 0) {
+            duration.append(hours).append("h ");
+        }
+        if (hours > 0 || minutes > 0) {
+            duration.append(minutes).append("m ");
+        }
+        return duration.append(millis / 1000 % 60).append("s ").append(millis % 1000)
+                .append("ms").toString();
+    }
+
+    private static Writer open(File dir, String name) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                new FileOutputStream(new File(dir, name + ".gz"))), "UTF-8"));
+    }
+
+    private static void line(Writer out, String format, Object... args) throws IOException {
+        out.write(args.length == 0 ? format : String.format(Locale.US, format, args));
+        out.write('\n');
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting.benchmarks;
+
+import com.google.android.perftesting.analysis.AnalysisEngine;
+import com.google.android.perftesting.analysis.BatteryStatsAnalyzer;
+import com.google.android.perftesting.analysis.FrameStatsReport;
+import com.google.android.perftesting.analysis.LogcatAnalyzer;
+import com.google.android.perftesting.analysis.NetStatsAnalyzer;
+import com.google.android.perftesting.analysis.PerfBudget;
+import com.google.android.perftesting.analysis.PerfMetrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The dumps the benchmarks run over, stored gzipped as resources and unpacked to a temporary
+ * directory before measuring. They are synthesized by {@link FixtureGenerator} from a fixed seed,
+ * in the layout and at the size of dumps of a real device:
+ *
+ * <ul>
+ * <li>{@code gfxinfo.dumpsys.log}: the framestats frame log of a long scroll, 5000 frames.
+ * <li>{@code logcat.log}: logcat of a test with the rest of the system logging, 24000 lines.
+ * <li>{@code netstats.dumpsys.log}: {@code dumpsys netstats full detail} of 165 uids.
+ * <li>{@code batterystats.dumpsys.log}: {@code dumpsys batterystats} of a day on battery, 2MB.
+ * </ul>
+ */
+final class Fixtures {
+
+    static final String[] TEST_ARTIFACTS = {
+            FrameStatsReport.GFXINFO_DUMP_FILENAME,
+            LogcatAnalyzer.LOGCAT_FILENAME,
+            NetStatsAnalyzer.NETSTATS_FILENAME
+    };
+
+    // The app's uid in the dumps.
+    static final int APP_UID = 10087;
+
+    private static final String RESOURCE_DIR = "/fixtures/";
+
+    private Fixtures() { }
+
+    static File createTempDir() throws IOException {
+        return Files.createTempDirectory("perftesting-benchmarks").toFile();
+    }
+
+    /**
+     * Unpack a fixture into {@code dir}.
+     */
+    static File unpack(String name, File dir) throws IOException {
+        File file = new File(dir, name);
+        InputStream inputStream = null;
+        OutputStream outputStream = null;
+        try {
+            InputStream resource = Fixtures.class.getResourceAsStream(RESOURCE_DIR + name + ".gz");
+            if (resource == null) {
+                throw new IOException("Missing fixture " + name);
+            }
+            inputStream = new GZIPInputStream(resource);
+            outputStream = new FileOutputStream(file);
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = inputStream.read(buffer)) > 0) {
+                outputStream.write(buffer, 0, read);
+            }
+        } finally {
+            if (inputStream != null) {
+                try { inputStream.close(); } catch (Exception ignored) { }
+            }
+            if (outputStream != null) {
+                try { outputStream.close(); } catch (Exception ignored) { }
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Lay out the {@code testdata} directory of a run of {@code tests} tests as pulled from a
+     * device: every test with the fixture dumps, its metrics and budget report, and the run's
+     * batterystats. The dumps are hard links to a single unpacked copy where possible.
+     */
+    static File createResultsTree(File dir, int tests) throws IOException {
+        File originals = new File(dir, "originals");
+        if (!originals.mkdirs()) {
+            throw new IOException("Unable to create " + originals);
+        }
+        File testDataDir = new File(dir, AnalysisEngine.TEST_DATA_DIR_NAME);
+        for (int i = 0; i < tests; i++) {
+            File testDir = new File(testDataDir, String.format(Locale.US,
+                    "c.g.a.perftesting.ContactsListTest_scroll%02d", i));
+            if (!testDir.mkdirs()) {
+                throw new IOException("Unable to create " + testDir);
+            }
+            for (String artifact : TEST_ARTIFACTS) {
+                File original = new File(originals, artifact);
+                if (!original.isFile()) {
+                    unpack(artifact, originals);
+                }
+                link(original, new File(testDir, artifact));
+            }
+            PerfMetrics.append(testDir, PerfMetrics.PSS_KB, 41000 + i);
+            PerfMetrics.append(testDir, PerfMetrics.ALLOCATED_BYTES, 5200000 + i);
+            write(new File(testDir, PerfBudget.BUDGET_FILENAME),
+                    PerfMetrics.JANK_PERCENT + "=PASS 12.24/20\n");
+        }
+        unpack(BatteryStatsAnalyzer.RUN_BATTERY_FILENAME, testDataDir);
+        write(new File(testDataDir, AnalysisEngine.RUN_COMPLETE_FILENAME), "");
+        return testDataDir;
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static void link(File original, File link) throws IOException {
+        try {
+            Files.createLink(link.toPath(), original.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(original.toPath(), link.toPath());
+        }
+    }
+
+    private static void write(File file, String text) throws IOException {
+        FileWriter fileWriter = null;
+        try {
+            fileWriter = new FileWriter(file);
+            fileWriter.write(text);
+        } finally {
+            if (fileWriter != null) {
+                try { fileWriter.close(); } catch (Exception ignored) { }
+            }
+        }
+    }
+}
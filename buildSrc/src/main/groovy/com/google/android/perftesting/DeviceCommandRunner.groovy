@@ -0,0 +1,123 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+import org.gradle.api.GradleException
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Runs the adb (or other) commands of one device's test run. Every command's output goes to its
+ * own file in the run's log directory, and every command shares one deadline so a device that
+ * stops responding fails its run instead of hanging the build.
+ */
+class DeviceCommandRunner {
+    private final String mAdbPath
+    private final String mDeviceId
+    private final File mLogDir
+    private final long mDeadlineMillis
+
+    DeviceCommandRunner(String adbPath, String deviceId, File logDir, long timeoutMillis) {
+        mAdbPath = adbPath
+        mDeviceId = deviceId
+        mLogDir = logDir
+        mDeadlineMillis = System.currentTimeMillis() + timeoutMillis
+    }
+
+    /**
+     * Run {@code adb -s <device> <args>} and return its exit value.
+     */
+    int adb(String logName, String... args) {
+        List<String> command = [mAdbPath, '-s', mDeviceId]
+        command.addAll(args)
+        return run(logName, command)
+    }
+
+    /**
+     * Run a command, writing its combined output to {@code <logName>.log}.
+     *
+     * @throws GradleException if the command doesn't finish before the run's deadline.
+     */
+    int run(String logName, List<String> command) {
+        Process process = start(logName, command)
+        return waitFor(logName, process)
+    }
+
+    /**
+     * Run {@code adb -s <device> <args>}, handing each line of its output to the handler as soon
+     * as it is printed.
+     */
+    int adbStreaming(String logName, Closure lineHandler, String... args) {
+        List<String> command = [mAdbPath, '-s', mDeviceId]
+        command.addAll(args)
+        return runStreaming(logName, command, lineHandler)
+    }
+
+    int runStreaming(String logName, List<String> command, Closure lineHandler) {
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+        processBuilder.redirectErrorStream(true)
+        final Process process = processBuilder.start()
+        final boolean[] timedOut = [false]
+        // Reading blocks, so a watchdog enforces the deadline by ending the process.
+        Timer watchdog = new Timer("${mDeviceId} ${logName} watchdog", true)
+        watchdog.schedule(new TimerTask() {
+            @Override
+            void run() {
+                timedOut[0] = true
+                process.destroy()
+            }
+        }, Math.max(1, mDeadlineMillis - System.currentTimeMillis()))
+        try {
+            getLogFile(logName).withWriter { Writer writer ->
+                process.inputStream.eachLine { String line ->
+                    writer.write(line)
+                    writer.write(System.lineSeparator())
+                    lineHandler.call(line)
+                }
+            }
+            process.waitFor()
+        } finally {
+            watchdog.cancel()
+        }
+        if (timedOut[0]) {
+            throw new GradleException("Timed out on device ${mDeviceId} while running " +
+                    "${logName}, see ${getLogFile(logName)}")
+        }
+        return process.exitValue()
+    }
+
+    Process start(String logName, List<String> command) {
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+        processBuilder.redirectErrorStream(true)
+        processBuilder.redirectOutput(getLogFile(logName))
+        return processBuilder.start()
+    }
+
+    int waitFor(String logName, Process process) {
+        long remainingMillis = mDeadlineMillis - System.currentTimeMillis()
+        if (remainingMillis <= 0 || !process.waitFor(remainingMillis, TimeUnit.MILLISECONDS)) {
+            process.destroy()
+            throw new GradleException("Timed out on device ${mDeviceId} while running " +
+                    "${logName}, see ${getLogFile(logName)}")
+        }
+        return process.exitValue()
+    }
+
+    File getLogFile(String logName) {
+        return new File(mLogDir, logName + '.log')
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+import org.gradle.api.GradleException
+import org.gradle.api.logging.Logger
+
+import java.util.concurrent.TimeUnit
+
+/**
+ * Lists the connected devices with {@code adb devices -l} and reads their build fingerprints.
+ * Nothing runs until a result is first asked for, and the device list is then kept for the rest
+ * of the build. Fingerprints are also cached on disk, keyed by serial, since they only change when
+ * a device is reflashed; delete the cache file to refresh them.
+ */
+class DeviceDiscovery {
+    private static final String DEVICES_HEADER = "List of devices attached"
+    private static final String ONLINE_STATE = "device"
+    private static final String FINGERPRINT_PROP = "ro.build.fingerprint"
+
+    private final LocalPerfTestProperties mProperties
+    private final File mFingerprintCacheFile
+    private final Logger mLogger
+
+    private List<String> mDeviceIds
+    private Properties mFingerprints
+
+    DeviceDiscovery(LocalPerfTestProperties properties, File fingerprintCacheFile, Logger logger) {
+        mProperties = properties
+        mFingerprintCacheFile = fingerprintCacheFile
+        mLogger = logger
+    }
+
+    /**
+     * @return the serials of the devices ready for testing.
+     */
+    synchronized List<String> getDeviceIds() {
+        if (mDeviceIds == null) {
+            mDeviceIds = Collections.unmodifiableList(parseDeviceIds(
+                    runAdb("devices", "-l"), mLogger))
+            mLogger.warn("Found connected devices for local performance testing tasks: " +
+                    mDeviceIds)
+        }
+        return mDeviceIds
+    }
+
+    /**
+     * @return the device's {@code ro.build.fingerprint}, so results of identical devices can be
+     *     told apart from those of different models or builds.
+     */
+    synchronized String getFingerprint(String deviceId) {
+        if (mFingerprints == null) {
+            mFingerprints = new Properties()
+            if (mFingerprintCacheFile.isFile()) {
+                mFingerprintCacheFile.withInputStream { inputStream ->
+                    mFingerprints.load(inputStream)
+                }
+            }
+        }
+        String fingerprint = mFingerprints.getProperty(deviceId)
+        if (fingerprint == null) {
+            fingerprint = runAdb("-s", deviceId, "shell", "getprop", FINGERPRINT_PROP)
+                    .trim()
+            if (fingerprint.isEmpty()) {
+                throw new GradleException("Device ${deviceId} has no ${FINGERPRINT_PROP}")
+            }
+            mFingerprints.setProperty(deviceId, fingerprint)
+            mFingerprintCacheFile.parentFile.mkdirs()
+            mFingerprintCacheFile.withOutputStream { outputStream ->
+                mFingerprints.store(outputStream, "Build fingerprints of devices by serial")
+            }
+        }
+        return fingerprint
+    }
+
+    /**
+     * Parse the output of {@code adb devices} with or without {@code -l}. "adb devices" isn't a
+     * formal API, so only the serial and state are relied upon: lines are
+     * {@code <serial> <state> [<key>:<value>...]}. Devices that can't be used (unauthorized,
+     * offline, ...) are skipped with a warning, and anything else unexpected such as daemon
+     * start-up messages is ignored.
+     */
+    static List<String> parseDeviceIds(String output, Logger logger) {
+        List<String> devices = new ArrayList<String>()
+        output.eachLine { String outputLine ->
+            String line = outputLine.trim()
+            if (line.isEmpty() || line.startsWith(DEVICES_HEADER) || line.startsWith("*")) {
+                return
+            }
+            String[] lineParts = line.split(/\s+/) // The regex groups whitespace.
+            if (lineParts.length < 2) {
+                logger.info("Ignoring unexpected adb devices output: ${line}")
+            } else if (ONLINE_STATE.equals(lineParts[1])) {
+                devices.add(lineParts[0])
+            } else {
+                logger.warn("Skipping device ${lineParts[0]} in state '${lineParts[1]}'")
+            }
+        }
+        return devices
+    }
+
+    private String runAdb(String... args) {
+        List<String> command = [mProperties.adbPath]
+        command.addAll(args)
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+        Process process = processBuilder.start()
+        StringBuilder output = new StringBuilder()
+        StringBuilder error = new StringBuilder()
+        Thread outputReader = process.consumeProcessOutputStream(output)
+        Thread errorReader = process.consumeProcessErrorStream(error)
+        if (!process.waitFor(mProperties.discoveryTimeoutMillis, TimeUnit.MILLISECONDS)) {
+            process.destroy()
+            throw new GradleException("Timed out using ADB: ${args.join(' ')}")
+        }
+        // Let the stream readers finish after the process exited.
+        outputReader.join()
+        errorReader.join()
+        if (process.exitValue() != 0) {
+            throw new GradleException("Error using ADB: ${args.join(' ')}: ${error}")
+        }
+        return output.toString()
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+/**
+ * Everything a {@link DevicePerfTestWorker} needs to run the performance tests on one device. The
+ * Worker API serializes it, so it only holds plain values.
+ */
+public class DevicePerfTestSpec implements Serializable {
+    private static final long serialVersionUID = 1L
+
+    String deviceId
+    String adbPath
+    /** The SDK's systrace.py, or null to run without capturing a trace. */
+    String systracePath
+    String packageName
+    String testRunner
+    /** Directory this device's results are written to, cleaned before each run. */
+    File outputDir
+    long timeoutMillis
+    /** The tests of this device's shard as {@code <class>#<method>}, or null to run them all. */
+    ArrayList<String> tests
+    double jankThresholdPercent
+}
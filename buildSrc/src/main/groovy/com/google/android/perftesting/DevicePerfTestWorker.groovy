@@ -0,0 +1,263 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+import com.google.android.perftesting.analysis.AnalysisConfig
+import com.google.android.perftesting.analysis.AnalysisEngine
+import com.google.android.perftesting.analysis.ColdStarts
+import com.google.android.perftesting.analysis.RunResult
+import com.google.android.perftesting.analysis.StartupReport
+import org.gradle.api.GradleException
+import org.gradle.api.logging.Logger
+import org.gradle.api.logging.Logging
+
+import javax.inject.Inject
+
+/**
+ * Runs the performance tests on a single device, the same way run_perf_tests.py does: grant the
+ * permissions the test rules need, measure the cold starts of the app's activities, start the app
+ * and reset its frame stats, run the {@code PerfTest} annotated tests while capturing a systrace,
+ * pull the test data and analyze it.
+ *
+ * Submitted through the Gradle Worker API by {@link RunLocalPerfTestsTask}, one per device, so
+ * devices are tested concurrently.
+ */
+class DevicePerfTestWorker implements Runnable {
+    static final String TEST_LISTENER = 'com.google.android.perftesting.TestListener'
+    static final String PERF_TEST_ANNOTATION = 'com.google.android.perftesting.common.PerfTest'
+    /** Durations of the tests that ran, in the log directory, see {@link TestDurationHistory}. */
+    static final String TEST_DURATIONS_FILENAME = 'test_durations.properties'
+    private static final int SYSTRACE_SECONDS = 20
+    private static final String[] SYSTRACE_CATEGORIES = ['gfx', 'input', 'view', 'wm', 'am',
+            'sm', 'hal', 'app', 'res', 'dalvik', 'power', 'freq', 'idle', 'load']
+    // Device files could be in either location on various devices.
+    private static final String[] DEVICE_DATA_DIRS = ['/storage/emulated/0/Android/data/',
+            '/storage/emulated/legacy/Android/data/']
+    private static final long FULLY_DRAWN_TIMEOUT_MILLIS = 5000
+    private static final long FULLY_DRAWN_POLL_MILLIS = 200
+
+    Logger mLogger = Logging.getLogger(DevicePerfTestWorker)
+
+    private final DevicePerfTestSpec mSpec
+
+    @Inject
+    DevicePerfTestWorker(DevicePerfTestSpec spec) {
+        mSpec = spec
+    }
+
+    @Override
+    void run() {
+        String deviceId = mSpec.deviceId
+        String packageName = mSpec.packageName
+        File logDir = new File(mSpec.outputDir, 'logs')
+        cleanOutputDir(logDir)
+        DeviceCommandRunner runner = new DeviceCommandRunner(mSpec.adbPath, deviceId, logDir,
+                mSpec.timeoutMillis)
+
+        mLogger.warn("${deviceId}: granting permissions")
+        runner.adb('enable_dump_perm', 'shell', 'pm', 'grant', packageName,
+                'android.permission.DUMP')
+        runner.adb('enable_storage_perm', 'shell', 'pm', 'grant', packageName,
+                'android.permission.WRITE_EXTERNAL_STORAGE')
+        runner.adb('enable_read_logs_perm', 'shell', 'pm', 'grant', packageName,
+                'android.permission.READ_LOGS')
+
+        mLogger.warn("${deviceId}: measuring cold starts")
+        measureColdStarts(runner)
+
+        runner.adb('open_app', 'shell', 'am', 'start', '-n',
+                "${packageName}/${packageName}.MainActivity".toString())
+        // Clearing the frame stats must be done immediately after opening the app.
+        runner.adb('reset_gfxinfo', 'shell', 'dumpsys', 'gfxinfo', packageName, 'reset')
+
+        Process systrace = startSystrace(runner)
+        List<String> instrumentArgs = ['shell', 'am', 'instrument', '-w', '-r',
+                '-e', 'listener', TEST_LISTENER,
+                '-e', 'annotation', PERF_TEST_ANNOTATION,
+                '-e', 'disableAnalytics', 'true']
+        if (mSpec.tests != null) {
+            mLogger.warn("${deviceId}: running shard of ${mSpec.tests.size()} tests")
+            instrumentArgs.addAll(['-e', 'class', mSpec.tests.join(',')])
+        } else {
+            mLogger.warn("${deviceId}: running tests")
+        }
+        instrumentArgs.add(mSpec.testRunner)
+        InstrumentationOutputParser instrumentOutput = new InstrumentationOutputParser()
+        int instrumentExit = runner.adbStreaming('instrument', { String line ->
+            instrumentOutput.parse(line, System.currentTimeMillis())
+        }, instrumentArgs as String[])
+        writeTestDurations(instrumentOutput.durations, new File(logDir, TEST_DURATIONS_FILENAME))
+        if (systrace != null) {
+            runner.waitFor('capture_systrace', systrace)
+        }
+
+        mLogger.warn("${deviceId}: pulling test data")
+        DEVICE_DATA_DIRS.eachWithIndex { String dataDir, int index ->
+            // Only one of the locations exists on a given device, so failures are expected.
+            runner.adb("pull_test_files${index + 1}", 'pull',
+                    "${dataDir}${packageName}/files/testdata".toString(),
+                    mSpec.outputDir.absolutePath)
+        }
+
+        RunResult runResult = analyze(runner)
+        String instrumentFailure = getInstrumentationFailure(instrumentExit,
+                runner.getLogFile('instrument'))
+        if (instrumentFailure != null) {
+            throw new GradleException("${deviceId}: ${instrumentFailure}")
+        }
+        if (!runResult.isPassed()) {
+            throw new GradleException("${deviceId}: performance tests failed, see " +
+                    new File(new File(mSpec.outputDir, AnalysisEngine.TEST_DATA_DIR_NAME),
+                            RunResult.RESULTS_FILENAME))
+        }
+        mLogger.warn("${deviceId}: performance tests passed")
+    }
+
+    private void cleanOutputDir(File logDir) {
+        File testDataDir = new File(mSpec.outputDir, AnalysisEngine.TEST_DATA_DIR_NAME)
+        [testDataDir, logDir].each { File dir ->
+            if (dir.exists() && !dir.deleteDir()) {
+                throw new GradleException("Unable to clean ${dir}")
+            }
+            if (!dir.mkdirs()) {
+                throw new GradleException("Unable to create ${dir}")
+            }
+        }
+    }
+
+    /**
+     * Launch each of {@link ColdStarts} from a stopped app a few times and write its results to
+     * the test directory {@code StartupTest} would have, checked against its budgets.
+     */
+    private void measureColdStarts(DeviceCommandRunner runner) {
+        String packageName = mSpec.packageName
+        File testDataDir = new File(mSpec.outputDir, AnalysisEngine.TEST_DATA_DIR_NAME)
+        runner.adb('sdk_version', 'shell', 'getprop', 'ro.build.version.sdk')
+        int sdkInt = ColdStarts.parseSdk(runner.getLogFile('sdk_version').text)
+        ColdStarts.testDirs.each { String activity, String testDirName ->
+            String component = "${packageName}/.${activity}".toString()
+            StartupReport report = new StartupReport(component, StartupReport.START_TYPE_COLD)
+            for (int launch = 1; launch <= ColdStarts.LAUNCHES; launch++) {
+                runner.adb('force_stop', 'shell', 'am', 'force-stop', packageName)
+                runner.adb('clear_events_log', 'shell', 'logcat', '-b', 'events', '-c')
+                String logName = "cold_start_${activity}_${launch}".toString()
+                runner.adb(logName, 'shell', 'am', 'start', '-W', '-n', component)
+                long displayedMillis = runner.getLogFile(logName).withReader { Reader reader ->
+                    StartupReport.parseDisplayedMillis(reader)
+                }
+                long fullyDrawnMillis = sdkInt >= StartupReport.FULLY_DRAWN_MIN_SDK ?
+                        waitForFullyDrawn(runner, component) : -1
+                report.addLaunch(displayedMillis, fullyDrawnMillis)
+            }
+            List<String> violations =
+                    ColdStarts.write(report, new File(testDataDir, testDirName), sdkInt)
+            violations.each { String violation ->
+                mLogger.warn("${mSpec.deviceId}: ${activity} cold start: ${violation}")
+            }
+        }
+        runner.adb('force_stop', 'shell', 'am', 'force-stop', packageName)
+    }
+
+    /**
+     * @return the launch's time to full display, or -1 if the activity didn't report it in time.
+     */
+    private static long waitForFullyDrawn(DeviceCommandRunner runner, String component) {
+        long deadline = System.currentTimeMillis() + FULLY_DRAWN_TIMEOUT_MILLIS
+        while (System.currentTimeMillis() < deadline) {
+            // The event log was cleared before the launch, so any event is this launch's.
+            runner.adb('fully_drawn_events', 'shell', 'logcat', '-d', '-b', 'events', '-s',
+                    StartupReport.FULLY_DRAWN_EVENT_TAG)
+            for (String line : runner.getLogFile('fully_drawn_events').readLines()) {
+                long fullyDrawnMillis = StartupReport.parseFullyDrawnMillis(line, component)
+                if (fullyDrawnMillis >= 0) {
+                    return fullyDrawnMillis
+                }
+            }
+            Thread.sleep(FULLY_DRAWN_POLL_MILLIS)
+        }
+        return -1
+    }
+
+    private static void writeTestDurations(Map<String, Long> durations, File file) {
+        Properties properties = new Properties()
+        durations.each { String test, Long millis ->
+            properties.setProperty(test, Long.toString(millis))
+        }
+        file.withOutputStream { outputStream ->
+            properties.store(outputStream, "Test durations in milliseconds")
+        }
+    }
+
+    private Process startSystrace(DeviceCommandRunner runner) {
+        if (mSpec.systracePath == null || !new File(mSpec.systracePath).isFile()) {
+            mLogger.warn("${mSpec.deviceId}: systrace not found, running without a trace")
+            return null
+        }
+        List<String> command = ['python', mSpec.systracePath,
+                "--serial=${mSpec.deviceId}".toString(),
+                "--app=${mSpec.packageName}".toString(),
+                "--time=${SYSTRACE_SECONDS}".toString(),
+                '-o', new File(mSpec.outputDir, 'trace.html').absolutePath]
+        command.addAll(SYSTRACE_CATEGORIES)
+        return runner.start('capture_systrace', command)
+    }
+
+    private RunResult analyze(DeviceCommandRunner runner) {
+        AnalysisConfig config = new AnalysisConfig()
+                .setJankThresholdPercent(mSpec.jankThresholdPercent)
+                .setAppUid(getAppUid(runner))
+                .setAppPackage(mSpec.packageName)
+        AnalysisEngine engine = new AnalysisEngine(config)
+        try {
+            RunResult runResult = engine.analyzeAndWrite(
+                    new File(mSpec.outputDir, AnalysisEngine.TEST_DATA_DIR_NAME))
+            StringWriter summary = new StringWriter()
+            runResult.printSummary(summary)
+            summary.toString().eachLine { String line ->
+                mLogger.warn("${mSpec.deviceId}: ${line}")
+            }
+            return runResult
+        } finally {
+            engine.shutdown()
+        }
+    }
+
+    /**
+     * The app's uid lets the analyzers pick its entries out of system-wide dumps.
+     */
+    private int getAppUid(DeviceCommandRunner runner) {
+        if (runner.adb('dump_package', 'shell', 'dumpsys', 'package', mSpec.packageName) != 0) {
+            return -1
+        }
+        def match = runner.getLogFile('dump_package').text =~ /userId=(\d+)/
+        return match.find() ? Integer.parseInt(match.group(1)) : -1
+    }
+
+    /**
+     * {@code am instrument} exits with 0 even when the tests crash, so check its output too.
+     */
+    private static String getInstrumentationFailure(int exitValue, File instrumentLog) {
+        if (exitValue != 0) {
+            return "instrumentation exited with ${exitValue}, see ${instrumentLog}"
+        }
+        String output = instrumentLog.text
+        if (output.contains('INSTRUMENTATION_FAILED') || output.contains('Process crashed')) {
+            return "instrumentation didn't complete, see ${instrumentLog}"
+        }
+        return null
+    }
+}
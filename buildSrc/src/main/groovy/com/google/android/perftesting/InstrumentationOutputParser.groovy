@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+/**
+ * Follows the raw ({@code am instrument -r}) output of an instrumentation run line by line. It
+ * collects the tests that were started, in order, and how long each took from the time its start
+ * and end status were seen.
+ *
+ * Tests are named {@code <class>#<method>}, the format of the instrumentation's class filter.
+ */
+class InstrumentationOutputParser {
+    private static final String STATUS_PREFIX = "INSTRUMENTATION_STATUS: "
+    private static final String STATUS_CODE_PREFIX = "INSTRUMENTATION_STATUS_CODE: "
+    private static final int STATUS_CODE_START = 1
+
+    private final Map<String, String> mStatus = new HashMap<String, String>()
+    private final Map<String, Long> mStartTimes = new HashMap<String, Long>()
+    private final Map<String, Long> mDurations = new LinkedHashMap<String, Long>()
+    private final Set<String> mTests = new LinkedHashSet<String>()
+
+    void parse(String line, long timeMillis) {
+        if (line.startsWith(STATUS_PREFIX)) {
+            String keyValue = line.substring(STATUS_PREFIX.length())
+            int separator = keyValue.indexOf('=')
+            if (separator > 0) {
+                mStatus.put(keyValue.substring(0, separator), keyValue.substring(separator + 1))
+            }
+        } else if (line.startsWith(STATUS_CODE_PREFIX)) {
+            String className = mStatus.get("class")
+            String methodName = mStatus.get("test")
+            mStatus.clear()
+            if (className == null || methodName == null) {
+                return
+            }
+            String test = className + '#' + methodName
+            int code = Integer.parseInt(line.substring(STATUS_CODE_PREFIX.length()).trim())
+            if (code == STATUS_CODE_START) {
+                mTests.add(test)
+                mStartTimes.put(test, timeMillis)
+            } else if (mStartTimes.containsKey(test)) {
+                // Passed, failed, ignored or assumption failure all end the test.
+                mDurations.put(test, timeMillis - mStartTimes.remove(test))
+            }
+        }
+    }
+
+    /**
+     * @return the tests that were started, in the order they were.
+     */
+    List<String> getTests() {
+        return new ArrayList<String>(mTests)
+    }
+
+    /**
+     * @return the duration in milliseconds of every test that finished.
+     */
+    Map<String, Long> getDurations() {
+        return mDurations
+    }
+}
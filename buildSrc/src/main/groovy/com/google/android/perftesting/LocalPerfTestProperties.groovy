@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+import com.google.android.perftesting.analysis.AnalysisConfig
+import org.apache.tools.ant.taskdefs.condition.Os
+import org.gradle.api.GradleException
+import org.gradle.api.Project
+
+import java.nio.file.Paths
+import java.util.concurrent.TimeUnit
+
+/**
+ * Settings of the local performance test tasks, read from the root project's local.properties.
+ * Only sdk.dir (or ANDROID_HOME) is required, and only once adb is actually needed. The optional
+ * properties are:
+ * <ul>
+ *     <li>perftesting.adb: the adb executable to use instead of the SDK's, e.g. a script
+ *     replaying recorded output to test the tasks without devices.</li>
+ *     <li>perftesting.timeout_minutes: how long a device may take before its run fails.</li>
+ *     <li>perftesting.discovery_timeout_seconds: how long listing the devices may take.</li>
+ *     <li>perftesting.jank_threshold: percentage of janky frames above which a test fails.</li>
+ *     <li>perftesting.history_dir: where the results history is kept, relative to the root
+ *     project.</li>
+ *     <li>perftesting.fail_on_regression: whether a significant regression against the history
+ *     fails the build, true by default.</li>
+ * </ul>
+ */
+class LocalPerfTestProperties {
+    private static final String ADB_PROP_NAME = "perftesting.adb"
+    private static final String TIMEOUT_MINUTES_PROP_NAME = "perftesting.timeout_minutes"
+    private static final String DISCOVERY_TIMEOUT_SECONDS_PROP_NAME =
+            "perftesting.discovery_timeout_seconds"
+    private static final String JANK_THRESHOLD_PROP_NAME = "perftesting.jank_threshold"
+    private static final String HISTORY_DIR_PROP_NAME = "perftesting.history_dir"
+    private static final String FAIL_ON_REGRESSION_PROP_NAME = "perftesting.fail_on_regression"
+
+    private static final long DEFAULT_TIMEOUT_MINUTES = 30
+    private static final long DEFAULT_DISCOVERY_TIMEOUT_SECONDS = 10
+    private static final String DEFAULT_HISTORY_DIR = "perftesting-history"
+
+    private final Properties mProperties
+
+    private LocalPerfTestProperties(Properties properties) {
+        mProperties = properties
+    }
+
+    static LocalPerfTestProperties load(Project project) {
+        Properties properties = new Properties()
+        File localProperties = project.rootProject.file('local.properties')
+        if (localProperties.exists()) {
+            localProperties.withDataInputStream { inputStream ->
+                properties.load(inputStream)
+            }
+        }
+        return new LocalPerfTestProperties(properties)
+    }
+
+    String getSdkDir() {
+        return mProperties.getProperty('sdk.dir', System.getenv('ANDROID_HOME'))
+    }
+
+    String getAdbPath() {
+        String adbPath = mProperties.getProperty(ADB_PROP_NAME)
+        if (adbPath != null) {
+            return adbPath
+        }
+        if (getSdkDir() == null) {
+            throw new GradleException("sdk.dir should be defined in local properties or " +
+                    "ANDROID_HOME set for this task to work correctly.")
+        }
+        def adbExt = ''
+        if (Os.isFamily(Os.FAMILY_WINDOWS)) {
+            adbExt = '.exe'
+        }
+        return Paths.get(getSdkDir(), "platform-tools", "adb" + adbExt).toAbsolutePath()
+    }
+
+    /**
+     * @return the SDK's systrace.py, or null if the SDK location isn't known.
+     */
+    String getSystracePath() {
+        if (getSdkDir() == null) {
+            return null
+        }
+        return Paths.get(getSdkDir(), "platform-tools", "systrace", "systrace.py")
+                .toAbsolutePath()
+    }
+
+    long getTimeoutMillis() {
+        return TimeUnit.MINUTES.toMillis(Long.parseLong(mProperties.getProperty(
+                TIMEOUT_MINUTES_PROP_NAME, Long.toString(DEFAULT_TIMEOUT_MINUTES))))
+    }
+
+    long getDiscoveryTimeoutMillis() {
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(mProperties.getProperty(
+                DISCOVERY_TIMEOUT_SECONDS_PROP_NAME,
+                Long.toString(DEFAULT_DISCOVERY_TIMEOUT_SECONDS))))
+    }
+
+    String getHistoryDir() {
+        return mProperties.getProperty(HISTORY_DIR_PROP_NAME, DEFAULT_HISTORY_DIR)
+    }
+
+    boolean getFailOnRegression() {
+        return Boolean.parseBoolean(mProperties.getProperty(FAIL_ON_REGRESSION_PROP_NAME, "true"))
+    }
+
+    double getJankThresholdPercent() {
+        return Double.parseDouble(mProperties.getProperty(JANK_THRESHOLD_PROP_NAME,
+                Double.toString(AnalysisConfig.DEFAULT_JANK_THRESHOLD_PERCENT)))
+    }
+}
@@ -1,6 +1,5 @@
 package com.google.android.perftesting
 
-import org.gradle.api.DefaultTask
 import org.gradle.api.Plugin
 import org.gradle.api.Project
 import org.gradle.api.Task
@@ -8,7 +7,7 @@ import org.gradle.api.logging.Logger
 
 /**
  * Gradle Plugin automating the creation of performance testing tasks for each device currently
- * connected to the current system.
+ * connected to the current system. Devices are only listed with adb once one of the tasks runs.
  *
  * To use simply add this line to your application build.gradle file below the similar Android
  * Gradle plugin "apply" directive.
@@ -16,6 +15,11 @@ import org.gradle.api.logging.Logger
  *
  */
 public class PerfTestTaskGeneratorPlugin implements Plugin<Project> {
+    private static final String LOCAL_PERF_TESTS_TASK_NAME = "runLocalPerfTests"
+    private static final String SHARDED_LOCAL_PERF_TESTS_TASK_NAME = "runShardedLocalPerfTests"
+    private static final String FINGERPRINT_CACHE_PATH =
+            ".gradle/perftesting/fingerprints.properties"
+
     Logger logger
 
     public PerfTestTaskGeneratorPlugin() {
@@ -35,8 +39,12 @@ public class PerfTestTaskGeneratorPlugin implements Plugin<Project> {
     }
 
     private void createLocalPerfTestTasks(Project project) {
-        ArrayList<Task> createdTasks = new ArrayList<Task>()
-        List<String> connectedDevices = getConnectedDeviceList(project)
+        // Devices are only listed once a performance test task runs, so other tasks such as
+        // clean or assembleDebug never wait for adb.
+        DeviceDiscovery deviceDiscovery = new DeviceDiscovery(
+                LocalPerfTestProperties.load(project),
+                new File(project.rootProject.projectDir, FINGERPRINT_CACHE_PATH),
+                logger)
 
         // Tasks the performance test tasks are dependent on.
         HashSet<String> dependentTasks = new HashSet<String>();
@@ -53,83 +61,66 @@ public class PerfTestTaskGeneratorPlugin implements Plugin<Project> {
         postTestTasks.add("uninstallAll")
         logger.info("Post test dependent tasks found: " + postTestTasks)
 
-        // Create a parent performance test task that can run all of the device-specific tasks.
-        Task runLocalPerfTests = project.tasks.create(name: 'runLocalPerfTests',
-                type: DefaultTask,
-                group: 'verification',
-                dependsOn: dependentTasks,
-                description: 'Run performance tests on all connected devices.')
-
-        // Create a perf test task for each connected device.
-        connectedDevices.each { androidDeviceId ->
-            RunLocalPerfTestsTask newTask = (RunLocalPerfTestsTask) project.tasks.create(
-                    name: ('runLocalPerfTests_' + androidDeviceId),
-                    type: RunLocalPerfTestsTask)
-            newTask.deviceId = androidDeviceId
-            // Ensure each device-specific task is run by the parent perf test task.
-            runLocalPerfTests.dependsOn(newTask)
-
-            // Ensure dependent tasks are depended upon by all device-specific tasks in case those
-            // are run independently.
-            newTask.dependsOn(dependentTasks)
+        // Create a parent performance test task that tests all connected devices at once.
+        RunLocalPerfTestsTask runLocalPerfTests = (RunLocalPerfTestsTask) project.tasks.create(
+                name: LOCAL_PERF_TESTS_TASK_NAME,
+                type: RunLocalPerfTestsTask)
+        runLocalPerfTests.deviceDiscovery = deviceDiscovery
+        runLocalPerfTests.deviceIds = project.provider({ deviceDiscovery.deviceIds })
+        runLocalPerfTests.description = 'Run performance tests on all connected devices.'
+        configureLocalPerfTestTask(project, runLocalPerfTests, dependentTasks, postTestTasks)
 
-            // Add task to list of tasks created.
-            createdTasks.add(newTask)
-        }
+        // The same, but each device only runs its share of the tests.
+        RunLocalPerfTestsTask runShardedLocalPerfTests =
+                (RunLocalPerfTestsTask) project.tasks.create(
+                        name: SHARDED_LOCAL_PERF_TESTS_TASK_NAME,
+                        type: RunLocalPerfTestsTask)
+        runShardedLocalPerfTests.deviceDiscovery = deviceDiscovery
+        runShardedLocalPerfTests.deviceIds = project.provider({ deviceDiscovery.deviceIds })
+        runShardedLocalPerfTests.sharded = true
+        runShardedLocalPerfTests.description = 'Run performance tests split between equivalent ' +
+                'connected devices.'
+        configureLocalPerfTestTask(project, runShardedLocalPerfTests, dependentTasks,
+                postTestTasks)
 
-        // Ensure the postTestTasks are run AFTER the performance test tasks.
-        createdTasks.each { Task createdTask ->
-            postTestTasks.each { String taskName ->
-                project.tasks.findByName(taskName).mustRunAfter(createdTask)
+        // A perf test task for a specific device is only created when it is requested, e.g.
+        // "gradlew runLocalPerfTests_emulator-5554", so no device has to be listed up front.
+        String devicePrefix = LOCAL_PERF_TESTS_TASK_NAME + '_'
+        project.tasks.addRule("Pattern: ${devicePrefix}<serial>: Run performance tests on the " +
+                "device with that serial.") { String taskName ->
+            if (!taskName.startsWith(devicePrefix) || taskName.length() == devicePrefix.length()) {
+                return
             }
+            RunLocalPerfTestsTask newTask = (RunLocalPerfTestsTask) project.tasks.create(
+                    name: taskName,
+                    type: RunLocalPerfTestsTask)
+            newTask.deviceDiscovery = deviceDiscovery
+            newTask.deviceId = taskName.substring(devicePrefix.length())
+            configureLocalPerfTestTask(project, newTask, dependentTasks, postTestTasks)
         }
     }
 
-    private List<String> getConnectedDeviceList(Project project) {
-        def rootDir = project.rootDir
-        def localProperties = new File(rootDir, "local.properties")
-        def sdkDir = ""
-        if (localProperties.exists()) {
-            Properties properties = new Properties()
-            localProperties.withInputStream { instr ->
-                properties.load(instr)
+    private static void configureLocalPerfTestTask(Project project, Task task,
+            Set<String> dependentTasks, Set<String> postTestTasks) {
+        // Ensure dependent tasks are depended upon by all performance test tasks in case those
+        // are run independently.
+        task.dependsOn(dependentTasks)
+
+        // Ensure the postTestTasks are run AFTER the performance test tasks. They are created by
+        // the Android plugin, which may be applied after this one.
+        Closure orderPostTestTasks = {
+            postTestTasks.each { String taskName ->
+                Task postTestTask = project.tasks.findByName(taskName)
+                if (postTestTask != null) {
+                    postTestTask.mustRunAfter(task)
+                }
             }
-            sdkDir = properties.getProperty('sdk.dir')
         }
-        String adbCommand = sdkDir + File.separator + "platform-tools" + File.separator + "adb"
-        logger.info("Using ADB command: ${adbCommand}")
-        // Compose a list of connected Android devices.
-        ArrayList<String> devices = new ArrayList<String>()
-        ProcessBuilder processBuilder = new ProcessBuilder()
-        processBuilder.command(adbCommand, "devices", "-l")
-        Process process = processBuilder.start()
-        process.waitFor();
-        if (process.exitValue() != 0) {
-            throw new Exception("Error using ADB to list connected devices.");
+        // Device-specific tasks are created by the rule once the project is already evaluated.
+        if (project.state.executed) {
+            orderPostTestTasks()
         } else {
-            // Process adb output to determine which devices are connected.
-            process.inputStream.withReader { processOutputReader ->
-                new BufferedReader(processOutputReader).with { bufferedReader ->
-                    String outputLine;
-                    while ((outputLine = bufferedReader.readLine()) != null) {
-                        outputLine = outputLine.trim()
-                        if (!outputLine.startsWith("List of devices attached") && !"".equals(outputLine)) {
-                            String[] lineParts = outputLine.split(/\s+/) // The regex groups whitespace.
-                            if (lineParts.length != 6) {
-                                // "adb devices -l" isn't a formal API so we'll add a sanity check. If
-                                // the 'spec' changes this should point us right to the issue.
-                                throw new Exception("There should always be 6 parts to the output, " +
-                                        "double check something isn't wrong: ${outputLine} parsed to " +
-                                        "${lineParts}")
-                            } else {
-                                devices.add(lineParts[0])
-                            }
-                        }
-                    }
-                }
-            }
+            project.afterEvaluate(orderPostTestTasks)
         }
-        logger.warn("Found connected devices for local performance testing tasks: " + devices)
-        return devices
     }
 }
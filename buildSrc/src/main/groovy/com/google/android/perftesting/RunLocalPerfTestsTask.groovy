@@ -16,89 +16,312 @@
 
 package com.google.android.perftesting
 
-import org.apache.tools.ant.taskdefs.condition.Os
+import com.google.android.perftesting.analysis.AnalysisEngine
+import com.google.android.perftesting.analysis.RegressionDetector
+import com.google.android.perftesting.analysis.ResultsStore
+import com.google.android.perftesting.analysis.RunResult
 import org.gradle.api.DefaultTask
 import org.gradle.api.GradleException
 import org.gradle.api.logging.Logger
+import org.gradle.api.provider.Provider
 import org.gradle.api.tasks.TaskAction
 import org.gradle.api.tasks.incremental.IncrementalTaskInputs
+import org.gradle.workers.IsolationMode
+import org.gradle.workers.WorkerConfiguration
+import org.gradle.workers.WorkerExecutor
 
-import java.nio.file.Paths
+import javax.inject.Inject
+import java.security.MessageDigest
 
 
 /**
- * Defined Gradle task to execute local android device tests using monkeyrunner. This task makes it
- * easier to run automated performance tests with out leaving AndroidStudio.
+ * Defined Gradle task to execute the performance tests on local android devices. This task makes
+ * it easier to run automated performance tests with out leaving AndroidStudio.
+ *
+ * Each device is tested by a {@link DevicePerfTestWorker} submitted to the Gradle Worker API, so
+ * a task with several devices tests all of them at the same time. Results are written to
+ * {@code perftesting/<device id>} in the root project, one directory per device. See
+ * {@link LocalPerfTestProperties} for the settings read from local.properties.
+ *
+ * When sharded, the {@code PerfTest} methods are split between equivalent devices (those with the
+ * same build fingerprint) instead of every device running all of them. The tests are listed on one
+ * device of each group with a log-only instrumentation run and assigned by {@link TestSharder}
+ * from the durations of past runs, which are kept in
+ * {@code .gradle/perftesting/test-durations.properties}.
+ *
+ * Every device's results are added to a {@link ResultsStore} history and compared with earlier
+ * commits on the same kind of device by a {@link RegressionDetector}; significant regressions fail
+ * the task.
  */
 public class RunLocalPerfTestsTask extends DefaultTask {
     Logger mLogger = getLogger()
 
+    private static final String PACKAGE_NAME = "com.google.android.perftesting"
+    private static final String TEST_RUNNER =
+            PACKAGE_NAME + ".test/android.support.test.runner.AndroidJUnitRunner"
+    private static final String TEST_DURATIONS_PATH =
+            ".gradle/perftesting/test-durations.properties"
+
+    private final WorkerExecutor mWorkerExecutor
+
+    /**
+     * Serials of the devices to test, only resolved when the task runs.
+     */
+    Provider<List<String>> mDeviceIds
+
     /**
-     * Default to not supplying a value unless a deviceId was set.
+     * Used to identify the devices in the logs, if set.
      */
-    String mDeviceId = ""
+    DeviceDiscovery mDeviceDiscovery
 
-    public RunLocalPerfTestsTask() {
+    /**
+     * Whether to split the tests between equivalent devices, which requires a
+     * {@link DeviceDiscovery} to tell them apart.
+     */
+    boolean mSharded = false
+
+    @Inject
+    public RunLocalPerfTestsTask(WorkerExecutor workerExecutor) {
         super()
+        mWorkerExecutor = workerExecutor
+        mDeviceIds = project.provider({ Collections.<String>emptyList() })
         setGroup('verification')
         setDescription("Run performance tests on a specific device.")
         // Forces this task to always run.
-        if (deviceId != null) {
-            mDeviceId = deviceId
-        }
         getOutputs().upToDateWhen({ return false })
     }
 
     @TaskAction
     void execute(IncrementalTaskInputs inputs) {
-//        mLogger.warn("Starting monkeyrunner")
-//        ProcessBuilder processBuilder = new ProcessBuilder()
-//
-//        // TODO: Read these properties using a better method.
-//        Properties properties = new Properties()
-//        project.rootProject.file('local.properties').withDataInputStream { inputStream ->
-//            properties.load(inputStream)
-//        }
-//        def sdkDir = properties.getProperty('sdk.dir')
-//
-//        def monkeyExt = ''
-//        if (Os.isFamily(Os.FAMILY_WINDOWS)) {
-//            monkeyExt = '.bat'
-//        }
-//
-//        def toolsDir = Paths.get(sdkDir, "tools").toAbsolutePath().toString()
-//
-//        // Check for new SDK folder layout
-//        def toolsBinDir = Paths.get(sdkDir, "tools", "bin")
-//        if (toolsBinDir.toFile().exists()) {
-//            toolsDir = toolsBinDir.toAbsolutePath().toString()
-//        }
-//
-//        def monkeyPath = Paths.get(toolsDir, "monkeyrunner" + monkeyExt).toAbsolutePath().toString()
-//        def rootDir = getProject().getRootDir().getAbsolutePath()
-//        def monkeyScriptPath = Paths.get(rootDir, "run_perf_tests.py").toAbsolutePath().toString()
-//        processBuilder.command(monkeyPath, monkeyScriptPath, rootDir, mDeviceId)
-//        processBuilder.environment().put("ANDROID_HOME", sdkDir)
-//        processBuilder.redirectErrorStream()
-//        Process process = processBuilder.start()
-//        process.waitFor()
-//
-//        // Redirect output from the script to the console so it's not supressed.
-//        process.in.eachLine() { line ->
-//            mLogger.warn("Script: " + line)
-//        }
-//        if (process.exitValue() != 0) {
-//            throw new GradleException("Monkeyrunner script didn't complete")
-//        }
-//        mLogger.warn("Monkeyrunner complete")
+        List<String> deviceIds = mDeviceIds.get()
+        if (deviceIds.isEmpty()) {
+            mLogger.warn("No devices to run performance tests on")
+            return
+        }
+
+        LocalPerfTestProperties properties = LocalPerfTestProperties.load(project)
+        String adbPath = properties.adbPath
+        File resultsDir = project.rootProject.file("perftesting")
+        TestDurationHistory durationHistory =
+                new TestDurationHistory(project.rootProject.file(TEST_DURATIONS_PATH))
+        Map<String, List<String>> shards = null
+        if (mSharded) {
+            shards = shardTests(deviceIds, properties, new File(resultsDir, "sharding"),
+                    durationHistory)
+        }
+
+        List<String> submittedDeviceIds = new ArrayList<String>()
+        deviceIds.each { String deviceId ->
+            if (shards != null && !shards.containsKey(deviceId)) {
+                mLogger.warn("No tests left for ${deviceId}, skipping it")
+                return
+            }
+            DevicePerfTestSpec spec = new DevicePerfTestSpec(
+                    deviceId: deviceId,
+                    adbPath: adbPath,
+                    systracePath: properties.systracePath,
+                    packageName: PACKAGE_NAME,
+                    testRunner: TEST_RUNNER,
+                    outputDir: new File(resultsDir, deviceId),
+                    timeoutMillis: properties.timeoutMillis,
+                    tests: shards == null ? null : new ArrayList<String>(shards.get(deviceId)),
+                    jankThresholdPercent: properties.jankThresholdPercent)
+            if (mDeviceDiscovery != null) {
+                mLogger.warn("Starting performance tests on ${deviceId} " +
+                        "(${mDeviceDiscovery.getFingerprint(deviceId)})")
+            } else {
+                mLogger.warn("Starting performance tests on ${deviceId}")
+            }
+            mWorkerExecutor.submit(DevicePerfTestWorker) { WorkerConfiguration config ->
+                config.isolationMode = IsolationMode.NONE
+                config.displayName = "Performance tests on ${deviceId}"
+                config.params(spec)
+            }
+            submittedDeviceIds.add(deviceId)
+        }
+        boolean regressed = false
+        try {
+            // Failures of every device are reported together once all of them are done.
+            mWorkerExecutor.await()
+        } finally {
+            recordTestDurations(submittedDeviceIds, resultsDir, durationHistory)
+            regressed = recordHistory(submittedDeviceIds, resultsDir, properties)
+        }
+        if (regressed && properties.failOnRegression) {
+            throw new GradleException("Performance regressed, see the " +
+                    "${RegressionDetector.REGRESSIONS_FILENAME} of each device")
+        }
+        mLogger.warn("Performance tests complete on ${submittedDeviceIds}")
+    }
+
+    /**
+     * Add each device's results to the history and compare them with it.
+     *
+     * @return true if any device has a significant regression.
+     */
+    private boolean recordHistory(List<String> deviceIds, File resultsDir,
+            LocalPerfTestProperties properties) {
+        boolean regressed = false
+        try {
+            ResultsStore store = ResultsStore.open(project.rootProject.file(properties.historyDir))
+            String commit = getCommit()
+            String apkHash = getApkHash()
+            deviceIds.each { String deviceId ->
+                File testDataDir = new File(new File(resultsDir, deviceId),
+                        AnalysisEngine.TEST_DATA_DIR_NAME)
+                if (!new File(testDataDir, RunResult.RESULTS_FILENAME).isFile()) {
+                    mLogger.warn("${deviceId}: no results to add to the history")
+                    return
+                }
+                String fingerprint = mDeviceDiscovery != null
+                        ? mDeviceDiscovery.getFingerprint(deviceId) : deviceId
+                ResultsStore.Run run = new ResultsStore.Run(commit, apkHash, fingerprint,
+                        deviceId, System.currentTimeMillis())
+                List<RegressionDetector.Change> changes = new RegressionDetector()
+                        .recordAndCompare(store, run, testDataDir)
+                changes.each { RegressionDetector.Change change ->
+                    mLogger.warn("${deviceId}: ${change}")
+                }
+                regressed |= RegressionDetector.hasRegressions(changes)
+            }
+        } catch (Exception exception) {
+            // The history must not hide the outcome of the tests themselves.
+            mLogger.error("Unable to record the results history", exception)
+        }
+        return regressed
+    }
+
+    private String getCommit() {
+        try {
+            Process process = new ProcessBuilder("git", "rev-parse", "HEAD")
+                    .directory(project.rootDir)
+                    .start()
+            String commit = process.inputStream.text.trim()
+            process.waitFor()
+            if (process.exitValue() == 0 && !commit.isEmpty()) {
+                return commit
+            }
+        } catch (IOException exception) {
+            mLogger.info("Unable to read the git commit", exception)
+        }
+        return "unknown"
+    }
+
+    /**
+     * SHA-256 of the app APK under test, so runs of different builds of the same commit can be
+     * told apart.
+     */
+    private String getApkHash() {
+        File apk = project.fileTree(dir: 'build/outputs/apk', include: '**/*-debug.apk',
+                exclude: '**/*androidTest*').files.find { true }
+        if (apk == null) {
+            return "unknown"
+        }
+        MessageDigest digest = MessageDigest.getInstance("SHA-256")
+        apk.eachByte(64 * 1024) { byte[] buffer, int length ->
+            digest.update(buffer, 0, length)
+        }
+        return digest.digest().encodeHex().toString()
+    }
+
+    private Map<String, List<String>> shardTests(List<String> deviceIds,
+            LocalPerfTestProperties properties, File logDir, TestDurationHistory durationHistory) {
+        if (mDeviceDiscovery == null) {
+            throw new GradleException("Sharding needs the device fingerprints, set " +
+                    "deviceDiscovery on ${name}")
+        }
+        Map<String, List<String>> devicesByFingerprint = new LinkedHashMap<String, List<String>>()
+        deviceIds.each { String deviceId ->
+            String fingerprint = mDeviceDiscovery.getFingerprint(deviceId)
+            if (!devicesByFingerprint.containsKey(fingerprint)) {
+                devicesByFingerprint.put(fingerprint, new ArrayList<String>())
+            }
+            devicesByFingerprint.get(fingerprint).add(deviceId)
+        }
+
+        if (logDir.exists()) {
+            logDir.deleteDir()
+        }
+        logDir.mkdirs()
+        Map<String, List<String>> shards = new LinkedHashMap<String, List<String>>()
+        devicesByFingerprint.each { String fingerprint, List<String> equivalentDevices ->
+            List<String> tests = listTests(equivalentDevices[0], properties, logDir)
+            mLogger.warn("Sharding ${tests.size()} tests between ${equivalentDevices} " +
+                    "(${fingerprint})")
+            TestSharder.shard(tests, equivalentDevices, durationHistory).each {
+                String deviceId, List<String> shard ->
+                    mLogger.warn("${deviceId}: ${shard}")
+                    shards.put(deviceId, shard)
+            }
+        }
+        return shards
+    }
+
+    /**
+     * List the {@code PerfTest} methods in the installed test APK without running them.
+     */
+    private static List<String> listTests(String deviceId, LocalPerfTestProperties properties,
+            File logDir) {
+        DeviceCommandRunner runner = new DeviceCommandRunner(properties.adbPath, deviceId,
+                logDir, properties.timeoutMillis)
+        InstrumentationOutputParser output = new InstrumentationOutputParser()
+        int exitValue = runner.adbStreaming("list_tests_${deviceId}", { String line ->
+            output.parse(line, System.currentTimeMillis())
+        }, 'shell', 'am', 'instrument', '-w', '-r',
+                '-e', 'log', 'true',
+                '-e', 'annotation', DevicePerfTestWorker.PERF_TEST_ANNOTATION,
+                TEST_RUNNER)
+        if (exitValue != 0 || output.tests.isEmpty()) {
+            throw new GradleException("Unable to list the tests on ${deviceId}, see " +
+                    runner.getLogFile("list_tests_${deviceId}"))
+        }
+        return output.tests
+    }
+
+    private static void recordTestDurations(List<String> deviceIds, File resultsDir,
+            TestDurationHistory durationHistory) {
+        deviceIds.each { String deviceId ->
+            File durationsFile = new File(new File(new File(resultsDir, deviceId), "logs"),
+                    DevicePerfTestWorker.TEST_DURATIONS_FILENAME)
+            if (durationsFile.isFile()) {
+                Properties durations = new Properties()
+                durationsFile.withInputStream { inputStream ->
+                    durations.load(inputStream)
+                }
+                durations.stringPropertyNames().each { String test ->
+                    durationHistory.record(test, Long.parseLong(durations.getProperty(test)))
+                }
+            }
+        }
+        durationHistory.store()
     }
 
     public void setDeviceId(String deviceId) {
         setDescription("Run performance tests on device with serial ${deviceId}")
-        mDeviceId = deviceId
+        mDeviceIds = project.provider({ Collections.singletonList(deviceId) })
+    }
+
+    public void setDeviceIds(Provider<List<String>> deviceIds) {
+        mDeviceIds = deviceIds
+    }
+
+    public Provider<List<String>> getDeviceIds() {
+        return mDeviceIds
+    }
+
+    public void setSharded(boolean sharded) {
+        mSharded = sharded
+    }
+
+    public boolean isSharded() {
+        return mSharded
+    }
+
+    public void setDeviceDiscovery(DeviceDiscovery deviceDiscovery) {
+        mDeviceDiscovery = deviceDiscovery
     }
 
-    public String getDeviceId() {
-        return mDeviceId
+    public DeviceDiscovery getDeviceDiscovery() {
+        return mDeviceDiscovery
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+/**
+ * Past durations of tests, kept in a properties file keyed by test name. Each new measurement is
+ * blended with the previous estimate so a single slow run doesn't skew the sharding for long.
+ */
+class TestDurationHistory {
+    private static final double NEW_MEASUREMENT_WEIGHT = 0.5
+
+    private final File mFile
+    private final Properties mDurations = new Properties()
+
+    TestDurationHistory(File file) {
+        mFile = file
+        if (mFile.isFile()) {
+            mFile.withInputStream { inputStream ->
+                mDurations.load(inputStream)
+            }
+        }
+    }
+
+    /**
+     * @return the estimated duration of the test in milliseconds, or -1 if it never ran.
+     */
+    long getMillis(String test) {
+        String millis = mDurations.getProperty(test)
+        return millis == null ? -1 : Long.parseLong(millis)
+    }
+
+    void record(String test, long millis) {
+        long previous = getMillis(test)
+        long estimate = previous < 0 ? millis
+                : Math.round(NEW_MEASUREMENT_WEIGHT * millis
+                        + (1 - NEW_MEASUREMENT_WEIGHT) * previous)
+        mDurations.setProperty(test, Long.toString(estimate))
+    }
+
+    void recordAll(Map<String, Long> durations) {
+        durations.each { String test, Long millis ->
+            record(test, millis)
+        }
+    }
+
+    void store() {
+        mFile.parentFile.mkdirs()
+        mFile.withOutputStream { outputStream ->
+            mDurations.store(outputStream, "Estimated durations of tests in milliseconds")
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.android.perftesting
+
+/**
+ * Splits tests between equivalent devices so they all finish at about the same time, using
+ * longest-processing-time-first scheduling: tests are handed out longest first, each to the
+ * device with the least work so far. Tests without a past duration are assumed to take the
+ * median of the known ones.
+ */
+class TestSharder {
+    // Used when no test of the suite has ever run.
+    private static final long DEFAULT_TEST_MILLIS = 60000
+
+    private TestSharder() { }
+
+    /**
+     * @return the tests of each device, in the order the tests were given; devices without any
+     *     test are left out.
+     */
+    static Map<String, List<String>> shard(List<String> tests, List<String> deviceIds,
+            TestDurationHistory history) {
+        Map<String, Long> estimates = estimateMillis(tests, history)
+        List<String> longestFirst = new ArrayList<String>(tests)
+        // Sorting is stable, so equal estimates keep the given order and shards are reproducible.
+        Collections.sort(longestFirst, { String lhs, String rhs ->
+            Long.compare(estimates.get(rhs), estimates.get(lhs))
+        } as Comparator<String>)
+
+        Map<String, Long> loads = new LinkedHashMap<String, Long>()
+        Map<String, Set<String>> assigned = new LinkedHashMap<String, Set<String>>()
+        deviceIds.each { String deviceId ->
+            loads.put(deviceId, 0L)
+            assigned.put(deviceId, new HashSet<String>())
+        }
+        longestFirst.each { String test ->
+            String leastLoaded = deviceIds[0]
+            deviceIds.each { String deviceId ->
+                if (loads.get(deviceId) < loads.get(leastLoaded)) {
+                    leastLoaded = deviceId
+                }
+            }
+            loads.put(leastLoaded, loads.get(leastLoaded) + estimates.get(test))
+            assigned.get(leastLoaded).add(test)
+        }
+
+        Map<String, List<String>> shards = new LinkedHashMap<String, List<String>>()
+        deviceIds.each { String deviceId ->
+            List<String> shard = tests.findAll { assigned.get(deviceId).contains(it) }
+            if (!shard.isEmpty()) {
+                shards.put(deviceId, shard)
+            }
+        }
+        return shards
+    }
+
+    private static Map<String, Long> estimateMillis(List<String> tests,
+            TestDurationHistory history) {
+        List<Long> known = new ArrayList<Long>()
+        tests.each { String test ->
+            long millis = history.getMillis(test)
+            if (millis >= 0) {
+                known.add(millis)
+            }
+        }
+        long unknownMillis = DEFAULT_TEST_MILLIS
+        if (!known.isEmpty()) {
+            Collections.sort(known)
+            unknownMillis = known.get(known.size().intdiv(2))
+        }
+        Map<String, Long> estimates = new HashMap<String, Long>()
+        tests.each { String test ->
+            long millis = history.getMillis(test)
+            estimates.put(test, millis >= 0 ? millis : unknownMillis)
+        }
+        return estimates
+    }
+}
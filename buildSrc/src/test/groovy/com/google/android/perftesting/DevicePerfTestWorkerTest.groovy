@@ -0,0 +1,148 @@
+/*
+ * Copyright 2015, Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.perftesting
+
+import com.google.android.perftesting.analysis.AnalysisEngine
+import com.google.android.perftesting.analysis.RunResult
+import groovy.io.FileType
+import org.apache.tools.ant.taskdefs.condition.Os
+import org.gradle.api.GradleException
+import org.gradle.api.logging.Logging
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+
+import java.util.concurrent.TimeUnit
+
+import static org.junit.Assert.assertEquals
+import static org.junit.Assert.assertTrue
+import static org.junit.Assert.fail
+import static org.junit.Assume.assumeFalse
+
+/**
+ * Runs {@link DevicePerfTestWorker} and {@link DeviceDiscovery} against the fake adb in the
+ * {@code fakeadb} test resources, which replays the output recorded from an emulator.
+ */
+class DevicePerfTestWorkerTest {
+    private static final String DEVICE_ID = 'emulator-5554'
+    private static final String PACKAGE_NAME = 'com.google.android.perftesting'
+
+    @Rule
+    public TemporaryFolder mTemporaryFolder = new TemporaryFolder()
+
+    private File mAdbDir
+    private File mOutputDir
+
+    @Before
+    void setUp() {
+        // The fake adb is a shell script.
+        assumeFalse(Os.isFamily(Os.FAMILY_WINDOWS))
+        mAdbDir = mTemporaryFolder.newFolder('fakeadb')
+        // Copied so each test can set its mode, and as resources lose their executable bit.
+        File resources = new File(getClass().getResource('/fakeadb').toURI())
+        resources.eachFileRecurse(FileType.FILES) { File file ->
+            File copy = new File(mAdbDir, resources.toPath().relativize(file.toPath()).toString())
+            copy.parentFile.mkdirs()
+            copy.bytes = file.bytes
+        }
+        new File(mAdbDir, 'adb').setExecutable(true)
+        mOutputDir = mTemporaryFolder.newFolder(DEVICE_ID)
+    }
+
+    @Test
+    void runsTestsAndAnalyzesPulledData() {
+        new DevicePerfTestWorker(createSpec(TimeUnit.MINUTES.toMillis(1))).run()
+
+        File testDataDir = new File(mOutputDir, AnalysisEngine.TEST_DATA_DIR_NAME)
+        String results = new File(testDataDir, RunResult.RESULTS_FILENAME).text
+        assertTrue(results, results.contains('overall=PASS'))
+        assertTrue(results, results.contains('SimpleListActivityTest_scrollFullList'))
+
+        Properties durations = new Properties()
+        new File(mOutputDir, "logs/${DevicePerfTestWorker.TEST_DURATIONS_FILENAME}")
+                .withInputStream { inputStream ->
+                    durations.load(inputStream)
+                }
+        assertEquals([
+                'com.google.android.perftesting.SimpleListActivityTest#scrollFullList',
+                'com.google.android.perftesting.StartupTest#mainActivityWarmStart'] as Set,
+                durations.stringPropertyNames())
+
+        String startup = new File(testDataDir,
+                'c.g.a.perftesting.StartupTest_mainActivityColdStart/startup.log').text
+        assertTrue(startup, startup.contains('launch.1.displayedMillis=412'))
+        assertTrue(startup, startup.contains('launch.1.fullyDrawnMillis=655'))
+        String budget = new File(testDataDir,
+                'c.g.a.perftesting.StartupTest_mainActivityColdStart/budget.log').text
+        assertTrue(budget, budget.contains('timeToInitialDisplayMillis=PASS 412/1000'))
+        assertTrue(budget, budget.contains('timeToFullDisplayMillis=PASS 655/2000'))
+    }
+
+    @Test
+    void failsWhenInstrumentationCrashes() {
+        new File(mAdbDir, 'instrument.mode').text = 'crash'
+        try {
+            new DevicePerfTestWorker(createSpec(TimeUnit.MINUTES.toMillis(1))).run()
+            fail('The crashed instrumentation should fail the run')
+        } catch (GradleException expected) {
+            assertTrue(expected.message, expected.message.contains("didn't complete"))
+        }
+    }
+
+    @Test
+    void watchdogEndsInstrumentationThatStopsResponding() {
+        new File(mAdbDir, 'instrument.mode').text = 'hang'
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(10)
+        long startMillis = System.currentTimeMillis()
+        try {
+            new DevicePerfTestWorker(createSpec(timeoutMillis)).run()
+            fail('The run should have timed out')
+        } catch (GradleException expected) {
+            assertTrue(expected.message, expected.message.contains('Timed out'))
+            assertTrue(expected.message, expected.message.contains('instrument'))
+        }
+        // The fake adb sleeps for a minute, so only the watchdog can end the run this early.
+        assertTrue(System.currentTimeMillis() - startMillis < timeoutMillis + 5000)
+        // The output up to the hang was still logged.
+        assertTrue(new File(mOutputDir, 'logs/instrument.log').text.contains('scrollFullList'))
+    }
+
+    @Test
+    void discoversOnlineDevicesAndFingerprints() {
+        Properties properties = new Properties()
+        properties.setProperty('perftesting.adb', new File(mAdbDir, 'adb').absolutePath)
+        File fingerprintCache = new File(mTemporaryFolder.root, 'fingerprints.properties')
+        DeviceDiscovery discovery = new DeviceDiscovery(new LocalPerfTestProperties(properties),
+                fingerprintCache, Logging.getLogger(DevicePerfTestWorkerTest))
+
+        assertEquals([DEVICE_ID], discovery.deviceIds)
+        assertTrue(discovery.getFingerprint(DEVICE_ID).startsWith('google/sdk_gphone_x86'))
+        assertTrue(fingerprintCache.text.contains(DEVICE_ID))
+    }
+
+    private DevicePerfTestSpec createSpec(long timeoutMillis) {
+        return new DevicePerfTestSpec(
+                deviceId: DEVICE_ID,
+                adbPath: new File(mAdbDir, 'adb').absolutePath,
+                packageName: PACKAGE_NAME,
+                testRunner: "${PACKAGE_NAME}.test/android.support.test.runner.AndroidJUnitRunner"
+                        .toString(),
+                outputDir: mOutputDir,
+                timeoutMillis: timeoutMillis,
+                jankThresholdPercent: 10)
+    }
+}
@@ -14,10 +14,12 @@
 
 """Script to orchestrate running android performance tests while also
 collecting batterystats, location request information, and a systrace.
+Cold starts of the app's activities are measured before the tests run.
 """
 
 from __future__ import with_statement
 
+import hashlib
 import os
 import shutil
 import subprocess
@@ -32,6 +34,22 @@ from com.android.monkeyrunner import MonkeyRunner, MonkeyDevice # pylint: disabl
 # Percentage of janky frames to detect to warn.
 JANK_THRESHOLD = 60
 DUMPSYS_FILENAME = 'dumpsys.log'
+# Frame time summary written next to the gfxinfo dump by EnablePostTestDumpsys.
+FRAME_SUMMARY_FILENAME = 'frame.summary.log'
+# Per rendering stage breakdown of the same frames.
+FRAME_STAGES_FILENAME = 'frame.stages.log'
+# Capture completeness report written when EnablePostTestDumpsys samples framestats.
+FRAME_SAMPLING_FILENAME = 'frame.sampling.log'
+# Outcome of the @PerfTest budget checks written by EnablePerfBudgets.
+BUDGET_FILENAME = 'budget.log'
+# Per metric statistics over the measured iterations of a repeated test.
+ITERATIONS_FILENAME = 'iterations.summary.log'
+# Launch times written by EnableStartupTiming and by measure_cold_starts().
+STARTUP_FILENAME = 'startup.log'
+# Writes the cold starts' results and checks StartupTest's budgets, see
+# measure_cold_starts().
+COLD_STARTS_CLASS = 'com.google.android.perftesting.analysis.ColdStarts'
+FULLY_DRAWN_TIMEOUT_SECONDS = 5
 
 def perform_test(device, package_name):
     """Execution code for a test run thread."""
@@ -128,6 +146,114 @@ def enable_storage_permission(sdk_path, device_id, dest_dir, package_name):
             print 'ERROR executing permission grant.'
 
 
+# Enable reading the event log, where the platform logs the time each
+# activity took to report itself fully drawn.
+def enable_read_logs_permission(sdk_path, device_id, dest_dir, package_name):
+    """Enable the READ_LOGS permission on the specified and installed Android
+    app.
+    """
+
+    print 'Starting read logs permission grant'
+    perm_command = [os.path.join(sdk_path, 'platform-tools', 'adb'),
+                    '-s', device_id,
+                    'shell',
+                    'pm', 'grant', package_name,
+                    'android.permission.READ_LOGS']
+    log_file_path = os.path.join(dest_dir, 'logs', 'enable_read_logs_perm.log')
+    with open(log_file_path, 'w') as log_file:
+        try:
+            subprocess.call(perm_command,
+                            stdout=log_file,
+                            stderr=subprocess.STDOUT,
+                            shell=False)
+        except OSError:
+            print 'ERROR executing permission grant.'
+
+
+def adb_output(sdk_path, device_id, args):
+    """Run an adb command on the device and return its output."""
+    command = [os.path.join(sdk_path, 'platform-tools', 'adb'),
+               '-s', device_id] + args
+    try:
+        process = subprocess.Popen(command,
+                                   stdout=subprocess.PIPE,
+                                   stderr=subprocess.STDOUT,
+                                   shell=False)
+        return process.communicate()[0]
+    except OSError:
+        print 'ERROR executing adb ' + ' '.join(args)
+        return ''
+
+
+def wait_for_fully_drawn(sdk_path, device_id, component, event_tag):
+    """Wait for the launched activity to report itself fully drawn and
+    return the event log, which has no event of the activity if it didn't in
+    time."""
+    deadline = time.time() + FULLY_DRAWN_TIMEOUT_SECONDS
+    while True:
+        # The event log was cleared before the launch, so any event is this
+        # launch's.
+        events = adb_output(sdk_path, device_id,
+                            ['shell', 'logcat', '-d', '-b', 'events', '-s',
+                             event_tag])
+        if component in events or time.time() >= deadline:
+            return events
+        time.sleep(0.2)
+
+
+def measure_cold_starts(sdk_path, device_id, dest_dir, package_name):
+    """Launch each activity from a stopped app a few times. Cold starts kill
+    the app, so they can't run under the instrumentation. The analysis jar
+    lists the activities, writes their results where StartupTest's tests
+    would and checks them against its budgets, as the Gradle runner does."""
+
+    analysis_jar = analysis_jar_path()
+    if not os.path.isfile(analysis_jar):
+        print ('\nNOTE: ' + analysis_jar + ' not found, cold starts are not ' +
+               'measured. Build it with ./gradlew :analysis:jar')
+        return
+    print 'Measuring cold starts'
+    cold_starts = parse_key_values(
+        java_output(['-cp', analysis_jar, COLD_STARTS_CLASS, '--list']))
+    if 'activities' not in cold_starts:
+        print 'ERROR listing the cold starts, they are not measured.'
+        return
+    sdk = adb_output(sdk_path, device_id,
+                     ['shell', 'getprop', 'ro.build.version.sdk']).strip()
+    try:
+        fully_drawn_reported = (
+            int(sdk) >= int(cold_starts['fullyDrawnMinSdk']))
+    except ValueError:
+        fully_drawn_reported = True
+    logs_dir = os.path.join(dest_dir, 'logs')
+    for activity in cold_starts['activities'].split(','):
+        component = package_name + '/.' + activity
+        launch_files = []
+        for launch in range(1, int(cold_starts['launches']) + 1):
+            adb_output(sdk_path, device_id,
+                       ['shell', 'am', 'force-stop', package_name])
+            adb_output(sdk_path, device_id,
+                       ['shell', 'logcat', '-b', 'events', '-c'])
+            am_start_file = os.path.join(
+                logs_dir, 'cold_start_%s_%d.log' % (activity, launch))
+            with open(am_start_file, 'w') as am_start_log:
+                am_start_log.write(adb_output(
+                    sdk_path, device_id,
+                    ['shell', 'am', 'start', '-W', '-n', component]))
+            events_file = os.path.join(
+                logs_dir, 'fully_drawn_%s_%d.log' % (activity, launch))
+            with open(events_file, 'w') as events_log:
+                if fully_drawn_reported:
+                    events_log.write(wait_for_fully_drawn(
+                        sdk_path, device_id, component,
+                        cold_starts['fullyDrawnEventTag']))
+            launch_files += [am_start_file, events_file]
+        run_java(['-cp', analysis_jar, COLD_STARTS_CLASS,
+                  '--package', package_name, '--sdk', sdk or 'unknown',
+                  os.path.join(dest_dir, 'testdata'), activity] + launch_files)
+    adb_output(sdk_path, device_id, ['shell', 'am', 'force-stop', package_name])
+
+
 def clean_test_files(dest_dir):
     """Removes the test files that are generated during a test run."""
 
@@ -228,8 +354,96 @@ def parse_dump_file(filename):
         return results
 
 
+def parse_frame_summary_file(filename):
+    """Parse the key=value frame summary written by the analysis library."""
+    results = dict()
+    with open(filename, 'r') as summary_file:
+        for line in summary_file:
+            key, sep, value = line.strip().partition('=')
+            if not sep or key == 'histogram':
+                continue
+            try:
+                results[key] = float(value)
+            except ValueError:
+                continue
+    return results
+
+
+def print_frame_summary(summary):
+    """Print the frame time distribution of a test."""
+    print ('Frames: %d, P50: %.2fms, P90: %.2fms, P95: %.2fms, P99: %.2fms, '
+           'max: %.2fms, >16ms: %d, >32ms: %d, >700ms: %d' % (
+               summary.get('frames', 0), summary.get('p50Millis', 0),
+               summary.get('p90Millis', 0), summary.get('p95Millis', 0),
+               summary.get('p99Millis', 0), summary.get('maxMillis', 0),
+               summary.get('framesOver16ms', 0), summary.get('framesOver32ms', 0),
+               summary.get('framesOver700ms', 0)))
+
+
+def parse_key_values(lines):
+    """Parse key=value lines, ignoring any others."""
+    results = dict()
+    for line in lines:
+        key, sep, value = line.strip().partition('=')
+        if sep:
+            results[key] = value
+    return results
+
+
+def parse_key_value_file(filename):
+    """Parse a key=value report such as the per-stage frame breakdown."""
+    with open(filename, 'r') as key_value_file:
+        return parse_key_values(key_value_file)
+
+
+def print_frame_stages(stages):
+    """Print where the slow frames of a test spent their time."""
+    if stages.get('slowFrames', '0') == '0':
+        return
+    print ('Slow frames: %s (UI thread: %s, RenderThread: %s, GPU: %s). '
+           'Mostly bound by %s, largest stage: %s' % (
+               stages.get('slowFrames'), stages.get('slowFrames.UI_THREAD'),
+               stages.get('slowFrames.RENDER_THREAD'), stages.get('slowFrames.GPU'),
+               stages.get('dominantBottleneck'),
+               stages.get('dominantSlowFrameStage')))
+
+
+def print_frame_sampling(sampling):
+    """Print how many of the rendered frames the framestats sampling captured."""
+    print ('Framestats sampling captured %s of %s frames over %s polls '
+           '(%s missed).' % (sampling.get('framesCaptured'),
+                             sampling.get('framesRendered'),
+                             sampling.get('polls'),
+                             sampling.get('framesMissed')))
+
+
+def print_startup(startup):
+    """Print the median launch times of an activity."""
+    print ('%s start of %s: %s launches, time to initial display %sms, '
+           'time to full display %sms (medians)' % (
+               startup.get('startType'), startup.get('component'),
+               startup.get('launches'), startup.get('p50DisplayedMillis', '-'),
+               startup.get('p50FullyDrawnMillis', '-')))
+
+
+def print_iterations(iterations):
+    """Print the median and confidence interval of each metric of a repeated
+    test."""
+    metrics = sorted(set(key.rsplit('.', 1)[0] for key in iterations))
+    for metric in metrics:
+        print ('%s: median %s (95%% CI %s - %s, MAD %s, n=%s)' % (
+            metric, iterations.get(metric + '.median'),
+            iterations.get(metric + '.ciLow'), iterations.get(metric + '.ciHigh'),
+            iterations.get(metric + '.mad'), iterations.get(metric + '.n')))
+
+
 def analyze_data_files(dest_dir):
-    """Analyze data files for issues that indicate a test failure."""
+    """Analyze data files for issues that indicate a test failure.
+
+    The same checks, run in parallel and writing a machine readable results
+    file, are available outside monkeyrunner as
+    java -jar analysis.jar <dest_dir>
+    """
     overall_passed = True
     test_data_dir = os.path.join(dest_dir, 'testdata')
     for dir_name, sub_dir_list, file_list in os.walk(test_data_dir):
@@ -244,6 +458,9 @@ def analyze_data_files(dest_dir):
                     # pylint: disable=fixme
                     # TODO(developer): process location requests information.
                     continue
+        elif os.path.basename(dir_name).startswith('warmup_'):
+            # warmup iterations of a repeated test aren't measurements
+            continue
         else:
             # in a test folder
             print '\nAnalysing test: ' + dest_dir
@@ -254,8 +471,10 @@ def analyze_data_files(dest_dir):
                 if fname == 'gfxinfo.dumpsys.log':
                     # process gfxinfo for janky frames
                     dump_results = parse_dump_file(full_filename)
-                    jank_perc = dump_results['jank_percent']
-                    if jank_perc:
+                    # A dump without a jank summary (e.g. the app drew no
+                    # frames) is an error, not a crash of the whole analysis.
+                    jank_perc = dump_results.get('jank_percent')
+                    if jank_perc is not None:
                         if jank_perc > JANK_THRESHOLD:
                             print ('FAIL: High level of janky frames ' +
                                    'detected (' + str(jank_perc) + '%)' +
@@ -264,6 +483,33 @@ def analyze_data_files(dest_dir):
                     else:
                         print 'ERROR: No dump results could be found.'
                         passed = False
+                elif fname == FRAME_SUMMARY_FILENAME:
+                    frame_summary = parse_frame_summary_file(full_filename)
+                    print_frame_summary(frame_summary)
+                    if 'gfxinfo.dumpsys.log' not in file_list:
+                        # Collected without dumpsys (e.g. Choreographer on
+                        # pre-M devices) so gate on the slow frame percentage.
+                        slow_perc = frame_summary.get('slowFramesPercent', 0)
+                        if slow_perc > JANK_THRESHOLD:
+                            print ('FAIL: High level of slow frames ' +
+                                   'detected (' + str(slow_perc) + '%)' +
+                                   '. See trace.html for details.')
+                            passed = False
+                elif fname == FRAME_STAGES_FILENAME:
+                    print_frame_stages(parse_key_value_file(full_filename))
+                elif fname == FRAME_SAMPLING_FILENAME:
+                    print_frame_sampling(parse_key_value_file(full_filename))
+                elif fname == STARTUP_FILENAME:
+                    print_startup(parse_key_value_file(full_filename))
+                elif fname == ITERATIONS_FILENAME:
+                    print_iterations(parse_key_value_file(full_filename))
+                elif fname == BUDGET_FILENAME:
+                    for metric, outcome in parse_key_value_file(
+                            full_filename).items():
+                        if outcome.startswith('FAIL'):
+                            print ('FAIL: Budget for ' + metric + ' exceeded (' +
+                                   outcome[len('FAIL '):] + ').')
+                            passed = False
                 elif fname == 'test.failure.log':
                     # process test failure logs
                     print ('FAIL: Test failed. See ' + full_filename +
@@ -287,6 +533,104 @@ def analyze_data_files(dest_dir):
         return 1
 
 
+def run_java(args):
+    """Run a java command, printing its output, and return its exit code."""
+    try:
+        process = subprocess.Popen(['java'] + args,
+                                   stdout=subprocess.PIPE,
+                                   stderr=subprocess.STDOUT,
+                                   shell=False)
+        print process.communicate()[0]
+        return process.returncode
+    except OSError:
+        print 'ERROR executing java ' + ' '.join(args)
+        return -1
+
+
+def java_output(args):
+    """Run a java command and return the lines of its output, none if it
+    couldn't be run."""
+    try:
+        process = subprocess.Popen(['java'] + args,
+                                   stdout=subprocess.PIPE,
+                                   stderr=subprocess.STDOUT,
+                                   shell=False)
+        return process.communicate()[0].splitlines()
+    except OSError:
+        print 'ERROR executing java ' + ' '.join(args)
+        return []
+
+
+def analysis_jar_path():
+    """The analysis jar next to this script, built with
+    ./gradlew :analysis:jar"""
+    project_dir = os.path.dirname(os.path.abspath(sys.argv[0]))
+    return os.path.join(project_dir, 'analysis', 'build', 'libs',
+                        'analysis.jar')
+
+
+def git_commit():
+    """The commit under test, 'unknown' outside a git checkout."""
+    try:
+        process = subprocess.Popen(['git', 'rev-parse', 'HEAD'],
+                                   stdout=subprocess.PIPE,
+                                   stderr=subprocess.PIPE,
+                                   shell=False)
+        commit = process.communicate()[0].strip()
+        if process.returncode == 0 and commit:
+            return commit
+    except OSError:
+        pass
+    return 'unknown'
+
+
+def apk_hash(project_dir):
+    """SHA-256 of the app APK under test, like the Gradle runner records."""
+    apk_dir = os.path.join(project_dir, 'app', 'build', 'outputs', 'apk')
+    if os.path.isdir(apk_dir):
+        for fname in sorted(os.listdir(apk_dir)):
+            if fname.endswith('-debug.apk') and 'androidTest' not in fname:
+                digest = hashlib.sha256()
+                with open(os.path.join(apk_dir, fname), 'rb') as apk:
+                    for chunk in iter(lambda: apk.read(64 * 1024), ''):
+                        digest.update(chunk)
+                return digest.hexdigest()
+    return 'unknown'
+
+
+def record_history(sdk_path, device_id, dest_dir, history_dir, package_name):
+    """Add the run to the results history and compare it with the previous
+    runs, as the Gradle runner does. Needs the analysis jar, built with
+    ./gradlew :analysis:jar
+
+    Returns 1 if a metric regressed significantly.
+    """
+    project_dir = os.path.dirname(os.path.abspath(sys.argv[0]))
+    analysis_jar = analysis_jar_path()
+    if not os.path.isfile(analysis_jar):
+        print ('\nNOTE: ' + analysis_jar + ' not found, the run is not ' +
+               'compared with the history. Build it with ./gradlew :analysis:jar')
+        return 0
+    # The machine readable results the history is recorded from.
+    run_java(['-jar', analysis_jar, '--app-package', package_name, dest_dir])
+    fingerprint = adb_output(sdk_path, device_id,
+                             ['shell', 'getprop', 'ro.build.fingerprint']).strip()
+    exit_code = run_java(['-cp', analysis_jar,
+                          'com.google.android.perftesting.analysis.RegressionDetector',
+                          '--store', history_dir,
+                          '--commit', git_commit(),
+                          '--apk-hash', apk_hash(project_dir),
+                          '--fingerprint', fingerprint or device_id,
+                          '--device', device_id,
+                          dest_dir])
+    if exit_code == 1:
+        print '\nFAIL: Regressions compared with the history, see above.'
+        return 1
+    elif exit_code != 0:
+        print '\nERROR: Unable to compare the run with the history.'
+    return 0
+
+
 def main():
     """Run this script with
     monkeyrunner run_perf_tests.py . <DEVICE_ID>
@@ -294,6 +638,7 @@ def main():
 
     dest_dir = sys.argv[1:][0] or '.'
     print 'Writing logs to: ' + dest_dir
+    history_dir = os.path.join(dest_dir, 'perftesting-history')
 
     device_id = sys.argv[1:][1] or null
     print 'Using device_id: ' + device_id
@@ -338,6 +683,9 @@ def main():
 
     enable_dump_permission(sdk_path, device_id, dest_dir, package_name)
     enable_storage_permission(sdk_path, device_id, dest_dir, package_name)
+    enable_read_logs_permission(sdk_path, device_id, dest_dir, package_name)
+
+    measure_cold_starts(sdk_path, device_id, dest_dir, package_name)
 
     open_app(device, package_name)
 
@@ -361,6 +709,8 @@ def main():
 
     analyze_data_files(dest_dir)
 
+    record_history(sdk_path, device_id, dest_dir, history_dir, package_name)
+
 
 if __name__ == '__main__':
     main()